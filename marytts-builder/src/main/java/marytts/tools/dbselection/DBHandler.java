@@ -55,6 +55,10 @@ import org.mediawiki.importer.XmlDumpReader;
 
 /**
  * Various functions for handling connection, inserting and querying a mysql database.
+ * <p>
+ * The cleanText, dbselection and selected sentences tables can be kept in an embedded
+ * {@link SentenceStore} instead, see {@link #createLocalStore(String)}; the other tables,
+ * e.g. the wikipedia pages loaded with mwdumper and the word list, are always kept in mysql.
  * 
  * @author Marcela Charfuelan, Holmer Hemsen.
  */
@@ -71,6 +75,7 @@ public class DBHandler {
   private PreparedStatement psWord = null;
   private PreparedStatement psCleanText = null;
   private PreparedStatement psTablesDescription = null;
+  private SentenceStore store = null;
   
  
   private String cleanTextTableName = "_cleanText";
@@ -166,6 +171,26 @@ public class DBHandler {
     return result;
   }
   
+  /**
+   * Keep the cleanText, dbselection and selected sentences tables in a local store in the given
+   * directory, instead of the mysql database. This can be used with or without a mysql connection;
+   * without one, only the functions for those tables can be used.
+   * @param dir the directory of the store, created if it does not exist.
+   * @return true if the store could be opened, false otherwise
+   */
+  public boolean createLocalStore(String dir) {
+    try {
+      store = new SentenceStore(new File(dir), locale);
+      System.out.println("Using local store in " + new File(dir).getAbsolutePath() + " for TABLES = " 
+          + cleanTextTableName + ", " + dbselectionTableName + " and " + selectedSentencesTableName);
+      return true;
+    } catch (IOException e) {
+      System.out.println("Problems creating local store.");
+      e.printStackTrace();
+      return false;
+    }
+  }
+  
   /***
    * Use mwdumper for extracting pages from a XML wikipedia dump file. The mwdumper reads a xml wikipedia
    * file and extract the tables "text", "page" and "revision" in sql format. In this configuration the mwdumper
@@ -355,6 +380,14 @@ public class DBHandler {
       boolean dbExist = false;
       // if database does not exist create it, if it exists it will continue adding sentences to this table
       System.out.println("Checking if " + dbselectionTableName + " already exist.");
+      if (store != null) {
+        try {
+          store.createDataBaseSelectionTable();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+        return;
+      }
       try {
           rs = st.executeQuery("SHOW TABLES;");
       } catch (Exception e) {
@@ -398,6 +431,14 @@ public class DBHandler {
       boolean dbExist = false;
       // if database does not exist create it    
       System.out.println("\nChecking if " + selectedSentencesTableName + " already exist.");
+      if (store != null) {
+        try {
+          store.createSelectedSentencesTable(selectedSentencesTableName);
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+        return;
+      }
       try {
           rs = st.executeQuery("SHOW TABLES;");
       } catch (Exception e) {
@@ -819,6 +860,14 @@ public class DBHandler {
            
       // If database does not exist create it, if it exists delete it and create an empty one.      
       System.out.println("Checking if the TABLE=" + cleanTextTableName + " already exist.");
+      if (store != null) {
+        try {
+          store.createCleanTextTable();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+        return;
+      }
       try {
           rs = st.executeQuery("SHOW TABLES;");
       } catch (Exception e) {
@@ -857,6 +906,8 @@ public class DBHandler {
    */
   public boolean tableExist(String tableName) {   
       //System.out.println("  Checking if the TABLE=" + tableName + " exist.");
+      if (store != null && store.isStoreTable(tableName))
+        return store.tableExist(tableName);
       try {
           rs = st.executeQuery("SHOW TABLES;");
       } catch (Exception e) {
@@ -916,6 +967,14 @@ public class DBHandler {
       int num, i, j;
       int idSet[]=null;
       
+      if (store != null) {
+        try {
+          return store.getUnprocessedTextIds();
+        } catch (IOException e) {
+          e.printStackTrace();
+          return new int[0];
+        }
+      }
       String str = queryTable("select count(id) from " + cleanTextTableName + " where processed=false;");  
       num = Integer.parseInt(str);
       idSet = new int[num];
@@ -976,6 +1035,17 @@ public class DBHandler {
         e.printStackTrace();
       } 
       
+      if (store != null) {
+        try {
+          if (cleanText != null)
+            store.insertCleanText(cleanText, Integer.parseInt(page_id), Integer.parseInt(text_id));
+          else
+            System.out.println("WARNING: can not insert in " + cleanTextTableName + ": " + text); 
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+        return;
+      }
       try { 
         //ps = cn.prepareStatement("INSERT INTO cleanText VALUES (null, ?, ?, ?, ?)");
         if(cleanText != null){
@@ -993,6 +1063,68 @@ public class DBHandler {
       }
     }
   
+  /****
+   * Insert the processed sentences of a cleanText record in dbselection, and then mark
+   * the cleanText record as processed. In the mysql database this is done in one transaction,
+   * so that a cleanText record is either processed completely or not at all.
+   * @param cleanText_id the id of the cleanText these sentences come from.
+   * @param sentences texts of the sentences.
+   * @param features features of each sentence if it is reliable, otherwise null.
+   * @param reliable true/false for each sentence.
+   * @param unknownWords true/false for each sentence.
+   * @param strangeSymbols true/false for each sentence.
+   */
+  public void insertSentences(int cleanText_id, String[] sentences, byte[][] features, boolean[] reliable,
+                              boolean[] unknownWords, boolean[] strangeSymbols){
+    byte strBytes[][] = new byte[sentences.length][];
+    try {
+      for (int i=0; i<sentences.length; i++)
+        strBytes[i] = sentences[i].getBytes("UTF8");
+    } catch (Exception e) {  // UnsupportedEncodedException
+      e.printStackTrace();
+    }
+    
+    if (store != null) {
+      try {
+        store.insertSentences(cleanText_id, strBytes, features, reliable, unknownWords, strangeSymbols);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      return;
+    }
+    try {
+      cn.setAutoCommit(false);
+      for (int i=0; i<sentences.length; i++) {
+        psSentence.setBytes(1, strBytes[i]);
+        psSentence.setBytes(2, features[i]);
+        psSentence.setBoolean(3, reliable[i]);
+        psSentence.setBoolean(4, unknownWords[i]);
+        psSentence.setBoolean(5, strangeSymbols[i]);
+        psSentence.setBoolean(6, false);
+        psSentence.setBoolean(7, false);
+        psSentence.setInt(8, cleanText_id);
+        psSentence.addBatch();
+        psSentence.clearParameters();
+      }
+      psSentence.executeBatch();
+      st.execute("UPDATE " + cleanTextTableName + " SET processed=true WHERE id=" + cleanText_id);
+      cn.commit();
+    } catch (SQLException e) {
+      e.printStackTrace();
+      try {
+        cn.rollback();
+      } catch (SQLException e2) {
+        e2.printStackTrace();
+      }
+    } finally {
+      try {
+        cn.setAutoCommit(true);
+      } catch (SQLException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+  
   /****
    * Insert processed sentence in dbselection
    * @param sentence text of the sentence.
@@ -1011,6 +1143,14 @@ public class DBHandler {
           e.printStackTrace();
     } 
     
+    if (store != null) {
+      try {
+        store.insertSentence(strByte, features, reliable, unknownWords, strangeSymbols, cleanText_id);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      return;
+    }
     try { 
         psSentence.setBytes(1, strByte);
         psSentence.setBytes(2, features);
@@ -1041,6 +1181,14 @@ public class DBHandler {
     String dbQuery = "Select sentence FROM " + dbselectionTableName + " WHERE id=" + dbselection_id;
     byte[] sentenceBytes=null;
       
+    if (store != null) {
+      try {
+        store.insertSelectedSentence(selectedSentencesTableName, dbselection_id, unwanted);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      return;
+    }
     try {
       // First get the sentence
        sentenceBytes = queryTableByte(dbQuery);    
@@ -1123,6 +1271,17 @@ public class DBHandler {
   
   
   public void closeDBConnection(){
+    if (store != null) {
+      try {
+        store.close();
+        System.out.println("\nLocal store closed.");
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      store = null;
+    }
+    if (cn == null)
+      return;
     try {
         cn.close(); 
         System.out.println("\nMysql connection closed.");
@@ -1133,6 +1292,10 @@ public class DBHandler {
   
   
   public int getNumberOfReliableSentences() {
+      if (store != null) {
+        int[] ids = getIdListOfType("dbselection", "reliable=true");
+        return ids != null ? ids.length : 0;
+      }
       String dbQuery = "SELECT count(sentence) FROM " + dbselectionTableName + " where reliable=true;";
       String str = queryTable(dbQuery);
       return Integer.parseInt(str);
@@ -1155,6 +1318,18 @@ public class DBHandler {
       int maxNum=500000;
       String getNum, getIds, getIdsShort;
       
+      if (store != null && store.isStoreTable(locale + "_" + table)) {
+        try {
+          idSet = store.getIdListOfType(locale + "_" + table, condition);
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+        if (idSet == null || idSet.length == 0) {
+          System.out.println("WARNING empty list for: " + table + " where " + condition);
+          return null;
+        }
+        return idSet;
+      }
       if(condition!=null){
         getNum =  "SELECT count(id) FROM " + locale + "_" + table + " where " + condition + ";";
         getIds =  "SELECT id FROM " + locale + "_" + table +  " where " + condition;
@@ -1220,6 +1395,16 @@ public class DBHandler {
       int maxNum=500000;
       String getNum, getIds, getIdsShort;
       
+      if (store != null && (locale + "_" + table).equals(dbselectionTableName)) {
+        try {
+          Pair<int[], byte[][]> pair = store.getIdsAndFeatureVectors(condition);
+          System.out.println(pair.getFirst().length+" sentences retrieved.");
+          return pair;
+        } catch (IOException e) {
+          e.printStackTrace();
+          return new Pair<int[], byte[][]>(null, null);
+        }
+      }
       if(condition!=null){
         getNum =  "SELECT count(id) FROM " + locale + "_" + table + " where " + condition + ";";
         getIds =  "SELECT id,features FROM " + locale + "_" + table +  " where " + condition;
@@ -1287,6 +1472,18 @@ public class DBHandler {
       int idSet[]=null;
       String getNum, getIds;
       //String actualTableName = lang + "_" + tableName + "_selectedSentences";
+      if (store != null && store.isStoreTable(actualTableName)) {
+        try {
+          idSet = store.getIdListOfSelectedSentences(actualTableName, condition);
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+        if (idSet == null || idSet.length == 0) {
+          System.out.println("WARNING empty list for: " + actualTableName + " where " + condition);
+          return null;
+        }
+        return idSet;
+      }
          
       getNum =  "SELECT count(dbselection_id) FROM " + actualTableName + " where " + condition + ";";
       getIds =  "SELECT dbselection_id FROM " + actualTableName + " where " + condition + ";";
@@ -1487,7 +1684,14 @@ public class DBHandler {
       String dbQuery = "Select sentence FROM " + dbselectionTableName + " WHERE id=" + id;
       byte[] sentenceBytes=null;
       
-      sentenceBytes = queryTableByte(dbQuery); 
+      if (store != null) {
+        try {
+          sentenceBytes = store.getSentence(id);
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      } else
+        sentenceBytes = queryTableByte(dbQuery); 
       try {
         sentence = new String(sentenceBytes, "UTF8");
         //System.out.println("  TEXT: " + text);
@@ -1509,7 +1713,14 @@ public class DBHandler {
       String dbQuery = "Select sentence FROM " + tableName + " WHERE dbselection_id=" + id;
       byte[] sentenceBytes=null;
       
-      sentenceBytes = queryTableByte(dbQuery); 
+      if (store != null && store.isStoreTable(tableName)) {
+        try {
+          sentenceBytes = store.getSelectedSentence(tableName, id);
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      } else
+        sentenceBytes = queryTableByte(dbQuery); 
       try {
         sentence = new String(sentenceBytes, "UTF8");
         //System.out.println("  TEXT: " + text);
@@ -1572,11 +1783,60 @@ public class DBHandler {
       return text;   
   }
   
+  /**
+   * Get several records of the cleanText table, without marking them as processed.
+   * @param ids the ids of the records
+   * @return the texts, in the order of the ids; null for ids which are not in the table.
+   */
+  public String[] getCleanTexts(int[] ids){
+      String[] texts = new String[ids.length];
+      if (ids.length == 0)
+        return texts;
+      if (store != null) {
+        try {
+          byte[][] textBytes = store.getCleanTexts(ids);
+          for (int i=0; i<ids.length; i++)
+            texts[i] = new String(textBytes[i], "UTF8");
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+        return texts;
+      }
+      StringBuilder idList = new StringBuilder();
+      HashMap<Integer, Integer> index = new HashMap<Integer, Integer>();
+      for (int i=0; i<ids.length; i++) {
+        if (i > 0)
+          idList.append(",");
+        idList.append(ids[i]);
+        index.put(ids[i], i);
+      }
+      try {
+        rs = st.executeQuery("select id, cleanText from " + cleanTextTableName + " where id in (" + idList + ");");
+        while( rs.next() ) {
+          Integer i = index.get(rs.getInt(1));
+          if (i != null)
+            texts[i] = new String(rs.getBytes(2), "UTF8");
+        }
+      } catch (Exception e) {  // SQLException, UnsupportedEncodedException
+        e.printStackTrace();
+      }
+      return texts;
+  }
+  
   public String getCleanText(int id){
       String dbQuery, text=null;
       byte[] textBytes=null;
              
       dbQuery = " select cleanText from " + cleanTextTableName + " where id=" + id;
+      if (store != null) {
+        try {
+          // the store marks the text record as processed
+          return new String(store.getCleanText(id), "UTF8");
+        } catch (IOException e) {
+          e.printStackTrace();
+          return null;
+        }
+      }
       textBytes = queryTableByte(dbQuery);
       
       try {
@@ -1604,6 +1864,14 @@ public class DBHandler {
     else
       bval = "false";   
         
+    if (store != null) {
+      try {
+        store.setSentenceRecord(id, field, fieldValue);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      return;
+    }
     updateTable("UPDATE " + dbselectionTableName + " SET " + field + "=" + bval + " WHERE id=" + id);  
       
   }
@@ -1622,6 +1890,14 @@ public class DBHandler {
       else
         bval = "false";   
           
+      if (store != null && store.isStoreTable(actualTableName)) {
+        try {
+          store.setUnwantedSentenceRecord(actualTableName, id, fieldValue);
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+        return;
+      }
       updateTable("UPDATE " + actualTableName + " SET unwanted=" + bval + " WHERE dbselection_id=" + id);
       updateTable("UPDATE " + dbselectionTableName + " SET unwanted=" + bval + " WHERE id=" + id);  
         
@@ -1641,7 +1917,14 @@ public class DBHandler {
     boolean descExists=false;
     int val=0;
     
-    if(tableName != null){
+    if(tableName != null && store != null && store.isStoreTable(tableName)){
+      try {
+        System.out.println("  Adding a description for the table " + tableName + " in the local store.");  
+        store.setTableDescription(tableName, description, stopCriterion, featuresDefinitionFileName, covDefConfigFileName);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    } else if(tableName != null){
       // check if tablesDescription exists
       if( tableExist("tablesDescription") ) {
         // check if a description for that name already exist
@@ -1736,6 +2019,14 @@ public class DBHandler {
   public String[] getTableDescription(String tableName){
     String [] desc = new String[7];
     PreparedStatement psDesc = null;  
+    if (store != null && store.isStoreTable(tableName)) {
+      try {
+        desc = store.getTableDescription(tableName);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      return desc;
+    }
     try {  
       psDesc = cn.prepareStatement("SELECT * from tablesDescription where name='" + tableName + "';");
       rs = psDesc.executeQuery();    
@@ -1822,6 +2113,14 @@ public class DBHandler {
   public byte[] getFeatures(int id)
   {
       byte[] fea = null;
+      if (store != null) {
+        try {
+          fea = store.getFeatures(id);
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+        return fea;
+      }
       String dbQuery = "Select features FROM " + dbselectionTableName + " WHERE id=" + id;
       //System.out.println("querying: " + dbQuery);
       try {
@@ -1847,6 +2146,13 @@ public class DBHandler {
    * @return an array of coverage features, of the same length as the input array.
    */
   public byte[][] getFeaturesBulk(int[] ids) {
+	  if (store != null) {
+		  try {
+			  return store.getFeatures(ids);
+		  } catch (IOException e) {
+			  throw new RuntimeException("Could not get features from local store", e);
+		  }
+	  }
 	  HashMap<Integer, byte[]> featuresSet = getFeaturesSet(0, ids.length-1, ids);
 	  byte[][] data = new byte[ids.length][];
 	  for (int i=0; i<ids.length; i++) {
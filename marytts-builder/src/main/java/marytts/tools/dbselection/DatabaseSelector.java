@@ -102,6 +102,7 @@ public class DatabaseSelector
     private static String mysqlDB;
     private static String mysqlUser;
     private static String mysqlPasswd;
+    private static String localStore;
     private static boolean considerOnlyReliableSentences;
     /**
      * Main method to be run from the directory where the data is.
@@ -181,7 +182,12 @@ public class DatabaseSelector
           System.out.println("Current selected sentences table name = " + selectedSentencesTableName);
         
         // If connection succeed
-        if( wikiToDB.createDBConnection(mysqlHost,mysqlDB,mysqlUser,mysqlPasswd) ) {
+        boolean connected;
+        if(localStore != null)
+          connected = wikiToDB.createLocalStore(localStore);
+        else
+          connected = wikiToDB.createDBConnection(mysqlHost,mysqlDB,mysqlUser,mysqlPasswd);
+        if( connected ) {
             
         /* Read in the feature definition */
         System.out.println("\nLoading feature definition...");
@@ -378,6 +384,7 @@ public class DatabaseSelector
         mysqlDB = null;
         mysqlUser = null;
         mysqlPasswd = null;
+        localStore = null;
         selectedSentencesTableName = null;
         tableDescription = "";
         considerOnlyReliableSentences = true;
@@ -469,6 +476,20 @@ public class DatabaseSelector
                 i++;
                 continue;
             }
+            if (args[i].equals("-localStore")){
+                if (args.length > i+1){
+                    i++;
+                    localStore = args[i];
+                    log.append("localStore : "+args[i]+"\n");
+                    System.out.println("  localStore : "+args[i]);
+                } else {
+                    System.out.println("No localStore.");
+                    printUsage();
+                    return false;
+                }
+                i++;
+                continue;
+            }
             if (args[i].equals("-featDef")){
                 if (args.length > i+1){
                     i++;
@@ -622,9 +643,10 @@ public class DatabaseSelector
             i++;
         }
         System.out.println();
-        if (numEssentialArgs<6){
+        // with a local store, the mysql parameters are not needed
+        if (numEssentialArgs < (localStore != null ? 2 : 6)){
             //not all essential arguments were given
-            System.out.println("You must at least specify locale, mysql (host,user,paswd,DB), selectedSentencesTableName");
+            System.out.println("You must at least specify locale, mysql (host,user,paswd,DB) or localStore, selectedSentencesTableName");
             printUsage();
             return false;
         } 
@@ -693,6 +715,7 @@ public class DatabaseSelector
         
         System.out.println("\nUsage: " +
                 "Usage: java DatabaseSelector -locale language -mysqlHost host -mysqlUser user -mysqlPasswd passwd -mysqlDB wikiDB\n"
+                +"    or: java DatabaseSelector -locale language -localStore dir\n"
                 +"-tableName selectedSentencesTableName \n"
                 +" [-stop stopCriterion]\n"
                 +" [-featDef file -coverageConfig file]\n"
@@ -700,6 +723,8 @@ public class DatabaseSelector
                 +" [-tableDescription a brief description of the table ]\n"
                 +" [-vectorsOnDisk -overallLog file -selectionDir dir -logCoverageDevelopment -verbose]\n"        
                 +" Arguments:\n"
+                +" -localStore dir : use the dbselection and selected sentences tables in the local store in dir,\n"
+                +"     created by the FeatureMaker, instead of a mysql database.\n"
                 +" -tableName selectedSentencesTableName : The name of a new selection set, change this name when\n"
                 +"     generating several selection sets. FINAL name will be: \"locale_name_selectedSenteces\". \n"
         +"     where name is the name provided for the selected sentences table.\n"
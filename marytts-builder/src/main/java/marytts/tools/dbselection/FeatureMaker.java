@@ -31,11 +31,20 @@ import java.io.StringWriter;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import marytts.datatypes.MaryData;
 import marytts.datatypes.MaryDataType;
@@ -64,7 +73,12 @@ import com.sun.speech.freetts.Utterance;
 
 /**
  * Takes text and converts to features
- * Needs a running Mary server
+ * Uses a builtin Mary, started in process.
+ * <p>
+ * The unprocessed cleanText records are read in pages by a reader thread, split into sentences
+ * and converted to features by a number of worker threads, and written by the main thread
+ * in the order in which they were read. A cleanText record is only marked as processed
+ * when all its sentences have been written, so that an interrupted run can be resumed.
  * 
  * @author Anna Hunecke
  *
@@ -74,10 +88,9 @@ public class FeatureMaker
     // locale
     private static String locale;    // using locale we should be able to get the default voice. 
     
-	//stores result of credibility check for current sentence
-	protected static boolean usefulSentence;
-    protected static boolean unknownWords;
-    protected static boolean strangeSymbols;
+    // number of cleanText records read at a time
+    private static final int PAGE_SIZE = 100;
+    
     
     //feature definition, features for selection and their indexes
 	protected static FeatureDefinition featDef;
@@ -97,10 +110,13 @@ public class FeatureMaker
     private static String mysqlDB=null;
     private static String mysqlUser=null;
     private static String mysqlPasswd=null;
+    // or a local store instead of the database
+    private static String localStore=null;
+    // number of threads computing the features
+    private static int numThreads;
    
     
     public static void main(String[] args)throws Exception{
-        boolean test=false;	
         String dateStringIni="";
         String dateStringEnd="";
         DateFormat fullDate = new SimpleDateFormat("dd_MM_yyyy_HH:mm:ss");
@@ -117,7 +133,10 @@ public class FeatureMaker
 
         /* Here the DB connection is open */
         wikiToDB = new DBHandler(locale);
-        wikiToDB.createDBConnection(mysqlHost,mysqlDB,mysqlUser,mysqlPasswd);
+        if(localStore != null)
+            wikiToDB.createLocalStore(localStore);
+        else
+            wikiToDB.createDBConnection(mysqlHost,mysqlDB,mysqlUser,mysqlPasswd);
 
         // check if table exists, if exists already ask user if delete or re-use
         char c;
@@ -161,11 +180,8 @@ public class FeatureMaker
             int textId[];
             textId = wikiToDB.getUnprocessedTextIds();
             System.out.println("Number of unprocessed clean_text records to process --> [" + textId.length + "]");
-            String text;
-
-            Vector<String> sentenceList;  // this will be the list of sentences in each clean_text
             String targetFeatures = "";
-            int i, j;
+            int i;
 
             // get a list separated by spaces of the target features to extract
             for(i=0; i<selectionFeature.size(); i++)
@@ -185,63 +201,7 @@ public class FeatureMaker
             System.out.println("\nCreated featureDefinition file:" + locale + "_featureDefinition.txt");
 
 
-            for(i=0; i<textId.length; i++) {
-                // get next unprocessed text  
-                text = wikiToDB.getCleanText(textId[i]);
-                System.out.println("Processing(" + i + ") text id=" + textId[i] + " text length=" + text.length());
-                sentenceList = splitIntoSentences(text, textId[i], test);
-
-                if( sentenceList != null ) {
-                    int index=0;			
-                    // loop over the sentences
-                    int numSentencesInText=0;
-                    /*
-                    String newSentence;
-                    byte feas[];  // for directly saving a vector of bytes as BLOB in mysql DB
-                    for(j=0; j<sentenceList.size(); j++) {
-                        newSentence = sentenceList.elementAt(j);
-                        MaryData d = processSentence(newSentence,textId[i],targetFeatures);
-                        if (d!=null){
-                            // get the features of the sentence  
-                            feas = getFeatures(d);     
-                            // Insert in the database the new sentence and its features.
-                            numSentencesInText++;
-                            if(!test)
-                                wikiToDB.insertSentence(newSentence,feas, true, false, false, textId[i]);
-                            feas = null;
-                        }        		
-                    }//end of loop over list of sentences
-                    */
-                    
-                    for (String sentence : sentenceList) {
-                        byte[] feas = processSentenceToFeatures(sentence, textId[i], featureComputer);
-                        if (feas == null) continue;
-                        if (false) { // turn on for debugging, to check the features computed make sense
-                            int numFeatures = selectionFeature.size();
-                            System.out.println(sentence);
-                            for (int t=0; t<feas.length; t+=numFeatures) {
-                                for (int f=0; f<numFeatures; f++) {
-                                    int featureIndex = fdef.getFeatureIndex(selectionFeature.get(f));
-                                    byte val = feas[t+f];
-                                    String sVal = fdef.getFeatureValueAsString(featureIndex, val);
-                                    System.out.print(sVal+" ");
-                                }
-                                System.out.println();
-                            }
-                        }
-                        // Insert in the database the new sentence and its features.
-                        numSentencesInText++;
-                        if(!test)
-                            wikiToDB.insertSentence(sentence,feas, true, false, false, textId[i]);
-                    }
-                    sentenceList.clear();
-                    sentenceList=null;
-
-                    numSentences += numSentencesInText;
-                    System.out.println("Inserted " + numSentencesInText + " sentences from text id=" 
-                            + textId[i] + " (Total reliable = "+ numSentences+") \n"); 
-                }  // if sentenceList is not null
-            } //end of loop over articles  
+            processTexts(textId, featureComputer);
             wikiToDB.closeDBConnection();
 
             Date dateEnd = new Date();
@@ -256,6 +216,144 @@ public class FeatureMaker
         }
 
     }//end of main method
+    
+    /**
+     * Compute the features of the sentences in the given cleanText records and insert them in the dbselection table.
+     * @param textId the ids of the cleanText records
+     * @param featureComputer the computer of the features for selection
+     * @throws Exception if a text could not be read or processed; the texts processed before are inserted.
+     */
+    protected static void processTexts(final int[] textId, final TargetFeatureComputer featureComputer) throws Exception {
+        System.out.println("Computing features with " + numThreads + " threads");
+        final ExecutorService workers = Executors.newFixedThreadPool(numThreads);
+        // the texts being processed, in the order in which they were read:
+        final BlockingQueue<Future<ProcessedText>> results = new ArrayBlockingQueue<Future<ProcessedText>>(4 * numThreads);
+        Thread reader = new Thread("FeatureMaker reader") {
+            public void run() {
+                try {
+                    for (int start=0; start<textId.length; start+=PAGE_SIZE) {
+                        int[] page = Arrays.copyOfRange(textId, start, Math.min(start + PAGE_SIZE, textId.length));
+                        String[] texts;
+                        synchronized (wikiToDB) {
+                            texts = wikiToDB.getCleanTexts(page);
+                        }
+                        for (int k=0; k<page.length; k++) {
+                            final int id = page[k];
+                            final String text = texts[k];
+                            if (text == null) {
+                                throw new IllegalStateException("Cannot read clean_text record id=" + id);
+                            }
+                            results.put(workers.submit(new Callable<ProcessedText>() {
+                                public ProcessedText call() throws Exception {
+                                    return processText(id, text, featureComputer);
+                                }
+                            }));
+                        }
+                    }
+                } catch (final Exception e) {
+                    // hand the problem on to the writer, so that it does not wait for further texts
+                    FutureTask<ProcessedText> failed = new FutureTask<ProcessedText>(new Callable<ProcessedText>() {
+                        public ProcessedText call() throws Exception {
+                            throw e;
+                        }
+                    });
+                    failed.run();
+                    try {
+                        results.put(failed);
+                    } catch (InterruptedException ie) {
+                        // the writer has given up
+                    }
+                }
+            }
+        };
+        reader.setDaemon(true);
+        reader.start();
+        try {
+            for (int i=0; i<textId.length; i++) {
+                ProcessedText result;
+                try {
+                    result = results.take().get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+                System.out.println("Processed(" + i + ") text id=" + result.id + " text length=" + result.textLength);
+                int n = result.sentences.size();
+                String[] sentences = new String[n];
+                byte[][] features = new byte[n][];
+                boolean[] reliable = new boolean[n];
+                boolean[] unknownWords = new boolean[n];
+                boolean[] strangeSymbols = new boolean[n];
+                int numReliable = 0;
+                for (int k=0; k<n; k++) {
+                    Sentence s = result.sentences.get(k);
+                    sentences[k] = s.text;
+                    features[k] = s.features;
+                    reliable[k] = s.reliable;
+                    unknownWords[k] = s.unknownWords;
+                    strangeSymbols[k] = s.strangeSymbols;
+                    if (s.reliable) numReliable++;
+                }
+                // Insert in the database the new sentences and their features, and mark the text as processed.
+                synchronized (wikiToDB) {
+                    wikiToDB.insertSentences(result.id, sentences, features, reliable, unknownWords, strangeSymbols);
+                }
+                numSentences += numReliable;
+                numUnreliableSentences += n - numReliable;
+                System.out.println("Inserted " + numReliable + " reliable and " + (n - numReliable) + " unreliable sentences from text id="
+                        + result.id + " (Total reliable = " + numSentences + ", unreliable = " + numUnreliableSentences + ") \n");
+            }
+        } finally {
+            reader.interrupt();
+            workers.shutdownNow();
+        }
+    }
+    
+    /**
+     * Split a text into sentences, and compute the features of the reliable ones.
+     * Reliable sentences for which the features cannot be computed are left out.
+     */
+    protected static ProcessedText processText(int id, String text, TargetFeatureComputer featureComputer) throws Exception {
+        ProcessedText result = new ProcessedText(id, text.length());
+        List<Sentence> sentenceList = splitIntoSentences(text, id);
+        if (sentenceList != null) {
+            for (Sentence sentence : sentenceList) {
+                if (sentence.reliable) {
+                    sentence.features = processSentenceToFeatures(sentence.text, id, featureComputer);
+                    if (sentence.features == null) continue;
+                }
+                result.sentences.add(sentence);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * The sentences of a cleanText record.
+     */
+    protected static class ProcessedText {
+        final int id;
+        final int textLength;
+        final List<Sentence> sentences = new ArrayList<Sentence>();
+        
+        ProcessedText(int id, int textLength) {
+            this.id = id;
+            this.textLength = textLength;
+        }
+    }
+    
+    /**
+     * A sentence, the result of its credibility check and, if it is reliable, its features.
+     */
+    protected static class Sentence {
+        String text;
+        boolean reliable = true;
+        boolean unknownWords = false;
+        boolean strangeSymbols = false;
+        byte[] features;
+    }
 	
 	/**
 	 * Print usage of this program 
@@ -265,13 +363,18 @@ public class FeatureMaker
         System.out.println("\nUsage: " +
                 "java FeatureMaker -locale language -mysqlHost host -mysqlUser user\n" +
                 "                 -mysqlPasswd passwd -mysqlDB wikiDB\n" +
+                "   or: java FeatureMaker -locale language -localStore directory\n" +
                 "                 [-reliability strict]\n" +
-                "                 [-featuresForSelection phone,next_phone,selection_prosody]\n\n" +
+                "                 [-featuresForSelection phone,next_phone,selection_prosody]\n" +
+                "                 [-numThreads n]\n\n" +
                 "  required: This program requires a MARY server running and an already created cleanText table in the DB. \n" +
                 "            The cleanText table can be created with the WikipediaProcess program. \n" +
+                "  -localStore: use the cleanText and dbselection tables in a local store in the given directory \n" +
+                "  instead of a mysql database. \n" +
                 "  default/optional: [-maryHost localhost -maryPort 59125]\n" +
                 "  default/optional: [-featuresForSelection phone,next_phone,selection_prosody] (features separated by ,) \n" +
-                "  optional: [-reliability [strict|lax]]\n\n" +
+                "  optional: [-reliability [strict|lax]]\n" +
+                "  default/optional: [-numThreads number of processors] (number of texts processed in parallel)\n\n" +
                 "  -reliability: setting that determines what kind of sentences \n" +
                 "  are regarded as credible. There are two settings: strict and lax. With \n" +
                 "  setting strict, only those sentences that contain words in the lexicon \n" +
@@ -288,7 +391,9 @@ public class FeatureMaker
         "\n  -mysqlHost " + mysqlHost +
         "\n  -mysqlUser " + mysqlUser +
         "\n  -mysqlPasswd " + mysqlPasswd +
-        "\n  -mysqlDB " + mysqlDB);
+        "\n  -mysqlDB " + mysqlDB +
+        "\n  -localStore " + localStore +
+        "\n  -numThreads " + numThreads);
         
         if( strictReliability )
           System.out.println("  -reliability strict");
@@ -318,9 +423,10 @@ public class FeatureMaker
         selectionFeature.add("phone");
         selectionFeature.add("next_phone");
         selectionFeature.add("selection_prosody");
+        numThreads = Runtime.getRuntime().availableProcessors();
         
 		//now parse the args
-        if (args.length >= 10){
+        if (args.length >= 4){
           for(int i=0; i<args.length; i++) { 
 			
             if (args[i].equals("-locale") && args.length>=i+1 )
@@ -359,6 +465,12 @@ public class FeatureMaker
             else if(args[i].contentEquals("-mysqlDB") && args.length >= (i+1) )
               mysqlDB = args[++i];
           
+            else if(args[i].contentEquals("-localStore") && args.length >= (i+1) )
+              localStore = args[++i];
+          
+            else if(args[i].contentEquals("-numThreads") && args.length >= (i+1) )
+              numThreads = Math.max(1, Integer.parseInt(args[++i]));
+          
             else { //unknown argument
               System.out.println("\nOption not known: " + args[i]);
               return false;
@@ -366,11 +478,11 @@ public class FeatureMaker
                 
             
           }	
-		} else  // arguments less than 12
+		} else  // arguments less than 4
 			return false;
 
-        if(mysqlHost==null || mysqlUser==null || mysqlPasswd==null || mysqlDB==null){
-           System.out.println("\nMissing mysql parameters.\n");
+        if(localStore==null && (mysqlHost==null || mysqlUser==null || mysqlPasswd==null || mysqlDB==null)){
+           System.out.println("\nMissing mysql parameters or local store.\n");
            printParameters();
            return false;
         }
@@ -563,93 +675,53 @@ public class FeatureMaker
         
 		/**
 		 * Split the text
-		 * into separate sentences
+		 * into separate sentences, and check the credibility of each sentence
 		 * 
-		 * @param file the file
-		 * @return true, if successful
+		 * @param text the text
+		 * @param id the id of the text
+		 * @return the sentences, or null if the text could not be processed
 		 * @throws Exception
 		 */
-		protected static Vector<String> splitIntoSentences(String text, int id, boolean test)throws Exception{
+		protected static List<Sentence> splitIntoSentences(String text, int id)throws Exception{
             
-            Vector<String> sentenceList = null;
+            List<Sentence> sentenceList = null;
             StringBuilder sentence;
-            //index2sentences = new TreeMap<Integer,String>();
           
             Document doc = phonemiseText(text, id);
-			//if (doc == null) return false;
             
             if (doc != null) {
-            sentenceList = new Vector<String>();    
+            sentenceList = new ArrayList<Sentence>();    
 			NodeList sentences = doc.getElementsByTagName("s");   
 			
-            int sentenceIndex = 1;
-            int unrelSentences=0;
 			for (int j=0;j<sentences.getLength();j++){
 				Node nextSentence = sentences.item(j);
 				//ignore all non-element children
 				if (!(nextSentence instanceof Element)) continue; 
 				sentence = null;
+				Sentence checked = new Sentence();
 				//get the tokens
 				NodeList tokens = nextSentence.getChildNodes();
-				usefulSentence = true;
-                unknownWords = false;
-                strangeSymbols = false;
 				for (int k=0;k<tokens.getLength();k++){
 					Node nextToken = tokens.item(k);
 					//ignore all non-element children
 					if ( (nextToken instanceof Element) ) 
-					  sentence = collectTokens(nextToken, sentence);                            
+					  sentence = collectTokens(nextToken, sentence, checked);                            
 				}
                 //System.out.println(sentence);
 				if (sentence!=null){
-					if (usefulSentence){	
-						//store sentence in sentence map
-						//index2sentences.put(new Integer(sentenceIndex),sentence.toString());
-                        // check if the sentence is not . 
-                        if( !sentence.toString().contentEquals(".") ){
-                         sentenceList.add(sentence.toString());
-                         //System.out.println("reliable sentence=" + sentence.toString() + "\n");
-                        }
-					} else {
-						//just print useless sentence to log file
-						//System.out.println(filename+"; "+sentenceIndex+": "+sentence
-						//		+" : is unreliable");
-                        
-                        unrelSentences++;
-                        /*
-                        if(unknownWords)
-                          System.out.println("unknownWords: " + sentence.toString());
-                        if(strangeSymbols)
-                            System.out.println("strangeSymbols: " + sentence.toString());
-                         */
-                        
-                        // Here the reason why is unreliable can be added to the DB.
-                        // for the moment there is just one field reliable=false in this case.
-                        if(!test)
-                          wikiToDB.insertSentence(sentence.toString(), null, usefulSentence, unknownWords, strangeSymbols, id);
-                        else{
-                          wikiToDB.setSentenceRecord(id, "reliable", false);
-                          if(unknownWords)
-                           wikiToDB.setSentenceRecord(id, "unknownWords", true);
-                          if(strangeSymbols)
-                           wikiToDB.setSentenceRecord(id, "strangeSymbols", true);
-                          
-                          //System.out.println("unreliable sentence: " + sentence.toString());
-                        }
+                    // check if the sentence is not . 
+					if (!checked.reliable || !sentence.toString().contentEquals(".")){
+                        // unreliable sentences are kept as well, the reason why is unreliable is added to the DB.
+                        checked.text = sentence.toString();
+                        sentenceList.add(checked);
 					}
-					sentenceIndex++;
-                   
 				} else {
 					//ignore
 					//System.out.println("NULL SENTENCE!!!");
 				}
 			} 
-            numUnreliableSentences += unrelSentences;         
-            System.out.println("Inserted " + unrelSentences + " sentences from text id=" + id + " (Total unreliable = " + numUnreliableSentences + ")");
-            
             } 
             
-            sentence = null;
 			return sentenceList;
 		}
 		
@@ -658,23 +730,25 @@ public class FeatureMaker
          * Collect the tokens of a sentence
          * 
          * @param nextToken the Node to start from
+         * @param sentence the text of the sentence so far, or null
+         * @param checked the sentence whose credibility is checked
          * checkCredibility returns
          *  0 if the sentence is useful
          *  1 if the sentence contains unknownWords (so the sentence is not useful)
          *  2 if the sentence contains strangeSymbols (so the sentence is not useful)
          */
-        protected static StringBuilder collectTokens(Node nextToken, StringBuilder sentence){
+        protected static StringBuilder collectTokens(Node nextToken, StringBuilder sentence, Sentence checked){
             int credibility = 0; 
             String tokenText, word;
             String name = nextToken.getLocalName();
             if (name.equals("t")){
                 if ( ( credibility = checkReliability((Element) nextToken) ) > 0 ){
                     //memorize that we found unreliable sentence
-                    usefulSentence = false;
+                    checked.reliable = false;
                     if(credibility == 1)
-                      unknownWords = true;
+                      checked.unknownWords = true;
                     else if(credibility == 2)
-                      strangeSymbols = true;  
+                      checked.strangeSymbols = true;  
                 }
                 if (sentence == null){
                     sentence = new StringBuilder();
@@ -707,7 +781,7 @@ public class FeatureMaker
                         Node nextMTUToken = mtuTokens.item(l);
                         //ignore all non-element children
                         if (!(nextMTUToken instanceof Element)) continue; 
-                        collectTokens(nextMTUToken, sentence);
+                        collectTokens(nextMTUToken, sentence, checked);
                     }
                 }
                 
@@ -0,0 +1,765 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.tools.dbselection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import marytts.util.Pair;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * An embedded store for the tables of the database selection which are written and read
+ * in bulk: the clean texts, the sentences with their feature vectors, and the selected sentences.
+ * It can be used by the {@link DBHandler} instead of a mysql server, see {@link DBHandler#createLocalStore(String)}.
+ * <p>
+ * Each table is kept in a directory as a set of append-only files: one data file for each
+ * text or binary column, and an index file with one fixed-size record per row, containing
+ * the position and length of the row's data in each data file, its integer columns and its
+ * boolean columns. The index is also held in memory, so that the rows matching a condition
+ * can be found without reading the data files, and the data of those rows can be read
+ * in one sequential pass. New rows are written in batches; boolean columns are updated in place.
+ * <p>
+ * Row ids start at 1 and increase with each inserted row, like the auto-increment ids of the
+ * mysql tables. If the writing of a table was interrupted, the incomplete last row is discarded
+ * when the table is opened again.
+ */
+public class SentenceStore {
+
+    /** The number of rows appended to a table before they are written to disk. */
+    public static final int BATCH_SIZE = 1000;
+
+    private static final String CLEANTEXT = "_cleanText";
+    private static final String DBSELECTION = "_dbselection";
+    private static final String SELECTEDSENTENCES = "_selectedSentences";
+
+    private File dir;
+    private String locale;
+    private Map<String, Table> tables = new HashMap<String, Table>();
+
+    /**
+     * Open the store in the given directory, which is created if it does not exist.
+     * @param dir the directory of the store
+     * @param locale the locale prefix of the table names
+     * @throws IOException if the directory cannot be created
+     */
+    public SentenceStore(File dir, String locale) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir.getAbsolutePath());
+        }
+        this.dir = dir;
+        this.locale = locale;
+    }
+
+    /**
+     * Whether the table with the given name (including the locale prefix) is one of the tables kept in this store.
+     */
+    public boolean isStoreTable(String tableName) {
+        return tableName.equals(locale + CLEANTEXT) || tableName.equals(locale + DBSELECTION)
+            || tableName.startsWith(locale + "_") && tableName.endsWith(SELECTEDSENTENCES);
+    }
+
+    public synchronized boolean tableExist(String tableName) {
+        return tables.containsKey(tableName) || new File(dir, tableName + Table.INDEX).exists();
+    }
+
+    /**
+     * Create an empty cleanText table, deleting an existing one.
+     */
+    public synchronized void createCleanTextTable() throws IOException {
+        String name = locale + CLEANTEXT;
+        if (tableExist(name)) {
+            System.out.println("TABLE = " + name + " already exist deleting.");
+            table(name).delete();
+            tables.remove(name);
+        }
+        createTable(name);
+        System.out.println("TABLE = " + name + " succesfully created.");
+    }
+
+    /**
+     * Create the dbselection table, unless it exists already.
+     */
+    public synchronized void createDataBaseSelectionTable() throws IOException {
+        String name = locale + DBSELECTION;
+        if (tableExist(name)) {
+            System.out.println("TABLE = " + name + " already exist, adding sentences to this table.");
+        } else {
+            createTable(name);
+            System.out.println("TABLE = " + name + " succesfully created.");
+        }
+    }
+
+    /**
+     * Create a selected sentences table, unless it exists already. When a new table is created,
+     * the field selected is set to false for all sentences in the dbselection table.
+     */
+    public synchronized void createSelectedSentencesTable(String tableName) throws IOException {
+        if (tableExist(tableName)) {
+            System.out.println("  TABLE = " + tableName + " already exist. New selected sentences " +
+                "will be added to this table.");
+        } else {
+            System.out.println("  TABLE = " + tableName + " does not exist, creating a new table and ");
+            System.out.println("  Initialising fields selected=false in TABLE = " + locale + DBSELECTION +
+                " (Previously selected sentences marked as unwanted will be kept)");
+            table(locale + DBSELECTION).setAll("selected", false);
+            createTable(tableName);
+            System.out.println("  TABLE = " + tableName + " succesfully created.");
+        }
+    }
+
+    public synchronized void insertCleanText(byte[] text, int pageId, int textId) throws IOException {
+        table(locale + CLEANTEXT).append(new byte[][] {text}, new int[] {pageId, textId}, 0);
+    }
+
+    /**
+     * The ids of the clean texts which have not been processed yet.
+     */
+    public synchronized int[] getUnprocessedTextIds() throws IOException {
+        return table(locale + CLEANTEXT).select("processed=false");
+    }
+
+    /**
+     * Get a clean text, and mark it as processed.
+     */
+    public synchronized byte[] getCleanText(int id) throws IOException {
+        Table cleanText = table(locale + CLEANTEXT);
+        byte[] text = cleanText.getData(0, id);
+        cleanText.setFlag(id, "processed", true);
+        return text;
+    }
+
+    /**
+     * Get several clean texts, without marking them as processed.
+     * @param ids ids in the cleanText table; they are read in one pass if they are sorted.
+     */
+    public synchronized byte[][] getCleanTexts(int[] ids) throws IOException {
+        return table(locale + CLEANTEXT).getData(0, ids);
+    }
+
+    /**
+     * Insert the sentences of a clean text in the dbselection table, and then mark the clean text as processed.
+     * The clean text is only marked as processed once all its sentences have been written to disk.
+     */
+    public synchronized void insertSentences(int cleanTextId, byte[][] sentences, byte[][] features, boolean[] reliable,
+            boolean[] unknownWords, boolean[] strangeSymbols) throws IOException {
+        Table dbselection = table(locale + DBSELECTION);
+        for (int i = 0; i < sentences.length; i++) {
+            insertSentence(sentences[i], features[i], reliable[i], unknownWords[i], strangeSymbols[i], cleanTextId);
+        }
+        dbselection.flush();
+        table(locale + CLEANTEXT).setFlag(cleanTextId, "processed", true);
+    }
+
+    public synchronized void insertSentence(byte[] sentence, byte[] features, boolean reliable, boolean unknownWords,
+            boolean strangeSymbols, int cleanTextId) throws IOException {
+        Table dbselection = table(locale + DBSELECTION);
+        int flags = (reliable ? dbselection.flagMask("reliable") : 0)
+            | (unknownWords ? dbselection.flagMask("unknownWords") : 0)
+            | (strangeSymbols ? dbselection.flagMask("strangeSymbols") : 0);
+        dbselection.append(new byte[][] {sentence, features}, new int[] {cleanTextId}, flags);
+    }
+
+    /**
+     * Set a field of a sentence in the dbselection table.
+     * @param field reliable, unknownWords, strangeSymbols, selected or unwanted
+     */
+    public synchronized void setSentenceRecord(int id, String field, boolean value) throws IOException {
+        table(locale + DBSELECTION).setFlag(id, field, value);
+    }
+
+    public synchronized byte[] getSentence(int id) throws IOException {
+        return table(locale + DBSELECTION).getData(0, id);
+    }
+
+    public synchronized byte[] getFeatures(int id) throws IOException {
+        return table(locale + DBSELECTION).getData(1, id);
+    }
+
+    /**
+     * Get the features of the given sentences.
+     * @param ids ids in the dbselection table; they are read in one pass if they are sorted.
+     */
+    public synchronized byte[][] getFeatures(int[] ids) throws IOException {
+        return table(locale + DBSELECTION).getData(1, ids);
+    }
+
+    /**
+     * The ids of the rows matching the condition.
+     * @param tableName the table name including the locale prefix
+     * @param condition boolean fields which must be true or false, e.g. "reliable=true and unwanted=false";
+     * or null for all rows.
+     */
+    public synchronized int[] getIdListOfType(String tableName, String condition) throws IOException {
+        return table(tableName).select(condition);
+    }
+
+    /**
+     * The ids of the sentences matching the condition in the dbselection table, and their features.
+     */
+    public synchronized Pair<int[], byte[][]> getIdsAndFeatureVectors(String condition) throws IOException {
+        Table dbselection = table(locale + DBSELECTION);
+        int[] ids = dbselection.select(condition);
+        return new Pair<int[], byte[][]>(ids, dbselection.getData(1, ids));
+    }
+
+    /**
+     * Copy a sentence from the dbselection table to a selected sentences table.
+     */
+    public synchronized void insertSelectedSentence(String tableName, int dbselectionId, boolean unwanted) throws IOException {
+        byte[] sentence = getSentence(dbselectionId);
+        Table selected = table(tableName);
+        selected.append(new byte[][] {sentence}, new int[] {dbselectionId}, unwanted ? selected.flagMask("unwanted") : 0);
+    }
+
+    /**
+     * The dbselection ids of the sentences in a selected sentences table matching the condition.
+     */
+    public synchronized int[] getIdListOfSelectedSentences(String tableName, String condition) throws IOException {
+        Table selected = table(tableName);
+        int[] ids = selected.select(condition);
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = selected.getInt(0, ids[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * Get a sentence from a selected sentences table.
+     * @return the sentence, or null if the sentence with the given dbselection id is not in the table.
+     */
+    public synchronized byte[] getSelectedSentence(String tableName, int dbselectionId) throws IOException {
+        Table selected = table(tableName);
+        int id = selected.find(0, dbselectionId);
+        return id > 0 ? selected.getData(0, id) : null;
+    }
+
+    /**
+     * Set the unwanted field of a sentence in a selected sentences table and in the dbselection table.
+     */
+    public synchronized void setUnwantedSentenceRecord(String tableName, int dbselectionId, boolean value) throws IOException {
+        Table selected = table(tableName);
+        int id = selected.find(0, dbselectionId);
+        if (id > 0) {
+            selected.setFlag(id, "unwanted", value);
+        }
+        table(locale + DBSELECTION).setFlag(dbselectionId, "unwanted", value);
+    }
+
+    /**
+     * Save the description of a table; the contents of the feature definition file and the coverage definition
+     * config file are saved with their names.
+     */
+    public synchronized void setTableDescription(String tableName, String description, String stopCriterion,
+            String featuresDefinitionFileName, String covDefConfigFileName) throws IOException {
+        File file = new File(dir, tableName + ".description");
+        if (file.exists()) {
+            System.out.println("  A description for the table " + tableName + " already exist.");
+            return;
+        }
+        Properties desc = new Properties();
+        desc.setProperty("name", tableName);
+        setProperty(desc, "description", description);
+        setProperty(desc, "stopCriterion", stopCriterion);
+        setProperty(desc, "featuresDefinitionFileName", featuresDefinitionFileName);
+        if (featuresDefinitionFileName != null) {
+            desc.setProperty("featuresDefinitionFile", FileUtils.readFileToString(new File(featuresDefinitionFileName), "UTF-8"));
+        }
+        setProperty(desc, "covDefConfigFileName", covDefConfigFileName);
+        if (covDefConfigFileName != null) {
+            desc.setProperty("covDefConfigFile", FileUtils.readFileToString(new File(covDefConfigFileName), "UTF-8"));
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            desc.store(out, null);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * The description of a table, in the order of {@link DBHandler#getTableDescription(String)}.
+     */
+    public synchronized String[] getTableDescription(String tableName) throws IOException {
+        String[] desc = new String[7];
+        File file = new File(dir, tableName + ".description");
+        if (file.exists()) {
+            Properties props = new Properties();
+            InputStream in = new FileInputStream(file);
+            try {
+                props.load(in);
+            } finally {
+                in.close();
+            }
+            String[] keys = new String[] {"name", "description", "stopCriterion", "featuresDefinitionFileName",
+                "featuresDefinitionFile", "covDefConfigFileName", "covDefConfigFile"};
+            for (int i = 0; i < keys.length; i++) {
+                desc[i] = props.getProperty(keys[i]);
+            }
+        }
+        return desc;
+    }
+
+    private static void setProperty(Properties props, String key, String value) {
+        if (value != null) {
+            props.setProperty(key, value);
+        }
+    }
+
+    /**
+     * Write all pending rows to disk and close all tables.
+     */
+    public synchronized void close() throws IOException {
+        IOException error = null;
+        for (Table table : tables.values()) {
+            try {
+                table.close();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        tables.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private Table table(String tableName) throws IOException {
+        Table table = tables.get(tableName);
+        if (table == null) {
+            if (!tableExist(tableName)) {
+                throw new IOException("TABLE = " + tableName + " does not exist in " + dir.getAbsolutePath());
+            }
+            table = new Table(dir, tableName, columnsOf(tableName));
+            tables.put(tableName, table);
+        }
+        return table;
+    }
+
+    private void createTable(String tableName) throws IOException {
+        Table table = new Table(dir, tableName, columnsOf(tableName));
+        table.flush();
+        tables.put(tableName, table);
+    }
+
+    /**
+     * The data, integer and boolean columns of the given table.
+     */
+    private String[][] columnsOf(String tableName) {
+        if (tableName.equals(locale + CLEANTEXT)) {
+            return new String[][] {{"cleanText"}, {"page_id", "text_id"}, {"processed"}};
+        } else if (tableName.equals(locale + DBSELECTION)) {
+            return new String[][] {{"sentence", "features"}, {"cleanText_id"},
+                {"reliable", "unknownWords", "strangeSymbols", "selected", "unwanted"}};
+        } else if (isStoreTable(tableName)) {
+            return new String[][] {{"sentence"}, {"dbselection_id"}, {"unwanted"}};
+        }
+        throw new IllegalArgumentException("TABLE = " + tableName + " can not be kept in a local store");
+    }
+
+    /**
+     * One table: a data file for each data column, and an index file with a record of
+     * (position, length) for each data column, the integer columns and a byte of boolean columns for each row.
+     */
+    static class Table {
+        static final String INDEX = ".idx";
+
+        private File indexFile;
+        private File[] dataFiles;
+        private String[] flagNames;
+        private int numData;
+        private int numInts;
+        private int recordSize;
+
+        // the index, in memory:
+        private int numRows;
+        private long[][] positions;
+        private int[][] lengths;
+        private int[][] ints;
+        private byte[] flags;
+
+        private long[] dataEnd;
+        private int numWritten;
+        private DataOutputStream indexOut;
+        private DataOutputStream[] dataOut;
+        private RandomAccessFile[] dataIn;
+        private RandomAccessFile indexUpdate;
+
+        Table(File dir, String name, String[][] columns) throws IOException {
+            numData = columns[0].length;
+            numInts = columns[1].length;
+            flagNames = columns[2];
+            recordSize = 12 * numData + 4 * numInts + 1;
+            indexFile = new File(dir, name + INDEX);
+            dataFiles = new File[numData];
+            for (int c = 0; c < numData; c++) {
+                dataFiles[c] = new File(dir, name + "." + columns[0][c]);
+            }
+            positions = new long[numData][];
+            lengths = new int[numData][];
+            ints = new int[numInts][];
+            dataEnd = new long[numData];
+            ensureCapacity(1024);
+            readIndex();
+            // discard anything written after the last complete row:
+            truncate(indexFile, (long) numRows * recordSize);
+            for (int c = 0; c < numData; c++) {
+                truncate(dataFiles[c], dataEnd[c]);
+            }
+            numWritten = numRows;
+            indexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)));
+            dataOut = new DataOutputStream[numData];
+            dataIn = new RandomAccessFile[numData];
+            for (int c = 0; c < numData; c++) {
+                dataOut[c] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFiles[c], true)));
+            }
+        }
+
+        private void readIndex() throws IOException {
+            if (!indexFile.exists()) {
+                return;
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                long complete = indexFile.length() / recordSize;
+                if (complete > Integer.MAX_VALUE) {
+                    throw new IOException("Too many rows in " + indexFile.getAbsolutePath());
+                }
+                ensureCapacity((int) complete);
+                for (int r = 0; r < complete; r++) {
+                    for (int c = 0; c < numData; c++) {
+                        positions[c][r] = in.readLong();
+                        lengths[c][r] = in.readInt();
+                        if (lengths[c][r] >= 0) {
+                            dataEnd[c] = positions[c][r] + lengths[c][r];
+                        }
+                    }
+                    for (int c = 0; c < numInts; c++) {
+                        ints[c][r] = in.readInt();
+                    }
+                    flags[r] = in.readByte();
+                }
+                numRows = (int) complete;
+            } finally {
+                in.close();
+            }
+            for (int c = 0; c < numData; c++) {
+                if (dataFiles[c].length() < dataEnd[c]) {
+                    throw new IOException("Data file " + dataFiles[c].getAbsolutePath() + " is shorter than its index");
+                }
+            }
+        }
+
+        private static void truncate(File file, long length) throws IOException {
+            if (file.exists() && file.length() > length) {
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try {
+                    raf.setLength(length);
+                } finally {
+                    raf.close();
+                }
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (flags != null && flags.length >= capacity) {
+                return;
+            }
+            int newCapacity = flags == null ? capacity : Math.max(capacity, flags.length + flags.length / 2);
+            for (int c = 0; c < numData; c++) {
+                positions[c] = positions[c] == null ? new long[newCapacity] : Arrays.copyOf(positions[c], newCapacity);
+                lengths[c] = lengths[c] == null ? new int[newCapacity] : Arrays.copyOf(lengths[c], newCapacity);
+            }
+            for (int c = 0; c < numInts; c++) {
+                ints[c] = ints[c] == null ? new int[newCapacity] : Arrays.copyOf(ints[c], newCapacity);
+            }
+            flags = flags == null ? new byte[newCapacity] : Arrays.copyOf(flags, newCapacity);
+        }
+
+        int flagMask(String field) {
+            for (int f = 0; f < flagNames.length; f++) {
+                if (flagNames[f].equals(field)) {
+                    return 1 << f;
+                }
+            }
+            throw new IllegalArgumentException("Unknown field: " + field);
+        }
+
+        /**
+         * Append a row.
+         * @param data the values of the data columns; null values are allowed
+         * @param intValues the values of the integer columns
+         * @param flagValues the boolean columns, as bits of {@link #flagMask(String)}
+         * @return the id of the new row
+         */
+        int append(byte[][] data, int[] intValues, int flagValues) throws IOException {
+            ensureCapacity(numRows + 1);
+            int r = numRows;
+            for (int c = 0; c < numData; c++) {
+                positions[c][r] = dataEnd[c];
+                if (data[c] == null) {
+                    lengths[c][r] = -1;
+                } else {
+                    lengths[c][r] = data[c].length;
+                    dataOut[c].write(data[c]);
+                    dataEnd[c] += data[c].length;
+                }
+            }
+            for (int c = 0; c < numInts; c++) {
+                ints[c][r] = intValues[c];
+            }
+            flags[r] = (byte) flagValues;
+            numRows++;
+            if (numRows - numWritten >= BATCH_SIZE) {
+                flush();
+            }
+            return numRows;
+        }
+
+        /**
+         * Write all appended rows to disk. The data files are written before the index,
+         * so that the index never refers to data which is not on disk.
+         */
+        void flush() throws IOException {
+            for (int c = 0; c < numData; c++) {
+                dataOut[c].flush();
+            }
+            for (int r = numWritten; r < numRows; r++) {
+                for (int c = 0; c < numData; c++) {
+                    indexOut.writeLong(positions[c][r]);
+                    indexOut.writeInt(lengths[c][r]);
+                }
+                for (int c = 0; c < numInts; c++) {
+                    indexOut.writeInt(ints[c][r]);
+                }
+                indexOut.writeByte(flags[r]);
+            }
+            indexOut.flush();
+            numWritten = numRows;
+        }
+
+        private int row(int id) {
+            if (id < 1 || id > numRows) {
+                throw new IllegalArgumentException("No row with id " + id + " in " + indexFile.getName());
+            }
+            return id - 1;
+        }
+
+        int getInt(int column, int id) {
+            return ints[column][row(id)];
+        }
+
+        /**
+         * The id of the first row with the given value in an integer column, or 0 if there is none.
+         */
+        int find(int column, int value) {
+            for (int r = 0; r < numRows; r++) {
+                if (ints[column][r] == value) {
+                    return r + 1;
+                }
+            }
+            return 0;
+        }
+
+        void setFlag(int id, String field, boolean value) throws IOException {
+            int r = row(id);
+            int mask = flagMask(field);
+            byte newFlags = (byte) (value ? flags[r] | mask : flags[r] & ~mask);
+            if (newFlags == flags[r]) {
+                return;
+            }
+            flags[r] = newFlags;
+            if (r < numWritten) {
+                writeFlags(r);
+            }
+        }
+
+        void setAll(String field, boolean value) throws IOException {
+            int mask = flagMask(field);
+            for (int r = 0; r < numRows; r++) {
+                byte newFlags = (byte) (value ? flags[r] | mask : flags[r] & ~mask);
+                if (newFlags != flags[r]) {
+                    flags[r] = newFlags;
+                    if (r < numWritten) {
+                        writeFlags(r);
+                    }
+                }
+            }
+        }
+
+        private void writeFlags(int r) throws IOException {
+            if (indexUpdate == null) {
+                indexUpdate = new RandomAccessFile(indexFile, "rw");
+            }
+            indexUpdate.seek((long) r * recordSize + recordSize - 1);
+            indexUpdate.writeByte(flags[r]);
+        }
+
+        /**
+         * The ids of the rows matching a condition on the boolean columns.
+         * @param condition a conjunction of field=true or field=false, e.g. "reliable=true and unwanted=false";
+         * or null for all rows.
+         */
+        int[] select(String condition) {
+            int mask = 0;
+            int expected = 0;
+            if (condition != null && condition.trim().length() > 0) {
+                for (String term : condition.trim().split("(?i)\\s+and\\s+")) {
+                    String[] fieldValue = term.split("=");
+                    if (fieldValue.length != 2) {
+                        throw new IllegalArgumentException("Unsupported condition: " + condition);
+                    }
+                    String value = fieldValue[1].trim();
+                    if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+                        throw new IllegalArgumentException("Unsupported condition: " + condition);
+                    }
+                    int m = flagMask(fieldValue[0].trim());
+                    mask |= m;
+                    if (Boolean.parseBoolean(value)) {
+                        expected |= m;
+                    } else {
+                        expected &= ~m;
+                    }
+                }
+            }
+            int num = 0;
+            for (int r = 0; r < numRows; r++) {
+                if ((flags[r] & mask) == expected) {
+                    num++;
+                }
+            }
+            int[] ids = new int[num];
+            int i = 0;
+            for (int r = 0; r < numRows; r++) {
+                if ((flags[r] & mask) == expected) {
+                    ids[i++] = r + 1;
+                }
+            }
+            return ids;
+        }
+
+        /**
+         * The value of a data column for one row.
+         */
+        byte[] getData(int column, int id) throws IOException {
+            int r = row(id);
+            if (lengths[column][r] < 0) {
+                return null;
+            }
+            flush();
+            if (dataIn[column] == null) {
+                dataIn[column] = new RandomAccessFile(dataFiles[column], "r");
+            }
+            byte[] data = new byte[lengths[column][r]];
+            dataIn[column].seek(positions[column][r]);
+            dataIn[column].readFully(data);
+            return data;
+        }
+
+        /**
+         * The values of a data column for several rows. If the ids are sorted, the data
+         * is read in a single pass over the data file.
+         */
+        byte[][] getData(int column, int[] ids) throws IOException {
+            byte[][] data = new byte[ids.length][];
+            for (int i = 1; i < ids.length; i++) {
+                if (ids[i] < ids[i - 1]) {
+                    for (int j = 0; j < ids.length; j++) {
+                        data[j] = getData(column, ids[j]);
+                    }
+                    return data;
+                }
+            }
+            flush();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(dataFiles[column]), 1 << 16));
+            try {
+                long position = 0;
+                for (int i = 0; i < ids.length; i++) {
+                    int r = row(ids[i]);
+                    if (lengths[column][r] < 0) {
+                        continue;
+                    }
+                    long skip = positions[column][r] - position;
+                    while (skip > 0) {
+                        long skipped = in.skip(skip);
+                        if (skipped <= 0) {
+                            throw new EOFException("Unexpected end of " + dataFiles[column].getAbsolutePath());
+                        }
+                        skip -= skipped;
+                    }
+                    data[i] = new byte[lengths[column][r]];
+                    in.readFully(data[i]);
+                    position = positions[column][r] + lengths[column][r];
+                }
+            } finally {
+                in.close();
+            }
+            return data;
+        }
+
+        void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                IOUtils.closeQuietly(indexOut);
+                for (int c = 0; c < numData; c++) {
+                    IOUtils.closeQuietly(dataOut[c]);
+                }
+                if (indexUpdate != null) {
+                    indexUpdate.close();
+                }
+                for (int c = 0; c < numData; c++) {
+                    if (dataIn[c] != null) {
+                        dataIn[c].close();
+                    }
+                }
+            }
+        }
+
+        void delete() throws IOException {
+            close();
+            new File(indexFile.getParentFile(), indexFile.getName().replace(INDEX, ".description")).delete();
+            if (indexFile.exists() && !indexFile.delete()) {
+                throw new IOException("Cannot delete " + indexFile.getAbsolutePath());
+            }
+            for (File f : dataFiles) {
+                if (f.exists() && !f.delete()) {
+                    throw new IOException("Cannot delete " + f.getAbsolutePath());
+                }
+            }
+        }
+    }
+}
@@ -46,6 +46,8 @@ public class WikipediaMarkupCleaner {
     private String mysqlDB=null;
     private String mysqlUser=null;
     private String mysqlPasswd=null;
+    // local store for the cleanText table, or null to keep it in the DB
+    private String localStore=null;
     // Wikipedia files:
     private String xmlWikiFile=null;
     private String wikiLog = null;
@@ -67,6 +69,7 @@ public class WikipediaMarkupCleaner {
     public void setMysqlDB(String str){ mysqlDB = str; }
     public void setMysqlUser(String str){ mysqlUser = str; }
     public void setMysqlPasswd(String str){ mysqlPasswd = str; }
+    public void setLocalStore(String str){ localStore = str; }
     
     public void setXmlWikiFile(String str){ xmlWikiFile = str; }
     public void setWikiLog(String str){ wikiLog = str; }
@@ -85,6 +88,7 @@ public class WikipediaMarkupCleaner {
     public String getMysqlDB(){ return mysqlDB; }
     public String getMysqlUser(){ return mysqlUser; }
     public String getMysqlPasswd(){ return mysqlPasswd; }
+    public String getLocalStore(){ return localStore; }
     
     public String getXmlWikiFile(){ return xmlWikiFile; }
     public String getWikiLog(){ return wikiLog; }
@@ -1031,6 +1035,8 @@ public class WikipediaMarkupCleaner {
         
         System.out.println("Creating connection to DB server...");
         wikiToDB.createDBConnection(mysqlHost,mysqlDB,mysqlUser,mysqlPasswd);
+        if(localStore != null)
+          wikiToDB.createLocalStore(localStore);
         
         // This loading can take a while
         // create and load TABLES: page, text and revision
@@ -1147,6 +1153,7 @@ public class WikipediaMarkupCleaner {
         "\n  -mysqlUser " + getMysqlUser() +
         "\n  -mysqlPasswd " + getMysqlPasswd() +
         "\n  -mysqlDB " + getMysqlDB() +
+        "\n  -localStore " + getLocalStore() +
         "\n  -xmlFile " + getXmlWikiFile() +
         "\n  -minPage " + getMinPageLength() +
         "\n  -minText " + getMinTextLength() +
@@ -1191,7 +1198,9 @@ public class WikipediaMarkupCleaner {
         "           the tables will not be loaded, so it is asumed that page, text and revision tables are already loaded.\n" +
         "      -noLoadWikiTables use this variable to save time NOT loading wiki tables, they must already exist in the the DB.\n" +
         "      -noDeleteCleanTextTable use this variable to do NOT create a new cleanText table, but adding to an already existing\n" +
-        "       cleanText table.\n";
+        "       cleanText table.\n" +
+        "      -localStore dir keep the cleanText table in a local store in dir instead of the DB; the page, text and revision\n" +
+        "       tables are still loaded in the DB.\n";
               
         if (args.length >= 12){  // minimum 12 parameters
           for(int i=0; i<args.length; i++) { 
@@ -1213,6 +1222,9 @@ public class WikipediaMarkupCleaner {
             else if(args[i].contentEquals("-xmlFile") && args.length >= (i+1) )
               setXmlWikiFile(args[++i]);
             
+            else if(args[i].contentEquals("-localStore") && args.length >= (i+1) )
+              setLocalStore(args[++i]);
+            
             // From here the arguments are optional
             else if(args[i].contentEquals("-minPage") && args.length >= (i+1) )
               setMinPageLength(Integer.parseInt(args[++i]));
@@ -50,6 +50,8 @@ public class WikipediaProcessor {
     private String mysqlDB=null;
     private String mysqlUser=null;
     private String mysqlPasswd=null;
+    // local store for the cleanText table, or null to keep it in the DB
+    private String localStore=null;
     // Wikipedia files:
     private String listFile=null;
     private String textFile=null;
@@ -74,6 +76,7 @@ public class WikipediaProcessor {
     public void setMysqlDB(String str){ mysqlDB = str; }
     public void setMysqlUser(String str){ mysqlUser = str; }
     public void setMysqlPasswd(String str){ mysqlPasswd = str; }
+    public void setLocalStore(String str){ localStore = str; }
    
     public void setListFile(String str){ listFile = str; }
     public void setTextFile(String str){ textFile = str; }
@@ -95,6 +98,7 @@ public class WikipediaProcessor {
     public String getMysqlDB(){ return mysqlDB; }
     public String getMysqlUser(){ return mysqlUser; }
     public String getMysqlPasswd(){ return mysqlPasswd; }
+    public String getLocalStore(){ return localStore; }
     
     public String getListFile(){ return listFile; }
     public String getTextFile(){ return textFile; }
@@ -118,6 +122,7 @@ public class WikipediaProcessor {
         "\n  -mysqlUser " + getMysqlUser() +
         "\n  -mysqlPasswd " + getMysqlPasswd() +
         "\n  -mysqlDB " + getMysqlDB() +
+        "\n  -localStore " + getLocalStore() +
         "\n  -listFile " + getListFile() +
         "\n  -minPage " + getMinPageLength() +
         "\n  -minText " + getMinTextLength() +
@@ -142,7 +147,8 @@ public class WikipediaProcessor {
         "      default/optional: [-minPage 10000 -minText 1000 -maxText 15000] \n" +
         "      -minPage is the minimum size of a wikipedia page that will be considered for cleaning.\n" +
         "      -minText is the minimum size of a text to be kept in the DB.\n" +
-        "      -maxText is used to split big articles in small chunks, this is the maximum chunk size. \n";
+        "      -maxText is used to split big articles in small chunks, this is the maximum chunk size. \n" +
+        "      optional: [-localStore dir] keep the cleanText table in a local store in dir instead of the DB.\n";
               
         if (args.length >= 12){  // minimum 12 parameters
           for(int i=0; i<args.length; i++) { 
@@ -164,6 +170,9 @@ public class WikipediaProcessor {
             else if(args[i].contentEquals("-listFile") && args.length >= (i+1) )
                 setListFile(args[++i]);
             
+            else if(args[i].contentEquals("-localStore") && args.length >= (i+1) )
+                setLocalStore(args[++i]);
+            
             // From here the arguments are optional
             else if(args[i].contentEquals("-minPage") && args.length >= (i+1) )
               setMinPageLength(Integer.parseInt(args[++i]));
@@ -301,6 +310,8 @@ public class WikipediaProcessor {
         // checking if cleanText table exist
         DBHandler wikiToDB = new DBHandler(wiki.getLocale());
         wikiToDB.createDBConnection(wiki.getMysqlHost(),wiki.getMysqlDB(),wiki.getMysqlUser(),wiki.getMysqlPasswd());
+        if(wiki.getLocalStore() != null)
+          wikiToDB.createLocalStore(wiki.getLocalStore());
         char c;
         boolean result=false, processFiles=true;
         InputStreamReader isr = new InputStreamReader(System.in);
@@ -359,6 +370,7 @@ public class WikipediaProcessor {
                wikiCleaner.setMysqlHost(wiki.getMysqlHost());
                wikiCleaner.setMysqlPasswd(wiki.getMysqlPasswd());
                wikiCleaner.setMysqlUser(wiki.getMysqlUser());
+               wikiCleaner.setLocalStore(wiki.getLocalStore());
            
                // process xml file
                wikiCleaner.setXmlWikiFile(wFile);
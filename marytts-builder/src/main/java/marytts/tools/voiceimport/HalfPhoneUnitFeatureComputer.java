@@ -49,6 +49,8 @@ public class HalfPhoneUnitFeatureComputer extends PhoneUnitFeatureComputer
         FEATURELIST = "HalfPhoneUnitFeatureComputer.featureFile";
         MARYSERVERHOST = "HalfPhoneUnitFeatureComputer.maryServerHost";
         MARYSERVERPORT = "HalfPhoneUnitFeatureComputer.maryServerPort";   
+        USEBUILTINMARY = "HalfPhoneUnitFeatureComputer.useBuiltinMary";
+        NUMTHREADS = "HalfPhoneUnitFeatureComputer.numThreads";
     }
     
     @Override
@@ -68,6 +70,7 @@ public class HalfPhoneUnitFeatureComputer extends PhoneUnitFeatureComputer
         }
         maryInputType  = "ALLOPHONES";
         maryOutputType = "HALFPHONE_TARGETFEATURES";
+        initialiseProcessing();
     }
     
       public SortedMap<String,String> getDefaultProps(DatabaseLayout theDb){
@@ -84,6 +87,8 @@ public class HalfPhoneUnitFeatureComputer extends PhoneUnitFeatureComputer
                    db.getProp(db.CONFIGDIR) + "features.txt");
            props.put(MARYSERVERHOST,"localhost");
            props.put(MARYSERVERPORT,"59125");
+           props.put(USEBUILTINMARY, "false");
+           props.put(NUMTHREADS, "1");
        } 
        return props;
       }
@@ -95,6 +100,9 @@ public class HalfPhoneUnitFeatureComputer extends PhoneUnitFeatureComputer
          props2Help.put(ALLOPHONES, "Directory of corrected Allophones files.");
          props2Help.put(MARYSERVERHOST,"the host were the Mary server is running, default: \"localhost\"");
          props2Help.put(MARYSERVERPORT,"the port were the Mary server is listening, default: \"59125\"");
+         props2Help.put(USEBUILTINMARY, "if \"true\", compute the features with a MARY system started in the voice import tools "
+                 +"(which must have the language components on their classpath) rather than with the Mary server, default: \"false\"");
+         props2Help.put(NUMTHREADS, "number of sentences to compute features for in parallel - between 1 and the number of CPUs");
      }
       
       
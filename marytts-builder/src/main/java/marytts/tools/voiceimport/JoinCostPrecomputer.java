@@ -31,15 +31,23 @@
  */
 package marytts.tools.voiceimport;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
@@ -56,7 +64,7 @@ public class JoinCostPrecomputer extends VoiceImportComponent
 {
     
     private DatabaseLayout db = null;
-    private int percent = 0;
+    private volatile int percent = 0;
     
     private int numberOfFeatures = 0;
     private float[] fw = null;
@@ -66,6 +74,8 @@ public class JoinCostPrecomputer extends VoiceImportComponent
     public final String JOINCOSTFEATURESFILE = "JoinCostPrecomputer.joinCostFeaturesFile";
     public final String UNITFEATURESFILE = "JoinCostPrecomputer.unitFeaturesFile";
     public final String UNITFILE = "JoinCostPrecomputer.unitFile";
+    public final String MAXJOINSPERUNIT = "JoinCostPrecomputer.maxJoinsPerUnit";
+    public final String NUMTHREADS = "JoinCostPrecomputer.numThreads";
     
     public String getName(){
         return "JoinCostPrecomputer";
@@ -81,6 +91,8 @@ public class JoinCostPrecomputer extends VoiceImportComponent
            props.put(JOINCOSTFEATURESFILE,filedir+"joinCostFeatures"+maryExt);
            props.put(UNITFEATURESFILE,filedir+"halfphoneFeatures"+maryExt);
            props.put(UNITFILE,filedir+"halfphoneUnits"+maryExt);
+           props.put(MAXJOINSPERUNIT, "0");
+           props.put(NUMTHREADS, String.valueOf(Runtime.getRuntime().availableProcessors()));
        }
        return props;
     }
@@ -92,6 +104,9 @@ public class JoinCostPrecomputer extends VoiceImportComponent
         props2Help.put(JOINCOSTFEATURESFILE,"file containing all halfphone units and their join cost features");
         props2Help.put(UNITFEATURESFILE,"file containing all halfphone units and their target cost features");
         props2Help.put(UNITFILE,"file containing all halfphone units");
+        props2Help.put(MAXJOINSPERUNIT,"the maximum number of joins to retain for each left halfphone unit, "
+                +"in addition to the percentage given by the system property joincostprecomputer.retainpercent (0 = no maximum)");
+        props2Help.put(NUMTHREADS,"number of phones to compute the join costs for in parallel - between 1 and the number of CPUs");
     }
     
     @Override
@@ -100,18 +115,10 @@ public class JoinCostPrecomputer extends VoiceImportComponent
         System.out.println("---- Precomputing join costs");
         int retainPercent = Integer.getInteger("joincostprecomputer.retainpercent", 10).intValue();
         int retainMin = Integer.getInteger("joincostprecomputer.retainmin", 20).intValue();
-        System.out.println("Will retain the top "+retainPercent+"% (but at least "+retainMin+") of all joins within a phone");
-        
-        /* Make a new join cost file to write to */
-        DataOutputStream jc = new DataOutputStream( new BufferedOutputStream( new FileOutputStream(getProp(JOINCOSTFILE))));
-        
-        /**********/
-        /* HEADER */
-        /**********/
-        /* Make a new mary header and ouput it */
-        MaryHeader hdr = new MaryHeader( MaryHeader.PRECOMPUTED_JOINCOSTS );
-        hdr.writeTo( jc );
-        hdr = null;
+        int maxJoins = Integer.parseInt(getProp(MAXJOINSPERUNIT));
+        System.out.println("Will retain the top "+retainPercent+"% (but at least "+retainMin+") of all joins within a phone"
+                +(maxJoins > 0 ? ", and at most "+maxJoins+" per unit" : ""));
+        int numThreads = Math.max(1, Integer.parseInt(getProp(NUMTHREADS)));
         
         FeatureFileReader unitFeatures = FeatureFileReader.getFeatureFileReader(getProp(UNITFEATURESFILE));
         JoinCostFeatures joinFeatures = new JoinCostFeatures(getProp(JOINCOSTFEATURESFILE));
@@ -151,74 +158,173 @@ public class JoinCostPrecomputer extends VoiceImportComponent
         for (int i=0; i<nPhonemes; i++) {
             totalLeftUnits += left[i].size();
         }
-        jc.writeInt(totalLeftUnits);
+        
+        /* The number of joins retained for a left unit only depends on the number of
+         * right units of the same phone, so the size and position of the section of the
+         * file for each phone are known before any costs are computed. The phones are computed
+         * in parallel, each writing its section of the file, which is mapped into memory on its own. */
+        int[] nRetain = new int[nPhonemes];
+        long[] sectionStart = new long[nPhonemes];
+        long[] sectionBytes = new long[nPhonemes];
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream headerOut = new DataOutputStream(header);
+        /* Make a new mary header and ouput it */
+        new MaryHeader( MaryHeader.PRECOMPUTED_JOINCOSTS ).writeTo( headerOut );
+        headerOut.writeInt(totalLeftUnits);
+        headerOut.close();
+        long fileSize = header.size();
         for (int i=0; i<nPhonemes; i++) {
-            String phoneSymbol = def.getFeatureValueAsString(iPhoneme, i);
-            int nLeftPhoneme = left[i].size();
             int nRightPhoneme = right[i].size();
-            System.out.println(phoneSymbol+": "+nLeftPhoneme+" left, "+nRightPhoneme+" right half phones");
-            for (int j=0; j<nLeftPhoneme; j++) {
-                Unit uleft = (Unit) left[i].get(j);
-                SortedMap sortedCosts = new TreeMap();
-                int ileft = uleft.index;
-                //System.out.println("Left unit "+j+" (index "+ileft+")");
-                jc.writeInt(ileft);
+            // Number of joins we will retain:
+            nRetain[i] = nRightPhoneme * retainPercent / 100;
+            if (nRetain[i] < retainMin) nRetain[i] = retainMin;
+            if (maxJoins > 0 && nRetain[i] > maxJoins) nRetain[i] = maxJoins;
+            if (nRetain[i] > nRightPhoneme) nRetain[i] = nRightPhoneme;
+            sectionStart[i] = fileSize;
+            sectionBytes[i] = (long) left[i].size() * (8 + 8 * nRetain[i]);
+            if (sectionBytes[i] > Integer.MAX_VALUE) {
+                throw new IOException("Join costs for phone "+def.getFeatureValueAsString(iPhoneme, i)+" would have "
+                        +sectionBytes[i]+" bytes, which is more than can be mapped; please set a lower "+MAXJOINSPERUNIT);
+            }
+            fileSize += sectionBytes[i];
+        }
+        
+        /* Make a new join cost file to write to */
+        RandomAccessFile raf = new RandomAccessFile(getProp(JOINCOSTFILE), "rw");
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            raf.setLength(fileSize);
+            raf.write(header.toByteArray());
+            FileChannel fc = raf.getChannel();
+            MappedByteBuffer[] sections = new MappedByteBuffer[nPhonemes];
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int i=0; i<nPhonemes; i++) {
+                String phoneSymbol = def.getFeatureValueAsString(iPhoneme, i);
+                System.out.println(phoneSymbol+": "+left[i].size()+" left, "+right[i].size()+" right half phones");
+                sections[i] = fc.map(FileChannel.MapMode.READ_WRITE, sectionStart[i], sectionBytes[i]);
+                results.add(pool.submit(new PhoneJoinCosts(left[i], right[i], nRetain[i], joinFeatures, sections[i])));
+            }
+            int done = 0;
+            for (Future<Integer> result : results) {
+                done += result.get();
+                percent = 100*done/Math.max(1, totalLeftUnits);
+            }
+            for (int i=0; i<nPhonemes; i++) {
+                sections[i].force();
+            }
+        } catch (InterruptedException e) {
+            IOException ioe = new IOException("Interrupted while computing join costs");
+            ioe.initCause(e);
+            throw ioe;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            IOException ioe = new IOException("Cannot compute join costs");
+            ioe.initCause(e.getCause());
+            throw ioe;
+        } finally {
+            pool.shutdownNow();
+            raf.close();
+        }
+        PrecompiledJoinCostReader tester = new PrecompiledJoinCostReader(getProp(JOINCOSTFILE));
+        return true;
+    }
+    
+    /**
+     * Computes the costs of joining all left halfphones of one phone to all right halfphones
+     * of the same phone, and writes the best ones for each left halfphone into the section
+     * of the join cost file for the phone. Returns the number of left halfphones.
+     */
+    private static class PhoneJoinCosts implements Callable<Integer>
+    {
+        private List left;
+        private List right;
+        private int nRetain;
+        private JoinCostFeatures joinFeatures;
+        private ByteBuffer out;
+        
+        PhoneJoinCosts(List left, List right, int nRetain, JoinCostFeatures joinFeatures, ByteBuffer out)
+        {
+            this.left = left;
+            this.right = right;
+            this.nRetain = nRetain;
+            this.joinFeatures = joinFeatures;
+            this.out = out;
+        }
+        
+        public Integer call()
+        {
+            int nRightPhoneme = right.size();
+            int[] rightIndices = new int[nRightPhoneme];
+            for (int k=0; k<nRightPhoneme; k++) {
+                rightIndices[k] = ((Unit) right.get(k)).index;
+            }
+            double[] costs = new double[nRightPhoneme];
+            long[] retained = new long[nRetain];
+            for (int j=0; j<left.size(); j++) {
+                int ileft = ((Unit) left.get(j)).index;
                 // Now for this left halfphone, compute the cost of joining to each
                 // right halfphones of the same phone, and remember only the best.
                 for (int k=0; k<nRightPhoneme; k++) {
-                    Unit uright = (Unit) right[i].get(k);
-                    int iright = uright.index;
-                    //System.out.println("right unit "+k+" (index "+iright+")");
-                    double cost = joinFeatures.cost(ileft, iright);
-                    Double dCost = new Double(cost);
-                    // make sure we don't overwrite any existing entry:
-                    if (!sortedCosts.containsKey(dCost)) {
-                        sortedCosts.put(dCost, uright);
-                    } else {
-                        Object value = sortedCosts.get(dCost);
-                        List newVal = new ArrayList();
-                        if (value instanceof List)
-                            newVal.addAll((List)value);
-                        else
-                            newVal.add(value);
-                        newVal.add(uright);
-                        sortedCosts.put(dCost, newVal);
-                    }
+                    costs[k] = joinFeatures.cost(ileft, rightIndices[k]);
                 }
-                // Number of joins we will retain:
-                int nRetain = nRightPhoneme * retainPercent / 100;
-                if (nRetain < retainMin) nRetain = retainMin;
-                if (nRetain > nRightPhoneme) nRetain = nRightPhoneme;
-                jc.writeInt(nRetain);
-                Iterator it=sortedCosts.keySet().iterator();
-                for (int k=0; k<nRetain; ) {
-                    Double cost = (Double) it.next();
-                    float fcost = cost.floatValue();
-                    Object ob = sortedCosts.get(cost);
-                    if (ob instanceof Unit) {
-                        Unit u = (Unit) ob;
-                        int iright = u.index;
-                        jc.writeInt(iright);
-                        jc.writeFloat(fcost);
-                        k++;
-                    } else {
-                        assert ob instanceof List;
-                        List l = (List) ob;
-                        for (Iterator li = l.iterator(); k<nRetain && li.hasNext(); ) {
-                            Unit u = (Unit) li.next();
-                            int iright = u.index;
-                            jc.writeInt(iright);
-                            jc.writeFloat(fcost);
-                            k++;
-                        }
-                    }
+                int[] best = lowestCosts(costs, nRetain);
+                // write them in the order of the right unit indices, so that they can be looked up by binary search:
+                for (int k=0; k<nRetain; k++) {
+                    retained[k] = ((long) rightIndices[best[k]] << 32) | best[k];
+                }
+                Arrays.sort(retained);
+                out.putInt(ileft);
+                out.putInt(nRetain);
+                for (int k=0; k<nRetain; k++) {
+                    out.putInt((int) (retained[k] >> 32));
+                    out.putFloat((float) costs[(int) retained[k]]);
                 }
             }
-            percent += 100*nLeftPhoneme/totalLeftUnits;
+            return left.size();
         }
-        jc.close();
-        PrecompiledJoinCostReader tester = new PrecompiledJoinCostReader(getProp(JOINCOSTFILE));
-        return true;
+    }
+    
+    /**
+     * The positions of the n lowest costs, or of all costs if there are no more than n;
+     * of equal costs, those at lower positions come first.
+     * The positions are returned in no particular order.
+     */
+    static int[] lowestCosts(double[] costs, int n)
+    {
+        if (n > costs.length) n = costs.length;
+        // a max-heap of the n best positions so far, with the worst of them at the top:
+        int[] heap = new int[n];
+        int size = 0;
+        for (int k=0; k<costs.length && n>0; k++) {
+            if (size < n) {
+                int pos = size++;
+                while (pos > 0 && isWorse(costs, k, heap[(pos-1)/2])) {
+                    heap[pos] = heap[(pos-1)/2];
+                    pos = (pos-1)/2;
+                }
+                heap[pos] = k;
+            } else if (isWorse(costs, heap[0], k)) {
+                int pos = 0;
+                while (true) {
+                    int child = 2*pos+1;
+                    if (child >= n) break;
+                    if (child+1 < n && isWorse(costs, heap[child+1], heap[child])) child++;
+                    if (!isWorse(costs, heap[child], k)) break;
+                    heap[pos] = heap[child];
+                    pos = child;
+                }
+                heap[pos] = k;
+            }
+        }
+        return heap;
+    }
+    
+    private static boolean isWorse(double[] costs, int a, int b)
+    {
+        int c = Double.compare(costs[a], costs[b]);
+        return c > 0 || c == 0 && a > b;
     }
     
     /**
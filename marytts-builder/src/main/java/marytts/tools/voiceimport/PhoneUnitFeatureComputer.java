@@ -24,10 +24,18 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import marytts.client.http.MaryHttpClient;
+import marytts.server.Mary;
 import marytts.util.http.Address;
 import marytts.util.io.FileUtils;
 
@@ -53,14 +61,21 @@ public class PhoneUnitFeatureComputer extends VoiceImportComponent
     protected String maryInputType;
     protected String maryOutputType;
     
+    protected boolean useBuiltinMary;
+    protected int numThreads;
+    // in parallel, each worker thread talks to the server through its own client:
+    private ThreadLocal<MaryHttpClient> workerClients = new ThreadLocal<MaryHttpClient>();
+    
     protected DatabaseLayout db = null;
-    protected int percent = 0;
+    protected volatile int percent = 0;
     
     public String FEATUREDIR = "PhoneUnitFeatureComputer.featureDir";
     public String ALLOPHONES = "PhoneUnitFeatureComputer.allophonesDir";
     public String FEATURELIST = "PhoneUnitFeatureComputer.featureFile";
     public String MARYSERVERHOST = "PhoneUnitFeatureComputer.maryServerHost";
     public String MARYSERVERPORT = "PhoneUnitFeatureComputer.maryServerPort";
+    public String USEBUILTINMARY = "PhoneUnitFeatureComputer.useBuiltinMary";
+    public String NUMTHREADS = "PhoneUnitFeatureComputer.numThreads";
        
    
     
@@ -98,6 +113,27 @@ public class PhoneUnitFeatureComputer extends VoiceImportComponent
 
         maryInputType = "ALLOPHONES";
         maryOutputType = "TARGETFEATURES";
+        initialiseProcessing();
+    }
+    
+    /**
+     * Read the settings for how the features are computed: by a MARY server or by a
+     * builtin MARY system, and in how many threads.
+     */
+    protected void initialiseProcessing()
+    {
+        useBuiltinMary = "true".equals(getProp(USEBUILTINMARY));
+        String numThreadsString = getProp(NUMTHREADS);
+        if (numThreadsString == null) {
+            numThreads = 1;
+        } else {
+            try {
+                numThreads = Integer.parseInt(numThreadsString);
+            } catch(NumberFormatException nfe) {
+                numThreads = 1;
+            }
+        }
+        if (numThreads < 1) numThreads = 1;
     }
      
      public SortedMap<String,String> getDefaultProps(DatabaseLayout theDb){
@@ -114,6 +150,8 @@ public class PhoneUnitFeatureComputer extends VoiceImportComponent
                      db.getProp(db.CONFIGDIR) + "features.txt");
              props.put(MARYSERVERHOST,"localhost");
              props.put(MARYSERVERPORT,"59125");
+             props.put(USEBUILTINMARY, "false");
+             props.put(NUMTHREADS, "1");
          } 
          
          return props;
@@ -126,6 +164,9 @@ public class PhoneUnitFeatureComputer extends VoiceImportComponent
          props2Help.put(ALLOPHONES, "Directory of corrected allophones files.");
          props2Help.put(MARYSERVERHOST,"the host were the Mary server is running, default: \"localhost\"");
          props2Help.put(MARYSERVERPORT,"the port were the Mary server is listening, default: \"59125\"");
+         props2Help.put(USEBUILTINMARY, "if \"true\", compute the features with a MARY system started in the voice import tools "
+                 +"(which must have the language components on their classpath) rather than with the Mary server, default: \"false\"");
+         props2Help.put(NUMTHREADS, "number of sentences to compute features for in parallel - between 1 and the number of CPUs");
      }
      
      public MaryHttpClient getMaryClient() throws IOException
@@ -181,15 +222,82 @@ public class PhoneUnitFeatureComputer extends VoiceImportComponent
         loadFeatureList();
         
         textDir = new File(db.getProp(db.TEXTDIR));
+        if (useBuiltinMary) {
+            startBuiltinMary();
+        }
         System.out.println( "Computing unit features for " + bnl.getLength() + " files" );
-        for (int i=0; i<bnl.getLength(); i++) {
-            percent = 100*i/bnl.getLength();
-            computeFeaturesFor( bnl.getName(i) );
-            System.out.println( "    " + bnl.getName(i) );
+        if (numThreads > 1) {
+            computeInParallel();
+        } else {
+            for (int i=0; i<bnl.getLength(); i++) {
+                percent = 100*i/bnl.getLength();
+                computeFeaturesFor( bnl.getName(i) );
+                System.out.println( "    " + bnl.getName(i) );
+            }
         }
         System.out.println("Finished computing the unit features.");
         return true;
     }
+    
+    /**
+     * Compute the features for all basenames in numThreads worker threads.
+     * The basenames are reported in the order of the list as they are finished.
+     */
+    private void computeInParallel() throws IOException
+    {
+        System.out.println("Will compute features for "+numThreads+" files in parallel");
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>(bnl.getLength());
+            for (int i=0; i<bnl.getLength(); i++) {
+                final String basename = bnl.getName(i);
+                results.add(pool.submit(new Callable<String>() {
+                    public String call() throws IOException {
+                        computeFeaturesFor(basename);
+                        return basename;
+                    }
+                }));
+            }
+            for (int i=0; i<results.size(); i++) {
+                percent = 100*i/bnl.getLength();
+                try {
+                    System.out.println( "    " + results.get(i).get() );
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    IOException ioe = new IOException("Cannot compute features for "+bnl.getName(i));
+                    ioe.initCause(e.getCause());
+                    throw ioe;
+                } catch (InterruptedException e) {
+                    IOException ioe = new IOException("Interrupted while computing features");
+                    ioe.initCause(e);
+                    throw ioe;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    /**
+     * Start the builtin MARY system, unless it is running already.
+     */
+    protected void startBuiltinMary() throws IOException
+    {
+        if (Mary.currentState() == Mary.STATE_RUNNING) {
+            return;
+        }
+        System.out.print("Starting builtin MARY TTS...");
+        try {
+            Mary.startup();
+        } catch (Exception e) {
+            IOException ioe = new IOException("Cannot start builtin MARY TTS");
+            ioe.initCause(e);
+            throw ioe;
+        }
+        System.out.println(" MARY TTS started.");
+    }
 
     public void computeFeaturesFor(String basename) throws IOException
     {
@@ -198,11 +306,39 @@ public class PhoneUnitFeatureComputer extends VoiceImportComponent
         String text = FileUtils.getFileAsString(allophoneFile, "UTF-8");
         
         OutputStream os = new BufferedOutputStream(new FileOutputStream(new File( unitfeatureDir, basename + featsExt)));
-        MaryHttpClient maryClient = getMaryClient();
-        
-        maryClient.process(text, maryInputType, maryOutputType, locale, null, null, "", null, featureList, os);
-        os.flush();
-        os.close();
+        try {
+            if (useBuiltinMary) {
+                // the same request as the one a server would process for the client below:
+                Mary.process(text, maryInputType, maryOutputType, locale, null, null, "", null, featureList, os);
+            } else {
+                MaryHttpClient maryClient = numThreads > 1 ? getWorkerClient() : getMaryClient();
+                maryClient.process(text, maryInputType, maryOutputType, locale, null, null, "", null, featureList, os);
+            }
+            os.flush();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            IOException ioe = new IOException("Cannot compute features for "+basename);
+            ioe.initCause(e);
+            throw ioe;
+        } finally {
+            os.close();
+        }
+    }
+    
+    private MaryHttpClient getWorkerClient() throws IOException
+    {
+        MaryHttpClient client = workerClients.get();
+        if (client == null) {
+            try {
+                client = new MaryHttpClient(new Address(getProp(MARYSERVERHOST), Integer.parseInt(getProp(MARYSERVERPORT))));
+            } catch (IOException e){
+                throw new IOException("Could not connect to Maryserver at "
+                        +getProp(MARYSERVERHOST)+" "+getProp(MARYSERVERPORT));
+            }
+            workerClients.set(client);
+        }
+        return client;
     }
 
     /**
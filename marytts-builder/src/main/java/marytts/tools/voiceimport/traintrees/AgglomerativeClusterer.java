@@ -27,6 +27,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import marytts.cart.CART;
@@ -40,6 +43,7 @@ import marytts.cart.LeafNode.FeatureVectorLeafNode;
 import marytts.cart.impose.FeatureArrayIndexer;
 import marytts.features.FeatureDefinition;
 import marytts.features.FeatureVector;
+import marytts.tools.voiceimport.traintrees.F0ContourPolynomialDistanceMeasure.ContourStatistics;
 
 /**
  * @author marc
@@ -68,6 +72,7 @@ public class AgglomerativeClusterer
     private double prevFSGI;
     private double prevTestDataDistance;
     private boolean canClusterMore = true;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
     
     public AgglomerativeClusterer(FeatureVector[] features, FeatureDefinition featureDefinition, List<String> featuresToUse, DistanceMeasure dist)
     {
@@ -153,6 +158,15 @@ public class AgglomerativeClusterer
         return canClusterMore;
     }
     
+    /**
+     * Set the number of threads used for computing the merge costs of all pairs of leaves.
+     * The default is the number of available processors.
+     */
+    public void setNumberOfThreads(int numThreads)
+    {
+        this.numThreads = Math.max(1, numThreads);
+    }
+    
     public DirectedGraph cluster()
     {
         if (!canClusterMore) return null;
@@ -216,12 +230,20 @@ public class AgglomerativeClusterer
         System.out.printf("Level %2d: %25s (%5d leaves, gi=%7.3f -->", 
                 newFeatureList.length, featureDefinition.getFeatureName(iBestFeature), newLeaves.length, minFSGI);
 
-        float[][] deltaGI = new float[newLeaves.length-1][];
-        for (int i=0; i<newLeaves.length-1; i++) {
-            deltaGI[i] = new float[newLeaves.length-i-1];
-            for (int j=i+1; j<newLeaves.length; j++) {
-                deltaGI[i][j-i-1] = (float) computeDeltaGI(newLeaves[i], newLeaves[j]);
-            }
+        // The merge costs are computed from the contour statistics of the leaves,
+        // which are updated rather than recomputed when two leaves are merged:
+        int n = newLeaves.length;
+        ContourStatistics[] leafStats = new ContourStatistics[n];
+        for (int i=0; i<n; i++) {
+            leafStats[i] = ((F0ContourPolynomialDistanceMeasure)dist).computeStatistics(
+                    ((FeatureVectorLeafNode)newLeaves[i].getLeafNode()).getFeatureVectors());
+        }
+        float[] deltaGI = computeDeltaGIs(leafStats);
+        // For each row i of the deltaGI table, the smallest entry and the first column j>i where it occurs:
+        float[] rowMin = new float[n];
+        int[] rowMinIndex = new int[n];
+        for (int i=0; i<n-1; i++) {
+            findRowMinimum(deltaGI, newLeaves, i, rowMin, rowMinIndex);
         }
         int numLeavesLeft = newLeaves.length;
         
@@ -235,15 +257,13 @@ public class AgglomerativeClusterer
             //threshold = 0.01f;
             minDeltaGI = threshold; // if we cannot find any that is better, stop.
             bestPair1 = bestPair2 = -1;
-            for (int i=0; i<newLeaves.length-1; i++) {
-                if (newLeaves[i] == null) continue;
-                for (int j=i+1; j<newLeaves.length; j++) {
-                    if (newLeaves[j] == null) continue;
-                    if (deltaGI[i][j-i-1] < minDeltaGI) {
-                        bestPair1 = i;
-                        bestPair2 = j;
-                        minDeltaGI = deltaGI[i][j-i-1];
-                    }
+            // the first pair with the smallest deltaGI, in the order of the rows and columns of the table:
+            for (int i=0; i<n-1; i++) {
+                if (newLeaves[i] == null || rowMinIndex[i] < 0) continue;
+                if (rowMin[i] < minDeltaGI) {
+                    bestPair1 = i;
+                    bestPair2 = rowMinIndex[i];
+                    minDeltaGI = rowMin[i];
                 }
             }
             //System.out.printf("NumLeavesLeft=%4d, threshold=%f, minDeltaGI=%f\n", numLeavesLeft, threshold, minDeltaGI);
@@ -252,20 +272,36 @@ public class AgglomerativeClusterer
                 numLeavesLeft--;
                 //System.out.println("Merged leaves "+bestPair1+" and "+bestPair2+" (deltaGI: "+minDeltaGI+")");
                 newLeaves[bestPair2] = null;
+                leafStats[bestPair1] = leafStats[bestPair1].merge(leafStats[bestPair2]);
+                leafStats[bestPair2] = null;
                 // Update deltaGI table:
                 for (int i=0; i<bestPair2; i++) {
-                    deltaGI[i][bestPair2-i-1] = Float.NaN;
+                    deltaGI[index(n, i, bestPair2)] = Float.NaN;
                 }
-                for (int j=bestPair2+1; j<newLeaves.length; j++) {
-                    deltaGI[bestPair2][j-bestPair2-1] = Float.NaN;
+                for (int j=bestPair2+1; j<n; j++) {
+                    deltaGI[index(n, bestPair2, j)] = Float.NaN;
                 }
                 for (int i=0; i<bestPair1; i++) {
                     if (newLeaves[i] != null)
-                        deltaGI[i][bestPair1-i-1] = (float) computeDeltaGI(newLeaves[i], newLeaves[bestPair1]);
+                        deltaGI[index(n, i, bestPair1)] = (float) computeDeltaGI(leafStats[i], leafStats[bestPair1]);
                 }
-                for (int j=bestPair1+1; j<newLeaves.length; j++) {
+                for (int j=bestPair1+1; j<n; j++) {
                     if (newLeaves[j] != null)
-                        deltaGI[bestPair1][j-bestPair1-1] = (float) computeDeltaGI(newLeaves[bestPair1], newLeaves[j]);
+                        deltaGI[index(n, bestPair1, j)] = (float) computeDeltaGI(leafStats[bestPair1], leafStats[j]);
+                }
+                // Update the row minima: only the entries in column bestPair1 have changed
+                // in the other rows, and those in column bestPair2 have gone.
+                for (int i=0; i<n-1; i++) {
+                    if (newLeaves[i] == null) continue;
+                    if (i == bestPair1 || rowMinIndex[i] == bestPair1 || rowMinIndex[i] == bestPair2) {
+                        findRowMinimum(deltaGI, newLeaves, i, rowMin, rowMinIndex);
+                    } else if (i < bestPair1) {
+                        float d = deltaGI[index(n, i, bestPair1)];
+                        if (d < rowMin[i] || d == rowMin[i] && bestPair1 < rowMinIndex[i]) {
+                            rowMin[i] = d;
+                            rowMinIndex[i] = bestPair1;
+                        }
+                    }
                 }
             }
         } while (minDeltaGI < threshold);
@@ -503,6 +539,81 @@ public class AgglomerativeClusterer
     }
     
     
+    /**
+     * The position of the entry for leaves i and j, i &lt; j, in a triangular table of
+     * all pairs of n leaves, stored row by row in a single array.
+     */
+    static int index(int n, int i, int j)
+    {
+        return (int) ((long) i * (2 * n - i - 1) / 2) + j - i - 1;
+    }
+    
+    /**
+     * Compute the delta in global impurity for all pairs of leaves with the given statistics,
+     * in numThreads threads.
+     * @return the triangular table of deltaGI values, indexed by {@link #index(int, int, int)}.
+     */
+    float[] computeDeltaGIs(final ContourStatistics[] leafStats)
+    {
+        final int n = leafStats.length;
+        final float[] deltaGI = new float[(int) ((long) n * (n - 1) / 2)];
+        int nThreads = Math.min(numThreads, Math.max(1, n - 1));
+        List<Runnable> jobs = new ArrayList<Runnable>(nThreads);
+        for (int t=0; t<nThreads; t++) {
+            final int firstRow = t;
+            final int rowStep = nThreads;
+            // interleave the rows, so that each thread gets long and short rows:
+            jobs.add(new Runnable() {
+                public void run() {
+                    for (int i=firstRow; i<n-1; i+=rowStep) {
+                        int off = index(n, i, i+1);
+                        for (int j=i+1; j<n; j++) {
+                            deltaGI[off++] = (float) computeDeltaGI(leafStats[i], leafStats[j]);
+                        }
+                    }
+                }
+            });
+        }
+        if (nThreads == 1) {
+            jobs.get(0).run();
+            return deltaGI;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        try {
+            List<Future<?>> results = new ArrayList<Future<?>>(nThreads);
+            for (Runnable job : jobs) {
+                results.add(pool.submit(job));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Interrupted while computing deltaGI", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Cannot compute deltaGI", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return deltaGI;
+    }
+    
+    private static void findRowMinimum(float[] deltaGI, DirectedGraphNode[] leaves, int i, float[] rowMin, int[] rowMinIndex)
+    {
+        int n = leaves.length;
+        float min = Float.POSITIVE_INFINITY;
+        int minIndex = -1;
+        int off = index(n, i, i+1);
+        for (int j=i+1; j<n; j++, off++) {
+            if (leaves[j] == null) continue;
+            if (deltaGI[off] < min) {
+                min = deltaGI[off];
+                minIndex = j;
+            }
+        }
+        rowMin[i] = min;
+        rowMinIndex[i] = minIndex;
+    }
+    
     private double computeDeltaGI(DirectedGraphNode dgn1, DirectedGraphNode dgn2) {
         //return computeMutualDistanceDeltaGI(dgn1, dgn2);
         return computeVarianceDeltaGI(dgn1, dgn2);
@@ -567,7 +678,7 @@ public class AgglomerativeClusterer
     }
     
 
-    private double computeVarianceDeltaGI(DirectedGraphNode dgn1, DirectedGraphNode dgn2)
+    double computeVarianceDeltaGI(DirectedGraphNode dgn1, DirectedGraphNode dgn2)
     {
         FeatureVectorLeafNode l1 = (FeatureVectorLeafNode) dgn1.getLeafNode();
         FeatureVectorLeafNode l2 = (FeatureVectorLeafNode) dgn2.getLeafNode();
@@ -602,6 +713,26 @@ public class AgglomerativeClusterer
     }
 
     
+    /**
+     * The same as {@link #computeVarianceDeltaGI(DirectedGraphNode, DirectedGraphNode)},
+     * computed from the statistics of the contours in the two leaves.
+     */
+    double computeDeltaGI(ContourStatistics stats1, ContourStatistics stats2)
+    {
+        F0ContourPolynomialDistanceMeasure f0dist = (F0ContourPolynomialDistanceMeasure) dist;
+        ContourStatistics stats12 = stats1.merge(stats2);
+        int len1 = stats1.getNumberOfContours();
+        int len2 = stats2.getNumberOfContours();
+        int len12 = stats12.getNumberOfContours();
+        double imp1 = globalStddev * Math.exp(-(len1-1));
+        if (len1 >= 2) imp1 += Math.sqrt(f0dist.computeVariance(stats1));
+        double imp2 = globalStddev * Math.exp(-(len2-1));
+        if (len2 >= 2) imp2 += Math.sqrt(f0dist.computeVariance(stats2));
+        double imp12 = globalStddev * Math.exp(-(len12-1));
+        imp12 += Math.sqrt(f0dist.computeVariance(stats12));
+        return 1./trainingFeatures.length * (len12*imp12 - len1*imp1 - len2*imp2);
+    }
+    
     private void mergeLeaves(DirectedGraphNode dgn1, DirectedGraphNode dgn2)
     {
         // Copy all data from dgn2 into dgn1
@@ -99,4 +99,78 @@ public class F0ContourPolynomialDistanceMeasure implements DistanceMeasure
         double variance = Polynomial.variance(contours, mean);
         return variance;
     }
+    
+    /**
+     * Compute the statistics of the given set of feature vectors
+     * from which their variance can be computed.
+     * @param fvs
+     * @return
+     */
+    public ContourStatistics computeStatistics(FeatureVector[] fvs) {
+        int order = contourCoeffs[fvs[0].unitIndex].length;
+        float[] zero = new float[order];
+        double[] sum = new double[order];
+        double sumOfSquares = 0;
+        for (int i=0; i<fvs.length; i++) {
+            float[] contour = contourCoeffs[fvs[i].unitIndex];
+            for (int k=0; k<order; k++) {
+                sum[k] += contour[k];
+            }
+            sumOfSquares += Polynomial.polynomialSquaredDistance(contour, zero);
+        }
+        return new ContourStatistics(fvs.length, sum, sumOfSquares);
+    }
+    
+    /**
+     * Compute the variance of a set of feature vectors from their statistics.
+     * This is the same value as {@link #computeVariance(FeatureVector[])} computes from the
+     * feature vectors, up to rounding errors.
+     * @param stats
+     * @return
+     */
+    public double computeVariance(ContourStatistics stats) {
+        if (stats.n <= 1) {
+            return 0;
+        }
+        double[] mean = new double[stats.sum.length];
+        for (int k=0; k<mean.length; k++) {
+            mean[k] = stats.sum[k] / stats.n;
+        }
+        // sum of squared distances to the mean = sum of squares - n * square of the mean:
+        double squaredDistances = stats.sumOfSquares - stats.n * Polynomial.polynomialSquaredDistance(mean, new double[mean.length]);
+        return Math.max(0, squaredDistances) / (stats.n - 1);
+    }
+    
+    /**
+     * The number, sum and sum of squares of a set of contours. Unlike the variance,
+     * the statistics of the union of two sets can be computed from the statistics of the
+     * two sets, without going through the contours again.
+     */
+    public static class ContourStatistics
+    {
+        private final int n;
+        private final double[] sum;
+        private final double sumOfSquares;
+        
+        private ContourStatistics(int n, double[] sum, double sumOfSquares) {
+            this.n = n;
+            this.sum = sum;
+            this.sumOfSquares = sumOfSquares;
+        }
+        
+        public int getNumberOfContours() {
+            return n;
+        }
+        
+        /**
+         * The statistics of the union of this set of contours and the other one.
+         */
+        public ContourStatistics merge(ContourStatistics other) {
+            double[] mergedSum = new double[sum.length];
+            for (int k=0; k<sum.length; k++) {
+                mergedSum[k] = sum[k] + other.sum[k];
+            }
+            return new ContourStatistics(n + other.n, mergedSum, sumOfSquares + other.sumOfSquares);
+        }
+    }
 }
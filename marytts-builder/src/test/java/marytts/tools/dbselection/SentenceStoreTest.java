@@ -0,0 +1,152 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.tools.dbselection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import marytts.util.Pair;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SentenceStoreTest {
+    private File dir;
+
+    @Before
+    public void setup() throws Exception {
+        dir = File.createTempFile("sentencestore", "");
+        dir.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private static byte[] features(int i) {
+        return new byte[] {(byte) i, (byte) (i * 3), (byte) (i * 7)};
+    }
+
+    private SentenceStore storeWithSentences(int num) throws Exception {
+        SentenceStore store = new SentenceStore(dir, "en_US");
+        store.createCleanTextTable();
+        store.insertCleanText("some text".getBytes("UTF-8"), 7, 8);
+        store.createDataBaseSelectionTable();
+        for (int i = 1; i <= num; i++) {
+            store.insertSentence(("sentence " + i).getBytes("UTF-8"), i % 3 == 0 ? null : features(i),
+                i % 3 != 0, false, i % 5 == 0, 1);
+        }
+        return store;
+    }
+
+    @Test
+    public void rowsAreSelectedByCondition() throws Exception {
+        SentenceStore store = storeWithSentences(2500);
+        assertArrayEquals(new int[] {1}, store.getUnprocessedTextIds());
+        assertEquals("some text", new String(store.getCleanText(1), "UTF-8"));
+        assertEquals(0, store.getUnprocessedTextIds().length);
+        int[] reliable = store.getIdListOfType("en_US_dbselection", "reliable=true and strangeSymbols=false");
+        Pair<int[], byte[][]> pair = store.getIdsAndFeatureVectors("reliable=true and strangeSymbols=false");
+        assertArrayEquals(reliable, pair.getFirst());
+        for (int i = 0; i < reliable.length; i++) {
+            assertTrue(reliable[i] % 3 != 0 && reliable[i] % 5 != 0);
+            assertArrayEquals(features(reliable[i]), pair.getSecond()[i]);
+            assertArrayEquals(features(reliable[i]), store.getFeatures(reliable[i]));
+        }
+        assertEquals(2500 - 833 - 500 + 166, reliable.length);
+        assertNull(store.getFeatures(3));
+        assertEquals("sentence 42", new String(store.getSentence(42), "UTF-8"));
+        store.close();
+    }
+
+    @Test
+    public void changesArePersistent() throws Exception {
+        SentenceStore store = storeWithSentences(1500);
+        store.getCleanText(1);
+        store.createSelectedSentencesTable("en_US_test_selectedSentences");
+        store.setSentenceRecord(10, "selected", true);
+        store.insertSelectedSentence("en_US_test_selectedSentences", 10, false);
+        store.setSentenceRecord(1499, "selected", true);
+        store.insertSelectedSentence("en_US_test_selectedSentences", 1499, false);
+        store.setUnwantedSentenceRecord("en_US_test_selectedSentences", 1499, true);
+        store.close();
+
+        store = new SentenceStore(dir, "en_US");
+        assertTrue(store.tableExist("en_US_test_selectedSentences"));
+        assertFalse(store.tableExist("en_US_other_selectedSentences"));
+        assertEquals(0, store.getUnprocessedTextIds().length);
+        assertEquals(1500, store.getIdListOfType("en_US_dbselection", null).length);
+        assertArrayEquals(new int[] {10}, store.getIdListOfType("en_US_dbselection", "selected=true and unwanted=false"));
+        assertArrayEquals(new int[] {1499}, store.getIdListOfType("en_US_dbselection", "unwanted=true"));
+        assertArrayEquals(new int[] {10}, store.getIdListOfSelectedSentences("en_US_test_selectedSentences", "unwanted=false"));
+        assertEquals("sentence 1499", new String(store.getSelectedSentence("en_US_test_selectedSentences", 1499), "UTF-8"));
+        store.insertSentence("one more".getBytes("UTF-8"), features(1), true, false, false, 1);
+        assertEquals("one more", new String(store.getSentence(1501), "UTF-8"));
+        store.close();
+    }
+
+    @Test
+    public void textIsProcessedWhenItsSentencesAreStored() throws Exception {
+        SentenceStore store = new SentenceStore(dir, "en_US");
+        store.createCleanTextTable();
+        store.insertCleanText("first".getBytes("UTF-8"), 1, 1);
+        store.insertCleanText("second".getBytes("UTF-8"), 2, 2);
+        store.createDataBaseSelectionTable();
+        byte[][] texts = store.getCleanTexts(new int[] {2, 1});
+        assertEquals("second", new String(texts[0], "UTF-8"));
+        assertEquals("first", new String(texts[1], "UTF-8"));
+        assertArrayEquals(new int[] {1, 2}, store.getUnprocessedTextIds());
+        store.insertSentences(2, new byte[][] {"a".getBytes("UTF-8"), "b".getBytes("UTF-8")},
+            new byte[][] {features(1), null}, new boolean[] {true, false}, new boolean[] {false, true},
+            new boolean[] {false, false});
+        assertArrayEquals(new int[] {1}, store.getUnprocessedTextIds());
+        assertArrayEquals(new int[] {1}, store.getIdListOfType("en_US_dbselection", "reliable=true"));
+        assertArrayEquals(new int[] {2}, store.getIdListOfType("en_US_dbselection", "unknownWords=true"));
+        store.close();
+    }
+
+    @Test
+    public void incompleteRowsAreDiscarded() throws Exception {
+        storeWithSentences(20).close();
+        RandomAccessFile index = new RandomAccessFile(new File(dir, "en_US_dbselection.idx"), "rw");
+        index.setLength(index.length() - 3);
+        index.close();
+        RandomAccessFile data = new RandomAccessFile(new File(dir, "en_US_dbselection.sentence"), "rw");
+        data.seek(data.length());
+        data.write(new byte[] {1, 2, 3});
+        data.close();
+
+        SentenceStore store = new SentenceStore(dir, "en_US");
+        assertEquals(19, store.getIdListOfType("en_US_dbselection", null).length);
+        store.insertSentence("new".getBytes("UTF-8"), features(20), true, false, false, 1);
+        assertEquals("sentence 19", new String(store.getSentence(19), "UTF-8"));
+        assertEquals("new", new String(store.getSentence(20), "UTF-8"));
+        store.close();
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.tools.voiceimport;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class JoinCostPrecomputerTest
+{
+    @Test
+    public void lowestCostsAreSameAsFromStableSort()
+    {
+        Random random = new Random(5);
+        for (int length : new int[] {0, 1, 2, 7, 50}) {
+            double[] costs = new double[length];
+            for (int k=0; k<length; k++) {
+                // few different values, so that many costs are equal:
+                costs[k] = random.nextInt(4);
+            }
+            for (int n : new int[] {0, 1, length / 2, length - 1, length, length + 1, length + 10}) {
+                if (n < 0) continue;
+                assertArrayEquals("n="+n+" of "+length, stableSortLowest(costs, n),
+                        sorted(JoinCostPrecomputer.lowestCosts(costs, n)));
+            }
+        }
+    }
+
+    @Test
+    public void lowestCostsOfAllEqualCostsAreFirstPositions()
+    {
+        double[] costs = new double[10];
+        Arrays.fill(costs, 1.5);
+        assertArrayEquals(new int[] {0, 1, 2}, sorted(JoinCostPrecomputer.lowestCosts(costs, 3)));
+    }
+
+    /**
+     * The first n positions after sorting all positions by their costs with a stable sort,
+     * in increasing order of position.
+     */
+    private static int[] stableSortLowest(final double[] costs, int n)
+    {
+        Integer[] positions = new Integer[costs.length];
+        for (int k=0; k<costs.length; k++) {
+            positions[k] = k;
+        }
+        Arrays.sort(positions, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(costs[a], costs[b]);
+            }
+        });
+        int[] lowest = new int[Math.min(n, costs.length)];
+        for (int k=0; k<lowest.length; k++) {
+            lowest[k] = positions[k];
+        }
+        return sorted(lowest);
+    }
+
+    private static int[] sorted(int[] positions)
+    {
+        int[] copy = positions.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+}
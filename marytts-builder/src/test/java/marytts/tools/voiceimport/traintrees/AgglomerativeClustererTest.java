@@ -0,0 +1,136 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.tools.voiceimport.traintrees;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Random;
+
+import marytts.cart.DirectedGraphNode;
+import marytts.cart.LeafNode.FeatureVectorLeafNode;
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureVector;
+import marytts.tools.voiceimport.traintrees.F0ContourPolynomialDistanceMeasure.ContourStatistics;
+import marytts.unitselection.data.FeatureFileReader;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AgglomerativeClustererTest
+{
+    private static final int NUM_CONTOURS = 200;
+    private static final int ORDER = 4;
+
+    private Random random;
+    private FeatureVector[] features;
+    private F0ContourPolynomialDistanceMeasure dist;
+    private AgglomerativeClusterer clusterer;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        random = new Random(9);
+        FeatureDefinition def = new FeatureDefinition(new BufferedReader(new StringReader(
+                "ByteValuedFeatureProcessors\nphone _ a b c\nShortValuedFeatureProcessors\nContinuousFeatureProcessors\n")), false);
+        features = new FeatureVector[NUM_CONTOURS];
+        FeatureVector[] contours = new FeatureVector[NUM_CONTOURS];
+        for (int i=0; i<NUM_CONTOURS; i++) {
+            features[i] = new FeatureVector(new byte[] {(byte) random.nextInt(4)}, new short[0], new float[0], i);
+            float[] coeffs = new float[ORDER];
+            for (int k=0; k<ORDER; k++) {
+                coeffs[k] = (float) (random.nextGaussian() * (k + 1) * 10);
+            }
+            contours[i] = new FeatureVector(new byte[0], new short[0], coeffs, i);
+        }
+        dist = new F0ContourPolynomialDistanceMeasure(new ContourReader(contours));
+        clusterer = new AgglomerativeClusterer(features, def, null, dist);
+    }
+
+    @Test
+    public void deltaGIFromStatisticsIsSameAsFromContours()
+    {
+        for (int n=0; n<500; n++) {
+            FeatureVector[] fv1 = randomLeaf();
+            FeatureVector[] fv2 = randomLeaf();
+            double expected = clusterer.computeVarianceDeltaGI(new DirectedGraphNode(null, new FeatureVectorLeafNode(fv1)),
+                    new DirectedGraphNode(null, new FeatureVectorLeafNode(fv2)));
+            double actual = clusterer.computeDeltaGI(dist.computeStatistics(fv1), dist.computeStatistics(fv2));
+            assertEquals(expected, actual, 1.e-6 * Math.max(1, Math.abs(expected)));
+        }
+    }
+
+    @Test
+    public void condensedTableIsSameAsFullMatrix()
+    {
+        clusterer.setNumberOfThreads(3);
+        for (int n : new int[] {1, 2, 3, 7, 40}) {
+            ContourStatistics[] stats = new ContourStatistics[n];
+            for (int i=0; i<n; i++) {
+                stats[i] = dist.computeStatistics(randomLeaf());
+            }
+            float[][] full = new float[n][n];
+            for (int i=0; i<n; i++) {
+                for (int j=i+1; j<n; j++) {
+                    full[i][j] = (float) clusterer.computeDeltaGI(stats[i], stats[j]);
+                }
+            }
+            float[] condensed = clusterer.computeDeltaGIs(stats);
+            assertEquals(n * (n - 1) / 2, condensed.length);
+            boolean[] seen = new boolean[condensed.length];
+            for (int i=0; i<n; i++) {
+                for (int j=i+1; j<n; j++) {
+                    int index = AgglomerativeClusterer.index(n, i, j);
+                    assertFalse(seen[index]);
+                    seen[index] = true;
+                    assertEquals(full[i][j], condensed[index], 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * The feature vectors of between one and ten different contours, as in a leaf.
+     */
+    private FeatureVector[] randomLeaf()
+    {
+        int size = 1 + random.nextInt(10);
+        FeatureVector[] leaf = new FeatureVector[size];
+        int start = random.nextInt(NUM_CONTOURS - size);
+        for (int i=0; i<size; i++) {
+            leaf[i] = features[start + i];
+        }
+        return leaf;
+    }
+
+    /**
+     * A feature file reader for contours held in memory.
+     */
+    private static class ContourReader extends FeatureFileReader
+    {
+        ContourReader(FeatureVector[] contours)
+        {
+            this.featureVectors = contours;
+            this.numberOfUnits = contours.length;
+        }
+    }
+}
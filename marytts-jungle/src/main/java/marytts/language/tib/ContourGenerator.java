@@ -103,8 +103,7 @@ public class ContourGenerator extends InternalModule {
         // We depend on the Synthesis module:
          MaryModule synthesis = ModuleRegistry.getModule(marytts.modules.Synthesis.class);
          assert synthesis != null;
-         if (synthesis.getState() == MaryModule.MODULE_OFFLINE)
-             synthesis.startup();
+         ModuleRegistry.ensureStarted(synthesis);
         // load phone list
         allophoneSet = AllophoneSet.getAllophoneSet(MaryProperties.needFilename("tibetan.cap.phonelistfile"));
         // load tone rules
@@ -85,8 +85,7 @@ public class KlattDurationModeller extends InternalModule {
         // We depend on the Synthesis module:
         MaryModule synthesis = ModuleRegistry.getModule(marytts.modules.Synthesis.class);
         assert synthesis != null;
-        if (synthesis.getState() == MaryModule.MODULE_OFFLINE)
-            synthesis.startup();
+        ModuleRegistry.ensureStarted(synthesis);
         // load klatt rules
         klattRuleParams = new Properties();
         klattRuleParams.load(new FileInputStream(MaryProperties.needFilename("tibetan.cap.klattrulefile")));        // load phone list
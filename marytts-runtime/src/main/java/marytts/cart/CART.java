@@ -34,6 +34,7 @@ package marytts.cart;
 import java.util.Properties;
 
 import marytts.features.FeatureDefinition;
+import marytts.features.FeatureTable;
 import marytts.features.FeatureVector;
 import marytts.unitselection.select.Target;
 
@@ -46,6 +47,8 @@ import marytts.unitselection.select.Target;
  */
 public class CART extends DirectedGraph
 {
+    // the compiled form of this tree, if compile() has been called:
+    private CompiledCART compiled;
 
     /**
      * Build a new empty cart
@@ -101,6 +104,10 @@ public class CART extends DirectedGraph
      * @return the Node
      */
     public Node interpretToNode(Target target, int minNumberOfData) {
+        FeatureTable table = target.getFeatureTable();
+        if (table != null) {
+            return interpretToNode(table, target.getFeatureRow(), minNumberOfData);
+        }
         return interpretToNode(target.getFeatureVector(), minNumberOfData);
     }
     
@@ -115,6 +122,10 @@ public class CART extends DirectedGraph
      * @return the Node
      */
     public Node interpretToNode(FeatureVector featureVector, int minNumberOfData) {
+        CompiledCART c = compiled;
+        if (c != null) {
+            return c.interpretToNode(featureVector, minNumberOfData);
+        }
         Node currentNode = rootNode;
         Node prevNode = null;
 
@@ -143,6 +154,138 @@ public class CART extends DirectedGraph
         
     }
 
+    @Override
+    public Object interpret(FeatureVector fv) {
+        CompiledCART c = compiled;
+        if (c != null) {
+            return c.interpret(fv);
+        }
+        return super.interpret(fv);
+    }
+
+    /**
+     * Walk down the tree according to the features of the given target,
+     * and return the data in the leaf node found there. If the features of the
+     * target are kept in a feature table, they are read from there one at a time.
+     */
+    @Override
+    public Object interpret(Target t) {
+        FeatureTable table = t.getFeatureTable();
+        if (table != null) {
+            return interpret(table, t.getFeatureRow());
+        }
+        return super.interpret(t);
+    }
+
+    /**
+     * Walk down the tree according to the features in the given row of the feature table,
+     * and return the data in the leaf node found there.
+     * @param features a feature table, e.g. a feature file or a feature matrix
+     * @param unitIndex the index of the row in the feature table
+     * @return the data in the leaf node, or null if the path ends before a leaf node.
+     */
+    public Object interpret(FeatureTable features, int unitIndex) {
+        CompiledCART c = compiled;
+        if (c != null) {
+            return c.interpret(features, unitIndex);
+        }
+        Node n = rootNode;
+        while (n != null && n.isDecisionNode()) {
+            n = ((DecisionNode) n).getNextNode(features, unitIndex);
+        }
+        if (n != null && !n.isLeafNode()) {
+            // not a proper tree
+            return super.interpret(features.getFeatureVector(unitIndex));
+        }
+        return n == null ? null : n.getAllData();
+    }
+
+    /**
+     * Compile this tree into a compact form which is faster to interpret
+     * (see {@link CompiledCART}). From then on, the compiled form is used for
+     * interpreting the tree until the tree is changed: setting a new root node,
+     * or adding or replacing daughters of a decision node or changing its criterion
+     * with the methods of {@link DecisionNode}, discards the compiled form, and
+     * the tree is interpreted node by node until it is compiled again.
+     * Changes to the data in the leaves are seen by the compiled form.
+     * Trees must not be changed while other threads interpret them.
+     * @return true if the tree could be compiled, false otherwise.
+     */
+    public boolean compile() {
+        compiled = CompiledCART.compile(rootNode);
+        if (compiled != null) {
+            markCompiled(rootNode);
+        }
+        return compiled != null;
+    }
+
+    private void markCompiled(Node node) {
+        node.setCompiledIn(this);
+        if (node instanceof DecisionNode) {
+            DecisionNode dn = (DecisionNode) node;
+            for (int i=0; i<dn.getNumberOfDaugthers(); i++) {
+                Node daughter = dn.getDaughter(i);
+                if (daughter != null) {
+                    markCompiled(daughter);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop using the compiled form of this tree, because the tree has been changed.
+     */
+    void discardCompiledCART() {
+        compiled = null;
+    }
+
+    /**
+     * The compiled form of this tree, or null if it has not been compiled.
+     */
+    public CompiledCART getCompiledCART() {
+        return compiled;
+    }
+
+    @Override
+    public void setRootNode(Node rNode) {
+        super.setRootNode(rNode);
+        compiled = null;
+    }
+
+    /**
+     * Passes the given unit through this CART and returns the
+     * leaf Node, or the Node it stopped walking down. The features of the unit
+     * are read from the feature table one at a time, so that no feature vector
+     * needs to be created, e.g. if the feature file is memory-mapped or
+     * the features are kept in a feature matrix.
+     *
+     * @param features the feature table containing the unit, e.g. a feature file or a feature matrix
+     * @param unitIndex the index of the unit in the feature table
+     * @param minNumberOfData the minimum number of data requested.
+     * If this is 0, walk down the CART until the leaf level.
+     *
+     * @return the Node
+     */
+    public Node interpretToNode(FeatureTable features, int unitIndex, int minNumberOfData) {
+        CompiledCART c = compiled;
+        if (c != null) {
+            return c.interpretToNode(features, unitIndex, minNumberOfData);
+        }
+        Node currentNode = rootNode;
+        Node prevNode = null;
+        while (currentNode != null && currentNode.getNumberOfData() > minNumberOfData
+                && !(currentNode instanceof LeafNode)) {
+            prevNode = currentNode;
+            currentNode = ((DecisionNode) currentNode).getNextNode(features, unitIndex);
+        }
+        if (currentNode == null 
+                || currentNode.getNumberOfData() < minNumberOfData
+                   && prevNode != null) {
+            currentNode = prevNode;
+        }
+        return currentNode;
+    }
+
     /**
      * Passes the given item through this CART and returns the
      * interpretation.
@@ -0,0 +1,313 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.cart;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import marytts.cart.DecisionNode.BinaryByteDecisionNode;
+import marytts.cart.DecisionNode.BinaryFloatDecisionNode;
+import marytts.cart.DecisionNode.BinaryShortDecisionNode;
+import marytts.cart.DecisionNode.ByteDecisionNode;
+import marytts.cart.DecisionNode.ShortDecisionNode;
+import marytts.features.FeatureTable;
+import marytts.features.FeatureVector;
+import marytts.server.MaryProperties;
+
+/**
+ * A CART compiled into a single int array, which can be interpreted in a loop
+ * without a virtual method call per decision node.
+ * <p>
+ * Each node is stored as a record of ints starting at its offset in the array:
+ * <ul>
+ * <li>the kind of node (one of the constants below),</li>
+ * <li>the feature index,</li>
+ * <li>the value to compare to (for float thresholds, as float bits),
+ * or the number of daughters for multi-valued decisions,</li>
+ * <li>the number of data below the node, as given by {@link Node#getNumberOfData()},</li>
+ * <li>the number of the original node, so that the original {@link Node} can be returned,</li>
+ * <li>for decision nodes, the offsets of the daughters, or -1 for an empty daughter.</li>
+ * </ul>
+ * The root node is at offset 0. Interpreting a compiled CART gives the same nodes as
+ * interpreting the original tree; the tree must not be changed after it has been compiled.
+ */
+public class CompiledCART
+{
+    static final int LEAF = 0;
+    static final int BINARY_BYTE = 1;
+    static final int BINARY_SHORT = 2;
+    static final int BINARY_FLOAT_BYTE = 3;
+    static final int BINARY_FLOAT = 4;
+    static final int BYTE = 5;
+    static final int SHORT = 6;
+
+    private static final int FEATURE = 1;
+    private static final int VALUE = 2;
+    private static final int NDATA = 3;
+    private static final int NODE = 4;
+    private static final int DAUGHTERS = 5;
+
+    private final int[] code;
+    private final Node[] nodes;
+
+    private CompiledCART(int[] code, Node[] nodes)
+    {
+        this.code = code;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Whether CARTs should be compiled when they are loaded,
+     * as set by the property <code>cart.compiled</code>.
+     */
+    public static boolean isEnabled()
+    {
+        return MaryProperties.getBoolean("cart.compiled", true);
+    }
+
+    /**
+     * Compile the tree below the given root node.
+     * @param rootNode the root node of a CART
+     * @return the compiled tree, or null if the tree is empty or contains nodes
+     * which cannot be compiled, such as directed graph nodes or unknown decision node types.
+     */
+    public static CompiledCART compile(Node rootNode)
+    {
+        if (rootNode == null) {
+            return null;
+        }
+        Compiler compiler = new Compiler();
+        if (compiler.add(rootNode) < 0) {
+            return null;
+        }
+        int[] code = new int[compiler.size];
+        for (int i=0; i<code.length; i++) {
+            code[i] = compiler.code.get(i);
+        }
+        return new CompiledCART(code, compiler.nodes.toArray(new Node[compiler.nodes.size()]));
+    }
+
+    /**
+     * The number of ints used by the compiled tree.
+     */
+    public int getSize()
+    {
+        return code.length;
+    }
+
+    /**
+     * Walk down the tree until a leaf is reached, as {@link DirectedGraph#interpret(FeatureVector)}.
+     * @return the data of the leaf, or null if an empty daughter was reached.
+     */
+    public Object interpret(FeatureVector fv)
+    {
+        int pos = 0;
+        while (pos >= 0 && code[pos] != LEAF) {
+            pos = next(pos, fv);
+        }
+        return pos < 0 ? null : nodes[code[pos+NODE]].getAllData();
+    }
+
+    /**
+     * Walk down the tree as {@link CART#interpret(FeatureTable, int)}.
+     * @return the data in the leaf node, or null if the path ends before a leaf node.
+     */
+    public Object interpret(FeatureTable features, int unitIndex)
+    {
+        int pos = 0;
+        while (pos >= 0 && code[pos] != LEAF) {
+            pos = next(pos, features, unitIndex);
+        }
+        return pos < 0 ? null : nodes[code[pos+NODE]].getAllData();
+    }
+
+    /**
+     * Walk down the tree as {@link CART#interpretToNode(FeatureVector, int)}.
+     * @return the leaf node, or the node where it stopped walking down.
+     */
+    public Node interpretToNode(FeatureVector fv, int minNumberOfData)
+    {
+        int pos = 0;
+        int prev = -1;
+        while (pos >= 0 && code[pos+NDATA] > minNumberOfData && code[pos] != LEAF) {
+            prev = pos;
+            pos = next(pos, fv);
+        }
+        if (pos < 0 || code[pos+NDATA] < minNumberOfData && prev >= 0) {
+            pos = prev;
+        }
+        return pos < 0 ? null : nodes[code[pos+NODE]];
+    }
+
+    /**
+     * Walk down the tree as {@link CART#interpretToNode(FeatureTable, int, int)}.
+     * @return the leaf node, or the node where it stopped walking down.
+     */
+    public Node interpretToNode(FeatureTable features, int unitIndex, int minNumberOfData)
+    {
+        int pos = 0;
+        int prev = -1;
+        while (pos >= 0 && code[pos+NDATA] > minNumberOfData && code[pos] != LEAF) {
+            prev = pos;
+            pos = next(pos, features, unitIndex);
+        }
+        if (pos < 0 || code[pos+NDATA] < minNumberOfData && prev >= 0) {
+            pos = prev;
+        }
+        return pos < 0 ? null : nodes[code[pos+NODE]];
+    }
+
+    /**
+     * The offset of the daughter chosen by the decision node at pos.
+     */
+    private int next(int pos, FeatureVector fv)
+    {
+        int feature = code[pos+FEATURE];
+        switch (code[pos]) {
+        case BINARY_BYTE:
+            return code[pos + (fv.getByteFeature(feature) == code[pos+VALUE] ? DAUGHTERS : DAUGHTERS+1)];
+        case BINARY_SHORT:
+            return code[pos + (fv.getShortFeature(feature) == code[pos+VALUE] ? DAUGHTERS : DAUGHTERS+1)];
+        case BINARY_FLOAT_BYTE:
+            return code[pos + ((float) fv.getByteFeature(feature) < Float.intBitsToFloat(code[pos+VALUE]) ? DAUGHTERS : DAUGHTERS+1)];
+        case BINARY_FLOAT:
+            return code[pos + (fv.getContinuousFeature(feature) < Float.intBitsToFloat(code[pos+VALUE]) ? DAUGHTERS : DAUGHTERS+1)];
+        case BYTE:
+            return daughter(pos, fv.getByteFeature(feature));
+        case SHORT:
+            return daughter(pos, fv.getShortFeature(feature));
+        default:
+            throw new IllegalStateException("Unknown node kind "+code[pos]+" at "+pos);
+        }
+    }
+
+    /**
+     * The offset of the daughter chosen by the decision node at pos.
+     */
+    private int next(int pos, FeatureTable features, int unitIndex)
+    {
+        int feature = code[pos+FEATURE];
+        switch (code[pos]) {
+        case BINARY_BYTE:
+            return code[pos + (features.getByteFeature(unitIndex, feature) == code[pos+VALUE] ? DAUGHTERS : DAUGHTERS+1)];
+        case BINARY_SHORT:
+            return code[pos + (features.getShortFeature(unitIndex, feature) == code[pos+VALUE] ? DAUGHTERS : DAUGHTERS+1)];
+        case BINARY_FLOAT_BYTE:
+            return code[pos + ((float) features.getByteFeature(unitIndex, feature) < Float.intBitsToFloat(code[pos+VALUE]) ? DAUGHTERS : DAUGHTERS+1)];
+        case BINARY_FLOAT:
+            return code[pos + (features.getContinuousFeature(unitIndex, feature) < Float.intBitsToFloat(code[pos+VALUE]) ? DAUGHTERS : DAUGHTERS+1)];
+        case BYTE:
+            return daughter(pos, features.getByteFeature(unitIndex, feature));
+        case SHORT:
+            return daughter(pos, features.getShortFeature(unitIndex, feature));
+        default:
+            throw new IllegalStateException("Unknown node kind "+code[pos]+" at "+pos);
+        }
+    }
+
+    private int daughter(int pos, int value)
+    {
+        if (value < 0 || value >= code[pos+VALUE]) {
+            throw new ArrayIndexOutOfBoundsException(value);
+        }
+        return code[pos+DAUGHTERS+value];
+    }
+
+    /**
+     * Lays out the nodes of a tree in depth-first order.
+     */
+    private static class Compiler
+    {
+        List<Integer> code = new ArrayList<Integer>();
+        List<Node> nodes = new ArrayList<Node>();
+        Map<Node, Integer> offsets = new IdentityHashMap<Node, Integer>();
+        int size = 0;
+
+        /**
+         * Add the given node and everything below it.
+         * @return the offset of the node, or -1 if it cannot be compiled.
+         */
+        int add(Node node)
+        {
+            Integer known = offsets.get(node);
+            if (known != null) {
+                return known;
+            }
+            int kind;
+            int value = 0;
+            Node[] daughters = null;
+            if (node instanceof LeafNode) {
+                kind = LEAF;
+            } else if (node.getClass() == BinaryByteDecisionNode.class) {
+                kind = BINARY_BYTE;
+                value = ((BinaryByteDecisionNode) node).getCriterionValueAsByte();
+            } else if (node.getClass() == BinaryShortDecisionNode.class) {
+                kind = BINARY_SHORT;
+                value = ((BinaryShortDecisionNode) node).getCriterionValueAsShort();
+            } else if (node.getClass() == BinaryFloatDecisionNode.class) {
+                BinaryFloatDecisionNode bfn = (BinaryFloatDecisionNode) node;
+                kind = bfn.isByteFeature() ? BINARY_FLOAT_BYTE : BINARY_FLOAT;
+                value = Float.floatToRawIntBits(bfn.getCriterionValueAsFloat());
+            } else if (node.getClass() == ByteDecisionNode.class) {
+                kind = BYTE;
+            } else if (node.getClass() == ShortDecisionNode.class) {
+                kind = SHORT;
+            } else {
+                return -1;
+            }
+            if (kind != LEAF) {
+                daughters = ((DecisionNode) node).daughters;
+                if (kind == BYTE || kind == SHORT) {
+                    value = daughters.length;
+                } else if (daughters.length != 2) {
+                    return -1;
+                }
+            }
+            int offset = size;
+            offsets.put(node, offset);
+            code.add(kind);
+            code.add(kind == LEAF ? 0 : ((DecisionNode) node).getFeatureIndex());
+            code.add(value);
+            code.add(node.getNumberOfData());
+            code.add(nodes.size());
+            nodes.add(node);
+            size += DAUGHTERS;
+            if (daughters != null) {
+                // reserve room for the daughter offsets, and fill it in once they are known:
+                for (int i=0; i<daughters.length; i++) {
+                    code.add(-1);
+                }
+                size += daughters.length;
+                for (int i=0; i<daughters.length; i++) {
+                    if (daughters[i] != null) {
+                        int daughterOffset = add(daughters[i]);
+                        if (daughterOffset < 0) {
+                            return -1;
+                        }
+                        code.set(offset + DAUGHTERS + i, daughterOffset);
+                    }
+                }
+            }
+            return offset;
+        }
+    }
+}
@@ -22,6 +22,7 @@ package marytts.cart;
 import marytts.cart.LeafNode.FeatureVectorLeafNode;
 import marytts.cart.LeafNode.IntArrayLeafNode;
 import marytts.features.FeatureDefinition;
+import marytts.features.FeatureTable;
 import marytts.features.FeatureVector;
 
 
@@ -138,6 +139,7 @@ public abstract class DecisionNode extends Node
                     + (lastDaughter + 1) + ", since node has only "
                     + daughters.length + " daughters!");
         }
+        structureChanged();
         daughters[lastDaughter] = daughter;
         if (daughter != null) {
             daughter.setMother(this, lastDaughter);
@@ -173,6 +175,7 @@ public abstract class DecisionNode extends Node
                     + index + ", since daughter index goes from 0 to "
                     + (daughters.length - 1) + "!");
         }
+        structureChanged();
         daughters[index] = newDaughter;
         newDaughter.setMother(this, index);
     }
@@ -309,6 +312,20 @@ public abstract class DecisionNode extends Node
      */
     public abstract Node getNextNode(FeatureVector featureVector);
 
+    /**
+     * Select a daughter node according to the features of the given unit,
+     * read directly from the given feature table. Subclasses read the single
+     * feature they need, so that no feature vector is created for the unit
+     * if the features are kept in a memory-mapped feature file or a feature matrix.
+     *
+     * @param features the feature table
+     * @param unitIndex the index of the unit in the feature table
+     * @return a daughter
+     */
+    public Node getNextNode(FeatureTable features, int unitIndex) {
+        return getNextNode(features.getFeatureVector(unitIndex));
+    }
+
     /**
      * A binary decision Node that compares two byte values.
      */
@@ -357,6 +374,7 @@ public abstract class DecisionNode extends Node
          * @param value
          */
         public void setFeatureAndFeatureValue(String feature, String value) {
+            structureChanged();
             this.feature = feature;
             this.featureIndex = featureDefinition.getFeatureIndex(feature);
             this.value = featureDefinition.getFeatureValueAsByte(feature, value);
@@ -397,6 +415,11 @@ public abstract class DecisionNode extends Node
             }
             return returnNode;
         }
+
+        public Node getNextNode(FeatureTable features, int unitIndex) {
+            byte val = features.getByteFeature(unitIndex, featureIndex);
+            return val == value ? daughters[0] : daughters[1];
+        }
         
         public String getDecisionPath(int daughterIndex)
         {
@@ -490,6 +513,11 @@ public abstract class DecisionNode extends Node
             }
             return returnNode;
         }
+
+        public Node getNextNode(FeatureTable features, int unitIndex) {
+            short val = features.getShortFeature(unitIndex, featureIndex);
+            return val == value ? daughters[0] : daughters[1];
+        }
         
         public String getDecisionPath(int daughterIndex)
         {
@@ -553,6 +581,15 @@ public abstract class DecisionNode extends Node
                 isByteFeature = false;
         }
 
+        /**
+         * Whether the feature compared to the threshold is a byte-valued feature
+         * rather than a continuous feature.
+         */
+        public boolean isByteFeature()
+        {
+            return isByteFeature;
+        }
+
         public float getCriterionValueAsFloat()
         {
             return value;
@@ -594,6 +631,15 @@ public abstract class DecisionNode extends Node
             return returnNode;
         }
 
+        public Node getNextNode(FeatureTable features, int unitIndex) {
+            float val;
+            if (isByteFeature)
+                val = (float) features.getByteFeature(unitIndex, featureIndex);
+            else
+                val = features.getContinuousFeature(unitIndex, featureIndex);
+            return val < value ? daughters[0] : daughters[1];
+        }
+
         public String getDecisionPath(int daughterIndex)
         {
             String thisNodeInfo;
@@ -667,6 +713,10 @@ public abstract class DecisionNode extends Node
             }
             return daughters[val];
         }
+
+        public Node getNextNode(FeatureTable features, int unitIndex) {
+            return daughters[features.getByteFeature(unitIndex, featureIndex)];
+        }
         
         public String getDecisionPath(int daughterIndex)
         {
@@ -740,6 +790,10 @@ public abstract class DecisionNode extends Node
             }
             return daughters[val];
         }
+
+        public Node getNextNode(FeatureTable features, int unitIndex) {
+            return daughters[features.getShortFeature(unitIndex, featureIndex)];
+        }
         
         public String getDecisionPath(int daughterIndex)
         {
@@ -46,6 +46,9 @@ public abstract class Node
     // the index of the node in the daughters array of its mother
     protected int nodeIndex;
 
+    // the tree whose compiled form contains this node, if any
+    private CART compiledIn;
+
  
     /**
      * set the mother node of this node, and remember this node's index in mother.
@@ -111,6 +114,26 @@ public abstract class Node
         return false;
     }
 
+    /**
+     * Remember that this node is part of the compiled form of the given tree.
+     */
+    void setCompiledIn(CART tree)
+    {
+        this.compiledIn = tree;
+    }
+
+    /**
+     * To be called when the daughters or the decision criterion of this node are changed:
+     * the compiled form of the tree containing this node, if any, is no longer used.
+     */
+    protected void structureChanged()
+    {
+        CART tree = compiledIn;
+        if (tree != null) {
+            tree.discardCompiledCART();
+        }
+    }
+
     
     
     public Node getRootNode()
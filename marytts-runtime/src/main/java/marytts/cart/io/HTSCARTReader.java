@@ -61,6 +61,7 @@ import java.util.Scanner;
 import java.util.StringTokenizer;
 
 import marytts.cart.CART;
+import marytts.cart.CompiledCART;
 import marytts.cart.DecisionNode;
 import marytts.cart.LeafNode;
 import marytts.cart.Node;
@@ -176,6 +177,12 @@ public class HTSCARTReader
     		throw new IOException("LoadTreeSet: error no trees loaded");   
     	}
 
+    	if (CompiledCART.isEnabled()) {
+    		for (CART tree : treeSet) {
+    			tree.compile();
+    		}
+    	}
+
 
 
     	return treeSet;
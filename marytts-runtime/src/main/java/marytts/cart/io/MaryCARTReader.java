@@ -31,6 +31,7 @@ import java.nio.channels.FileChannel;
 import java.util.Properties;
 
 import marytts.cart.CART;
+import marytts.cart.CompiledCART;
 import marytts.cart.DecisionNode;
 import marytts.cart.LeafNode;
 import marytts.cart.Node;
@@ -235,7 +236,11 @@ public class MaryCARTReader
         }
 
         // set the rootNode as the rootNode of cart
-        return new CART(rootNode, featureDefinition, props);
+        CART cart = new CART(rootNode, featureDefinition, props);
+        if (CompiledCART.isEnabled()) {
+            cart.compile();
+        }
+        return cart;
     }
 
     /**
@@ -408,7 +413,11 @@ public class MaryCARTReader
         }
 
         // set the rootNode as the rootNode of cart
-        return new CART(rootNode, featureDefinition, props);
+        CART cart = new CART(rootNode, featureDefinition, props);
+        if (CompiledCART.isEnabled()) {
+            cart.compile();
+        }
+        return cart;
     }
     
 }
@@ -0,0 +1,228 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.features;
+
+/**
+ * The features of a number of targets or units, stored column by column:
+ * one primitive array per feature, holding the values of that feature for all rows.
+ * <p>
+ * Computing the features of a whole utterance one feature at a time, and reading
+ * one feature of many rows, as decision trees and target cost functions do, touches
+ * a few compact arrays rather than one feature vector object per row.
+ * A matrix can be reused for a different set of rows by calling {@link #setNumberOfRows(int)};
+ * the columns grow as needed, and are not shrunk. Rows which have been handed out,
+ * e.g. with {@link marytts.unitselection.select.Target#setFeatureRow(FeatureTable, int)},
+ * must not be in use any more when the matrix is reused.
+ * <p>
+ * A feature matrix is not thread-safe.
+ */
+public class FeatureMatrix implements FeatureTable
+{
+    private final int numByteFeatures;
+    private final int numShortFeatures;
+    private final int numContinuousFeatures;
+    // the values of each feature, indexed [feature][row]:
+    private final byte[][] byteColumns;
+    private final short[][] shortColumns;
+    private final float[][] continuousColumns;
+    private int numRows;
+    private int capacity;
+
+    /**
+     * Create an empty feature matrix for the features in the given feature definition.
+     * @param featureDefinition the feature definition
+     * @param capacity the number of rows for which to reserve space
+     */
+    public FeatureMatrix(FeatureDefinition featureDefinition, int capacity)
+    {
+        this(featureDefinition.getNumberOfByteFeatures(), featureDefinition.getNumberOfShortFeatures(),
+                featureDefinition.getNumberOfContinuousFeatures(), capacity);
+    }
+
+    /**
+     * Create an empty feature matrix with the given numbers of features.
+     * @param numByteFeatures the number of byte-valued features
+     * @param numShortFeatures the number of short-valued features
+     * @param numContinuousFeatures the number of continuous features
+     * @param capacity the number of rows for which to reserve space
+     */
+    public FeatureMatrix(int numByteFeatures, int numShortFeatures, int numContinuousFeatures, int capacity)
+    {
+        if (numByteFeatures < 0 || numShortFeatures < 0 || numContinuousFeatures < 0 || capacity < 0) {
+            throw new IllegalArgumentException("Negative size");
+        }
+        this.numByteFeatures = numByteFeatures;
+        this.numShortFeatures = numShortFeatures;
+        this.numContinuousFeatures = numContinuousFeatures;
+        this.byteColumns = new byte[numByteFeatures][capacity];
+        this.shortColumns = new short[numShortFeatures][capacity];
+        this.continuousColumns = new float[numContinuousFeatures][capacity];
+        this.capacity = capacity;
+        this.numRows = 0;
+    }
+
+    /**
+     * Whether this matrix has the given numbers of features.
+     */
+    public boolean hasFeatures(int nBytes, int nShorts, int nContinuous)
+    {
+        return numByteFeatures == nBytes && numShortFeatures == nShorts && numContinuousFeatures == nContinuous;
+    }
+
+    public int getNumberOfByteFeatures()
+    {
+        return numByteFeatures;
+    }
+
+    public int getNumberOfShortFeatures()
+    {
+        return numShortFeatures;
+    }
+
+    public int getNumberOfContinuousFeatures()
+    {
+        return numContinuousFeatures;
+    }
+
+    public int getNumberOfRows()
+    {
+        return numRows;
+    }
+
+    /**
+     * Set the number of rows in this matrix, growing the columns if needed.
+     * The values in the rows are undefined until they are set.
+     * @param numRows the new number of rows
+     */
+    public void setNumberOfRows(int numRows)
+    {
+        if (numRows < 0) {
+            throw new IllegalArgumentException("Negative number of rows: "+numRows);
+        }
+        if (numRows > capacity) {
+            int newCapacity = Math.max(numRows, capacity + capacity / 2);
+            for (int f=0; f<numByteFeatures; f++) {
+                byteColumns[f] = new byte[newCapacity];
+            }
+            for (int f=0; f<numShortFeatures; f++) {
+                shortColumns[f] = new short[newCapacity];
+            }
+            for (int f=0; f<numContinuousFeatures; f++) {
+                continuousColumns[f] = new float[newCapacity];
+            }
+            capacity = newCapacity;
+        }
+        this.numRows = numRows;
+    }
+
+    /**
+     * The values of the given byte-valued feature for all rows.
+     * The array may be longer than the number of rows.
+     * @param featureIndex the index of a byte-valued feature
+     */
+    public byte[] getByteColumn(int featureIndex)
+    {
+        return byteColumns[featureIndex];
+    }
+
+    /**
+     * The values of the given short-valued feature for all rows.
+     * The array may be longer than the number of rows.
+     * @param featureIndex the index of a short-valued feature, counting the byte-valued features
+     */
+    public short[] getShortColumn(int featureIndex)
+    {
+        return shortColumns[featureIndex - numByteFeatures];
+    }
+
+    /**
+     * The values of the given continuous feature for all rows.
+     * The array may be longer than the number of rows.
+     * @param featureIndex the index of a continuous feature, counting the discrete features
+     */
+    public float[] getContinuousColumn(int featureIndex)
+    {
+        return continuousColumns[featureIndex - numByteFeatures - numShortFeatures];
+    }
+
+    public byte getByteFeature(int row, int featureIndex)
+    {
+        return byteColumns[featureIndex][row];
+    }
+
+    public short getShortFeature(int row, int featureIndex)
+    {
+        return shortColumns[featureIndex - numByteFeatures][row];
+    }
+
+    public float getContinuousFeature(int row, int featureIndex)
+    {
+        return continuousColumns[featureIndex - numByteFeatures - numShortFeatures][row];
+    }
+
+    /**
+     * Set all features in the given row from the given feature vector.
+     * @param row the index of a row in this matrix
+     * @param fv a feature vector with the same numbers of features as this matrix
+     */
+    public void setFeatureVector(int row, FeatureVector fv)
+    {
+        if (row < 0 || row >= numRows) {
+            throw new IndexOutOfBoundsException(row+" is not between 0 and "+numRows);
+        }
+        if (!hasFeatures(fv.getNumberOfByteFeatures(), fv.getNumberOfShortFeatures(), fv.getNumberOfContinuousFeatures())) {
+            throw new IllegalArgumentException("Number of features in feature vector does not match the matrix");
+        }
+        for (int f=0; f<numByteFeatures; f++) {
+            byteColumns[f][row] = fv.byteValuedDiscreteFeatures[f];
+        }
+        for (int f=0; f<numShortFeatures; f++) {
+            shortColumns[f][row] = fv.shortValuedDiscreteFeatures[f];
+        }
+        for (int f=0; f<numContinuousFeatures; f++) {
+            continuousColumns[f][row] = fv.continuousFeatures[f];
+        }
+    }
+
+    /**
+     * Create a feature vector holding a copy of the features in the given row.
+     * Its unit index is the row index.
+     * @param row the index of a row in this matrix
+     */
+    public FeatureVector getFeatureVector(int row)
+    {
+        if (row < 0 || row >= numRows) {
+            throw new IndexOutOfBoundsException(row+" is not between 0 and "+numRows);
+        }
+        byte[] bytes = new byte[numByteFeatures];
+        short[] shorts = new short[numShortFeatures];
+        float[] floats = new float[numContinuousFeatures];
+        for (int f=0; f<numByteFeatures; f++) {
+            bytes[f] = byteColumns[f][row];
+        }
+        for (int f=0; f<numShortFeatures; f++) {
+            shorts[f] = shortColumns[f][row];
+        }
+        for (int f=0; f<numContinuousFeatures; f++) {
+            floats[f] = continuousColumns[f][row];
+        }
+        return new FeatureVector(bytes, shorts, floats, row);
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.features;
+
+/**
+ * Features of a number of items, such as targets or units, accessed by row and feature index
+ * without requiring a {@link FeatureVector} object for each row.
+ * Feature indices count all features, as in {@link FeatureVector#getByteFeature(int)},
+ * {@link FeatureVector#getShortFeature(int)} and {@link FeatureVector#getContinuousFeature(int)}.
+ * @see FeatureMatrix
+ * @see marytts.unitselection.data.FeatureFileReader
+ */
+public interface FeatureTable
+{
+    /**
+     * Get the value of the given byte-valued feature in the given row.
+     * @param row the index of a row in this table
+     * @param featureIndex the index of a byte-valued feature
+     */
+    public byte getByteFeature(int row, int featureIndex);
+
+    /**
+     * Get the value of the given short-valued feature in the given row.
+     * @param row the index of a row in this table
+     * @param featureIndex the index of a short-valued feature, counting the byte-valued features
+     */
+    public short getShortFeature(int row, int featureIndex);
+
+    /**
+     * Get the value of the given continuous feature in the given row.
+     * @param row the index of a row in this table
+     * @param featureIndex the index of a continuous feature, counting the discrete features
+     */
+    public float getContinuousFeature(int row, int featureIndex);
+
+    /**
+     * Get all features in the given row as a feature vector.
+     * @param row the index of a row in this table
+     */
+    public FeatureVector getFeatureVector(int row);
+}
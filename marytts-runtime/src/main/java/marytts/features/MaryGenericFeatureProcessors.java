@@ -826,12 +826,7 @@ public class MaryGenericFeatureProcessors
             if (segment == null) return (byte)0;
             Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
             if (sentence == null) return (byte)0;
-            TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.PHRASE);
-            int count = 0;
-            Element e;
-            while ((e = (Element) tw.nextNode()) != null) {
-                count++;
-            }
+            int count = UtteranceIndex.of(target).count(sentence, UtteranceIndex.PHRASE);
             return (byte) rail(count);
         }
     }
@@ -856,14 +851,8 @@ public class MaryGenericFeatureProcessors
             if (segment == null) return (byte)0;
             Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
             if (sentence == null) return (byte)0;
-            TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN);
-            int count = 0;
-            Element e;
-            while ((e = (Element) tw.nextNode()) != null) {
-                // only tokens with a "ph" attribute count as words:
-                if (e.hasAttribute("ph"))
-                    count++;
-            }
+            // only tokens with a "ph" attribute count as words:
+            int count = UtteranceIndex.of(target).count(sentence, UtteranceIndex.WORD);
             return (byte) rail(count);
         }
     }
@@ -886,12 +875,7 @@ public class MaryGenericFeatureProcessors
             if (segment == null) return (byte)0;
             Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
             if (phrase == null) return (byte)0;
-            TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.SYLLABLE);
-            int count = 0;
-            Element e;
-            while ((e = (Element) tw.nextNode()) != null) {
-                count++;
-            }
+            int count = UtteranceIndex.of(target).count(phrase, UtteranceIndex.SYLLABLE);
             return (byte) rail(count);
         }
     }
@@ -919,12 +903,7 @@ public class MaryGenericFeatureProcessors
             if (segment == null) return (byte)0;
             Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
             if (phrase == null) return (byte)0;
-            TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.TOKEN);
-            int count = 0;
-            Element e;
-            while ((e = (Element) tw.nextNode()) != null) {
-                count++;
-            }
+            int count = UtteranceIndex.of(target).count(phrase, UtteranceIndex.TOKEN);
             return (byte) rail(count);
         }
     }
@@ -1637,18 +1616,9 @@ public class MaryGenericFeatureProcessors
             if (segment == null) return 0;
             Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
             if (phrase == null) return 0;
-            int count = 0;
-            TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.SYLLABLE);
             Element syllable = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SYLLABLE);
-            if (syllable != null) {
-                tw.setCurrentNode(syllable);
-            } else {
-                tw.setCurrentNode(segment);
-            }
-            Element e;
-            while ((e = (Element) tw.previousNode()) != null) {
-                count++;
-            }
+            Element current = syllable != null ? syllable : segment;
+            int count = UtteranceIndex.of(target).countBefore(phrase, current, UtteranceIndex.SYLLABLE);
             return (byte) rail(count);
         }
     }
@@ -1673,13 +1643,7 @@ public class MaryGenericFeatureProcessors
             if (segment == null) return 0;
             Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
             if (phrase == null) return 0;
-            int count = 0;
-            TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.SYLLABLE);
-            tw.setCurrentNode(segment);
-            Element e;
-            while ((e = (Element) tw.nextNode()) != null) {
-                count++;
-            }
+            int count = UtteranceIndex.of(target).countAfter(phrase, segment, UtteranceIndex.SYLLABLE);
             return (byte) rail(count);
         }
     }
@@ -1704,20 +1668,9 @@ public class MaryGenericFeatureProcessors
             if (segment == null) return 0;
             Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
             if (phrase == null) return 0;
-            int count = 0;
-            TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.SYLLABLE);
             Element syllable = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SYLLABLE);
-            if (syllable != null) {
-                tw.setCurrentNode(syllable);
-            } else {
-                tw.setCurrentNode(segment);
-            }
-            Element e;
-            while ((e = (Element) tw.previousNode()) != null) {
-                String stress = e.getAttribute("stress");
-                if (stress.equals("1"))
-                    count++;
-            }
+            Element current = syllable != null ? syllable : segment;
+            int count = UtteranceIndex.of(target).countBefore(phrase, current, UtteranceIndex.STRESSED_SYLLABLE);
             return (byte) rail(count);
         }
     }
@@ -1742,15 +1695,7 @@ public class MaryGenericFeatureProcessors
             if (segment == null) return 0;
             Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
             if (phrase == null) return 0;
-            int count = 0;
-            TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.SYLLABLE);
-            tw.setCurrentNode(segment);
-            Element e;
-            while ((e = (Element) tw.nextNode()) != null) {
-                String stress = e.getAttribute("stress");
-                if (stress.equals("1"))
-                    count++;
-            }
+            int count = UtteranceIndex.of(target).countAfter(phrase, segment, UtteranceIndex.STRESSED_SYLLABLE);
             return (byte) rail(count);
         }
     }
@@ -1775,20 +1720,9 @@ public class MaryGenericFeatureProcessors
             if (segment == null) return 0;
             Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
             if (phrase == null) return 0;
-            int count = 0;
-            TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.SYLLABLE);
             Element syllable = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SYLLABLE);
-            if (syllable != null) {
-                tw.setCurrentNode(syllable);
-            } else {
-                tw.setCurrentNode(segment);
-            }
-            Element e;
-            while ((e = (Element) tw.previousNode()) != null) {
-                String accent = e.getAttribute("accent");
-                if (!accent.equals(""))
-                    count++;
-            }
+            Element current = syllable != null ? syllable : segment;
+            int count = UtteranceIndex.of(target).countBefore(phrase, current, UtteranceIndex.ACCENTED_SYLLABLE);
             return (byte) rail(count);
         }
     }
@@ -1814,15 +1748,7 @@ public class MaryGenericFeatureProcessors
             if (segment == null) return 0;
             Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
             if (phrase == null) return 0;
-            int count = 0;
-            TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.SYLLABLE);
-            tw.setCurrentNode(segment);
-            Element e;
-            while ((e = (Element) tw.nextNode()) != null) {
-                String accent = e.getAttribute("accent");
-                if (!accent.equals(""))
-                    count++;
-            }
+            int count = UtteranceIndex.of(target).countAfter(phrase, segment, UtteranceIndex.ACCENTED_SYLLABLE);
             return (byte) rail(count);
         }
     }
@@ -1848,20 +1774,10 @@ public class MaryGenericFeatureProcessors
             if (segment == null) return 0;
             Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
             if (phrase == null) return 0;
-            int count = 0;
-            TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.TOKEN);
             Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
-            if (word != null) {
-                tw.setCurrentNode(word);
-            } else {
-                tw.setCurrentNode(segment);
-            }
-            Element e;
-            while ((e = (Element) tw.previousNode()) != null) {
-                // only count tokens that have a "ph" attribute:
-                if (e.hasAttribute("ph"))
-                    count++;
-            }
+            Element current = word != null ? word : segment;
+            // only count tokens that have a "ph" attribute:
+            int count = UtteranceIndex.of(target).countBefore(phrase, current, UtteranceIndex.WORD);
             return (byte) rail(count);
         }
     }
@@ -1886,15 +1802,8 @@ public class MaryGenericFeatureProcessors
             if (segment == null) return 0;
             Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
             if (phrase == null) return 0;
-            int count = 0;
-            TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.TOKEN);
-            tw.setCurrentNode(segment);
-            Element e;
-            while ((e = (Element) tw.nextNode()) != null) {
-                // only count tokens that have a "ph" attribute
-                if (e.hasAttribute("ph"))
-                    count++;
-            }
+            // only count tokens that have a "ph" attribute:
+            int count = UtteranceIndex.of(target).countAfter(phrase, segment, UtteranceIndex.WORD);
             return (byte) rail(count);
         }
     }
@@ -1919,20 +1828,10 @@ public class MaryGenericFeatureProcessors
             if (segment == null) return 0;
             Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
             if (sentence == null) return 0;
-            int count = 0;
-            TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN);
             Element word = (Element) MaryDomUtils.getAncestor(segment, MaryXML.TOKEN);
-            if (word != null) {
-                tw.setCurrentNode(word);
-            } else {
-                tw.setCurrentNode(segment);
-            }
-            Element e;
-            while ((e = (Element) tw.previousNode()) != null) {
-                // only count tokens that have a "ph" attribute:
-                if (e.hasAttribute("ph"))
-                    count++;
-            }
+            Element current = word != null ? word : segment;
+            // only count tokens that have a "ph" attribute:
+            int count = UtteranceIndex.of(target).countBefore(sentence, current, UtteranceIndex.WORD);
             return (byte) rail(count);
         }
     }
@@ -1957,15 +1856,8 @@ public class MaryGenericFeatureProcessors
             if (segment == null) return 0;
             Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
             if (sentence == null) return 0;
-            int count = 0;
-            TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.TOKEN);
-            tw.setCurrentNode(segment);
-            Element e;
-            while ((e = (Element) tw.nextNode()) != null) {
-                // only count tokens that have a "ph" attribute:
-                if (e.hasAttribute("ph"))
-                    count++;
-            }
+            // only count tokens that have a "ph" attribute:
+            int count = UtteranceIndex.of(target).countAfter(sentence, segment, UtteranceIndex.WORD);
             return (byte) rail(count);
         }
     }
@@ -1990,18 +1882,9 @@ public class MaryGenericFeatureProcessors
             if (segment == null) return 0;
             Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
             if (sentence == null) return 0;
-            int count = 0;
-            TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.PHRASE);
             Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
-            if (phrase != null) {
-                tw.setCurrentNode(phrase);
-            } else {
-                tw.setCurrentNode(segment);
-            }
-            Element e;
-            while ((e = (Element) tw.previousNode()) != null) {
-                count++;
-            }
+            Element current = phrase != null ? phrase : segment;
+            int count = UtteranceIndex.of(target).countBefore(sentence, current, UtteranceIndex.PHRASE);
             return (byte) rail(count);
         }
     }
@@ -2026,13 +1909,7 @@ public class MaryGenericFeatureProcessors
             if (segment == null) return 0;
             Element sentence = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SENTENCE);
             if (sentence == null) return 0;
-            int count = 0;
-            TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.PHRASE);
-            tw.setCurrentNode(segment);
-            Element e;
-            while ((e = (Element) tw.nextNode()) != null) {
-                count++;
-            }
+            int count = UtteranceIndex.of(target).countAfter(sentence, segment, UtteranceIndex.PHRASE);
             return (byte) rail(count);
         }
     }
@@ -2058,20 +1935,14 @@ public class MaryGenericFeatureProcessors
             if (segment == null) return 0;
             Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
             if (phrase == null) return 0;
-            int count = 0;
-            TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.SYLLABLE);
             Element syllable = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SYLLABLE);
-            if (syllable != null) {
-                tw.setCurrentNode(syllable);
-            } else {
-                tw.setCurrentNode(segment);
-            }
-            Element e;
-            while ((e = (Element) tw.previousNode()) != null) {
-                count++;
-                String accent = e.getAttribute("accent");
-                if (!accent.equals(""))
-                    break;
+            Element current = syllable != null ? syllable : segment;
+            UtteranceIndex index = UtteranceIndex.of(target);
+            // count the syllables back to and including the previous one, or to the start of the phrase:
+            int count = index.countBefore(phrase, current, UtteranceIndex.SYLLABLE);
+            Element previous = index.previous(phrase, current, UtteranceIndex.ACCENTED_SYLLABLE);
+            if (previous != null) {
+                count -= index.countBefore(phrase, previous, UtteranceIndex.SYLLABLE);
             }
             return (byte) rail(count);
         }
@@ -2096,15 +1967,12 @@ public class MaryGenericFeatureProcessors
             if (segment == null) return 0;
             Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
             if (phrase == null) return 0;
-            int count = 0;
-            TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.SYLLABLE);
-            tw.setCurrentNode(segment);
-            Element e;
-            while ((e = (Element) tw.nextNode()) != null) {
-                count++;
-                String accent = e.getAttribute("accent");
-                if (!accent.equals(""))
-                    break;
+            UtteranceIndex index = UtteranceIndex.of(target);
+            // count the syllables up to and including the next one, or to the end of the phrase:
+            int count = index.countAfter(phrase, segment, UtteranceIndex.SYLLABLE);
+            Element next = index.next(phrase, segment, UtteranceIndex.ACCENTED_SYLLABLE);
+            if (next != null) {
+                count -= index.countAfter(phrase, next, UtteranceIndex.SYLLABLE);
             }
             return (byte) rail(count);
         }
@@ -2129,20 +1997,14 @@ public class MaryGenericFeatureProcessors
             if (segment == null) return 0;
             Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
             if (phrase == null) return 0;
-            int count = 0;
-            TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.SYLLABLE);
             Element syllable = (Element) MaryDomUtils.getAncestor(segment, MaryXML.SYLLABLE);
-            if (syllable != null) {
-                tw.setCurrentNode(syllable);
-            } else {
-                tw.setCurrentNode(segment);
-            }
-            Element e;
-            while ((e = (Element) tw.previousNode()) != null) {
-                count++;
-                String stress = e.getAttribute("stress");
-                if (stress.equals("1"))
-                    break;
+            Element current = syllable != null ? syllable : segment;
+            UtteranceIndex index = UtteranceIndex.of(target);
+            // count the syllables back to and including the previous one, or to the start of the phrase:
+            int count = index.countBefore(phrase, current, UtteranceIndex.SYLLABLE);
+            Element previous = index.previous(phrase, current, UtteranceIndex.STRESSED_SYLLABLE);
+            if (previous != null) {
+                count -= index.countBefore(phrase, previous, UtteranceIndex.SYLLABLE);
             }
             return (byte) rail(count);
         }
@@ -2167,15 +2029,12 @@ public class MaryGenericFeatureProcessors
             if (segment == null) return 0;
             Element phrase = (Element) MaryDomUtils.getAncestor(segment, MaryXML.PHRASE);
             if (phrase == null) return 0;
-            int count = 0;
-            TreeWalker tw = MaryDomUtils.createTreeWalker(phrase, MaryXML.SYLLABLE);
-            tw.setCurrentNode(segment);
-            Element e;
-            while ((e = (Element) tw.nextNode()) != null) {
-                count++;
-                String stress = e.getAttribute("stress");
-                if (stress.equals("1"))
-                    break;
+            UtteranceIndex index = UtteranceIndex.of(target);
+            // count the syllables up to and including the next one, or to the end of the phrase:
+            int count = index.countAfter(phrase, segment, UtteranceIndex.SYLLABLE);
+            Element next = index.next(phrase, segment, UtteranceIndex.STRESSED_SYLLABLE);
+            if (next != null) {
+                count -= index.countAfter(phrase, next, UtteranceIndex.SYLLABLE);
             }
             return (byte) rail(count);
         }
@@ -145,6 +145,84 @@ public class TargetFeatureComputer
         return new FeatureVector(byteFeatures, shortFeatures, floatFeatures, 0);
     }
 
+    /**
+     * Using the set of feature processors defined when creating the target feature computer,
+     * compute the features of all the given targets into a feature matrix, one row per target.
+     * Each feature processor is run over all targets before the next one, so that
+     * the values of a feature are written to a single array.
+     * @param targets the targets, usually those of one utterance
+     * @param matrix a matrix to reuse, or null. If it is null or does not have the number of
+     * features computed here, a new matrix is created.
+     * @return the matrix containing the features of targets.get(i) in row i
+     */
+    public FeatureMatrix computeFeatureMatrix(List<? extends Target> targets, FeatureMatrix matrix)
+    {
+        int numTargets = targets.size();
+        if (matrix == null || !matrix.hasFeatures(byteValuedDiscreteFeatureProcessors.length,
+                shortValuedDiscreteFeatureProcessors.length, continuousFeatureProcessors.length)) {
+            matrix = new FeatureMatrix(byteValuedDiscreteFeatureProcessors.length,
+                    shortValuedDiscreteFeatureProcessors.length, continuousFeatureProcessors.length, numTargets);
+        }
+        matrix.setNumberOfRows(numTargets);
+        Target[] targetArray = targets.toArray(new Target[numTargets]);
+        int nBytes = byteValuedDiscreteFeatureProcessors.length;
+        int nShorts = shortValuedDiscreteFeatureProcessors.length;
+        for (int i=0; i<nBytes; i++) {
+            ByteValuedFeatureProcessor fp = byteValuedDiscreteFeatureProcessors[i];
+            byte[] column = matrix.getByteColumn(i);
+            for (int t=0; t<numTargets; t++) {
+                column[t] = fp.process(targetArray[t]);
+            }
+        }
+        for (int i=0; i<nShorts; i++) {
+            ShortValuedFeatureProcessor fp = shortValuedDiscreteFeatureProcessors[i];
+            short[] column = matrix.getShortColumn(nBytes + i);
+            for (int t=0; t<numTargets; t++) {
+                column[t] = fp.process(targetArray[t]);
+            }
+        }
+        for (int i=0; i<continuousFeatureProcessors.length; i++) {
+            ContinuousFeatureProcessor fp = continuousFeatureProcessors[i];
+            float[] column = matrix.getContinuousColumn(nBytes + nShorts + i);
+            for (int t=0; t<numTargets; t++) {
+                column[t] = fp.process(targetArray[t]);
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Compute the features of all the given targets into a new feature matrix,
+     * and associate each target with its row in the matrix
+     * (see {@link Target#setFeatureRow(FeatureTable, int)}).
+     * This replaces calling {@link #computeFeatureVector(Target)} and
+     * {@link Target#setFeatureVector(FeatureVector)} for each target.
+     * @param targets the targets, usually those of one utterance
+     * @return the matrix containing the features of the targets
+     */
+    public FeatureMatrix computeFeatureRows(List<? extends Target> targets)
+    {
+        return computeFeatureRows(targets, null);
+    }
+
+    /**
+     * Compute the features of all the given targets into the given feature matrix,
+     * and associate each target with its row in the matrix.
+     * The targets whose rows were previously in the matrix must not be used any more.
+     * @param targets the targets, usually those of one utterance
+     * @param matrix a matrix to reuse, or null
+     * @return the matrix containing the features of the targets
+     * @see #computeFeatureMatrix(List, FeatureMatrix)
+     */
+    public FeatureMatrix computeFeatureRows(List<? extends Target> targets, FeatureMatrix matrix)
+    {
+        matrix = computeFeatureMatrix(targets, matrix);
+        for (int t=0, n=targets.size(); t<n; t++) {
+            targets.get(t).setFeatureRow(matrix, t);
+        }
+        return matrix;
+    }
+
     /**
      * For the given feature vector, convert each encoded value into its string representation.
      * @param features a feature vector, which must match the feature processors known to this feature computer.
@@ -0,0 +1,371 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.features;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import marytts.datatypes.MaryXML;
+import marytts.unitselection.select.DiphoneTarget;
+import marytts.unitselection.select.Target;
+import marytts.util.dom.MaryDomUtils;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.traversal.TreeWalker;
+
+/**
+ * An index of the positions of tokens, syllables and phrases in the sentences
+ * of an utterance, built in a single pass over the MaryXML tree.
+ * <p>
+ * Feature processors counting elements from the start or to the end of a
+ * sentence or phrase would otherwise walk the DOM tree for every target, which makes
+ * computing the features of a sentence quadratic in its length. With the index,
+ * each count is a difference of two prefix counts.
+ * <p>
+ * The answers are the same as those of a {@link TreeWalker} over the respective tag names
+ * below the given root element, moving from the given node; the root element itself is never counted.
+ * Elements which are not indexed are looked up by walking the DOM tree,
+ * so that {@link #NONE} can be used where no index is available.
+ * The index reflects the document at the time it was created:
+ * it must not be used after elements have been added, moved or removed,
+ * or after the attributes "ph", "stress" or "accent" have been changed.
+ */
+public class UtteranceIndex
+{
+    /** All <code>t</code> elements. */
+    public static final int TOKEN = 0;
+    /** The <code>t</code> elements with a "ph" attribute. */
+    public static final int WORD = 1;
+    /** All <code>syllable</code> elements. */
+    public static final int SYLLABLE = 2;
+    /** The <code>syllable</code> elements with stress="1". */
+    public static final int STRESSED_SYLLABLE = 3;
+    /** The <code>syllable</code> elements with a non-empty "accent" attribute. */
+    public static final int ACCENTED_SYLLABLE = 4;
+    /** All <code>phrase</code> elements. */
+    public static final int PHRASE = 5;
+    private static final int NUM_KINDS = 6;
+
+    /**
+     * An index which contains no elements, and answers all questions by walking the DOM tree.
+     */
+    public static final UtteranceIndex NONE = new UtteranceIndex(new ArrayList<Element>());
+
+    /**
+     * Return the index associated with the given target, or {@link #NONE} if there is none.
+     */
+    public static UtteranceIndex of(Target target)
+    {
+        UtteranceIndex index = target.getUtteranceIndex();
+        return index != null ? index : NONE;
+    }
+
+    /**
+     * Create an index for all sentences containing the given targets,
+     * and associate it with the targets.
+     * @param targets the targets of an utterance; the halves of {@link DiphoneTarget}s are indexed as well.
+     * @return the index
+     */
+    public static UtteranceIndex createFor(List<? extends Target> targets)
+    {
+        List<Target> allTargets = new ArrayList<Target>(targets);
+        for (Target t : targets) {
+            if (t instanceof DiphoneTarget) {
+                allTargets.add(((DiphoneTarget) t).left);
+                allTargets.add(((DiphoneTarget) t).right);
+            }
+        }
+        Set<Element> sentences = new LinkedHashSet<Element>();
+        for (Target t : allTargets) {
+            if (t instanceof DiphoneTarget) continue;
+            Element e = t.getMaryxmlElement();
+            if (e == null) continue;
+            Element sentence = (Element) MaryDomUtils.getAncestor(e, MaryXML.SENTENCE);
+            if (sentence != null) {
+                sentences.add(sentence);
+            }
+        }
+        UtteranceIndex index = new UtteranceIndex(new ArrayList<Element>(sentences));
+        for (Target t : allTargets) {
+            t.setUtteranceIndex(index);
+        }
+        return index;
+    }
+
+    // The position of each indexed element in document order:
+    private final Map<Node, Integer> positions = new IdentityHashMap<Node, Integer>();
+    private final Element[] elements;
+    // For each position, the last position in the subtree of the element at that position:
+    private final int[] ends;
+    // For each kind, the number of elements of that kind before each position:
+    private final int[][] countsBefore;
+    // For each kind, the positions of the elements of that kind:
+    private final int[][] kindPositions;
+
+    /**
+     * Index the given sentence.
+     * @param sentence a <code>s</code> element, or any other element to be indexed with everything below it.
+     */
+    public UtteranceIndex(Element sentence)
+    {
+        this(Collections.singletonList(sentence));
+    }
+
+    /**
+     * Index the given sentences.
+     * @param sentences a list of non-overlapping elements, each of which will be indexed with everything below it.
+     */
+    public UtteranceIndex(List<Element> sentences)
+    {
+        List<Element> inOrder = new ArrayList<Element>();
+        List<Integer> endList = new ArrayList<Integer>();
+        for (Element sentence : sentences) {
+            add(sentence, inOrder, endList);
+        }
+        int n = inOrder.size();
+        elements = inOrder.toArray(new Element[n]);
+        ends = new int[n];
+        for (int i=0; i<n; i++) {
+            ends[i] = endList.get(i);
+        }
+        countsBefore = new int[NUM_KINDS][n+1];
+        int[] numOfKind = new int[NUM_KINDS];
+        for (int i=0; i<n; i++) {
+            for (int k=0; k<NUM_KINDS; k++) {
+                countsBefore[k][i] = numOfKind[k];
+                if (isOfKind(elements[i], k)) {
+                    numOfKind[k]++;
+                }
+            }
+        }
+        kindPositions = new int[NUM_KINDS][];
+        for (int k=0; k<NUM_KINDS; k++) {
+            countsBefore[k][n] = numOfKind[k];
+            kindPositions[k] = new int[numOfKind[k]];
+        }
+        for (int i=0; i<n; i++) {
+            for (int k=0; k<NUM_KINDS; k++) {
+                if (countsBefore[k][i+1] > countsBefore[k][i]) {
+                    kindPositions[k][countsBefore[k][i]] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Add the element and its descendant elements in document order.
+     */
+    private void add(Element e, List<Element> inOrder, List<Integer> endList)
+    {
+        int pos = inOrder.size();
+        positions.put(e, pos);
+        inOrder.add(e);
+        endList.add(pos);
+        for (Node n = e.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE) {
+                add((Element) n, inOrder, endList);
+            }
+        }
+        endList.set(pos, inOrder.size() - 1);
+    }
+
+    /**
+     * The number of elements of the given kind below root.
+     * @param root the root element
+     * @param kind one of the kinds defined in this class
+     */
+    public int count(Element root, int kind)
+    {
+        Integer r = positions.get(root);
+        if (r == null) {
+            TreeWalker tw = createTreeWalker(root, kind);
+            int count = 0;
+            Node e;
+            while ((e = tw.nextNode()) != null) {
+                if (isOfKind(e, kind)) count++;
+            }
+            return count;
+        }
+        return countsBefore[kind][ends[r]+1] - countsBefore[kind][r+1];
+    }
+
+    /**
+     * The number of elements of the given kind below root which come before node in document order,
+     * including its ancestors.
+     * @param root the root element
+     * @param node an element below root
+     * @param kind one of the kinds defined in this class
+     */
+    public int countBefore(Element root, Element node, int kind)
+    {
+        int r = position(root);
+        int n = position(node);
+        if (r < 0 || n <= r || n > ends[r]) {
+            TreeWalker tw = createTreeWalker(root, kind);
+            tw.setCurrentNode(node);
+            int count = 0;
+            Node e;
+            while ((e = tw.previousNode()) != null) {
+                // a tree walker moves from a child of root to root if root itself matches
+                if (e != root && isOfKind(e, kind)) count++;
+            }
+            return count;
+        }
+        return countsBefore[kind][n] - countsBefore[kind][r+1];
+    }
+
+    /**
+     * The number of elements of the given kind below root which come after node in document order,
+     * including its descendants.
+     * @param root the root element
+     * @param node an element below root
+     * @param kind one of the kinds defined in this class
+     */
+    public int countAfter(Element root, Element node, int kind)
+    {
+        int r = position(root);
+        int n = position(node);
+        if (r < 0 || n <= r || n > ends[r]) {
+            TreeWalker tw = createTreeWalker(root, kind);
+            tw.setCurrentNode(node);
+            int count = 0;
+            Node e;
+            while ((e = tw.nextNode()) != null) {
+                if (isOfKind(e, kind)) count++;
+            }
+            return count;
+        }
+        return countsBefore[kind][ends[r]+1] - countsBefore[kind][n+1];
+    }
+
+    /**
+     * The last element of the given kind below root which comes before node in document order.
+     * @param root the root element
+     * @param node an element below root
+     * @param kind one of the kinds defined in this class
+     * @return the element, or null if there is none.
+     */
+    public Element previous(Element root, Element node, int kind)
+    {
+        int r = position(root);
+        int n = position(node);
+        if (r < 0 || n <= r || n > ends[r]) {
+            TreeWalker tw = createTreeWalker(root, kind);
+            tw.setCurrentNode(node);
+            Node e;
+            while ((e = tw.previousNode()) != null) {
+                if (e != root && isOfKind(e, kind)) return (Element) e;
+            }
+            return null;
+        }
+        int k = countsBefore[kind][n] - 1;
+        if (k < 0 || kindPositions[kind][k] <= r) {
+            return null;
+        }
+        return elements[kindPositions[kind][k]];
+    }
+
+    /**
+     * The first element of the given kind below root which comes after node in document order.
+     * @param root the root element
+     * @param node an element below root
+     * @param kind one of the kinds defined in this class
+     * @return the element, or null if there is none.
+     */
+    public Element next(Element root, Element node, int kind)
+    {
+        int r = position(root);
+        int n = position(node);
+        if (r < 0 || n <= r || n > ends[r]) {
+            TreeWalker tw = createTreeWalker(root, kind);
+            tw.setCurrentNode(node);
+            Node e;
+            while ((e = tw.nextNode()) != null) {
+                if (isOfKind(e, kind)) return (Element) e;
+            }
+            return null;
+        }
+        int k = countsBefore[kind][n+1];
+        if (k >= kindPositions[kind].length || kindPositions[kind][k] > ends[r]) {
+            return null;
+        }
+        return elements[kindPositions[kind][k]];
+    }
+
+    /**
+     * The number of elements in the index.
+     */
+    public int size()
+    {
+        return elements.length;
+    }
+
+    private int position(Element e)
+    {
+        Integer pos = positions.get(e);
+        return pos != null ? pos : -1;
+    }
+
+    private static TreeWalker createTreeWalker(Element root, int kind)
+    {
+        return MaryDomUtils.createTreeWalker(root, tagName(kind));
+    }
+
+    private static String tagName(int kind)
+    {
+        switch (kind) {
+        case TOKEN:
+        case WORD:
+            return MaryXML.TOKEN;
+        case SYLLABLE:
+        case STRESSED_SYLLABLE:
+        case ACCENTED_SYLLABLE:
+            return MaryXML.SYLLABLE;
+        case PHRASE:
+            return MaryXML.PHRASE;
+        default:
+            throw new IllegalArgumentException("Unknown kind of element: "+kind);
+        }
+    }
+
+    private static boolean isOfKind(Node node, int kind)
+    {
+        if (!node.getNodeName().equals(tagName(kind))) {
+            return false;
+        }
+        Element e = (Element) node;
+        switch (kind) {
+        case WORD:
+            return e.hasAttribute("ph");
+        case STRESSED_SYLLABLE:
+            return e.getAttribute("stress").equals("1");
+        case ACCENTED_SYLLABLE:
+            return !e.getAttribute("accent").equals("");
+        default:
+            return true;
+        }
+    }
+}
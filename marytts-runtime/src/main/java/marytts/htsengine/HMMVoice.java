@@ -69,6 +69,7 @@ import java.util.Locale;
 import javax.sound.sampled.AudioFormat;
 
 import marytts.config.MaryConfig;
+import marytts.exceptions.MaryConfigurationException;
 import marytts.modules.synthesis.Voice;
 import marytts.modules.synthesis.WaveformSynthesizer;
 import marytts.server.MaryProperties;
@@ -79,7 +80,7 @@ import org.apache.log4j.Logger;
 
 public class HMMVoice extends Voice {
  
-    private HMMData htsData = new HMMData();
+    private volatile HMMData htsData = null;
     private Logger logger = MaryUtils.getLogger("HMMVoice");
     
    /** 
@@ -87,18 +88,51 @@ public class HMMVoice extends Voice {
     public HMMVoice(String voiceName, WaveformSynthesizer synthesizer) throws Exception {
     	super(voiceName, synthesizer);
 
-    	htsData.initHMMData(voiceName);
+    	initData();
        
    }
+
+   /** Load the HMM models and trees of this voice. */
+   @Override
+   protected void loadData() throws MaryConfigurationException {
+       HMMData data = new HMMData();
+       try {
+           data.initHMMData(getName());
+       } catch (MaryConfigurationException mce) {
+           throw mce;
+       } catch (Exception e) {
+           throw new MaryConfigurationException("Cannot load HMM data for voice '"+getName()+"'", e);
+       }
+       htsData = data;
+   }
+
+   @Override
+   protected void releaseData() {
+       htsData = null;
+   }
    
-   public HMMData getHMMData(){ return this.htsData; }
+   /**
+    * Get the HMM data of this voice, loading it if needed. A request should get it once and
+    * use it throughout, so that it uses the same data even if the voice is unloaded and
+    * loaded again in the meantime.
+    * @return the data, never null
+    * @throws IllegalStateException if the data cannot be loaded
+    */
+   public HMMData getHMMData(){
+       HMMData data;
+       do { // the data may be unloaded again right after loading it
+           needData();
+           data = this.htsData;
+       } while (data == null);
+       return data;
+   }
    
    /* set parameters for generation: f0Std, f0Mean and length, default values 1.0, 0.0 and 0.0 */
    /* take the values from audio effects component through a MaryData object */
-   public void setF0Std(double dval) { htsData.setF0Std(dval); }
-   public void setF0Mean(double dval) { htsData.setF0Mean(dval); }
-   public void setLength(double dval) { htsData.setLength(dval); }
-   public void setDurationScale(double dval) { htsData.setDurationScale(dval); }
+   public void setF0Std(double dval) { getHMMData().setF0Std(dval); }
+   public void setF0Mean(double dval) { getHMMData().setF0Mean(dval); }
+   public void setLength(double dval) { getHMMData().setLength(dval); }
+   public void setDurationScale(double dval) { getHMMData().setDurationScale(dval); }
     
 
 } /* class HMMVoice */
@@ -128,6 +128,43 @@ public class HTSPStream {
  
   private Logger logger = MaryUtils.getLogger("PStream");
   
+  /* The terms of W'U^{-1}W and W'U^{-1}M contributed by each window coefficient, in the order
+   * in which they are accumulated: term s adds coefficient TERM_COEF[s] of window TERM_WINDOW[s]
+   * at frame t+TERM_SHIFT[s], and TERM_BAND[s][k] is the coefficient it is multiplied with for
+   * band k of WUW[t] (0.0 where there is none). They are computed once from the windows, so that
+   * calcWUWandWUM() does not have to look up and test every coefficient for every frame. */
+  private static final int TERM_WINDOW[];
+  private static final int TERM_SHIFT[];
+  private static final double TERM_COEF[];
+  private static final double TERM_BAND[][];
+  private static final int BAND_WIDTH = 3;
+  static {
+    HTSDWin win = new HTSDWin();
+    int num = 0;
+    for(int i=0; i<win.getNum(); i++)
+      for(int j=win.getWidth(i, WLEFT); j<=win.getWidth(i, WRIGHT); j++)
+        if(win.getCoef(i,-j) != 0.0)
+          num++;
+    TERM_WINDOW = new int[num];
+    TERM_SHIFT = new int[num];
+    TERM_COEF = new double[num];
+    TERM_BAND = new double[num][BAND_WIDTH];
+    int s = 0;
+    for(int i=0; i<win.getNum(); i++) {
+      for(int j=win.getWidth(i, WLEFT); j<=win.getWidth(i, WRIGHT); j++) {
+        if(win.getCoef(i,-j) == 0.0)
+          continue;
+        TERM_WINDOW[s] = i;
+        TERM_SHIFT[s] = j;
+        TERM_COEF[s] = win.getCoef(i,-j);
+        for(int k=0; k<BAND_WIDTH; k++)
+          if(k-j >= win.getWidth(i, WLEFT) && k-j <= win.getWidth(i, WRIGHT))
+            TERM_BAND[s][k] = win.getCoef(i,k-j);
+        s++;
+      }
+    }
+  }
+  
   /* Constructor */
   public HTSPStream(int vector_size, int utt_length, int fea_type, int maxIterationsGV) throws Exception {
 	/* In the c code for each PStream there is an InitDwin() and an InitPStream() */ 
@@ -140,13 +177,38 @@ public class HTSPStream {
     order = vector_size / dw.getNum(); 
     nT = utt_length;
     maxGVIter = maxIterationsGV;
-    width = 3;            /* hard-coded to 3, in the c code is:  pst->width = pst->dw.max_L*2+1;  */
+    width = BAND_WIDTH;   /* hard-coded to 3, in the c code is:  pst->width = pst->dw.max_L*2+1;  */
                           /* pst->dw.max_L is hard-code to 1, for all windows                     */
+	mseq = new double[nT][vSize];
+	ivseq = new double[nT][vSize];
+	initMatrices();
+  }
+  
+  /* Constructor of a stream over frames from to to-1 of the given stream, for mlpg() over a window.
+   * The pdfs are only read during generation, so they are shared rather than copied. */
+  private HTSPStream(HTSPStream utt, int from, int to) {
+	dw = utt.dw;
+	feaType = utt.feaType;
+	vSize = utt.vSize;
+	order = utt.order;
+	nT = to - from;
+	maxGVIter = utt.maxGVIter;
+	width = utt.width;
+	mseq = new double[nT][];
+	ivseq = new double[nT][];
+	System.arraycopy(utt.mseq, from, mseq, 0, nT);
+	System.arraycopy(utt.ivseq, from, ivseq, 0, nT);
+	initMatrices();
+	for(int t=from; t<to; t++)
+	  if(!utt.gvSwitch[t])
+	    setGvSwitch(t-from, false);
+	setGvMeanVar(utt.gvmean, utt.gvcovInv);
+  }
+  
+  private void initMatrices() {
     par = new double[nT][order];
     
     /* ___________________________Matrices initialisation___________________ */
-	mseq = new double[nT][vSize];
-	ivseq = new double[nT][vSize];
 	g = new double[nT];
 	wuw = new double[nT][width];
 	wum = new double[nT];   
@@ -207,19 +269,44 @@ public class HTSPStream {
   /* mlpg: generate sequence of speech parameter vector maximizing its output probability for 
    * given pdf sequence */
   public void mlpg(HMMData htsData, boolean useGV) {
-	 int m;
-	 int M = order;
-	 boolean debug=false;
-  
      if(htsData.getUseContextDependentGV())
        logger.info("Context-dependent global variance optimization: gvLength = "+ gvLength );
      else
        logger.info("Global variance optimization");
      
+     generate(htsData, useGV);
+  }  /* method mlpg */
+  
+  
+  /* mlpg over a window: generate the parameters of frames start to end-1 only, taking into
+   * account up to context frames on either side of them. The parameters of the other frames
+   * are not changed. This approximates mlpg() over the whole utterance, and allows the 
+   * parameters to be generated piece by piece for incremental synthesis; if GV is used,
+   * it is optimised over the frames in the window rather than over the whole utterance. */
+  public void mlpg(HMMData htsData, boolean useGV, int start, int end, int context) throws Exception {
+     int t;
+     int from = Math.max(0, start-context);
+     int to = Math.min(nT, end+context);
+     
+     HTSPStream window = new HTSPStream(this, from, to);
+     window.generate(htsData, useGV);
+     for(t=start; t<end; t++)
+       System.arraycopy(window.par[t-from], 0, par[t], 0, order);
+  }  /* method mlpg */
+  
+  
+  private void generate(HMMData htsData, boolean useGV) {
+	 int m;
+	 int M = order;
+	 boolean debug=false;
+	 
 	 for (m=0; m<M; m++) {
 	   calcWUWandWUM( m , debug);
-	   ldlFactorization(debug);   /* LDL factorization                               */
-	   forwardSubstitution();     /* forward substitution in Cholesky decomposition  */
+	   if(debug) {
+	     ldlFactorization(debug);   /* LDL factorization                               */
+	     forwardSubstitution();     /* forward substitution in Cholesky decomposition  */
+	   } else
+	     ldlFactorizationAndForwardSubstitution();
 	   backwardSubstitution(m);   /* backward substitution in Cholesky decomposition */
 	          
 
@@ -235,7 +322,7 @@ public class HTSPStream {
          
        }
 	 }  
-  }  /* method mlpg */
+  }  /* method generate */
   
   
   /*----------------- HTS parameter generation fuctions  -----------------------------*/
@@ -251,39 +338,31 @@ public class HTSPStream {
   /* So having A and B we can find the parameters C.          */
   /* U^{-1} = inverse covariance : inseq[][]                  */
   private void calcWUWandWUM(int m, boolean debug) {
-	int t, i, j, k,iorder;
-	double WU;
-	double val;
+	int t, s, k, tj, iorder;
+	double WU, sum;
+	double row[], band[];
 	
 	for(t=0; t<nT; t++) {
 	  /* initialise */
-	  wum[t] = 0.0;
-	  for(i=0; i<width; i++)
-		wuw[t][i] = 0.0;
+	  sum = 0.0;
+	  row = wuw[t];
+	  for(k=0; k<width; k++)
+		row[k] = 0.0;
 	  
 	  /* calc WUW & WUM, U is already inverse  */
-	    for(i=0; i<dw.getNum(); i++) {
-	      iorder = i*order+m;
-	      for( j = dw.getWidth(i, WLEFT); j <= dw.getWidth(i, WRIGHT); j++) {
-
-	          if( ( t+j>=0 ) && ( t+j<nT ) && ( dw.getCoef(i,-j)!=0.0 )  ) {
-	             
-	             //System.out.format("coef[%d,%d]=%f  ivseq[%d][%d]=%f  ", i, -j, dw.getCoef(i,-j),t+j,iorder, ivseq[t+j][iorder]); 
-	              
-				 WU = dw.getCoef(i,-j) * ivseq[t+j][iorder];
-				 
-				 wum[t] += WU * mseq[t+j][iorder];
-				 
-				 //System.out.format("wu=%f wum[%d]=%f iorder=%d\n", WU, t, wum[t], iorder);
-				 
-				 for(k=0; ( k<width ) && ( t+k<nT ); k++)
-				   if( ( k-j<=dw.getWidth(i, 1) ) && ( dw.getCoef(i,(k-j)) != 0.0 ) ) {
-				     wuw[t][k] += WU * dw.getCoef(i,(k-j));
-				     val = WU * dw.getCoef(i,(k-j));
-				   }
-			  }
-		  }		  
-	    }  /* for i */	    
+	  for(s=0; s<TERM_COEF.length; s++) {
+	    tj = t + TERM_SHIFT[s];
+	    if( tj<0 || tj>=nT )
+	      continue;
+	    iorder = TERM_WINDOW[s]*order+m;
+	    WU = TERM_COEF[s] * ivseq[tj][iorder];
+	    sum += WU * mseq[tj][iorder];
+	    band = TERM_BAND[s];
+	    for(k=0; ( k<width ) && ( t+k<nT ); k++)
+	      if( band[k] != 0.0 )
+	        row[k] += WU * band[k];
+	  }
+	  wum[t] = sum;
 	}  /* for t */
 	if(debug){ 
 	for(t=0; t<nT; t++) {
@@ -328,6 +407,37 @@ public class HTSPStream {
 	
   }
   
+  /* ldlFactorization() and forwardSubstitution() in a single pass over the frames, for width 3:
+   * row t of the factorization and g[t] only depend on rows t-1 and t-2, which are final by then.
+   * The operations are the same, in the same order, as in the two separate methods. */
+  private void ldlFactorizationAndForwardSubstitution() {
+	 int t;
+	 double row[], prev1[], prev2[];
+	 double gt;
+	 
+	 for(t=0; t<nT; t++) {
+	   row = wuw[t];
+	   gt = wum[t];
+	   if(t >= 1) {
+	     prev1 = wuw[t-1];
+	     row[0] -= prev1[1] * prev1[1] * prev1[0];
+	     if(t >= 2) {
+	       prev2 = wuw[t-2];
+	       row[0] -= prev2[2] * prev2[2] * prev2[0];
+	       row[1] -= prev1[1] * prev1[2] * prev1[0];
+	       gt -= prev1[1] * g[t-1];
+	       gt -= prev2[2] * g[t-2];
+	     } else {
+	       row[1] -= prev1[1] * prev1[2] * prev1[0];
+	       gt -= prev1[1] * g[t-1];
+	     }
+	   }
+	   row[1] /= row[0];
+	   row[2] /= row[0];
+	   g[t] = gt;
+	 }
+  }
+  
   /* forward_Substitution */ 
   private void forwardSubstitution() {
 	 int t, i;
@@ -348,11 +458,16 @@ public class HTSPStream {
   private void backwardSubstitution(int m) {
 	 int t, i;
 	 
+	 double row[];
+	 double p;
+	 
 	 for(t=(nT-1); t>=0; t--) {
-	   par[t][m] = g[t] / wuw[t][0];
+	   row = wuw[t];
+	   p = g[t] / row[0];
 	   for(i=1; (i<width) && (t+i<nT); i++) {
-		   par[t][m] -= wuw[t][i+1-1] * par[t+i][m]; /* i as index should be i-1 */
+		   p -= row[i+1-1] * par[t+i][m]; /* i as index should be i-1 */
 	   }
+	   par[t][m] = p;
 	   //System.out.println("  par[" + t + "]["+ m + "]=" + par[t][m]); 
 	 }
 	  
@@ -70,16 +70,25 @@ import java.io.EOFException;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import marytts.signalproc.analysis.Mfccs;
+import marytts.server.MaryProperties;
 import marytts.signalproc.analysis.PitchReaderWriter;
 import marytts.util.MaryUtils;
 import marytts.util.io.LEDataInputStream;
@@ -111,6 +120,18 @@ public class HTSParameterGeneration {
   private int totalUttFrame;   // total number of frames in a mcep, str or mag Pst
   private int totalLf0Frame;   // total number of f0 voiced frames in a lf0 Pst
   
+  /* for incremental generation of MGC, STR and MAG, see htsIncrementalParameterGeneration() */
+  private HMMData incrementalData = null; // non-null while there are frames left to generate
+  private int windowSize;      // number of frames generated at a time
+  private int contextSize;     // number of frames on either side of a window taken into account
+  private int generatedFrames; // number of frames generated so far
+  private boolean useStrGV;
+  private boolean useMagGV;
+  
+  /* the streams are independent of each other, so they can be generated in parallel */
+  private boolean parallelStreams = false;
+  private static ExecutorService streamPool;
+  
   private Logger logger = MaryUtils.getLogger("ParameterGeneration");
   
   public double getMcep(int i, int j){ return mcepPst.getPar(i, j); }
@@ -136,6 +157,11 @@ public class HTSParameterGeneration {
   public void setVoiced(int i, boolean bval){ voiced[i]=bval; }
   public boolean [] getVoicedArray(){ return voiced; }
   public void setVoicedArray(boolean []var){ voiced = var; }
+  
+  /** Generate the parameters of the MGC, LF0, STR and MAG streams in parallel rather than one after the other.
+   * The parameters are the same either way. */
+  public void setParallelStreams(boolean bval){ parallelStreams = bval; }
+  public boolean getParallelStreams(){ return parallelStreams; }
 	
   /* Inverse of a given double */
   /* We actually need the inverse of the matrix of covariance, but since this matrix */ 
@@ -165,7 +191,190 @@ public class HTSParameterGeneration {
   * @param parFileName : file name to save parameters
   * @param debug : true for more debug information
   */
-  public void htsMaximumLikelihoodParameterGeneration(HTSUttModel um, HMMData htsData, String parFileName, boolean debug) throws Exception{
+  public void htsMaximumLikelihoodParameterGeneration(final HTSUttModel um, final HMMData htsData, String parFileName, boolean debug) throws Exception{
+      
+    copyPdfs(um, htsData);
+    List<Callable<Object>> streams = new ArrayList<Callable<Object>>();
+			
+	/* parameter generation for mcep */  
+    if( mcepPst != null ) {
+	  if(htsData.getUseGV())
+	    mcepPst.setGvMeanVar(htsData.getGVModelSet().getGVmeanMgc(), htsData.getGVModelSet().getGVcovInvMgc()); 
+      streams.add(new Callable<Object>() {
+        public Object call() {
+	      logger.info("Parameter generation for MGC: ");
+          mcepPst.mlpg(htsData, htsData.getUseGV());
+          return null;
+        }
+      });
+    }
+   
+    streams.add(new Callable<Object>() {
+      public Object call() throws Exception {
+        generateLf0(um, htsData);
+        return null;
+      }
+    });
+ 
+	/* parameter generation for str */
+    if( strPst != null ) {
+      final boolean useGV = htsData.getUseGV() && (htsData.getPdfStrGVStream() != null);
+      if(useGV)
+        strPst.setGvMeanVar(htsData.getGVModelSet().getGVmeanStr(), htsData.getGVModelSet().getGVcovInvStr());
+      streams.add(new Callable<Object>() {
+        public Object call() {
+          logger.debug("Parameter generation for STR ");
+          strPst.mlpg(htsData, useGV);
+          return null;
+        }
+      });
+    }
+
+	/* parameter generation for mag */
+    if( magPst != null ) {
+      final boolean useGV = htsData.getUseGV() && (htsData.getPdfMagGVStream() != null);
+      if(useGV)
+        magPst.setGvMeanVar(htsData.getGVModelSet().getGVmeanMag(), htsData.getGVModelSet().getGVcovInvMag());
+      streams.add(new Callable<Object>() {
+        public Object call() {
+          logger.info("Parameter generation for MAG ");
+	      magPst.mlpg(htsData, useGV);
+          return null;
+        }
+      });
+    }
+    
+    generateStreams(streams);
+	   
+    if(debug) {
+        saveParam(parFileName+"mcep.bin", mcepPst, HMMData.MGC);  // no header
+        saveParam(parFileName+"lf0.bin", lf0Pst, HMMData.LF0);    // no header
+        //saveParamMaryFormat(parFileName, mcepPst, HMMData.MGC);
+        //saveParamMaryFormat(parFileName, lf0Pst, HMMData.LF0);
+     }
+
+	  
+  }  /* method htsMaximumLikelihoodParameterGeneration */
+  
+  
+  /** HTS maximum likelihood parameter generation for incremental synthesis.
+  * LF0 is generated here for the whole utterance, because it is cheap to generate and 
+  * the realised prosody depends on it. MGC, STR and MAG are generated only when they are 
+  * needed, one window of frames at a time, through generateUpToFrame().
+  * @param um  : utterance model sequence after processing Mary context features
+  * @param htsData : parameters and configuration of the voice
+  * @param windowSize : number of frames to generate at a time
+  * @param contextSize : number of frames on either side of a window taken into account when generating it
+  */
+  public void htsIncrementalParameterGeneration(HTSUttModel um, HMMData htsData, int windowSize, int contextSize) throws Exception{
+      
+    copyPdfs(um, htsData);
+    generateLf0(um, htsData);
+    
+    if( mcepPst != null && htsData.getUseGV() )
+      mcepPst.setGvMeanVar(htsData.getGVModelSet().getGVmeanMgc(), htsData.getGVModelSet().getGVcovInvMgc());
+    useStrGV = ( strPst != null && htsData.getUseGV() && htsData.getPdfStrGVStream() != null );
+    if( useStrGV )
+      strPst.setGvMeanVar(htsData.getGVModelSet().getGVmeanStr(), htsData.getGVModelSet().getGVcovInvStr());
+    useMagGV = ( magPst != null && htsData.getUseGV() && htsData.getPdfMagGVStream() != null );
+    if( useMagGV )
+      magPst.setGvMeanVar(htsData.getGVModelSet().getGVmeanMag(), htsData.getGVModelSet().getGVcovInvMag());
+    
+    this.windowSize = Math.max(1, windowSize);
+    this.contextSize = Math.max(0, contextSize);
+    generatedFrames = 0;
+    incrementalData = htsData;
+    logger.debug("Incremental parameter generation for " + totalUttFrame + " frames, window=" + this.windowSize + " context=" + this.contextSize);
+      
+  }  /* method htsIncrementalParameterGeneration */
+  
+  
+  /** Make sure that the MGC, STR and MAG parameters have been generated up to and including
+  * the given frame. This does nothing unless htsIncrementalParameterGeneration() was used,
+  * in which case it must be called before the parameters of a frame are read.
+  * @param frame : utterance frame whose parameters are needed next
+  */
+  public void generateUpToFrame(int frame) throws Exception{
+    while( incrementalData != null && frame >= generatedFrames ) {
+      final HMMData htsData = incrementalData;
+      final int start = generatedFrames;
+      final int end = Math.min(generatedFrames + windowSize, totalUttFrame);
+      List<Callable<Object>> streams = new ArrayList<Callable<Object>>();
+      if( mcepPst != null )
+        streams.add(new Callable<Object>() {
+          public Object call() throws Exception {
+            mcepPst.mlpg(htsData, htsData.getUseGV(), start, end, contextSize);
+            return null;
+          }
+        });
+      if( strPst != null )
+        streams.add(new Callable<Object>() {
+          public Object call() throws Exception {
+            strPst.mlpg(htsData, useStrGV, start, end, contextSize);
+            return null;
+          }
+        });
+      if( magPst != null )
+        streams.add(new Callable<Object>() {
+          public Object call() throws Exception {
+            magPst.mlpg(htsData, useMagGV, start, end, contextSize);
+            return null;
+          }
+        });
+      generateStreams(streams);
+      generatedFrames = end;
+      if( generatedFrames >= totalUttFrame )
+        incrementalData = null; /* all done */
+    }
+  }
+  
+  
+  /* Run the parameter generation of the given streams, in parallel if parallelStreams is set.
+   * The first exception thrown by any of them is rethrown after all of them have finished. */
+  private void generateStreams(List<Callable<Object>> streams) throws Exception{
+    if( !parallelStreams || streams.size() < 2 ) {
+      for(Callable<Object> stream : streams)
+        stream.call();
+      return;
+    }
+    ExecutorService pool = getStreamPool();
+    List<Future<Object>> results = new ArrayList<Future<Object>>(streams.size());
+    for(Callable<Object> stream : streams)
+      results.add(pool.submit(stream));
+    Exception error = null;
+    for(Future<Object> result : results) {
+      try {
+        result.get();
+      } catch (ExecutionException e) {
+        if( error == null )
+          error = (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+      }
+    }
+    if( error != null )
+      throw error;
+  }
+  
+  /* The threads for generating streams in parallel, shared by all utterances */
+  private static synchronized ExecutorService getStreamPool() {
+    if( streamPool == null ) {
+      int numThreads = MaryProperties.getInteger("htsengine.parallelstreams.threads", 0);
+      if( numThreads <= 0 )
+        numThreads = Runtime.getRuntime().availableProcessors();
+      streamPool = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+        private int count = 0;
+        public synchronized Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "hts-stream-" + (++count));
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    return streamPool;
+  }
+  
+  
+  /* Initialisation of the PStreams, and copy of the pdfs of the utterance model into them */
+  private void copyPdfs(HTSUttModel um, HMMData htsData) throws Exception{
 	  
 	int frame, uttFrame, lf0Frame;
 	int state, lw, rw, k, n, i, numVoicedInModel;
@@ -173,6 +382,8 @@ public class HTSParameterGeneration {
     HTSModel m;
     CartTreeSet ms = htsData.getCartTreeSet();
     
+    incrementalData = null;
+    
 	/* Initialisation of PStream objects */
   	/* Initialise Parameter generation using UttModel um and Modelset ms */
   	/* initialise PStream objects for all the parameters that are going to be generated: */
@@ -303,15 +514,14 @@ public class HTSParameterGeneration {
       	} /* for each frame in this state */
       } /* for each state in this model */
 	}  /* for each model in this utterance */ 
-			
-	/* parameter generation for mcep */  
-    if( mcepPst != null ) {
-	  logger.info("Parameter generation for MGC: ");
-	  if(htsData.getUseGV())
-	    mcepPst.setGvMeanVar(htsData.getGVModelSet().getGVmeanMgc(), htsData.getGVModelSet().getGVcovInvMgc()); 
-      mcepPst.mlpg(htsData, htsData.getUseGV());
-    }
-   
+	
+  }  /* method copyPdfs */
+  
+  
+  /* Generation of LF0, or loading of external F0 if acoustic models are used */
+  private void generateLf0(HTSUttModel um, HMMData htsData) throws Exception{
+    CartTreeSet ms = htsData.getCartTreeSet();
+    
     if(htsData.getUseAcousticModels())
         loadMaryXmlF0(um, htsData);
     else if ( lf0Pst != null ){
@@ -323,38 +533,7 @@ public class HTSParameterGeneration {
         //htsData.getCartTreeSet().getNumStates()
         setRealisedF0(lf0Pst, um, ms.getNumStates());
     }  
- 
-	/* parameter generation for str */
-    boolean useGV=false;
-    if( strPst != null ) {
-      logger.debug("Parameter generation for STR ");
-      if(htsData.getUseGV() && (htsData.getPdfStrGVStream() != null) ){
-        useGV = true;
-        strPst.setGvMeanVar(htsData.getGVModelSet().getGVmeanStr(), htsData.getGVModelSet().getGVcovInvStr());
-      }
-      strPst.mlpg(htsData, useGV);
-    }
-
-	/* parameter generation for mag */
-    useGV = false;
-    if( magPst != null ) {
-      logger.info("Parameter generation for MAG ");
-      if(htsData.getUseGV() && (htsData.getPdfMagGVStream() != null) ){
-        useGV = true;
-        magPst.setGvMeanVar(htsData.getGVModelSet().getGVmeanMag(), htsData.getGVModelSet().getGVcovInvMag());
-      }
-	  magPst.mlpg(htsData, useGV);
-    }
-	   
-    if(debug) {
-        saveParam(parFileName+"mcep.bin", mcepPst, HMMData.MGC);  // no header
-        saveParam(parFileName+"lf0.bin", lf0Pst, HMMData.LF0);    // no header
-        //saveParamMaryFormat(parFileName, mcepPst, HMMData.MGC);
-        //saveParamMaryFormat(parFileName, lf0Pst, HMMData.LF0);
-     }
-
-	  
-  }  /* method htsMaximumLikelihoodParameterGeneration */
+  }  /* method generateLf0 */
   
   
   
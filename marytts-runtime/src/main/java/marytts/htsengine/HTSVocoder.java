@@ -151,8 +151,10 @@ public class HTSVocoder {
     private boolean gauss;         /* flag to use Gaussian noise */
     private double p1;             /* used in excitation generation */
     private double pc;             /* used in excitation generation */
-    private double pade[];         /* used in mlsadf */
-    private int ppade;             /* offset for vector ppade */  
+    /* pade approximation coefficients of order PADEORDER, used in mlsadf */
+    private static final double[] PADE = {1.0, 0.4999391, 0.1107098, 0.01369984, 0.0009564853, 0.00003041721};
+
+    private HTSVocoderContext context;  /* working memory, taken from the pool in initVocoder */
 
     private double C[];            /* used in the MLSA/MGLSA filter */
     private double CC[];           /* used in the MLSA/MGLSA filter */
@@ -163,6 +165,8 @@ public class HTSVocoder {
     private int    freqt_size;          /* buffer size for freqt */
     private double spectrum2en_buff[];  /* used in spectrum2en */
     private int    spectrum2en_size;    /* buffer size for spectrum2en */
+    private double spectrum2en_cep[];   /* used in spectrum2en */
+    private double spectrum2en_ir[];    /* used in spectrum2en */
     private double postfilter_buff[];   /* used in postfiltering */
     private int    postfilter_size;     /* buffer size for postfiltering */
     private double lsp2lpc_buff[];      /* used in lsp2lpc */
@@ -191,9 +195,10 @@ public class HTSVocoder {
     
     /** The initialisation of VocoderSetup should be done when there is already 
       * information about the number of feature vectors to be processed,
-      * size of the mcep vector file, etc. */
-    private void initVocoder(int mcep_order, int mcep_vsize, HMMData htsData) {
-        int vector_size;
+      * size of the mcep vector file, etc. 
+      * The working memory is taken from the pool of {@link HTSVocoderContext}s,
+      * and is returned with releaseVocoder() when the vocoding is done or has failed. */
+    private void initVocoder(int mcep_order, int mcep_vsize, int mixFilterOrder, HMMData htsData) {
         
         stage = htsData.getStage();
         if(stage != 0)
@@ -209,60 +214,29 @@ public class HTSVocoder {
         
         rand = new Random();
 
-        if(stage == 0 ){  /* for MGC */
-            
-          /* mcep_order=74 and pd=PADEORDER=5 (if no HTS_EMBEDDED is used) */
-          vector_size = (mcep_vsize * ( 3 + PADEORDER) + 5 * PADEORDER + 6) - (3 * (mcep_order+1));
-          C    = new double[(mcep_order+1)];
-          CC   = new double[(mcep_order+1)];
-          CINC = new double[(mcep_order+1)];
-          D1   = new double[vector_size];
-                    
-          freqt_size       = 0;
-          spectrum2en_size = 0;
-          postfilter_size  = 0;
-          lsp2lpc_size     = 0;
-          gc2gc_size       = 0;
-            
-          vector_size=21;
-          pade = new double[vector_size];
-          /* ppade is a copy of pade in mlsadf() function : ppade = &( pade[pd*(pd+1)/2] ); */
-          ppade = PADEORDER*(PADEORDER+1)/2;  /* offset for vector pade */
-          pade[0] = 1.0;
-          pade[1] = 1.0; 
-          pade[2] = 0.0;
-          pade[3] = 1.0; 
-          pade[4] = 0.0;       
-          pade[5] = 0.0;
-          pade[6] = 1.0; 
-          pade[7] = 0.0;       
-          pade[8] = 0.0;        
-          pade[9] = 0.0;
-          pade[10] = 1.0;
-          pade[11] = 0.4999273; 
-          pade[12] = 0.1067005; 
-          pade[13] = 0.01170221; 
-          pade[14] = 0.0005656279;
-          pade[15] = 1.0; 
-          pade[16] = 0.4999391; 
-          pade[17] = 0.1107098; 
-          pade[18] = 0.01369984; 
-          pade[19] = 0.0009564853;
-          pade[20] = 0.00003041721;
-        
-          pt1 = PADEORDER+1;
-          pt2 = ( 2 * (PADEORDER+1)) + (PADEORDER * (mcep_order+2));
-          pt3 = new int[PADEORDER+1];
-          for(int i=PADEORDER; i>=1; i--)
-            pt3[i] = ( 2 * (PADEORDER+1)) + ((i-1)*(mcep_order+2));
-          
-        } else { /* for LSP */
-            vector_size = ((mcep_vsize+1) * (stage+3)) - ( 3 * (mcep_order+1));
-            C  = new double[(mcep_order+1)];
-            CC = new double[(mcep_order+1)];
-            CINC = new double[(mcep_order+1)];
-            D1 = new double[vector_size];   
-        }
+        /* the sizes of D1 and the offsets in it for MGC (stage 0) or LSP are computed by the context */
+        context = HTSVocoderContext.acquire(mcep_order, mcep_vsize, stage, fprd, mixFilterOrder);
+        C    = context.C;
+        CC   = context.CC;
+        CINC = context.CINC;
+        D1   = context.D1;
+        pt1  = context.pt1;
+        pt2  = context.pt2;
+        pt3  = context.pt3;
+
+        /* the buffers are large enough for this order, so they are never reallocated */
+        freqt_buff       = context.freqtBuff;
+        freqt_size       = context.freqtSize;
+        spectrum2en_buff = context.spectrum2enBuff;
+        spectrum2en_cep  = context.cep;
+        spectrum2en_ir   = context.ir;
+        spectrum2en_size = mcep_order;
+        postfilter_buff  = context.postfilterBuff;
+        postfilter_size  = mcep_order;
+        lsp2lpc_buff     = context.lsp2lpcBuff;
+        lsp2lpc_size     = mcep_order;
+        gc2gc_buff       = context.gc2gcBuff;
+        gc2gc_size       = mcep_order;
         
         /* excitation initialisation */
         p1 = -1;
@@ -270,6 +244,14 @@ public class HTSVocoder {
     
     } /* method initVocoder */
     
+    /** Return the working memory taken by initVocoder() to the pool. */
+    private void releaseVocoder() {
+        if(context != null) {
+          HTSVocoderContext.release(context);
+          context = null;
+        }
+    }
+    
     
 
     /** 
@@ -331,6 +313,18 @@ public class HTSVocoder {
     public double [] htsMLSAVocoder(HTSPStream lf0Pst, HTSPStream mcepPst, HTSPStream strPst, HTSPStream magPst, 
                                     boolean [] voiced, HMMData htsData, HTSVocoderDataProducer audioProducer)
     throws Exception {
+      try {
+        return mlsaVocoder(lf0Pst, mcepPst, strPst, magPst, voiced, htsData, audioProducer);
+      } finally {
+        /* the working memory goes back to the pool also if the synthesis fails */
+        releaseVocoder();
+      }
+    } /* method htsMLSAVocoder() */
+    
+    
+    private double [] mlsaVocoder(HTSPStream lf0Pst, HTSPStream mcepPst, HTSPStream strPst, HTSPStream magPst, 
+                                  boolean [] voiced, HMMData htsData, HTSVocoderDataProducer audioProducer)
+    throws Exception {
 
       double inc, x, MaxSample;
       short sx;
@@ -368,34 +362,34 @@ public class HTSVocoder {
       /* Initialise vocoder and mixed excitation, once initialised it is known the order
        * of the filters so the shaping filters hp and hn can be initialised. */
       m = mcepPst.getOrder();
-      mc = new double[m];
-      initVocoder(m-1, mcepPst.getVsize()-1, htsData);
-      double pulse[] = new double[fprd];
-      double noise[] = new double[fprd];
-      double source[] = new double[fprd];
-      
-      d = new double[m];
-      if(lpcVocoder){
-        logger.debug("Using LPC vocoder"); 
-        for(i=0; i<m; i++)
-          d[i] = 0.0;
-      }
       mixedExcitation = htsData.getUseMixExc();
       fourierMagnitudes = htsData.getUseFourierMag();
+      boolean mixFilters = mixedExcitation && htsData.getPdfStrStream() != null;
+      initVocoder(m-1, mcepPst.getVsize()-1, mixFilters ? htsData.getOrderFilters() : 0, htsData);
+      mc = context.mc;
+      double pulse[] = context.pulse;
+      double noise[] = context.noise;
+      double source[] = context.source;
+      
+      d = context.d;
+      for(i=0; i<m; i++)
+        d[i] = 0.0;
+      if(lpcVocoder)
+        logger.debug("Using LPC vocoder"); 
          
-      if( mixedExcitation && htsData.getPdfStrStream() != null ) {  
+      if( mixFilters ) {  
         numM = htsData.getNumFilters();
         orderM = htsData.getOrderFilters();
         
-        xpulseSignal = new double[orderM];
-        xnoiseSignal = new double[orderM];
+        xpulseSignal = context.xpulseSignal;
+        xnoiseSignal = context.xnoiseSignal;
         /* initialise xp_sig and xn_sig */
         for(i=0; i<orderM; i++)
           xpulseSignal[i] = xnoiseSignal[i] = 0;    
         
         h = htsData.getMixFilters();
-        hp = new double[orderM];  
-        hn = new double[orderM]; 
+        hp = context.hp;  
+        hn = context.hn; 
               
         //Check if the number of filters is equal to the order of strpst 
         //i.e. the number of filters is equal to the number of generated strengths per frame.
@@ -449,12 +443,18 @@ public class HTSVocoder {
       s = 0;   /* number of samples */
       s_double = 0;
       audio_size = computeAudioSize(mcepPst, htsData);
-      audio_double = new double[audio_size];  /* initialise buffer for audio */
+      /* initialise buffer for audio, unless the samples are passed on to the audio producer */
+      if(audioProducer == null)
+        audio_double = new double[audio_size];
       
       magSample = 1;
       magPulseSize = 0;
       for(mcepframe=0,lf0frame=0; mcepframe<mcepPst.getT(); mcepframe++) {
        
+        /* in incremental synthesis, the parameters of this frame may not have been generated yet */
+        if(audioProducer != null)
+          audioProducer.generateParameters(mcepframe);
+        
         /* get current feature vector mgc */ 
         for(i=0; i<m; i++)
           mc[i] = mcepPst.getPar(mcepframe, i); 
@@ -676,9 +676,10 @@ public class HTSVocoder {
         
         
           //System.out.format("%f ", x);  
-          audio_double[s_double] = x;
           if(audioProducer != null) {
               audioProducer.putOneDataPoint(x);
+          } else {
+              audio_double[s_double] = x;
           }
 
           s_double++;
@@ -726,7 +727,7 @@ public class HTSVocoder {
         
       return(audio_double);
       
-    } /* method htsMLSAVocoder() */
+    } /* method mlsaVocoder() */
     
     
     /**
@@ -746,78 +747,73 @@ public class HTSVocoder {
         System.out.println("v[" + i + "]=" + vec[i]);
     }
     
-    /** mlsafir: sub functions for MLSA filter */
-    private double mlsafir(double x, double b[], int m, double a, double aa, double d[], int _pt3 ) {
+    /** mlsafir: sub functions for MLSA filter. 
+     * The update of the delay line and the filter output are computed in one pass,
+     * and the delay line is shifted with one array copy. */
+    private static double mlsafir(double x, double b[], int m, double a, double aa, double d[], int _pt3 ) {
       double y = 0.0;
-      int i, k;
 
       d[_pt3+0] = x;
-      d[_pt3+1] = aa * d[_pt3+0] + ( a * d[_pt3+1] );
+      double prev = aa * x + ( a * d[_pt3+1] );
+      d[_pt3+1] = prev;
 
-      for(i=2; i<=m; i++){
-        d[_pt3+i] +=  a * ( d[_pt3+i+1] - d[_pt3+i-1]);
-      }
-      
-      for(i=2; i<=m; i++){ 
-        y += d[_pt3+i] * b[i];
+      for(int i=2; i<=m; i++){
+        double di = d[_pt3+i] + a * ( d[_pt3+i+1] - prev );
+        d[_pt3+i] = di;
+        y += di * b[i];
+        prev = di;
       }
        
-      for(i=m+1; i>1; i--){
-        d[_pt3+i] = d[_pt3+i-1];  
-      }
+      System.arraycopy(d, _pt3+1, d, _pt3+2, m);
        
       return(y);
     }
 
     
     /** mlsdaf1:  sub functions for MLSA filter */
-    private double mlsadf1(double x, double b[], int m, double a, double aa, double d[]) {
-      double v;
+    private static double mlsadf1(double x, double b[], double a, double aa, double d[], int pt1) {
       double out = 0.0;
-      int i, k;
+      double b1 = b[1];
       //pt1 --> pt = &d1[pd+1]  
        
-      for(i=PADEORDER; i>=1; i--) {
-    	int pt1_plus_i = pt1+i;
-        d[i] = aa * d[pt1_plus_i-1] + a * d[i];  
-        d[pt1_plus_i] = d[i] * b[1];
-        v = d[pt1_plus_i] * pade[ppade+i];
+      for(int i=PADEORDER; i>=1; i--) {
+        int pt1_plus_i = pt1+i;
+        double di = aa * d[pt1_plus_i-1] + a * d[i];
+        d[i] = di;
+        double w = di * b1;
+        d[pt1_plus_i] = w;
+        double v = w * PADE[i];
       
         //x += (1 & i) ? v : -v;
-        if(i == 1 || i == 3 || i == 5)
+        if((i & 1) != 0)
           x += v;
         else 
-          x += -v;
+          x -= v;
         out += v;
       }
       d[pt1 /* +0 */] = x;
       out += x;
       
-      
       return(out);
-      
     }
 
     /** mlsdaf2: sub functions for MLSA filter */
-    private double mlsadf2(double x, double b[], int m, double a, double aa, double d[]) {
-      double v;
+    private static double mlsadf2(double x, double b[], int m, double a, double aa, double d[], int pt2, int pt3[]) {
       double out = 0.0;
-      int i, k; 
       // pt2 --> pt = &d1[pd * (m+2)] 
       // pt3 --> pt = &d1[ 2*(pd+1) ] 
       
-      
-      for(i=PADEORDER; i>=1; i--) {   
-    	int pt2_plus_i = pt2+i;
-        d[pt2_plus_i] = mlsafir(d[pt2_plus_i-1], b, m, a, aa, d, pt3[i]);
-        v = d[pt2_plus_i] * pade[ppade+i];
+      for(int i=PADEORDER; i>=1; i--) {   
+        int pt2_plus_i = pt2+i;
+        double w = mlsafir(d[pt2_plus_i-1], b, m, a, aa, d, pt3[i]);
+        d[pt2_plus_i] = w;
+        double v = w * PADE[i];
           
-        if(i == 1 || i == 3 || i == 5)
+        if((i & 1) != 0)
           x += v;
         else
-          x += -v;
+          x -= v;
         out += v;
-        
       }
       d[pt2 /* +0 */] = x;
       out += x;
@@ -828,10 +824,8 @@ public class HTSVocoder {
     
     /** mlsadf: HTS Mel Log Spectrum Approximation filter */
     private double mlsadf(double x, double b[], int m, double a, double aa, double d[]) {
-      int k;   
-        
-      x = mlsadf1(x, b, m,   a, aa, d);  
-      x = mlsadf2(x, b, m-1, a, aa, d);
+      x = mlsadf1(x, b, a, aa, d, pt1);  
+      x = mlsadf2(x, b, m-1, a, aa, d, pt2, pt3);
        
       return x; 
     }
@@ -930,8 +924,12 @@ public class HTSVocoder {
         spectrum2en_buff = new double[arrayLength];        
         spectrum2en_size = m;
       }
-      cep = new double[arrayLength]; /* CHECK! these sizes!!! */
-      ir = new double[arrayLength];
+      if(spectrum2en_cep == null || spectrum2en_cep.length < arrayLength) {
+        spectrum2en_cep = new double[arrayLength]; /* CHECK! these sizes!!! */
+        spectrum2en_ir = new double[arrayLength];
+      }
+      cep = spectrum2en_cep;
+      ir = spectrum2en_ir;
       
       b2mc(b, spectrum2en_buff, m, a);
       /* freqt(vs->mc, m, vs->cep, vs->irleng - 1, -a);*/
@@ -1360,6 +1358,16 @@ public class HTSVocoder {
     
     /** this vocoder read the residual signal from resFile */
     public double [] htsMLSAVocoder_residual(HMMData htsData, HTSPStream mcepPst, String resFile)
+    throws Exception {
+      try {
+        return mlsaVocoderResidual(htsData, mcepPst, resFile);
+      } finally {
+        releaseVocoder();
+      }
+    } /* method htsMLSAVocoder_residual() */
+    
+    
+    private double [] mlsaVocoderResidual(HMMData htsData, HTSPStream mcepPst, String resFile)
     throws Exception {
 
       double x;  
@@ -1383,15 +1391,14 @@ public class HTSVocoder {
       /* Initialise vocoder and mixed excitation, once initialised it is known the order
        * of the filters so the shaping filters hp and hn can be initialised. */
       m = mcepPst.getOrder();
-      mc = new double[m];
-      initVocoder(m-1, mcepPst.getVsize()-1, htsData);
+      initVocoder(m-1, mcepPst.getVsize()-1, 0, htsData);
+      mc = context.mc;
       
-      d = new double[m];
-      if(lpcVocoder){
+      d = context.d;
+      for(i=0; i<m; i++)
+        d[i] = 0.0;
+      if(lpcVocoder)
         logger.debug("Using LPC vocoder");  
-        for(i=0; i<m; i++)
-          d[i] = 0.0;
-      }
           
       if(beta != 0.0)
         logger.debug("Postfiltering applied with beta=" + beta);
@@ -1513,7 +1520,7 @@ public class HTSVocoder {
         
       return(audio_double);
       
-    } /* method htsMLSAVocoder_residual() */
+    } /* method mlsaVocoderResidual() */
     
   
  
@@ -2191,6 +2198,7 @@ public class HTSVocoder {
         private HTSPStream magPst;
         private boolean [] voiced;
         private HMMData htsData;
+        private HTSParameterGeneration pdf2par;
         
         
         public HTSVocoderDataProducer(int audioSize, HTSParameterGeneration pdf2par, HMMData htsData) {
@@ -2201,18 +2209,31 @@ public class HTSVocoder {
             magPst =  pdf2par.getMagPst();
             voiced = pdf2par.getVoicedArray();
             this.htsData = htsData;
+            this.pdf2par = pdf2par;
 
         }
 
         public void run() {
             try {
                 htsMLSAVocoder(lf0Pst, mcepPst, strPst, magPst, voiced, htsData, this);
-                putEndOfStream();
             } catch (Exception e) {
                 logger.error("Cannot vocode", e);
+            } finally {
+                // also on error, so that the reading side is not left waiting for more data
+                putEndOfStream();
             }
         }
         
+        /**
+         * Make sure the parameters of the given frame are available, generating them
+         * first if incremental parameter generation is used.
+         * @param frame
+         * @throws Exception
+         */
+        public void generateParameters(int frame) throws Exception {
+            pdf2par.generateUpToFrame(frame);
+        }
+        
     }
     
 }  /* class HTSVocoder */
@@ -0,0 +1,164 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.htsengine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The working memory of the {@link HTSVocoder} for one utterance: the filter coefficients,
+ * the delay lines of the MLSA / MGLSA filter, the excitation buffers and the buffers of the
+ * helper routines, all allocated once for a given filter order, frame period and number of
+ * mixed excitation filters.
+ * <p>
+ * Contexts are pooled, so that vocoding an utterance does not allocate any working arrays
+ * once a context of the same shape has been used before. A context is used by one thread at
+ * a time: it is taken from the pool with {@link #acquire(int, int, int, int, int)} and
+ * returned with {@link #release(HTSVocoderContext)}.
+ */
+final class HTSVocoderContext
+{
+    // Keep at most this many contexts:
+    private static final int MAX_POOLED = 8;
+
+    private static final List<HTSVocoderContext> pool = new ArrayList<HTSVocoderContext>();
+
+    final int mcepOrder;
+    final int mcepVsize;
+    final int stage;
+    final int fprd;
+    final int orderM;
+
+    /* feature vector of the current frame */
+    final double[] mc;
+    /* filter coefficients of the current frame, of the next frame, and their increment per sample */
+    final double[] C;
+    final double[] CC;
+    final double[] CINC;
+    /* delay lines of the MLSA / MGLSA filter */
+    final double[] D1;
+    /* delay line of the LPC filter */
+    final double[] d;
+    /* offsets in D1 used by the MLSA filter */
+    final int pt1;
+    final int pt2;
+    final int[] pt3;
+
+    /* excitation of the current frame */
+    final double[] pulse;
+    final double[] noise;
+    final double[] source;
+    /* mixed excitation shaping filters and their memory */
+    final double[] hp;
+    final double[] hn;
+    final double[] xpulseSignal;
+    final double[] xnoiseSignal;
+
+    /* buffers of the helper routines, with the largest order they are used for */
+    final double[] freqtBuff;
+    final int freqtSize;
+    final double[] spectrum2enBuff;
+    final double[] cep;
+    final double[] ir;
+    final double[] postfilterBuff;
+    final double[] lsp2lpcBuff;
+    final double[] gc2gcBuff;
+
+    /**
+     * Get a context for the given shape, whose contents are undefined.
+     * @param mcepOrder the order of the mel-cepstrum or LSP vectors, i.e. their length minus one
+     * @param mcepVsize the size of the parameter vectors including deltas, minus one
+     * @param stage the stage of the MGLSA filter, 0 for the MLSA filter
+     * @param fprd the frame period in samples
+     * @param orderM the order of the mixed excitation filters, 0 if not used
+     */
+    static HTSVocoderContext acquire(int mcepOrder, int mcepVsize, int stage, int fprd, int orderM)
+    {
+        synchronized (pool) {
+            for (int i = 0; i < pool.size(); i++) {
+                HTSVocoderContext c = pool.get(i);
+                if (c.mcepOrder == mcepOrder && c.mcepVsize == mcepVsize && c.stage == stage
+                        && c.fprd == fprd && c.orderM == orderM) {
+                    return pool.remove(i);
+                }
+            }
+        }
+        return new HTSVocoderContext(mcepOrder, mcepVsize, stage, fprd, orderM);
+    }
+
+    /**
+     * Return a context to the pool. It must not be used afterwards.
+     */
+    static void release(HTSVocoderContext context)
+    {
+        synchronized (pool) {
+            if (pool.size() >= MAX_POOLED) {
+                pool.remove(0);
+            }
+            pool.add(context);
+        }
+    }
+
+    private HTSVocoderContext(int mcepOrder, int mcepVsize, int stage, int fprd, int orderM)
+    {
+        this.mcepOrder = mcepOrder;
+        this.mcepVsize = mcepVsize;
+        this.stage = stage;
+        this.fprd = fprd;
+        this.orderM = orderM;
+        int m = mcepOrder + 1;
+        mc = new double[m];
+        C = new double[m];
+        CC = new double[m];
+        CINC = new double[m];
+        d = new double[m];
+        int padeOrder = HTSVocoder.PADEORDER;
+        if (stage == 0) { /* for MGC */
+            D1 = new double[(mcepVsize * (3 + padeOrder) + 5 * padeOrder + 6) - (3 * m)];
+            pt1 = padeOrder + 1;
+            pt2 = (2 * (padeOrder + 1)) + (padeOrder * (mcepOrder + 2));
+            pt3 = new int[padeOrder + 1];
+            for (int i = padeOrder; i >= 1; i--) {
+                pt3[i] = (2 * (padeOrder + 1)) + ((i - 1) * (mcepOrder + 2));
+            }
+        } else { /* for LSP */
+            D1 = new double[((mcepVsize + 1) * (stage + 3)) - (3 * m)];
+            pt1 = 0;
+            pt2 = 0;
+            pt3 = null;
+        }
+        pulse = new double[fprd];
+        noise = new double[fprd];
+        source = new double[fprd];
+        hp = new double[orderM];
+        hn = new double[orderM];
+        xpulseSignal = new double[orderM];
+        xnoiseSignal = new double[orderM];
+        // freqt is used for the impulse response in postfiltering, and for the frequency transformation of MGCs:
+        freqtSize = Math.max(HTSVocoder.IRLENG - 1, mcepOrder);
+        freqtBuff = new double[freqtSize + freqtSize + 2];
+        spectrum2enBuff = new double[m + 2 * HTSVocoder.IRLENG];
+        cep = new double[m + 2 * HTSVocoder.IRLENG];
+        ir = new double[m + 2 * HTSVocoder.IRLENG];
+        postfilterBuff = new double[m];
+        lsp2lpcBuff = new double[5 * mcepOrder + 6];
+        gc2gcBuff = new double[m];
+    }
+}
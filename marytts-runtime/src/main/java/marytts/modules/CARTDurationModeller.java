@@ -35,6 +35,7 @@ import marytts.features.FeatureDefinition;
 import marytts.features.FeatureProcessorManager;
 import marytts.features.FeatureRegistry;
 import marytts.features.TargetFeatureComputer;
+import marytts.features.UtteranceIndex;
 import marytts.modules.synthesis.Voice;
 import marytts.server.MaryProperties;
 import marytts.unitselection.select.Target;
@@ -174,12 +175,14 @@ public class CARTDurationModeller extends InternalModule
             // cumulative duration from beginning of sentence, in seconds:
             float end = 0;
 
+            UtteranceIndex index = new UtteranceIndex(sentence);
             TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.PHONE, MaryXML.BOUNDARY);
             Element segmentOrBoundary;
             Element previous = null;
             while ((segmentOrBoundary = (Element)tw.nextNode()) != null) {
                 String phone = UnitSelector.getPhoneSymbol(segmentOrBoundary);
                 Target t = new Target(phone, segmentOrBoundary);
+                t.setUtteranceIndex(index);
                 t.setFeatureVector(currentFeatureComputer.computeFeatureVector(t));
                 float durInSeconds;
                 if (segmentOrBoundary.getTagName().equals(MaryXML.BOUNDARY)) { // a pause
@@ -33,6 +33,7 @@ import marytts.features.FeatureDefinition;
 import marytts.features.FeatureProcessorManager;
 import marytts.features.FeatureRegistry;
 import marytts.features.TargetFeatureComputer;
+import marytts.features.UtteranceIndex;
 import marytts.modules.phonemiser.Allophone;
 import marytts.modules.phonemiser.AllophoneSet;
 import marytts.modules.synthesis.Voice;
@@ -184,6 +185,7 @@ public class CARTF0Modeller extends InternalModule
                 throw new NullPointerException("Do not have f0 prediction tree");
             }
             
+            UtteranceIndex index = new UtteranceIndex(sentence);
             TreeWalker tw = MaryDomUtils.createTreeWalker(sentence, MaryXML.SYLLABLE);
             Element syllable;
             Element previous = null;
@@ -218,6 +220,7 @@ public class CARTF0Modeller extends InternalModule
                     // Now predict the f0 values using the CARTs:ssh 
                     String phone = vowel.getAttribute("p");
                     Target t = new Target(phone, vowel);
+                    t.setUtteranceIndex(index);
                     t.setFeatureVector(currentFeatureComputer.computeFeatureVector(t));
                     float[] left = (float[])currentLeftCart.interpret(t, 0);
                     assert left != null : "Null frequency";
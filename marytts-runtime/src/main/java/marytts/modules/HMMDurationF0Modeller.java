@@ -110,8 +110,8 @@ public class HMMDurationF0Modeller extends InternalModule
         logger.info("Starting my own TargetFeatureLister");
         targetFeatureLister = new TargetFeatureLister();
         targetFeatureLister.startup();
-      } else if (targetFeatureLister.getState() == MaryModule.MODULE_OFFLINE) {
-        targetFeatureLister.startup();
+      } else {
+        ModuleRegistry.ensureStarted(targetFeatureLister);
       }
   }
   
@@ -155,11 +155,12 @@ public class HMMDurationF0Modeller extends InternalModule
       try {
         s = new Scanner(context);
         // Create the Uttmodel list and get durations 
-        realisedDurations = processUtt(s, um, hmmVoice.getHMMData(), hmmVoice.getHMMData().getCartTreeSet());
+        HMMData htsData = hmmVoice.getHMMData();
+        realisedDurations = processUtt(s, um, htsData, htsData.getCartTreeSet());
         //setActualDurations(tw, realisedDurations);
         
         // Given the UttModel list generate the F0 parameters
-        realisedDurF0s = HmmF0Generation(um, hmmVoice.getHMMData());
+        realisedDurF0s = HmmF0Generation(um, htsData);
         setActualDurationsAndF0s(tw, realisedDurF0s);
         
       } finally {
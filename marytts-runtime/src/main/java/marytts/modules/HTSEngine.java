@@ -96,6 +96,7 @@ import marytts.htsengine.HTSUttModel;
 import marytts.htsengine.HTSVocoder;
 import marytts.htsengine.HTSEngineTest.PhonemeDuration;
 import marytts.modules.synthesis.Voice;
+import marytts.server.MaryProperties;
 import marytts.unitselection.select.Target;
 import marytts.util.MaryUtils;
 import marytts.util.data.audio.AppendableSequenceAudioInputStream;
@@ -127,6 +128,10 @@ public class HTSEngine extends InternalModule
     private double newStateDurationFactor = 0.5;   // this is a factor that extends or shrinks the duration of a state
                                                    // it can be used to try to syncronise the duration specified in a external file
                                                    // and the number of frames in a external lf0 file
+    private boolean incrementalSynthesis;  // generate parameters window by window while vocoding, so that audio starts early
+    private int incrementalWindowSize;     // number of frames generated at a time in incremental synthesis
+    private int incrementalContextSize;    // number of frames on either side of a window taken into account
+    private boolean parallelStreams;       // generate the parameters of the MGC, LF0, STR and MAG streams in parallel
     
     public String getRealisedDurations(){ return realisedDurations; }
     public boolean getPhonemeAlignmentForDurations(){ return phoneAlignmentForDurations; }
@@ -150,6 +155,10 @@ public class HTSEngine extends InternalModule
         phoneAlignmentForDurations=false;
         stateAlignmentForDurations=false;
         alignDur = null;       
+        incrementalSynthesis = MaryProperties.getBoolean("htsengine.incremental", false);
+        incrementalWindowSize = MaryProperties.getInteger("htsengine.incremental.windowframes", 100);
+        incrementalContextSize = MaryProperties.getInteger("htsengine.incremental.contextframes", 30);
+        parallelStreams = MaryProperties.getBoolean("htsengine.parallelstreams", false);
     }
 
     /**
@@ -180,23 +189,31 @@ public class HTSEngine extends InternalModule
          * It will contain the list of models for current label file. */
         HTSUttModel um = new HTSUttModel();
         HTSParameterGeneration pdf2par = new HTSParameterGeneration();
+        pdf2par.setParallelStreams(parallelStreams);
         HTSVocoder par2speech = new HTSVocoder();
         AudioInputStream ais;
               
         Voice v = d.getDefaultVoice(); /* This is the way of getting a Voice through a MaryData type */
         assert v instanceof HMMVoice;
         HMMVoice hmmv = (HMMVoice)v;
+        HMMData htsData = hmmv.getHMMData();
         
         //String context = d.getPlainText();
         //System.out.println("TARGETFEATURES:" + context);
               
         /* Process label file of Mary context features and creates UttModel um */
-        processTargetList(targetFeaturesList, segmentsAndBoundaries, um, hmmv.getHMMData());
+        processTargetList(targetFeaturesList, segmentsAndBoundaries, um, htsData);
 
         /* Process UttModel */
         /* Generate sequence of speech parameter vectors, generate parameters out of sequence of pdf's */  
-        boolean debug = false;  /* so it does not save the generated parameters. */
-        pdf2par.htsMaximumLikelihoodParameterGeneration(um, hmmv.getHMMData(),"", debug);
+        if(incrementalSynthesis) {
+          /* only lf0 is generated here, the other parameters are generated by the vocoder thread 
+           * as it needs them, so that the first audio is available before the whole utterance is generated */
+          pdf2par.htsIncrementalParameterGeneration(um, htsData, incrementalWindowSize, incrementalContextSize);
+        } else {
+          boolean debug = false;  /* so it does not save the generated parameters. */
+          pdf2par.htsMaximumLikelihoodParameterGeneration(um, htsData,"", debug);
+        }
     
         
         /* set parameters for generation: f0Std, f0Mean and length, default values 1.0, 0.0 and 0.0 */
@@ -204,7 +221,7 @@ public class HTSEngine extends InternalModule
         
         /* Process generated parameters */
         /* Synthesize speech waveform, generate speech out of sequence of parameters */
-        ais = par2speech.htsMLSAVocoder(pdf2par, hmmv.getHMMData());
+        ais = par2speech.htsMLSAVocoder(pdf2par, htsData);
        
         MaryData output = new MaryData(outputType(), d.getLocale());
         if (d.getAudioFileFormat() != null) {
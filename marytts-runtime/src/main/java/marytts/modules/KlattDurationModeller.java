@@ -98,8 +98,7 @@ public class KlattDurationModeller extends InternalModule {
         } 
     	assert synthesis != null;
         
-        if (synthesis.getState() == MaryModule.MODULE_OFFLINE)
-            synthesis.startup();
+        ModuleRegistry.ensureStarted(synthesis);
         // load klatt rules
         klattRuleParams = new Properties();
         klattRuleParams.load(new FileInputStream(MaryProperties.needFilename(localePrefix+".cap.klattrulefile")));
@@ -186,6 +186,26 @@ public class ModuleRegistry
         return Collections.unmodifiableList(allModules);
     }
 
+    /**
+     * Start the given module unless it is running already. Modules may be started
+     * by several threads at once, e.g. because a module starts the modules it depends on;
+     * this method makes sure that each module is started exactly once, and that any caller
+     * returns only after the module has been started.
+     * @param m the module to start
+     * @return true if the module was started by this call, false if it was running already.
+     * @throws Exception if the module cannot be started
+     */
+    public static boolean ensureStarted(MaryModule m) throws Exception
+    {
+        synchronized (m) {
+            if (m.getState() != MaryModule.MODULE_OFFLINE) {
+                return false;
+            }
+            m.startup();
+            return true;
+        }
+    }
+
 
     /**
      * Find an active module by its class.
@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -33,9 +34,11 @@ import marytts.datatypes.MaryData;
 import marytts.datatypes.MaryDataType;
 import marytts.datatypes.MaryXML;
 import marytts.exceptions.SynthesisException;
+import marytts.modules.synthesis.StreamingWaveformSynthesizer;
 import marytts.modules.synthesis.Voice;
 import marytts.modules.synthesis.WaveformSynthesizer;
 import marytts.server.MaryProperties;
+import marytts.server.ParallelStartup;
 import marytts.signalproc.effects.EffectsApplier;
 import marytts.util.data.audio.AppendableSequenceAudioInputStream;
 import marytts.util.dom.MaryDomUtils;
@@ -77,11 +80,19 @@ public class Synthesis extends InternalModule
         throws ClassNotFoundException, InstantiationException, Exception
    {
         waveformSynthesizers = new ArrayList<WaveformSynthesizer>();
+        List<Callable<Void>> startupTasks = new ArrayList<Callable<Void>>();
         for (String synthClassName : MaryProperties.synthesizerClasses()) {
-            WaveformSynthesizer ws = (WaveformSynthesizer) Class.forName(synthClassName).newInstance();
-            ws.startup();
+            final WaveformSynthesizer ws = (WaveformSynthesizer) Class.forName(synthClassName).newInstance();
+            startupTasks.add(new Callable<Void>() {
+                public Void call() throws Exception {
+                    ws.startup();
+                    return null;
+                }
+            });
             waveformSynthesizers.add(ws);
         }
+        // The synthesizers load their voices independently of each other:
+        ParallelStartup.runAll("synthesizers", startupTasks);
     }
     
     /**
@@ -174,11 +185,7 @@ public class Synthesis extends InternalModule
                 if (currentVoiceElement != null) {
                     // We have just left a voice section
                     if (!elements.isEmpty()) {
-                        AudioInputStream ais = synthesizeOneSection
-                            (elements, currentVoice, currentStyle, currentEffect, targetFormat, outputParams);
-                        if (ais != null) {
-                            result.appendAudio(ais);
-                        }
+                        synthesizeOneSection(result, elements, currentVoice, currentStyle, currentEffect, targetFormat, outputParams);
                         elements.clear();
                     }
                     currentVoice = defaultVoice;
@@ -191,11 +198,7 @@ public class Synthesis extends InternalModule
                     || (v.getAttribute("effect")!=null && v.getAttribute("effect")!="" && !v.getAttribute("effect").equals(currentEffect))) {
                 // We have just entered a new voice section
                 if (!elements.isEmpty()) {
-                    AudioInputStream ais = synthesizeOneSection
-                        (elements, currentVoice, currentStyle, currentEffect, targetFormat, outputParams);
-                    if (ais != null) {
-                        result.appendAudio(ais);
-                    }
+                    synthesizeOneSection(result, elements, currentVoice, currentStyle, currentEffect, targetFormat, outputParams);
                     elements.clear();
                 }
                 
@@ -216,11 +219,7 @@ public class Synthesis extends InternalModule
             // Chunk at sentence boundaries
             if (s != currentSentence) {
                 if (!elements.isEmpty()) {
-                    AudioInputStream ais = synthesizeOneSection
-                        (elements, currentVoice, currentStyle, currentEffect, targetFormat, outputParams);
-                    if (ais != null) {
-                        result.appendAudio(ais);
-                    }
+                    synthesizeOneSection(result, elements, currentVoice, currentStyle, currentEffect, targetFormat, outputParams);
                     elements.clear();
                 }
                 currentSentence = s;
@@ -229,11 +228,7 @@ public class Synthesis extends InternalModule
         }
         
         if (!elements.isEmpty()) {
-            AudioInputStream ais = synthesizeOneSection(elements, currentVoice, currentStyle, currentEffect, targetFormat, outputParams);
-            
-            if (ais != null) {
-                result.appendAudio(ais);
-            }
+            synthesizeOneSection(result, elements, currentVoice, currentStyle, currentEffect, targetFormat, outputParams);
         }
 
         return result;
@@ -241,27 +236,54 @@ public class Synthesis extends InternalModule
 
     /**
      * Synthesize one section, consisting of tokens and boundaries, with a
-     * given voice, to the given target audio format.
+     * given voice, to the given target audio format, and append the audio to result.
+     * If the voice's synthesizer is a {@link StreamingWaveformSynthesizer} in streaming mode,
+     * each part of the section is appended as soon as it has been synthesized.
      */
-    private AudioInputStream synthesizeOneSection
-        (List<Element> tokensAndBoundaries, Voice voice, String currentStyle, String currentEffect, AudioFormat targetFormat, String outputParams)
+    private void synthesizeOneSection
+        (final MaryData result, List<Element> tokensAndBoundaries, final Voice voice, String currentStyle, final String currentEffect, final AudioFormat targetFormat, String outputParams)
     throws SynthesisException, UnsupportedAudioFileException
     {     
         // sanity check: are there any tokens containing phone descendants?
         if (!containsPhoneDescendants(tokensAndBoundaries)) {
             logger.warn("No PHONE segments found in this section; will not attempt to synthesize it!");
-            return null;
+            return;
         }
         
-        EffectsApplier ef = new EffectsApplier();
+        final EffectsApplier ef = new EffectsApplier();
 
         //HMM-only effects need to get their parameters prior to synthesis
         ef.setHMMEffectParameters(voice, currentEffect);
         //
         
-        AudioInputStream ais = null;
-        ais = voice.synthesize(tokensAndBoundaries, outputParams);
-        if (ais == null) return null;
+        WaveformSynthesizer synthesizer = voice.synthesizer();
+        if (synthesizer instanceof StreamingWaveformSynthesizer
+                && ((StreamingWaveformSynthesizer) synthesizer).isStreaming(voice)) {
+            ((StreamingWaveformSynthesizer) synthesizer).synthesize(tokensAndBoundaries, voice, outputParams,
+                    new StreamingWaveformSynthesizer.AudioDestination() {
+                public void append(AudioInputStream ais) throws SynthesisException {
+                    try {
+                        result.appendAudio(convertAndApplyEffects(ais, voice, ef, currentEffect, targetFormat));
+                    } catch (UnsupportedAudioFileException uafe) {
+                        throw new SynthesisException("Cannot convert audio of voice "+voice.getName(), uafe);
+                    }
+                }
+            });
+            return;
+        }
+        AudioInputStream ais = voice.synthesize(tokensAndBoundaries, outputParams);
+        if (ais == null) return;
+        result.appendAudio(convertAndApplyEffects(ais, voice, ef, currentEffect, targetFormat));
+    }
+
+    /**
+     * Convert the audio produced by the given voice to the given target audio format,
+     * and apply the effects, if any.
+     */
+    private AudioInputStream convertAndApplyEffects
+        (AudioInputStream ais, Voice voice, EffectsApplier ef, String currentEffect, AudioFormat targetFormat)
+    throws UnsupportedAudioFileException
+    {
         // Conversion to targetFormat required?
         if (!ais.getFormat().matches(targetFormat)) {
             // Attempt conversion; if not supported, log a warning
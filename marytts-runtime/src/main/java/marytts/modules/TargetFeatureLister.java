@@ -26,9 +26,11 @@ import java.util.Locale;
 import marytts.datatypes.MaryData;
 import marytts.datatypes.MaryDataType;
 import marytts.datatypes.MaryXML;
+import marytts.features.FeatureMatrix;
 import marytts.features.FeatureRegistry;
 import marytts.features.FeatureVector;
 import marytts.features.TargetFeatureComputer;
+import marytts.features.UtteranceIndex;
 import marytts.modules.synthesis.Voice;
 import marytts.unitselection.select.Target;
 import marytts.unitselection.select.UnitSelector;
@@ -104,12 +106,14 @@ public class TargetFeatureLister extends InternalModule
     {
         String pauseSymbol = featureComputer.getPauseSymbol();
         List<Target> targets = overridableCreateTargetsWithPauses(segmentsAndBoundaries, pauseSymbol);
+        UtteranceIndex.createFor(targets);
         // Third, compute the feature vectors and convert them to text
         String header = featureComputer.getAllFeatureProcessorNamesAndValues();
         StringBuilder text = new StringBuilder();
         StringBuilder bin = new StringBuilder();
-        for (Target target : targets) {
-            FeatureVector features = featureComputer.computeFeatureVector(target);
+        FeatureMatrix matrix = featureComputer.computeFeatureMatrix(targets, null);
+        for (int i=0, n=matrix.getNumberOfRows(); i<n; i++) {
+            FeatureVector features = matrix.getFeatureVector(i);
             text.append(featureComputer.toStringValues(features)).append("\n");
             bin.append(features.toString()).append("\n");
         }
@@ -129,10 +133,8 @@ public class TargetFeatureLister extends InternalModule
     {
         String pauseSymbol = featureComputer.getPauseSymbol();
         List<Target> targets = overridableCreateTargetsWithPauses(segmentsAndBoundaries, pauseSymbol);
-        for (Target target : targets) {
-            FeatureVector features = featureComputer.computeFeatureVector(target);
-            target.setFeatureVector(features);             
-        }
+        UtteranceIndex.createFor(targets);
+        featureComputer.computeFeatureRows(targets);
         return targets;
     }
 
@@ -103,8 +103,7 @@ public class TobiContourGenerator extends InternalModule {
             synthesis = new Synthesis();
         }
          assert synthesis != null;
-         if (synthesis.getState() == MaryModule.MODULE_OFFLINE)
-             synthesis.startup();
+         ModuleRegistry.ensureStarted(synthesis);
         // load phone list
         allophoneSet = MaryRuntimeUtils.needAllophoneSet(phoneSetPropertyName);
         // load tobi rules
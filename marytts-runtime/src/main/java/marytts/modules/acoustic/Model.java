@@ -29,8 +29,8 @@ import marytts.datatypes.MaryXML;
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureProcessorManager;
 import marytts.features.FeatureRegistry;
-import marytts.features.FeatureVector;
 import marytts.features.TargetFeatureComputer;
+import marytts.features.UtteranceIndex;
 import marytts.unitselection.select.Target;
 import marytts.unitselection.select.UnitSelector;
 
@@ -250,10 +250,8 @@ public abstract class Model {
             targets.add(target);
         }
         // compute FeatureVectors for Targets:
-        for (Target target : targets) {
-            FeatureVector targetFeatureVector = featureComputer.computeFeatureVector(target);
-            target.setFeatureVector(targetFeatureVector); // this is critical!
-        }
+        UtteranceIndex.createFor(targets);
+        featureComputer.computeFeatureRows(targets); // this is critical!
         return targets;
     }
 
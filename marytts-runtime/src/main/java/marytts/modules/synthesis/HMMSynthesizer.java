@@ -69,6 +69,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -81,11 +82,11 @@ import marytts.features.FeatureRegistry;
 import marytts.features.TargetFeatureComputer;
 import marytts.htsengine.HMMVoice;
 import marytts.modules.HTSEngine;
-import marytts.modules.MaryModule;
 import marytts.modules.ModuleRegistry;
 import marytts.modules.TargetFeatureLister;
 import marytts.modules.synthesis.Voice.Gender;
 import marytts.server.MaryProperties;
+import marytts.server.ParallelStartup;
 import marytts.unitselection.select.Target;
 import marytts.util.MaryUtils;
 import marytts.util.dom.MaryDomUtils;
@@ -127,8 +128,8 @@ public class HMMSynthesizer implements WaveformSynthesizer {
             logger.info("Starting my own TargetFeatureLister");
             targetFeatureLister = new TargetFeatureLister();
             targetFeatureLister.startup();
-        } else if (targetFeatureLister.getState() == MaryModule.MODULE_OFFLINE) {
-            targetFeatureLister.startup();
+        } else {
+            ModuleRegistry.ensureStarted(targetFeatureLister);
         }
 
         try{
@@ -140,19 +141,25 @@ public class HMMSynthesizer implements WaveformSynthesizer {
             logger.info("Starting my own HTSEngine");
             htsEngine = new HTSEngine();
             htsEngine.startup();
-        } else if (htsEngine.getState() == MaryModule.MODULE_OFFLINE) {
-            htsEngine.startup();
+        } else {
+            ModuleRegistry.ensureStarted(htsEngine);
         }
         
         // Register HMM voices:
         List<String> voiceNames = MaryProperties.getList("hmm.voices.list");
-        for (String voiceName : voiceNames) {
-            logger.debug("Voice '" + voiceName + "'");
-            
-            /** When creating a HMMVoice object it should create and initialise a 
-             * TreeSet ts, a ModelSet ms and load the context feature list used in this voice. */
-             
-             HMMVoice v = new HMMVoice(voiceName, this);
+        // Load the voices in parallel, but register them in the configured order:
+        List<Callable<HMMVoice>> loaders = new ArrayList<Callable<HMMVoice>>();
+        for (final String voiceName : voiceNames) {
+            loaders.add(new Callable<HMMVoice>() {
+                public HMMVoice call() throws Exception {
+                    logger.debug("Voice '" + voiceName + "'");
+                    /** When creating a HMMVoice object it should create and initialise a 
+                     * TreeSet ts, a ModelSet ms and load the context feature list used in this voice. */
+                    return new HMMVoice(voiceName, HMMSynthesizer.this);
+                }
+            });
+        }
+        for (HMMVoice v : ParallelStartup.runAll("hmm-voices", loaders)) {
              Voice.registerVoice(v);
         }
         logger.info("started.");
@@ -37,7 +37,6 @@ import marytts.datatypes.MaryData;
 import marytts.datatypes.MaryDataType;
 import marytts.datatypes.MaryXML;
 import marytts.exceptions.SynthesisException;
-import marytts.modules.MaryModule;
 import marytts.modules.MaryXMLToMbrola;
 import marytts.modules.MbrolaCaller;
 import marytts.modules.ModuleRegistry;
@@ -75,8 +74,8 @@ public class MbrolaSynthesizer implements WaveformSynthesizer {
             logger.info("Starting my own MaryXMLToMbrola");
             maryxmlToMbrola = new MaryXMLToMbrola();
             maryxmlToMbrola.startup();
-        } else if (maryxmlToMbrola.getState() == MaryModule.MODULE_OFFLINE) {
-            maryxmlToMbrola.startup();
+        } else {
+            ModuleRegistry.ensureStarted(maryxmlToMbrola);
         }
         String mbrolaCallerProperty;
         if (System.getProperty("os.name").startsWith("Windows") && false) { // let's try without this, use cygwin binary instead...
@@ -101,9 +100,7 @@ public class MbrolaSynthesizer implements WaveformSynthesizer {
                 "' in configuration files");
         }
         mbrolaCaller = (MbrolaCaller) obj;
-        if (mbrolaCaller.getState() == MaryModule.MODULE_OFFLINE) {
-            mbrolaCaller.startup();
-        }
+        ModuleRegistry.ensureStarted(mbrolaCaller);
 
         // Register Mbrola voices:
         String basePath =
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.modules.synthesis;
+
+import java.util.List;
+
+import javax.sound.sampled.AudioInputStream;
+
+import marytts.exceptions.SynthesisException;
+
+import org.w3c.dom.Element;
+
+/**
+ * A waveform synthesizer which can hand over the audio of a section in several
+ * parts, e.g. one per phrase, as soon as each part is ready. This reduces the time
+ * until the first audio can be played, at the cost of whatever the synthesizer
+ * loses by not considering the section as a whole.
+ */
+public interface StreamingWaveformSynthesizer extends WaveformSynthesizer
+{
+    /**
+     * Whether sections to be spoken by the given voice should be synthesized
+     * with {@link #synthesize(List, Voice, String, AudioDestination)}.
+     */
+    public boolean isStreaming(Voice voice);
+
+    /**
+     * Synthesize a given part of a MaryXML document in several parts,
+     * passing the audio for each part to the destination as soon as it is ready.
+     * The parts are passed in order, and together correspond to what
+     * {@link #synthesize(List, Voice, String)} would return for the whole section.
+     * This method is expected to be thread-safe.
+     * @param tokensAndBoundaries the part of the MaryXML document to
+     * synthesize; a list containing a number of adjacent <t> and <boundary>
+     * elements.
+     * @param voice the Voice to use for synthesis
+     * @param outputParams any specified output parameters; may be null
+     * @param destination receives the audio of each part, in synthesizer-native audio format.
+     */
+    public void synthesize(List<Element> tokensAndBoundaries, Voice voice, String outputParams,
+            AudioDestination destination)
+        throws SynthesisException;
+
+    /**
+     * Receives the audio produced by a {@link StreamingWaveformSynthesizer}.
+     */
+    public interface AudioDestination
+    {
+        public void append(AudioInputStream audio) throws SynthesisException;
+    }
+}
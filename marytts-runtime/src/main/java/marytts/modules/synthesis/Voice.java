@@ -39,6 +39,11 @@ import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -141,8 +146,8 @@ public class Voice
 
     protected static Logger logger = MaryUtils.getLogger("Voice");
 
-    /** A local map of already-instantiated Lexicons */
-    private static Map<String, Lexicon> lexicons = new HashMap<String, Lexicon>();
+    /** A local map of already-instantiated Lexicons; different lexicons can be loaded at the same time. */
+    private static ConcurrentMap<String, FutureTask<Lexicon>> lexicons = new ConcurrentHashMap<String, FutureTask<Lexicon>>();
 
 
     private String voiceName;
@@ -161,6 +166,9 @@ public class Voice
     protected DirectedGraph f0Graph;
     protected FeatureFileReader f0ContourFeatures;
     protected Map<String, Model> acousticModels;
+    private volatile boolean dataLoaded = true;
+    private volatile long lastUsed = System.currentTimeMillis();
+    private volatile long dataSize = -1;
     
     @Deprecated
     public Voice(String name, Locale locale, 
@@ -592,6 +600,139 @@ public class Voice
         return otherModels;
     }
 
+    ////////// synthesis data //////////
+
+    /**
+     * To be called at the end of the constructor by subclasses which load their synthesis
+     * data in {@link #loadData()}: load the data now, or, if voices are loaded lazily
+     * (see {@link VoiceDataManager}), when the voice is first used.
+     * @throws MaryConfigurationException if the data cannot be loaded
+     */
+    protected void initData() throws MaryConfigurationException
+    {
+        if (VoiceDataManager.isLazyLoading()) {
+            dataLoaded = false;
+            logger.info("Voice '"+getName()+"' will be loaded when it is first used");
+        } else {
+            loadData();
+        }
+    }
+
+    /**
+     * Load the synthesis data of this voice, such as unit databases or HMM models.
+     * Subclasses supporting lazy loading override this and {@link #releaseData()};
+     * the default implementation does nothing.
+     * @throws MaryConfigurationException if the data cannot be loaded
+     */
+    protected void loadData() throws MaryConfigurationException
+    {
+    }
+
+    /**
+     * Drop all references to the synthesis data loaded by {@link #loadData()},
+     * so that it can be garbage collected.
+     */
+    protected void releaseData()
+    {
+    }
+
+    /**
+     * Make sure the synthesis data of this voice is loaded, and remember that the voice
+     * was used now.
+     * @throws MaryConfigurationException if the data cannot be loaded
+     */
+    public void ensureDataLoaded() throws MaryConfigurationException
+    {
+        lastUsed = System.currentTimeMillis();
+        if (dataLoaded) {
+            return;
+        }
+        VoiceDataManager.makeRoomFor(this);
+        synchronized (this) {
+            if (dataLoaded) {
+                return;
+            }
+            long before = System.currentTimeMillis();
+            loadData();
+            dataLoaded = true;
+            logger.info("Loading of voice '"+getName()+"' took "+(System.currentTimeMillis()-before)+" ms");
+        }
+        VoiceDataManager.dataLoaded(this);
+    }
+
+    /**
+     * Like {@link #ensureDataLoaded()}, but for use in accessors which cannot throw
+     * a checked exception. Accessors must not hold the lock of the voice when calling this,
+     * and must be prepared to find the data unloaded again afterwards.
+     * @throws IllegalStateException if the data cannot be loaded
+     */
+    protected void needData()
+    {
+        try {
+            ensureDataLoaded();
+        } catch (MaryConfigurationException e) {
+            throw new IllegalStateException("Cannot load data for voice '"+getName()+"'", e);
+        }
+    }
+
+    /**
+     * Unload the synthesis data of this voice, if it was loaded lazily. It will be
+     * loaded again when the voice is used next time.
+     */
+    public void unloadData()
+    {
+        synchronized (this) {
+            if (!dataLoaded || !VoiceDataManager.isLazyLoading()) {
+                return;
+            }
+            releaseData();
+            dataLoaded = false;
+        }
+        VoiceDataManager.dataUnloaded(this);
+    }
+
+    /**
+     * Whether the synthesis data of this voice is currently loaded.
+     */
+    public boolean isDataLoaded()
+    {
+        return dataLoaded;
+    }
+
+    /**
+     * The time when this voice was last used, in milliseconds.
+     */
+    public long getLastUsed()
+    {
+        return lastUsed;
+    }
+
+    /**
+     * Estimate the number of bytes used by the synthesis data of this voice. This is the
+     * total size of the files named in the voice's config; it is computed only once.
+     */
+    public long estimateDataSize()
+    {
+        if (dataSize < 0) {
+            long size = 0;
+            VoiceConfig config = MaryConfig.getVoiceConfig(voiceName);
+            if (config != null) {
+                String prefix = "voice."+voiceName+".";
+                for (String property : config.getProperties().stringPropertyNames()) {
+                    if (!property.startsWith(prefix)) continue;
+                    String filename = MaryProperties.getFilename(property);
+                    if (filename == null) continue;
+                    File file = new File(filename);
+                    if (file.isFile()) {
+                        size += file.length();
+                    }
+                }
+            }
+            dataSize = size;
+        }
+        return dataSize;
+    }
+
     ////////// static stuff //////////
 
     /**
@@ -600,8 +741,9 @@ public class Voice
      * <code>wantToBeDefault</code> for its locale it will be registered as the default voice for
      * its locale.
      * This value is set in the config file setting <code>voice.(name).want.to.be.default.voice</code>.
+     * Voices may be registered by several threads at once.
      */
-    public static void registerVoice(Voice voice)
+    public static synchronized void registerVoice(Voice voice)
     {
         if (voice == null)
             throw new NullPointerException("Cannot register null voice.");
@@ -637,14 +779,24 @@ public class Voice
 
 	/**
 	 * Get the voice with the given name, or null if there is no voice with that name.
+	 * If voices are loaded lazily, the voice's synthesis data is loaded if needed.
 	 * @param name
 	 * @return
+	 * @throws IllegalStateException if the voice's synthesis data cannot be loaded
 	 */
     public static Voice getVoice(String name)
     {
         for (Iterator<Voice> it = allVoices.iterator(); it.hasNext(); ) {
             Voice v = it.next();
-            if (v.hasName(name)) return v;
+            if (v.hasName(name)) {
+                // With lazy loading, this is where a voice is loaded:
+                try {
+                    v.ensureDataLoaded();
+                } catch (MaryConfigurationException e) {
+                    throw new IllegalStateException("Cannot load voice '"+name+"'", e);
+                }
+                return v;
+            }
         }
         // Interpolating voices are created as needed:
         if (InterpolatingVoice.isInterpolatingVoiceName(name)) {
@@ -805,15 +957,42 @@ public class Voice
      * @param lexiconName
      * @return the requested lexicon, or null.
      */
-    private static Lexicon getLexicon(String lexiconClass, String lexiconName)
+    private static Lexicon getLexicon(final String lexiconClass, final String lexiconName)
     {
         if (lexiconClass == null) return null;
-        // build the lexicon if not already built
-        Lexicon lexicon = null;
-        if (lexicons.containsKey(lexiconClass+lexiconName)) {
-            return lexicons.get(lexiconClass+lexiconName);
+        // build the lexicon if not already built; the first caller for a lexicon loads it,
+        // and other callers asking for the same lexicon wait for it
+        FutureTask<Lexicon> task = new FutureTask<Lexicon>(new Callable<Lexicon>() {
+            public Lexicon call() {
+                return loadLexicon(lexiconClass, lexiconName);
+            }
+        });
+        FutureTask<Lexicon> existing = lexicons.putIfAbsent(lexiconClass+lexiconName, task);
+        if (existing == null) {
+            task.run();
+        } else {
+            task = existing;
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while waiting for lexicon "+lexiconClass+"('"+lexiconName+"')", e);
+        } catch (ExecutionException e) {
+            logger.error("Could not load lexicon "+lexiconClass+"('"+lexiconName+"')", e.getCause());
         }
-        // need to create a new lexicon instance
+        return null;
+    }
+
+    /**
+     * Create a new lexicon instance.
+     * @param lexiconClass
+     * @param lexiconName
+     * @return the lexicon, or null if it could not be loaded.
+     */
+    private static Lexicon loadLexicon(String lexiconClass, String lexiconName)
+    {
+        Lexicon lexicon = null;
         try {
             logger.debug("...loading lexicon...");
             if (lexiconName == null) {
@@ -855,7 +1034,6 @@ public class Voice
         } catch (Exception ex) {
             logger.error("Could not load lexicon "+lexiconClass+"('"+lexiconName+"')", ex);
         }
-        lexicons.put(lexiconClass+lexiconName, lexicon);
         return lexicon;
     }
 
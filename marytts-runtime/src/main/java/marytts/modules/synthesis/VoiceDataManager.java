@@ -0,0 +1,202 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.modules.synthesis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import marytts.server.MaryProperties;
+import marytts.util.MaryUtils;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps track of the voices whose synthesis data is loaded, if voices are loaded lazily.
+ * <p>
+ * With lazy loading (<code>voice.lazyloading = true</code>), a voice registers with its
+ * metadata only, and loads its synthesis data when it is first used. Voices which have not
+ * been used for <code>voice.lazyloading.idletime</code> seconds are unloaded again.
+ * If <code>voice.lazyloading.memorybudget</code> is set, the least recently used voices are
+ * unloaded before a voice is loaded whose data would not fit into the budget otherwise.
+ * The memory used by a voice is estimated by {@link Voice#estimateDataSize()}.
+ *
+ * @see Voice#ensureDataLoaded()
+ */
+public class VoiceDataManager
+{
+    private static Logger logger = MaryUtils.getLogger("VoiceDataManager");
+    private static List<Voice> loadedVoices = new ArrayList<Voice>();
+    private static Timer idleTimer = null;
+
+    private VoiceDataManager()
+    {
+    }
+
+    /**
+     * Whether voices should load their synthesis data only when they are first used.
+     */
+    public static boolean isLazyLoading()
+    {
+        return MaryProperties.getBoolean("voice.lazyloading", false);
+    }
+
+    /**
+     * The time after which an unused voice is unloaded, in milliseconds, or 0 if voices are never
+     * unloaded because they are idle.
+     */
+    public static long getIdleTime()
+    {
+        return Math.max(0, MaryProperties.getInteger("voice.lazyloading.idletime", 1800)) * 1000L;
+    }
+
+    /**
+     * The maximum number of bytes of voice data to keep loaded, or 0 if there is no limit.
+     */
+    public static long getMemoryBudget()
+    {
+        return Math.max(0, MaryProperties.getInteger("voice.lazyloading.memorybudget", 0)) * 1024L * 1024L;
+    }
+
+    /**
+     * Unload the least recently used voices as needed so that the given voice,
+     * which is about to be loaded, fits into the memory budget.
+     * @param voice the voice about to be loaded; it is never unloaded by this call.
+     */
+    static void makeRoomFor(Voice voice)
+    {
+        long budget = getMemoryBudget();
+        if (budget <= 0) {
+            return;
+        }
+        List<Voice> victims = new ArrayList<Voice>();
+        synchronized (VoiceDataManager.class) {
+            long needed = voice.estimateDataSize();
+            long used = 0;
+            for (Voice v : loadedVoices) {
+                if (v != voice) used += v.estimateDataSize();
+            }
+            List<Voice> candidates = leastRecentlyUsedFirst();
+            for (Voice v : candidates) {
+                if (used + needed <= budget) break;
+                if (v == voice) continue;
+                victims.add(v);
+                used -= v.estimateDataSize();
+            }
+            if (used + needed > budget) {
+                logger.warn("Voice '"+voice.getName()+"' needs about "+(needed >> 20)+" MB, which exceeds the memory budget of "
+                        +(budget >> 20)+" MB -- loading it anyway");
+            }
+        }
+        // Unload outside of our lock, because unloading needs the lock of each voice:
+        for (Voice v : victims) {
+            logger.info("Unloading voice '"+v.getName()+"' to stay within the memory budget");
+            v.unloadData();
+        }
+    }
+
+    /**
+     * Remember that the given voice has loaded its data.
+     */
+    static synchronized void dataLoaded(Voice voice)
+    {
+        if (!loadedVoices.contains(voice)) {
+            loadedVoices.add(voice);
+        }
+        long idleTime = getIdleTime();
+        if (idleTime > 0 && idleTimer == null) {
+            idleTimer = new Timer("VoiceDataManager", true);
+            long period = Math.min(60000, Math.max(1000, idleTime / 4));
+            idleTimer.schedule(new TimerTask() {
+                public void run() {
+                    unloadIdleVoices(System.currentTimeMillis());
+                }
+            }, period, period);
+        }
+    }
+
+    /**
+     * Remember that the given voice has unloaded its data.
+     */
+    static synchronized void dataUnloaded(Voice voice)
+    {
+        loadedVoices.remove(voice);
+    }
+
+    /**
+     * Unload all voices which have not been used for longer than the idle time.
+     * @param now the current time, in milliseconds.
+     */
+    public static void unloadIdleVoices(long now)
+    {
+        long idleTime = getIdleTime();
+        if (idleTime <= 0) {
+            return;
+        }
+        List<Voice> victims = new ArrayList<Voice>();
+        synchronized (VoiceDataManager.class) {
+            for (Voice v : loadedVoices) {
+                if (now - v.getLastUsed() > idleTime) {
+                    victims.add(v);
+                }
+            }
+        }
+        for (Voice v : victims) {
+            logger.info("Unloading voice '"+v.getName()+"', which has not been used for "+(now - v.getLastUsed()) / 1000+" seconds");
+            v.unloadData();
+        }
+    }
+
+    /**
+     * The voices whose data is currently loaded, least recently used first.
+     */
+    public static synchronized List<Voice> getLoadedVoices()
+    {
+        return Collections.unmodifiableList(leastRecentlyUsedFirst());
+    }
+
+    /**
+     * The estimated number of bytes used by the data of all loaded voices.
+     */
+    public static synchronized long getLoadedDataSize()
+    {
+        long total = 0;
+        for (Voice v : loadedVoices) {
+            total += v.estimateDataSize();
+        }
+        return total;
+    }
+
+    private static List<Voice> leastRecentlyUsedFirst()
+    {
+        List<Voice> sorted = new ArrayList<Voice>(loadedVoices);
+        Collections.sort(sorted, new Comparator<Voice>() {
+            public int compare(Voice v1, Voice v2) {
+                long t1 = v1.getLastUsed();
+                long t2 = v2.getLastUsed();
+                return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+            }
+        });
+        return sorted;
+    }
+}
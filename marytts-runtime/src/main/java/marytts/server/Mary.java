@@ -31,7 +31,6 @@ import java.lang.reflect.Method;
 import java.net.ServerSocket;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -40,6 +39,7 @@ import java.util.Locale;
 import java.util.Properties;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
@@ -61,6 +61,7 @@ import marytts.util.MaryCache;
 import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
 import marytts.util.Pair;
+import marytts.util.cache.SynthesisCache;
 import marytts.util.data.audio.MaryAudioUtils;
 import marytts.util.io.FileUtils;
 
@@ -134,30 +135,61 @@ public class Mary {
         }
         ModuleRegistry.setRegistrationComplete();
         
-        List<Pair<MaryModule, Long>> startupTimes = new ArrayList<Pair<MaryModule,Long>>();
+        final List<Pair<MaryModule, Long>> startupTimes = Collections.synchronizedList(new ArrayList<Pair<MaryModule,Long>>());
         
         // Separate loop for startup allows modules to cross-reference to each
         // other via Mary.getModule(Class) even if some have not yet been
-        // started.
-        for (MaryModule m : ModuleRegistry.getAllModules()) {
+        // started. Independent modules are started in parallel; a module which
+        // depends on another one starts it via ModuleRegistry.ensureStarted(),
+        // which waits if that module is being started by another thread.
+        List<Callable<Void>> startupTasks = new ArrayList<Callable<Void>>();
+        for (final MaryModule m : ModuleRegistry.getAllModules()) {
             // Only start the modules here if in server mode: 
             if (((!MaryProperties.getProperty("server").equals("commandline")) || m instanceof Synthesis) 
                     && m.getState() == MaryModule.MODULE_OFFLINE) {
-                long before = System.currentTimeMillis();
-                try {
-                    m.startup();
-                } catch (Throwable t) {
-                    throw new Exception("Problem starting module "+ m.name(), t);
-                }
-                long after = System.currentTimeMillis();
-                startupTimes.add(new Pair<MaryModule, Long>(m, after-before));
+                startupTasks.add(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        long before = System.currentTimeMillis();
+                        boolean started;
+                        try {
+                            started = ModuleRegistry.ensureStarted(m);
+                        } catch (Throwable t) {
+                            throw new Exception("Problem starting module "+ m.name(), t);
+                        }
+                        long after = System.currentTimeMillis();
+                        if (started) {
+                            startupTimes.add(new Pair<MaryModule, Long>(m, after-before));
+                        }
+                        return null;
+                    }
+                });
             }
-            if (MaryProperties.getAutoBoolean("modules.poweronselftest", false)) {
+        }
+        long cpuBefore = ParallelStartup.currentThreadCpuTime();
+        long poolCpuBefore = ParallelStartup.getCpuTimeNanos();
+        long wallBefore = System.currentTimeMillis();
+        ParallelStartup.runAll("modules", startupTasks);
+        long wallTime = System.currentTimeMillis() - wallBefore;
+        long cpuTime = -1;
+        if (cpuBefore >= 0) {
+            cpuTime = (ParallelStartup.currentThreadCpuTime() - cpuBefore
+                    + ParallelStartup.getCpuTimeNanos() - poolCpuBefore) / 1000000;
+        }
+
+        if (MaryProperties.getAutoBoolean("modules.poweronselftest", false)) {
+            for (MaryModule m : ModuleRegistry.getAllModules()) {
                 m.powerOnSelfTest();
             }
         }
         
         if (startupTimes.size() > 0) {
+            long summedTime = 0;
+            for (Pair<MaryModule, Long> p : startupTimes) {
+                summedTime += p.getSecond();
+            }
+            logger.info("Started "+startupTimes.size()+" modules in "+wallTime+" ms wall-clock time"
+                    +" (sum of module startup times: "+summedTime+" ms"
+                    +(cpuTime >= 0 ? ", CPU time: "+cpuTime+" ms" : "")+")");
             Collections.sort(startupTimes, new Comparator<Pair<MaryModule, Long>>() {
                 public int compare(Pair<MaryModule, Long> o1, Pair<MaryModule, Long> o2) {
                     return -o1.getSecond().compareTo(o2.getSecond());
@@ -391,10 +423,11 @@ public class Mary {
         }
         
         if (MaryCache.haveCache()) {
-            MaryCache cache = MaryCache.getCache();
+            SynthesisCache cache = MaryCache.getCache();
+            logger.info("Cache statistics: "+cache.getStatistics());
             try {
                 cache.shutdown();
-            } catch (SQLException e) {
+            } catch (Exception e) {
                 logger.warn("Cannot shutdown cache: ", e);
             }
         }
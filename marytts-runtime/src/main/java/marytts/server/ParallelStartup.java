@@ -0,0 +1,177 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs independent startup tasks, such as starting modules or loading voices,
+ * on several threads at once. The number of threads is set by the property
+ * <code>modules.startup.threads</code>; 0 means one thread per processor, and 1
+ * means that all tasks are run one after the other in the calling thread.
+ * <p>
+ * Tasks may run startup tasks of their own; each call to {@link #runAll(String, List)}
+ * uses its own threads, so that nested calls cannot starve each other.
+ * The CPU time used by startup threads is added up, so that the time
+ * saved by parallel startup can be reported.
+ */
+public class ParallelStartup
+{
+    private static AtomicLong cpuTimeNanos = new AtomicLong();
+
+    private ParallelStartup()
+    {
+    }
+
+    /**
+     * The number of threads to use for startup tasks.
+     */
+    public static int getNumThreads()
+    {
+        int numThreads = MaryProperties.getInteger("modules.startup.threads", 0);
+        if (numThreads <= 0) {
+            numThreads = Runtime.getRuntime().availableProcessors();
+        }
+        return numThreads;
+    }
+
+    /**
+     * Run all of the given tasks and wait until they are finished.
+     * If any of the tasks fails, the remaining tasks are still completed
+     * before the first failure is thrown.
+     * @param name a name for the tasks, used for naming the threads
+     * @param tasks the tasks to run
+     * @return the results of the tasks, in the order of the tasks.
+     * @throws Exception the first exception thrown by any of the tasks
+     */
+    public static <T> List<T> runAll(String name, List<? extends Callable<T>> tasks)
+    throws Exception
+    {
+        List<T> results = new ArrayList<T>(tasks.size());
+        int numThreads = Math.min(getNumThreads(), tasks.size());
+        if (numThreads <= 1) {
+            for (Callable<T> task : tasks) {
+                results.add(task.call());
+            }
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads, new StartupThreadFactory(name));
+        try {
+            List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(new CpuTimedTask<T>(task)));
+            }
+            Throwable firstProblem = null;
+            for (Future<T> f : futures) {
+                try {
+                    results.add(f.get());
+                } catch (ExecutionException e) {
+                    if (firstProblem == null) {
+                        firstProblem = e.getCause();
+                    }
+                    results.add(null);
+                }
+            }
+            if (firstProblem instanceof Exception) {
+                throw (Exception) firstProblem;
+            } else if (firstProblem instanceof Error) {
+                throw (Error) firstProblem;
+            } else if (firstProblem != null) {
+                throw new Exception(firstProblem);
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * The CPU time used so far by the threads of {@link #runAll(String, List)},
+     * in nanoseconds. This does not include the CPU time of the threads calling runAll().
+     */
+    public static long getCpuTimeNanos()
+    {
+        return cpuTimeNanos.get();
+    }
+
+    /**
+     * The CPU time used so far by the current thread, in nanoseconds,
+     * or -1 if this cannot be measured by this JVM.
+     */
+    public static long currentThreadCpuTime()
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!threads.isCurrentThreadCpuTimeSupported() || !threads.isThreadCpuTimeEnabled()) {
+            return -1;
+        }
+        return threads.getCurrentThreadCpuTime();
+    }
+
+    private static class CpuTimedTask<T> implements Callable<T>
+    {
+        private Callable<T> task;
+
+        CpuTimedTask(Callable<T> task)
+        {
+            this.task = task;
+        }
+
+        public T call() throws Exception
+        {
+            long before = currentThreadCpuTime();
+            try {
+                return task.call();
+            } finally {
+                if (before >= 0) {
+                    cpuTimeNanos.addAndGet(currentThreadCpuTime() - before);
+                }
+            }
+        }
+    }
+
+    private static class StartupThreadFactory implements ThreadFactory
+    {
+        private String name;
+        private AtomicInteger count = new AtomicInteger();
+
+        StartupThreadFactory(String name)
+        {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable r)
+        {
+            Thread t = new Thread(r, "startup-" + name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
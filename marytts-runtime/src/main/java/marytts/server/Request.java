@@ -25,20 +25,27 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Reader;
-import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.UnsupportedAudioFileException;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 
@@ -48,9 +55,11 @@ import marytts.datatypes.MaryXML;
 import marytts.modules.MaryModule;
 import marytts.modules.ModuleRegistry;
 import marytts.modules.synthesis.Voice;
+import marytts.server.metrics.MaryMetrics;
 import marytts.util.MaryCache;
 import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
+import marytts.util.cache.SynthesisCache;
 import marytts.util.data.audio.AppendableSequenceAudioInputStream;
 import marytts.util.dom.DomUtils;
 import marytts.util.dom.MaryDomUtils;
@@ -80,8 +89,21 @@ import org.w3c.dom.traversal.TreeWalker;
  * (<code>process()</code>). Finally, the output data is either accessed
  * directly (<code>getOutputData()</code>) or written to an output stream
  * (<code>writeOutputData</code>).
+ * <p>
+ * If the property <code>request.parallelparagraphs</code> is set to true,
+ * the paragraphs of a request are processed in parallel, using a pool of
+ * <code>request.parallelparagraphs.threads</code> threads shared by all
+ * requests. The results are put together in the original order, so that
+ * the output is the same as when processing the paragraphs one after the other.
  */
 public class Request {
+    /**
+     * The thread pool used for processing paragraphs in parallel,
+     * created when it is needed for the first time.
+     */
+    private static ExecutorService paragraphPool;
+    private static int numParagraphThreads;
+
     protected MaryDataType inputType;
     protected MaryDataType outputType;
     protected String outputTypeParams;
@@ -97,7 +119,7 @@ public class Request {
     protected MaryData inputData;
     protected MaryData outputData;
     protected boolean streamAudio = false;;
-    protected boolean abortRequested = false;
+    protected volatile boolean abortRequested = false;
 
     // Keep track of timing info for each module
     // (map MaryModule onto Long)
@@ -158,8 +180,9 @@ public class Request {
         
         // Keep track of timing info for each module
         // (map MaryModule onto Long)
-        usedModules = new LinkedHashSet<MaryModule>();
-        timingInfo = new HashMap<MaryModule,Long>();
+        // (synchronized because paragraphs may be processed in parallel)
+        usedModules = Collections.synchronizedSet(new LinkedHashSet<MaryModule>());
+        timingInfo = Collections.synchronizedMap(new HashMap<MaryModule,Long>());
     }
 
     public MaryDataType getInputType() {
@@ -282,6 +305,7 @@ public class Request {
         // Is inputdata of a type that must be converted to RAWMARYXML?
         if (outputType.name().equals("PRAAT_TEXTGRID")) { // never chunk for PRAAT_TEXTGRID
             outputData = processOrLookupOneChunk(inputData, outputType, outputTypeParams);
+            recordMetrics(System.currentTimeMillis() - startTime);
             return;
         } else if (inputType.isTextType() && inputType.name().startsWith("TEXT")
             || inputType.isXMLType() && !inputType.isMaryXML()) {
@@ -302,6 +326,7 @@ public class Request {
                 appendableAudioStream.append(outputData.getAudio());
                 appendableAudioStream.doneAppending();
             }
+            recordMetrics(System.currentTimeMillis() - startTime);
             return;
         }
         assert rawmaryxml != null && rawmaryxml.getType().equals(MaryDataType.get("RAWMARYXML"))
@@ -322,43 +347,177 @@ public class Request {
             outputData.setAudio(appendableAudioStream);
             outputData.setAudioFileFormat(audioFileFormat);
         }
+        // Copy the paragraphs into a list first, because replacing them in the document
+        // (empty ones by their content) would change the live NodeList:
         int len = inputDataList.getLength();
-        for (int i=0; i<len && !abortRequested; i++) {
-            Element currentInputParagraph = (Element) inputDataList.item(i);
-            assert currentInputParagraph.getTagName().equals(MaryXML.PARAGRAPH);
-            NodeList outputNodeList = null;
-            // Only process paragraph if there is any text below it:
-            if (MaryDomUtils.getPlainTextBelow(currentInputParagraph).trim().equals("")) {
-                outputNodeList = currentInputParagraph.getChildNodes();
-            } else { // process "real" data:
-                MaryData oneInputData = extractParagraphAsMaryData(rawmaryxml, currentInputParagraph);
-                //assert oneInputData.getDefaultVoice() != null;
-                MaryData oneOutputData = processOrLookupOneChunk(oneInputData, outputType, outputTypeParams);
-                //assert oneOutputData.getDefaultVoice() != null;
-                if (outputType.isMaryXML()) {
-                    NodeList outParagraphList = oneOutputData.getDocument().getDocumentElement().getElementsByTagName(MaryXML.PARAGRAPH);
-                    // This does not hold for Tibetan:
-                    //assert outParagraphList.getLength() == 1;
-                    outputNodeList = outParagraphList;
-                } else { // output is not MaryXML, e.g. text or audio
-                    assert outputData != null;
-                    outputData.append(oneOutputData);
+        List<Element> paragraphs = new ArrayList<Element>(len);
+        for (int i=0; i<len; i++) {
+            Element paragraph = (Element) inputDataList.item(i);
+            assert paragraph.getTagName().equals(MaryXML.PARAGRAPH);
+            paragraphs.add(paragraph);
+        }
+        if (len > 1 && MaryProperties.getBoolean("request.parallelparagraphs", false)) {
+            processParagraphsInParallel(rawmaryxml, paragraphs);
+        } else {
+            for (int i=0; i<len && !abortRequested; i++) {
+                Element currentInputParagraph = paragraphs.get(i);
+                MaryData oneOutputData = null;
+                // Only process paragraph if there is any text below it:
+                if (!isEmptyParagraph(currentInputParagraph)) { // process "real" data:
+                    MaryData oneInputData = extractParagraphAsMaryData(rawmaryxml, currentInputParagraph);
+                    //assert oneInputData.getDefaultVoice() != null;
+                    oneOutputData = processOrLookupOneChunk(oneInputData, outputType, outputTypeParams);
+                    //assert oneOutputData.getDefaultVoice() != null;
                 }
-            }
-            if (outputType.isMaryXML()) {
-                assert outputNodeList != null;
-                // And now replace the paragraph in-place:
-                MaryDomUtils.replaceElement(currentInputParagraph, outputNodeList);
+                addParagraphOutput(currentInputParagraph, oneOutputData);
             }
         }
         long stopTime = System.currentTimeMillis();
         logger.info("Request processed in " + (stopTime - startTime) + " ms.");
-        for (MaryModule m : usedModules) {
-            logger.info("   " + m.name() + " took " + timingInfo.get(m) + " ms");
+        synchronized (usedModules) {
+            for (MaryModule m : usedModules) {
+                logger.info("   " + m.name() + " took " + timingInfo.get(m) + " ms");
+            }
         }
+        recordMetrics(stopTime - startTime);
         if (appendableAudioStream != null) appendableAudioStream.doneAppending();
     }
 
+    /**
+     * Process the given paragraphs in parallel, using the shared paragraph thread pool.
+     * The paragraphs are extracted from the document and their results are put back
+     * in this thread, strictly in document order, so that the document itself is never
+     * accessed by more than one thread; the pool threads only work on their own copies.
+     * To limit the memory used, only a few paragraphs beyond the one currently waited for
+     * are processed ahead.
+     * @param rawmaryxml the document containing the paragraphs
+     * @param paragraphs the paragraphs to process, in document order
+     */
+    private void processParagraphsInParallel(MaryData rawmaryxml, List<Element> paragraphs)
+    throws Exception {
+        ExecutorService pool = getParagraphPool();
+        int lookAhead = 2 * numParagraphThreads;
+        int len = paragraphs.size();
+        LinkedList<Future<MaryData>> pending = new LinkedList<Future<MaryData>>();
+        int next = 0;
+        try {
+            for (int i=0; i<len && !abortRequested; i++) {
+                while (next < len && next <= i + lookAhead) {
+                    Element paragraph = paragraphs.get(next);
+                    if (isEmptyParagraph(paragraph)) {
+                        pending.add(null);
+                    } else {
+                        final MaryData oneInputData = extractParagraphAsMaryData(rawmaryxml, paragraph);
+                        pending.add(pool.submit(new Callable<MaryData>() {
+                            public MaryData call() throws Exception {
+                                if (abortRequested) return null;
+                                return processOrLookupOneChunk(oneInputData, outputType, outputTypeParams);
+                            }
+                        }));
+                    }
+                    next++;
+                }
+                Future<MaryData> result = pending.removeFirst();
+                MaryData oneOutputData = null;
+                if (result != null) {
+                    try {
+                        oneOutputData = result.get();
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof Exception) throw (Exception) cause;
+                        if (cause instanceof Error) throw (Error) cause;
+                        throw e;
+                    }
+                    if (oneOutputData == null) { // aborted
+                        assert abortRequested;
+                        break;
+                    }
+                }
+                addParagraphOutput(paragraphs.get(i), oneOutputData);
+            }
+        } finally {
+            // in case of abort or error, don't waste time on the remaining paragraphs:
+            for (Future<MaryData> f : pending) {
+                if (f != null) f.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Add the processing times of this request to the histograms in {@link MaryMetrics}:
+     * the total time, and the time spent in each module.
+     * @param totalMillis the total processing time, in milliseconds
+     */
+    private void recordMetrics(long totalMillis) {
+        String locale = defaultLocale != null ? defaultLocale.toString() : "";
+        String voice = defaultVoice != null ? defaultVoice.getName() : "";
+        MaryMetrics.REQUEST_SECONDS.labels(inputType.name(), outputType.name(), locale, voice).observeMillis(totalMillis);
+        synchronized (usedModules) {
+            for (MaryModule m : usedModules) {
+                Long millis = timingInfo.get(m);
+                if (millis != null) {
+                    MaryMetrics.MODULE_SECONDS.labels(m.name(), locale, voice).observeMillis(millis.longValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the given paragraph contains no text and therefore needs not be processed.
+     */
+    private boolean isEmptyParagraph(Element paragraph) {
+        return MaryDomUtils.getPlainTextBelow(paragraph).trim().equals("");
+    }
+
+    /**
+     * Add the result of processing one paragraph to the output data.
+     * @param inputParagraph the paragraph in the input document
+     * @param oneOutputData the processing result for this paragraph,
+     * or null if the paragraph was not processed because it contains no text
+     */
+    private void addParagraphOutput(Element inputParagraph, MaryData oneOutputData) {
+        NodeList outputNodeList = null;
+        if (oneOutputData == null) {
+            outputNodeList = inputParagraph.getChildNodes();
+        } else if (outputType.isMaryXML()) {
+            NodeList outParagraphList = oneOutputData.getDocument().getDocumentElement().getElementsByTagName(MaryXML.PARAGRAPH);
+            // This does not hold for Tibetan:
+            //assert outParagraphList.getLength() == 1;
+            outputNodeList = outParagraphList;
+        } else { // output is not MaryXML, e.g. text or audio
+            assert outputData != null;
+            outputData.append(oneOutputData);
+        }
+        if (outputType.isMaryXML()) {
+            assert outputNodeList != null;
+            // And now replace the paragraph in-place:
+            MaryDomUtils.replaceElement(inputParagraph, outputNodeList);
+        }
+    }
+
+    /**
+     * Get the thread pool for processing paragraphs in parallel, shared by all requests.
+     * Its size is given by the property <code>request.parallelparagraphs.threads</code>;
+     * 0 means one thread per available processor.
+     */
+    private static synchronized ExecutorService getParagraphPool() {
+        if (paragraphPool == null) {
+            numParagraphThreads = MaryProperties.getInteger("request.parallelparagraphs.threads", 0);
+            if (numParagraphThreads <= 0) {
+                numParagraphThreads = Runtime.getRuntime().availableProcessors();
+            }
+            paragraphPool = Executors.newFixedThreadPool(numParagraphThreads, new ThreadFactory() {
+                private int count = 0;
+                public synchronized Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "paragraph-" + (++count));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return paragraphPool;
+    }
+
     /**
      * Convert the given data into the requested output type, either by looking it up in the cache
      * or by actually processing it.
@@ -380,7 +539,7 @@ public class Request {
         Locale locale = determineLocale(oneInputData);
         assert locale != null;
         
-        MaryCache cache = null;
+        SynthesisCache cache = null;
         if (MaryProperties.getBoolean("cache")) {
             cache = MaryCache.getCache();
         }
@@ -464,10 +623,9 @@ public class Request {
         }
     }
 
-    private void insertAudioIntoCache(MaryCache cache, String inputtype,
+    private void insertAudioIntoCache(SynthesisCache cache, String inputtype,
             String localeString, String voice, String outputParams,
-            String inputtext, MaryData currentData) throws IOException,
-            SQLException, UnsupportedAudioFileException {
+            String inputtext, MaryData currentData) throws Exception {
         AppendableSequenceAudioInputStream as = (AppendableSequenceAudioInputStream) currentData.getAudio();
         assert as != appendableAudioStream;
         as.doneAppending();
@@ -479,7 +637,7 @@ public class Request {
         currentData.setAudio(ais);
     }
 
-    private void insertTextIntoCache(MaryCache cache, String inputtype,
+    private void insertTextIntoCache(SynthesisCache cache, String inputtype,
             String outputtype, String localeString, String voice,
             String outputParams, String inputtext, MaryData currentData) {
         try {
@@ -561,11 +719,13 @@ public class Request {
             currentData = outData;
             long moduleStopTime = System.currentTimeMillis();
             long delta = moduleStopTime - moduleStartTime;
-            Long soFar = timingInfo.get(m);
-            if (soFar != null)
-                timingInfo.put(m, new Long(soFar.longValue()+delta));
-            else
-                timingInfo.put(m, new Long(delta));
+            synchronized (timingInfo) {
+                Long soFar = timingInfo.get(m);
+                if (soFar != null)
+                    timingInfo.put(m, new Long(soFar.longValue()+delta));
+                else
+                    timingInfo.put(m, new Long(delta));
+            }
             if (MaryRuntimeUtils.veryLowMemoryCondition()) {
                 logger.info("Very low memory condition detected (only " + MaryUtils.availableMemory() + " bytes left). Triggering garbage collection.");
                 Runtime.getRuntime().gc();
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of observed values, such as durations in seconds, counted in buckets
+ * with fixed upper bounds. Values can be observed and read concurrently without locking.
+ */
+public class Histogram
+{
+    /**
+     * Default bucket upper bounds for durations, in seconds, from 1 ms to 1 minute.
+     */
+    public static final double[] DEFAULT_BUCKETS = {
+        0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60
+    };
+
+    private final double[] upperBounds;
+    // one count per bucket, not cumulative; the last one is for values above all upper bounds
+    private final AtomicLongArray bucketCounts;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumBits = new AtomicLong(Double.doubleToLongBits(0));
+
+    /**
+     * Create a histogram with the default buckets.
+     */
+    public Histogram()
+    {
+        this(DEFAULT_BUCKETS);
+    }
+
+    /**
+     * Create a histogram with the given buckets.
+     * @param upperBounds the upper bounds of the buckets, in increasing order
+     */
+    public Histogram(double[] upperBounds)
+    {
+        for (int i=1; i<upperBounds.length; i++) {
+            if (upperBounds[i] <= upperBounds[i-1]) {
+                throw new IllegalArgumentException("Bucket upper bounds must be increasing");
+            }
+        }
+        this.upperBounds = upperBounds.clone();
+        this.bucketCounts = new AtomicLongArray(upperBounds.length + 1);
+    }
+
+    /**
+     * Count the given value.
+     */
+    public void observe(double value)
+    {
+        int bucket = 0;
+        while (bucket < upperBounds.length && value > upperBounds[bucket]) {
+            bucket++;
+        }
+        bucketCounts.incrementAndGet(bucket);
+        count.incrementAndGet();
+        long oldBits, newBits;
+        do {
+            oldBits = sumBits.get();
+            newBits = Double.doubleToLongBits(Double.longBitsToDouble(oldBits) + value);
+        } while (!sumBits.compareAndSet(oldBits, newBits));
+    }
+
+    /**
+     * Count the given duration in milliseconds, as seconds.
+     */
+    public void observeMillis(long millis)
+    {
+        observe(millis / 1000.);
+    }
+
+    /**
+     * Count the given duration in nanoseconds, as seconds.
+     */
+    public void observeNanos(long nanos)
+    {
+        observe(nanos / 1.e9);
+    }
+
+    /**
+     * The upper bounds of the buckets, not including the implicit last bucket for all larger values.
+     */
+    public double[] getUpperBounds()
+    {
+        return upperBounds.clone();
+    }
+
+    /**
+     * For each bucket, the number of values less than or equal to its upper bound.
+     * The last element is the number of all values, corresponding to an upper bound of infinity.
+     * Because values may be observed while this is computed, the result may differ slightly
+     * from {@link #getCount()}.
+     */
+    public long[] getCumulativeCounts()
+    {
+        long[] cumulative = new long[bucketCounts.length()];
+        long total = 0;
+        for (int i=0; i<cumulative.length; i++) {
+            total += bucketCounts.get(i);
+            cumulative[i] = total;
+        }
+        return cumulative;
+    }
+
+    /**
+     * The number of values observed.
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * The sum of all values observed.
+     */
+    public double getSum()
+    {
+        return Double.longBitsToDouble(sumBits.get());
+    }
+}
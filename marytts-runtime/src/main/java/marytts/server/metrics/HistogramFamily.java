@@ -0,0 +1,152 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A named set of {@link Histogram}s, one for each combination of label values,
+ * such as one histogram of processing times for each module.
+ */
+public class HistogramFamily
+{
+    private final String name;
+    private final String help;
+    private final String[] labelNames;
+    private final double[] buckets;
+    private final ConcurrentHashMap<List<String>, Histogram> histograms = new ConcurrentHashMap<List<String>, Histogram>();
+
+    /**
+     * Create a histogram family with the default buckets.
+     * @param name the metric name
+     * @param help a one-line description of the metric
+     * @param labelNames the names of the labels distinguishing the histograms
+     */
+    public HistogramFamily(String name, String help, String... labelNames)
+    {
+        this(name, help, Histogram.DEFAULT_BUCKETS, labelNames);
+    }
+
+    /**
+     * Create a histogram family with the given buckets.
+     * @param name the metric name
+     * @param help a one-line description of the metric
+     * @param buckets the upper bounds of the buckets, in increasing order
+     * @param labelNames the names of the labels distinguishing the histograms
+     */
+    public HistogramFamily(String name, String help, double[] buckets, String... labelNames)
+    {
+        this.name = name;
+        this.help = help;
+        this.buckets = buckets.clone();
+        this.labelNames = labelNames.clone();
+    }
+
+    /**
+     * Get the histogram for the given label values, creating it if necessary.
+     * Null values are treated as empty strings.
+     * @param labelValues one value for each label name, in the same order
+     */
+    public Histogram labels(String... labelValues)
+    {
+        if (labelValues.length != labelNames.length) {
+            throw new IllegalArgumentException("Expected "+labelNames.length+" label values for "+name+", got "+labelValues.length);
+        }
+        String[] values = labelValues.clone();
+        for (int i=0; i<values.length; i++) {
+            if (values[i] == null) values[i] = "";
+        }
+        List<String> key = Arrays.asList(values);
+        Histogram h = histograms.get(key);
+        if (h == null) {
+            h = new Histogram(buckets);
+            Histogram other = histograms.putIfAbsent(key, h);
+            if (other != null) {
+                h = other;
+            }
+        }
+        return h;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Append all histograms in this family to the given buffer,
+     * in the Prometheus text exposition format.
+     */
+    public void writePrometheus(StringBuilder out)
+    {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        List<Map.Entry<List<String>, Histogram>> entries = new ArrayList<Map.Entry<List<String>, Histogram>>(histograms.entrySet());
+        // stable output order, which makes the output easier to read:
+        Collections.sort(entries, new Comparator<Map.Entry<List<String>, Histogram>>() {
+            public int compare(Map.Entry<List<String>, Histogram> a, Map.Entry<List<String>, Histogram> b) {
+                return a.getKey().toString().compareTo(b.getKey().toString());
+            }
+        });
+        for (Map.Entry<List<String>, Histogram> e : entries) {
+            List<String> values = e.getKey();
+            Histogram h = e.getValue();
+            double[] upperBounds = h.getUpperBounds();
+            long[] cumulative = h.getCumulativeCounts();
+            for (int i=0; i<cumulative.length; i++) {
+                String le = i < upperBounds.length ? MaryMetrics.formatValue(upperBounds[i]) : "+Inf";
+                out.append(name).append("_bucket");
+                appendLabels(out, values, le);
+                out.append(' ').append(cumulative[i]).append('\n');
+            }
+            out.append(name).append("_sum");
+            appendLabels(out, values, null);
+            out.append(' ').append(MaryMetrics.formatValue(h.getSum())).append('\n');
+            out.append(name).append("_count");
+            appendLabels(out, values, null);
+            out.append(' ').append(cumulative[cumulative.length-1]).append('\n');
+        }
+    }
+
+    private void appendLabels(StringBuilder out, List<String> values, String le)
+    {
+        if (labelNames.length == 0 && le == null) {
+            return;
+        }
+        out.append('{');
+        for (int i=0; i<labelNames.length; i++) {
+            if (i > 0) out.append(',');
+            out.append(labelNames[i]).append("=\"");
+            MaryMetrics.appendEscaped(out, values.get(i));
+            out.append('"');
+        }
+        if (le != null) {
+            if (labelNames.length > 0) out.append(',');
+            out.append("le=\"").append(le).append('"');
+        }
+        out.append('}');
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.metrics;
+
+import marytts.unitselection.select.TargetCostCache;
+import marytts.util.MaryCache;
+import marytts.util.cache.CacheStatistics;
+
+/**
+ * The metrics collected while the server is running, to find out where
+ * the time goes when processing requests. They can be retrieved in the
+ * Prometheus text exposition format through {@link #toPrometheusText()}.
+ */
+public class MaryMetrics
+{
+    /**
+     * The time spent in each module while processing a request.
+     */
+    public static final HistogramFamily MODULE_SECONDS = new HistogramFamily("marytts_module_duration_seconds",
+            "Time spent in a module while processing one request.", "module", "locale", "voice");
+
+    /**
+     * The total time for processing a request.
+     */
+    public static final HistogramFamily REQUEST_SECONDS = new HistogramFamily("marytts_request_duration_seconds",
+            "Time for processing one request.", "input_type", "output_type", "locale", "voice");
+
+    /**
+     * The time a request waits for a free worker thread before it is processed.
+     */
+    public static final HistogramFamily QUEUE_WAIT_SECONDS = new HistogramFamily("marytts_queue_wait_seconds",
+            "Time a request waits for a free worker thread.");
+
+    /**
+     * The time from receiving a request until the first byte of audio is sent.
+     */
+    public static final HistogramFamily FIRST_AUDIO_BYTE_SECONDS = new HistogramFamily("marytts_first_audio_byte_seconds",
+            "Time from receiving a request until the first byte of audio is sent.", "streaming");
+
+    private static final HistogramFamily[] HISTOGRAMS = {
+        MODULE_SECONDS, REQUEST_SECONDS, QUEUE_WAIT_SECONDS, FIRST_AUDIO_BYTE_SECONDS
+    };
+
+    /**
+     * All metrics in the Prometheus text exposition format: the histograms above,
+     * the statistics of the synthesis cache if there is one, and those of the
+     * target cost caches of unit selection voices once they have been used.
+     */
+    public static String toPrometheusText()
+    {
+        StringBuilder out = new StringBuilder();
+        for (HistogramFamily h : HISTOGRAMS) {
+            h.writePrometheus(out);
+        }
+        if (MaryCache.haveCache()) {
+            CacheStatistics stats = MaryCache.getCache().getStatistics();
+            String name = "marytts_cache_lookups_total";
+            out.append("# HELP ").append(name).append(" Number of cache lookups by result.\n");
+            out.append("# TYPE ").append(name).append(" counter\n");
+            out.append(name).append("{result=\"memory_hit\"} ").append(stats.getMemoryHits()).append('\n');
+            out.append(name).append("{result=\"disk_hit\"} ").append(stats.getDiskHits()).append('\n');
+            out.append(name).append("{result=\"miss\"} ").append(stats.getMisses()).append('\n');
+            appendMetric(out, "marytts_cache_hit_ratio", "Proportion of cache lookups that found an entry.", "gauge", stats.getHitRate());
+            appendMetric(out, "marytts_cache_insertions_total", "Number of entries inserted into the cache.", "counter", stats.getInsertions());
+            appendMetric(out, "marytts_cache_evictions_total", "Number of entries removed from memory to stay within the memory budget.", "counter", stats.getEvictions());
+        }
+        long costHits = 0;
+        long costMisses = 0;
+        long costEvictions = 0;
+        for (TargetCostCache cache : TargetCostCache.getCaches()) {
+            costHits += cache.getHits();
+            costMisses += cache.getMisses();
+            costEvictions += cache.getEvictions();
+        }
+        if (costHits + costMisses > 0) {
+            String name = "marytts_target_cost_cache_lookups_total";
+            out.append("# HELP ").append(name).append(" Number of unit target costs looked up in the target cost caches, by result.\n");
+            out.append("# TYPE ").append(name).append(" counter\n");
+            out.append(name).append("{result=\"hit\"} ").append(costHits).append('\n');
+            out.append(name).append("{result=\"miss\"} ").append(costMisses).append('\n');
+            appendMetric(out, "marytts_target_cost_cache_hit_ratio", "Proportion of unit target costs found in the target cost caches.", "gauge", (double) costHits / (costHits + costMisses));
+            appendMetric(out, "marytts_target_cost_cache_evictions_total", "Number of unit target costs removed to stay within the cache size.", "counter", costEvictions);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Append a metric with a single value and no labels to the given buffer,
+     * in the Prometheus text exposition format.
+     * @param type the metric type, e.g. "gauge" or "counter"
+     */
+    public static void appendMetric(StringBuilder out, String name, String help, String type, double value)
+    {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        out.append(name).append(' ').append(formatValue(value)).append('\n');
+    }
+
+    static String formatValue(double value)
+    {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1.e15) {
+            return String.valueOf((long) value);
+        }
+        return String.valueOf(value);
+    }
+
+    static void appendEscaped(StringBuilder out, String labelValue)
+    {
+        for (int i=0, n=labelValue.length(); i<n; i++) {
+            char c = labelValue.charAt(i);
+            if (c == '\\') out.append("\\\\");
+            else if (c == '"') out.append("\\\"");
+            else if (c == '\n') out.append("\\n");
+            else out.append(c);
+        }
+    }
+}
@@ -30,6 +30,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -39,9 +40,10 @@ import marytts.datatypes.MaryDataType;
 import marytts.datatypes.MaryXML;
 import marytts.exceptions.SynthesisException;
 import marytts.modules.synthesis.Voice;
-import marytts.modules.synthesis.WaveformSynthesizer;
+import marytts.modules.synthesis.StreamingWaveformSynthesizer;
 import marytts.modules.synthesis.Voice.Gender;
 import marytts.server.MaryProperties;
+import marytts.server.ParallelStartup;
 import marytts.unitselection.concat.UnitConcatenator;
 import marytts.unitselection.concat.BaseUnitConcatenator.UnitData;
 import marytts.unitselection.data.Unit;
@@ -70,7 +72,7 @@ import org.w3c.dom.traversal.TreeWalker;
  *
  */
 
-public class UnitSelectionSynthesizer implements WaveformSynthesizer
+public class UnitSelectionSynthesizer implements StreamingWaveformSynthesizer
 {
     /**
      * A map with Voice objects as keys, and Lists of UtteranceProcessors as values.
@@ -91,13 +93,23 @@ public class UnitSelectionSynthesizer implements WaveformSynthesizer
         // Register UnitSelection voices:
         logger.debug("Register UnitSelection voices:");
         List<String> voiceNames = MaryProperties.getList("unitselection.voices.list");
-        for (String voiceName : voiceNames) {
-            long time = System.currentTimeMillis();
-            Voice unitSelVoice = new UnitSelectionVoice(voiceName, this);
+        // Load the voices in parallel, but register them in the configured order,
+        // so that the choice of default voices does not depend on timing:
+        List<Callable<Voice>> loaders = new ArrayList<Callable<Voice>>();
+        for (final String voiceName : voiceNames) {
+            loaders.add(new Callable<Voice>() {
+                public Voice call() throws Exception {
+                    long time = System.currentTimeMillis();
+                    Voice unitSelVoice = new UnitSelectionVoice(voiceName, UnitSelectionSynthesizer.this);
+                    long newtime = System.currentTimeMillis()-time;
+                    logger.info("Loading of voice "+voiceName+" took "+newtime+" milliseconds");
+                    return unitSelVoice;
+                }
+            });
+        }
+        for (Voice unitSelVoice : ParallelStartup.runAll("unitselection-voices", loaders)) {
             logger.debug("Voice '" + unitSelVoice + "'");
             Voice.registerVoice(unitSelVoice);    
-            long newtime = System.currentTimeMillis()-time;
-            logger.info("Loading of voice "+voiceName+" took "+newtime+" milliseconds");
         }
         logger.info("started.");
     }
@@ -154,32 +166,118 @@ public class UnitSelectionSynthesizer implements WaveformSynthesizer
     {
         assert voice instanceof UnitSelectionVoice;
         UnitSelectionVoice v = (UnitSelectionVoice) voice;
-        UnitDatabase udb = v.getDatabase();
-        // Select:
-        UnitSelector unitSel = v.getUnitSelector();
+        UnitSelectionVoice.SynthesisData data = v.getSynthesisData();
+        List<SelectedUnit> selectedUnits = selectUnits(tokensAndBoundaries, v, data);
+        AudioInputStream audio = concatenate(selectedUnits, data, outputParams);
+        propagateDurations(selectedUnits, data, 0);
+        logDocument(tokensAndBoundaries);
+        return audio;
+    }
+
+    /**
+     * Whether unit selection voices are synthesized phrase by phrase,
+     * according to the property <code>unitselection.streaming</code>.
+     */
+    public boolean isStreaming(Voice voice)
+    {
+        return MaryProperties.getBoolean("unitselection.streaming", false);
+    }
+
+    /**
+     * Synthesize the given section phrase by phrase, as split by {@link #splitIntoPhrases(List)}.
+     * Units are selected and concatenated for each phrase separately, so that the
+     * audio of the first phrase can be passed on before the later phrases are processed;
+     * the joins at the cut points are not optimised.
+     */
+    public void synthesize(List<Element> tokensAndBoundaries, Voice voice, String outputParams,
+            AudioDestination destination)
+        throws SynthesisException
+    {
+        assert voice instanceof UnitSelectionVoice;
+        UnitSelectionVoice v = (UnitSelectionVoice) voice;
+        UnitSelectionVoice.SynthesisData data = v.getSynthesisData();
+        float endInSeconds = 0;
+        for (List<Element> phrase : splitIntoPhrases(tokensAndBoundaries)) {
+            List<SelectedUnit> selectedUnits = selectUnits(phrase, v, data);
+            AudioInputStream audio = concatenate(selectedUnits, data, outputParams);
+            endInSeconds = propagateDurations(selectedUnits, data, endInSeconds);
+            destination.append(audio);
+        }
+        logDocument(tokensAndBoundaries);
+    }
+
+    /**
+     * Split a section into parts which end with a phrase boundary or a pause,
+     * i.e. a boundary element with a break index of 3 or more or with a duration.
+     * Each part contains at least one token with phones; trailing elements without
+     * phones are added to the last part.
+     * @param tokensAndBoundaries a list of adjacent <t> and <boundary> elements
+     * @return the parts, in order; their concatenation is the given list.
+     */
+    static List<List<Element>> splitIntoPhrases(List<Element> tokensAndBoundaries)
+    {
+        List<List<Element>> phrases = new ArrayList<List<Element>>();
+        List<Element> current = new ArrayList<Element>();
+        boolean hasPhones = false;
+        for (Element e : tokensAndBoundaries) {
+            current.add(e);
+            if (e.getTagName().equals(MaryXML.TOKEN)) {
+                hasPhones = hasPhones || e.getElementsByTagName(MaryXML.PHONE).getLength() > 0;
+            } else if (hasPhones && isPhraseBoundary(e)) {
+                phrases.add(current);
+                current = new ArrayList<Element>();
+                hasPhones = false;
+            }
+        }
+        if (!current.isEmpty()) {
+            if (!hasPhones && !phrases.isEmpty()) {
+                phrases.get(phrases.size()-1).addAll(current);
+            } else {
+                phrases.add(current);
+            }
+        }
+        return phrases;
+    }
+
+    private static boolean isPhraseBoundary(Element boundary)
+    {
+        try {
+            if (boundary.hasAttribute("breakindex")
+                    && Integer.parseInt(boundary.getAttribute("breakindex").trim()) >= 3) {
+                return true;
+            }
+            if (boundary.hasAttribute("duration")
+                    && Float.parseFloat(boundary.getAttribute("duration").trim()) > 0) {
+                return true;
+            }
+        } catch (NumberFormatException nfe) {
+            // not a usable value, so not a cut point
+        }
+        return false;
+    }
+
+    private List<SelectedUnit> selectUnits(List<Element> tokensAndBoundaries, UnitSelectionVoice v,
+            UnitSelectionVoice.SynthesisData data)
+        throws SynthesisException
+    {
+        UnitSelector unitSel = data.getUnitSelector();
+        logger.debug("Selecting units with a "+unitSel.getClass().getName()+" from a "+data.getDatabase().getClass().getName());
+        return unitSel.selectUnits(tokensAndBoundaries, v);
+    }
+
+    private AudioInputStream concatenate(List<SelectedUnit> selectedUnits, UnitSelectionVoice.SynthesisData data,
+            String outputParams)
+        throws SynthesisException
+    {
         UnitConcatenator unitConcatenator;
         if (outputParams != null && outputParams.contains("MODIFICATION")) {
-            unitConcatenator = v.getModificationConcatenator();
+            unitConcatenator = data.getModificationConcatenator();
         } else {
-            unitConcatenator = v.getConcatenator();
+            unitConcatenator = data.getConcatenator();
         }
-        // TODO: check if we actually need to access v.getDatabase() here
-        UnitDatabase database = v.getDatabase();
-        logger.debug("Selecting units with a "+unitSel.getClass().getName()+" from a "+database.getClass().getName());
-        List<SelectedUnit> selectedUnits = unitSel.selectUnits(tokensAndBoundaries, voice);
-        //if (logger.getEffectiveLevel().equals(Level.DEBUG)) {
-          //  StringWriter sw = new StringWriter();
-           // PrintWriter pw = new PrintWriter(sw);
-            //for (Iterator selIt=selectedUnits.iterator(); selIt.hasNext(); )
-              //  pw.println(selIt.next());
-            //logger.debug("Units selected:\n"+sw.toString());
-        //}
-        
-        // Concatenate:
         logger.debug("Now creating audio with a "+unitConcatenator.getClass().getName());
-        AudioInputStream audio = null;
         try {
-            audio = unitConcatenator.getAudio(selectedUnits);
+            return unitConcatenator.getAudio(selectedUnits);
         } catch (IOException ioe) {
             StringWriter sw = new StringWriter();
             PrintWriter pw = new PrintWriter(sw);
@@ -187,9 +285,17 @@ public class UnitSelectionSynthesizer implements WaveformSynthesizer
                 pw.println(selIt.next());
             throw new SynthesisException("Problems generating audio for unit chain: "+sw.toString(), ioe);
         }
-        
-        // Propagate unit durations to XML tree:
-        float endInSeconds = 0;
+    }
+
+    /**
+     * Propagate the durations of the concatenated units to the XML tree.
+     * @param startInSeconds the end time of the previous unit, if any
+     * @return the end time of the last unit
+     */
+    private float propagateDurations(List<SelectedUnit> selectedUnits, UnitSelectionVoice.SynthesisData data, float startInSeconds)
+    {
+        UnitDatabase udb = data.getDatabase();
+        float endInSeconds = startInSeconds;
         float durLeftHalfInSeconds = 0;
         String unitString = "";
         String unitAttrName = "units"; // name of the attribute that is added for unit selection diagnostics
@@ -205,7 +311,7 @@ public class UnitSelectionSynthesizer implements WaveformSynthesizer
             // convert to millis only at export time, and re-compute duration in millis
             // from the end in millis, to avoid discrepancies due to rounding
             int unitDurationInSamples = unitData.getUnitDuration();
-            float unitDurationInSeconds = unitDurationInSamples / (float) database.getUnitFileReader().getSampleRate();
+            float unitDurationInSeconds = unitDurationInSamples / (float) udb.getUnitFileReader().getSampleRate();
             int prevEndInMillis = (int) (1000 * endInSeconds);
             endInSeconds += unitDurationInSeconds;
             int endInMillis = (int) (1000 * endInSeconds);
@@ -257,6 +363,11 @@ public class UnitSelectionSynthesizer implements WaveformSynthesizer
                 logger.debug("Unit "+su.getTarget().getName()+" of length "+unitDurationInMillis+" ms has no maryxml element.");
             }
         }
+        return endInSeconds;
+    }
+
+    private void logDocument(List<Element> tokensAndBoundaries)
+    {
         if (logger.getEffectiveLevel().equals(Level.DEBUG)) {
             try {
                 MaryNormalisedWriter writer = new MaryNormalisedWriter();
@@ -267,9 +378,6 @@ public class UnitSelectionSynthesizer implements WaveformSynthesizer
                 logger.warn("Problem writing XML to logfile: "+e);
             }
         }
-
-        
-        return audio;
     }
     
 }
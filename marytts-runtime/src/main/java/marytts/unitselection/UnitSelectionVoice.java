@@ -68,13 +68,9 @@ import marytts.unitselection.select.UnitSelector;
  */
 public class UnitSelectionVoice extends Voice { 
 
-    protected UnitDatabase database;
-    protected UnitSelector unitSelector;
-    protected UnitConcatenator concatenator;
-    protected UnitConcatenator modificationConcatenator;
+    private volatile SynthesisData data;
     protected String domain;
     protected String name;
-    protected CART[] f0Carts;
     protected String exampleText;
 
     
@@ -97,7 +93,45 @@ public class UnitSelectionVoice extends Voice {
             if (exampleTextStream != null) {
                 readExampleText(exampleTextStream);
             }
-            
+        } catch (MaryConfigurationException mce) {
+            throw mce;
+        } catch (Exception ex) {
+            throw new MaryConfigurationException("Cannot build unit selection voice '"+name+"'", ex);
+        }
+        initData();
+    }
+    
+    
+    /**
+     * A voice with the given metadata, which is not read from a voice config;
+     * its synthesis data is loaded by {@link #loadSynthesisData()}.
+     */
+    @SuppressWarnings("deprecation")
+    protected UnitSelectionVoice(String name, Locale locale, AudioFormat dbAudioFormat,
+            WaveformSynthesizer synthesizer, Gender gender, String domain)
+    throws MaryConfigurationException
+    {
+        super(name, locale, dbAudioFormat, synthesizer, gender);
+        this.name = name;
+        this.domain = domain;
+        initData();
+    }
+    
+    
+    @Override
+    protected void loadData() throws MaryConfigurationException
+    {
+        data = loadSynthesisData();
+    }
+    
+    /**
+     * Load the unit database, the cost functions, the unit selector and the concatenator
+     * of this voice.
+     */
+    protected SynthesisData loadSynthesisData() throws MaryConfigurationException
+    {
+        try {
+            String header = "voice."+name;
             FeatureProcessorManager featProcManager = FeatureRegistry.getFeatureProcessorManager(this);
             if (featProcManager == null) featProcManager = FeatureRegistry.getFeatureProcessorManager(getLocale());
             if (featProcManager == null) throw new MaryConfigurationException("No feature processor manager for voice '"+name+"' (locale "+getLocale()+")");
@@ -166,7 +200,7 @@ public class UnitSelectionVoice extends Voice {
             //build and load database
             logger.debug("...instantiating database...");
             String databaseClass = MaryProperties.needProperty(header+".databaseClass");
-            database = (UnitDatabase) Class.forName(databaseClass).newInstance();
+            UnitDatabase database = (UnitDatabase) Class.forName(databaseClass).newInstance();
             if(useSCost) {
                 database.load(targetFunction, joinFunction, sCostFunction , unitReader, cart, timelineReader, basenameTimelineReader, backtrace);
             } else {
@@ -176,7 +210,7 @@ public class UnitSelectionVoice extends Voice {
             //build Selector
             logger.debug("...instantiating unit selector...");
             String selectorClass = MaryProperties.needProperty(header+".selectorClass");
-            unitSelector = (UnitSelector) Class.forName(selectorClass).newInstance();
+            UnitSelector unitSelector = (UnitSelector) Class.forName(selectorClass).newInstance();
             float targetCostWeights = Float.parseFloat(MaryProperties.getProperty(header+".viterbi.wTargetCosts", "0.33"));
             int beamSize = MaryProperties.getInteger(header+".viterbi.beamsize", 100);
             if (!useSCost) {
@@ -190,12 +224,12 @@ public class UnitSelectionVoice extends Voice {
             //build Concatenator
             logger.debug("...instantiating unit concatenator...");
             String concatenatorClass = MaryProperties.needProperty(header+".concatenatorClass");
-            concatenator = (UnitConcatenator) Class.forName(concatenatorClass).newInstance();
+            UnitConcatenator concatenator = (UnitConcatenator) Class.forName(concatenatorClass).newInstance();
             concatenator.load(database);
             
             // TODO: this can be deleted at the same time as CARTF0Modeller
             // see if there are any voice-specific duration and f0 models to load
-            f0Carts = null;
+            CART[] f0Carts = null;
             InputStream leftF0CartStream = MaryProperties.getStream(header+".f0.cart.left");
             if (leftF0CartStream != null) {
                 logger.debug("...loading f0 trees...");
@@ -211,6 +245,7 @@ public class UnitSelectionVoice extends Voice {
                 f0Carts[2] = new MaryCARTReader().loadFromStream(rightF0CartStream);
                 rightF0CartStream.close();
             }
+            return new SynthesisData(database, unitSelector, concatenator, f0Carts);
         } catch (MaryConfigurationException mce) {
             throw mce;
         } catch (Exception ex) {
@@ -219,62 +254,94 @@ public class UnitSelectionVoice extends Voice {
         
     }
     
+    @Override
+    protected void releaseData()
+    {
+        data = null;
+    }
+    
+    /**
+     * Get the synthesis data of this voice, loading it if needed. A request which needs more than
+     * one part of the data should get it once and use it throughout, so that all parts
+     * come from the same load even if the voice is unloaded and loaded again in the meantime.
+     * @return the data, never null
+     * @throws IllegalStateException if the data cannot be loaded
+     */
+    public SynthesisData getSynthesisData()
+    {
+        SynthesisData d;
+        do { // the data may be unloaded again right after loading it
+            needData();
+            d = data;
+        } while (d == null);
+        return d;
+    }
     
     /**
      * Gets the database of this voice
      * @return the database
+     * @see #getSynthesisData()
      */
     public UnitDatabase getDatabase()
     {
-        return database;
+        return getSynthesisData().getDatabase();
     }
     
     
     /**
      * Gets the unit selector of this voice
      * @return the unit selector
+     * @see #getSynthesisData()
      */
     public UnitSelector getUnitSelector()
     {
-        return unitSelector;
+        return getSynthesisData().getUnitSelector();
     }
     
     /**
      * Gets the unit concatenator of this voice
      * @return the unit selector
+     * @see #getSynthesisData()
      */
     public UnitConcatenator getConcatenator()
     {
-        return concatenator;
+        return getSynthesisData().getConcatenator();
     }
 
     /**
      * Get the modification UnitConcatenator of this voice
      * 
      * @return the modifying UnitConcatenator
+     * @see #getSynthesisData()
      */
     public UnitConcatenator getModificationConcatenator() {
-        if (modificationConcatenator == null) {
-            // get sensible minimum and maximum values:
-            try {
-                // initialize with values from properties:
-                double minTimeScaleFactor = Double.parseDouble(MaryProperties.getProperty("voice." + name + ".prosody.modification.duration.factor.minimum"));
-                double maxTimeScaleFactor = Double.parseDouble(MaryProperties.getProperty("voice." + name + ".prosody.modification.duration.factor.maximum"));
-                double minPitchScaleFactor = Double.parseDouble(MaryProperties.getProperty("voice." + name + ".prosody.modification.f0.factor.minimum"));
-                double maxPitchScaleFactor = Double.parseDouble(MaryProperties.getProperty("voice." + name + ".prosody.modification.f0.factor.maximum"));
-                logger.debug("Initializing FD-PSOLA unit concatenator with the following parameter thresholds:");
-                logger.debug("minimum duration modification factor: " + minTimeScaleFactor);
-                logger.debug("maximum duration modification factor: " + maxTimeScaleFactor);
-                logger.debug("minimum F0 modification factor: " + minPitchScaleFactor);
-                logger.debug("maximum F0 modification factor: " + maxPitchScaleFactor);
-                modificationConcatenator = new FdpsolaUnitConcatenator(minTimeScaleFactor, maxTimeScaleFactor, minPitchScaleFactor, maxPitchScaleFactor);
-            } catch (Exception e) {
-                // ignore -- defaults will be used
-                logger.debug("Initializing FD-PSOLA unit concatenator with default parameter thresholds.");
-                modificationConcatenator = new FdpsolaUnitConcatenator();
-            }
-            modificationConcatenator.load(database);
+        return getSynthesisData().getModificationConcatenator();
+    }
+
+    /**
+     * Create a modification UnitConcatenator for the given database.
+     */
+    private UnitConcatenator createModificationConcatenator(UnitDatabase db) {
+        UnitConcatenator modificationConcatenator;
+        // get sensible minimum and maximum values:
+        try {
+            // initialize with values from properties:
+            double minTimeScaleFactor = Double.parseDouble(MaryProperties.getProperty("voice." + name + ".prosody.modification.duration.factor.minimum"));
+            double maxTimeScaleFactor = Double.parseDouble(MaryProperties.getProperty("voice." + name + ".prosody.modification.duration.factor.maximum"));
+            double minPitchScaleFactor = Double.parseDouble(MaryProperties.getProperty("voice." + name + ".prosody.modification.f0.factor.minimum"));
+            double maxPitchScaleFactor = Double.parseDouble(MaryProperties.getProperty("voice." + name + ".prosody.modification.f0.factor.maximum"));
+            logger.debug("Initializing FD-PSOLA unit concatenator with the following parameter thresholds:");
+            logger.debug("minimum duration modification factor: " + minTimeScaleFactor);
+            logger.debug("maximum duration modification factor: " + maxTimeScaleFactor);
+            logger.debug("minimum F0 modification factor: " + minPitchScaleFactor);
+            logger.debug("maximum F0 modification factor: " + maxPitchScaleFactor);
+            modificationConcatenator = new FdpsolaUnitConcatenator(minTimeScaleFactor, maxTimeScaleFactor, minPitchScaleFactor, maxPitchScaleFactor);
+        } catch (Exception e) {
+            // ignore -- defaults will be used
+            logger.debug("Initializing FD-PSOLA unit concatenator with default parameter thresholds.");
+            modificationConcatenator = new FdpsolaUnitConcatenator();
         }
+        modificationConcatenator.load(db);
         return modificationConcatenator;
     }
 
@@ -315,14 +382,78 @@ public class UnitSelectionVoice extends Voice {
     
     public CART[] getF0Trees()
     {
-        return f0Carts;
+        return getSynthesisData().getF0Trees();
     }
     
     
     public FeatureDefinition getF0CartsFeatDef()
     {
+        CART[] f0Carts = getF0Trees();
         if (f0Carts == null || f0Carts.length < 1) return null;
         return f0Carts[0].getFeatureDefinition();
     }
     
+    
+    /**
+     * The synthesis data of a unit selection voice, as loaded together by {@link UnitSelectionVoice#loadSynthesisData()}.
+     * Unloading the voice does not change it, so a request holding it can finish normally.
+     */
+    public class SynthesisData
+    {
+        private final UnitDatabase database;
+        private final UnitSelector unitSelector;
+        private final UnitConcatenator concatenator;
+        private final CART[] f0Carts;
+        // created when first needed:
+        private UnitConcatenator modificationConcatenator;
+        
+        /**
+         * @param database the unit database
+         * @param unitSelector a unit selector loaded with the database
+         * @param concatenator a unit concatenator loaded with the database
+         * @param f0Carts the left, mid and right f0 trees, or null
+         */
+        public SynthesisData(UnitDatabase database, UnitSelector unitSelector, UnitConcatenator concatenator, CART[] f0Carts)
+        {
+            this.database = database;
+            this.unitSelector = unitSelector;
+            this.concatenator = concatenator;
+            this.f0Carts = f0Carts;
+        }
+        
+        public UnitDatabase getDatabase()
+        {
+            return database;
+        }
+        
+        public UnitSelector getUnitSelector()
+        {
+            return unitSelector;
+        }
+        
+        public UnitConcatenator getConcatenator()
+        {
+            return concatenator;
+        }
+        
+        /**
+         * Get the modification UnitConcatenator for the database, creating it when first needed.
+         */
+        public synchronized UnitConcatenator getModificationConcatenator()
+        {
+            if (modificationConcatenator == null) {
+                modificationConcatenator = createModificationConcatenator(database);
+            }
+            return modificationConcatenator;
+        }
+        
+        /**
+         * The left, mid and right f0 trees, or null if the voice has none.
+         */
+        public CART[] getF0Trees()
+        {
+            return f0Carts;
+        }
+    }
+    
 }
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.concat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+/**
+ * A pool of byte arrays holding the audio produced by unit concatenators,
+ * which can be reused for the next utterance once its audio has been read.
+ */
+public class AudioBufferPool
+{
+    // Keep at most this many arrays...
+    private static final int MAX_POOLED = 8;
+    // ...of at most this many bytes:
+    private static final int MAX_POOLED_BYTES = 8 * 1024 * 1024;
+
+    private static final List<byte[]> pool = new ArrayList<byte[]>();
+
+    /**
+     * Get a byte array of at least the given length, whose contents are undefined.
+     */
+    public static byte[] acquire(int numBytes)
+    {
+        synchronized (pool) {
+            // the smallest pooled array which is large enough:
+            int best = -1;
+            for (int i = 0; i < pool.size(); i++) {
+                if (pool.get(i).length >= numBytes && (best < 0 || pool.get(i).length < pool.get(best).length)) {
+                    best = i;
+                }
+            }
+            if (best >= 0) {
+                return pool.remove(best);
+            }
+        }
+        return new byte[numBytes];
+    }
+
+    /**
+     * Return a byte array to the pool. It must not be used afterwards.
+     */
+    public static void release(byte[] buffer)
+    {
+        if (buffer.length > MAX_POOLED_BYTES) {
+            return;
+        }
+        synchronized (pool) {
+            if (pool.size() < MAX_POOLED) {
+                pool.add(buffer);
+            }
+        }
+    }
+
+    /**
+     * Create an audio input stream reading the given number of bytes of audio from the given buffer.
+     * The buffer is returned to the pool when the stream is closed or has been read to the end.
+     * @param buffer a buffer obtained from {@link #acquire(int)}
+     * @param numBytes the number of bytes of audio in the buffer
+     * @param format the format of the audio
+     */
+    public static AudioInputStream createAudioInputStream(byte[] buffer, int numBytes, AudioFormat format)
+    {
+        return new AudioInputStream(new PooledInputStream(buffer, numBytes), format, numBytes / format.getFrameSize());
+    }
+
+    /**
+     * An input stream which returns its buffer to the pool as soon as it is no longer needed.
+     * It does not support mark and reset, so that the buffer is not needed after the end of the stream.
+     */
+    private static class PooledInputStream extends ByteArrayInputStream
+    {
+        private boolean released = false;
+
+        PooledInputStream(byte[] buffer, int numBytes)
+        {
+            super(buffer, 0, numBytes);
+        }
+
+        @Override
+        public synchronized int read()
+        {
+            int b = super.read();
+            if (b < 0) {
+                releaseBuffer();
+            }
+            return b;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len)
+        {
+            int n = super.read(b, off, len);
+            if (n < 0 || pos >= count) {
+                releaseBuffer();
+            }
+            return n;
+        }
+
+        @Override
+        public synchronized long skip(long n)
+        {
+            long skipped = super.skip(n);
+            if (pos >= count) {
+                releaseBuffer();
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return false;
+        }
+
+        @Override
+        public void mark(int readAheadLimit)
+        {
+        }
+
+        @Override
+        public synchronized void reset()
+        {
+            throw new UnsupportedOperationException("mark/reset not supported");
+        }
+
+        @Override
+        public synchronized void close() throws IOException
+        {
+            pos = count;
+            releaseBuffer();
+        }
+
+        private void releaseBuffer()
+        {
+            if (!released) {
+                released = true;
+                release(buf);
+            }
+        }
+    }
+}
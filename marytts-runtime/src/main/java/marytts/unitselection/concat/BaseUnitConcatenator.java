@@ -39,8 +39,10 @@ import java.util.List;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 
+import marytts.server.MaryProperties;
 import marytts.unitselection.analysis.ProsodyAnalyzer;
 import marytts.unitselection.data.TimelineReader;
+import marytts.unitselection.data.Unit;
 import marytts.unitselection.data.UnitDatabase;
 import marytts.unitselection.select.SelectedUnit;
 import marytts.util.MaryUtils;
@@ -66,6 +68,8 @@ public class BaseUnitConcatenator implements UnitConcatenator
     protected TimelineReader timeline;
     protected AudioFormat audioformat;
     protected double unitToTimelineSampleRateFactor;
+    // whether to copy the samples of the frames into the output directly, rather than through double data sources:
+    protected boolean directConcatenation;
     
     protected ProsodyAnalyzer prosodyAnalyzer;
 
@@ -91,6 +95,7 @@ public class BaseUnitConcatenator implements UnitConcatenator
                 sampleRate, // nr. of frames per second
                 true); // big-endian;
         this.unitToTimelineSampleRateFactor =  sampleRate / (double) database.getUnitFileReader().getSampleRate();
+        this.directConcatenation = MaryProperties.getBoolean("unitselection.concat.direct", false);
     }
     
     /**
@@ -116,6 +121,7 @@ public class BaseUnitConcatenator implements UnitConcatenator
         logger.debug("Getting audio for "+units.size()+" units");
 
         // 1. Get the raw audio material for each unit from the timeline
+        prefetchFromTimeline(units);
         getDatagramsFromTimeline(units);
         
         // 2. Determine target pitchmarks (= duration and f0) for each unit
@@ -132,6 +138,23 @@ public class BaseUnitConcatenator implements UnitConcatenator
         return generateAudioStream(units);
     }
 
+    /**
+     * Let the timeline read the raw audio material of all units in one go,
+     * before it is requested unit by unit.
+     * @param units
+     */
+    protected void prefetchFromTimeline(List<SelectedUnit> units) throws IOException
+    {
+        long[] unitStarts = new long[units.size()];
+        long[] unitSizes = new long[units.size()];
+        for (int i=0; i<unitStarts.length; i++) {
+            Unit unit = units.get(i).getUnit();
+            unitStarts[i] = unitToTimeline(unit.startTime); // convert to timeline samples
+            unitSizes[i] = unitToTimeline(unit.duration);
+        }
+        timeline.prefetch(unitStarts, unitSizes, timeline.getSampleRate());
+    }
+
     /**
      * Get the raw audio material for each unit from the timeline.
      * @param units
@@ -197,12 +220,40 @@ public class BaseUnitConcatenator implements UnitConcatenator
             // Generate audio from frames
             datagrams.addAll(Arrays.asList(frames));
         }
+        if (directConcatenation) {
+            int numSamples = 0;
+            for (Datagram d : datagrams) {
+                numSamples += d.getDuration();
+            }
+            byte[] audio = AudioBufferPool.acquire(2 * numSamples);
+            int pos = 0;
+            for (Datagram d : datagrams) {
+                pos = copySamples(d, audio, pos);
+            }
+            return AudioBufferPool.createAudioInputStream(audio, pos, audioformat);
+        }
         
         DoubleDataSource audioSource = new DatagramDoubleDataSource(datagrams);
         return new DDSAudioInputStream(new BufferedDoubleDataSource(audioSource), audioformat);
     }
     
     
+    /**
+     * Copy the samples of the given frame into the audio, which has the audio format of this concatenator.
+     * @param frame a datagram containing 16 bit big-endian samples
+     * @param audio the audio
+     * @param pos the byte position in the audio where to put the samples
+     * @return the byte position after the samples
+     */
+    protected static int copySamples(Datagram frame, byte[] audio, int pos)
+    {
+        int numBytes = 2 * (int) frame.getDuration();
+        byte[] frameAudio = frame.getData();
+        assert frameAudio.length == numBytes : "expected datagram data length to be "+numBytes+", found "+frameAudio.length;
+        System.arraycopy(frameAudio, 0, audio, pos, numBytes);
+        return pos + numBytes;
+    }
+
     /**
      * Create a datagram appropriate for this unit concatenator
      * which contains only zero values as samples.
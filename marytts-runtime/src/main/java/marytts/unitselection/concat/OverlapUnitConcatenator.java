@@ -24,6 +24,7 @@ import java.util.List;
 
 import javax.sound.sampled.AudioInputStream;
 
+import marytts.signalproc.window.Window;
 import marytts.unitselection.data.Unit;
 import marytts.unitselection.select.SelectedUnit;
 import marytts.util.data.BufferedDoubleDataSource;
@@ -185,10 +186,61 @@ public class OverlapUnitConcatenator extends BaseUnitConcatenator {
             }
         }
         
+        if (directConcatenation) {
+            return overlapAdd(datagrams, rightContexts);
+        }
         DoubleDataSource audioSource = new DatagramOverlapDoubleDataSource(datagrams, rightContexts);
         return new DDSAudioInputStream(new BufferedDoubleDataSource(audioSource), audioformat);
     }
 
+    /**
+     * Concatenate the frames of the units, copying the samples directly into the audio.
+     * As in {@link DatagramOverlapDoubleDataSource}, the first frame of a unit with a
+     * preceding right context is windowed with the left half of a Hann window, and the right
+     * context, windowed with the right half of a Hann window, is added to it.
+     * Only these samples are converted to double and back.
+     * @param datagrams the frames of each unit
+     * @param rightContexts the right context frame for each unit, or null
+     * @return the audio
+     */
+    protected AudioInputStream overlapAdd(Datagram[][] datagrams, Datagram[] rightContexts)
+    {
+        int numSamples = 0;
+        for (int i=0; i<datagrams.length; i++) {
+            for (int j=0; j<datagrams[i].length; j++) {
+                numSamples += datagrams[i][j].getDuration();
+            }
+        }
+        byte[] audio = AudioBufferPool.acquire(2 * numSamples);
+        int pos = 0;
+        for (int i=0; i<datagrams.length; i++) {
+            for (int j=0; j<datagrams[i].length; j++) {
+                int start = pos;
+                pos = copySamples(datagrams[i][j], audio, pos);
+                if (j == 0 && i > 0 && rightContexts[i-1] != null) {
+                    int len = (pos - start) / 2;
+                    int contextLen = (int) rightContexts[i-1].getDuration();
+                    byte[] context = rightContexts[i-1].getData();
+                    Window leftHalf = Window.get(Window.HANNING, 2*len);
+                    Window rightHalf = Window.get(Window.HANNING, 2*contextLen);
+                    for (int k=0, b=start; k<len; k++, b+=2) {
+                        // big endian:
+                        double sample = (audio[b]<<8 | audio[b+1]&0xFF) * leftHalf.value(k);
+                        if (k < contextLen) {
+                            sample += (context[2*k]<<8 | context[2*k+1]&0xFF) * rightHalf.value(contextLen+k);
+                        }
+                        int s = (int) Math.round(sample);
+                        if (s > Short.MAX_VALUE) s = Short.MAX_VALUE;
+                        else if (s < Short.MIN_VALUE) s = Short.MIN_VALUE;
+                        audio[b] = (byte) (s>>8);
+                        audio[b+1] = (byte) (s&0xFF);
+                    }
+                }
+            }
+        }
+        return AudioBufferPool.createAudioInputStream(audio, pos, audioformat);
+    }
+
     public static class OverlapUnitData extends BaseUnitConcatenator.UnitData
     {
         protected Datagram rightContextFrame;
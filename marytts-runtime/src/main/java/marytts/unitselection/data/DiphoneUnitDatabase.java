@@ -22,6 +22,7 @@ package marytts.unitselection.data;
 import gnu.trove.TIntHashSet;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 import marytts.features.FeatureVector;
@@ -30,7 +31,6 @@ import marytts.unitselection.select.HalfPhoneTarget;
 import marytts.unitselection.select.Target;
 import marytts.unitselection.select.viterbi.ViterbiCandidate;
 import marytts.util.MaryUtils;
-import marytts.util.dom.DomUtils;
 
 import org.w3c.dom.Element;
 
@@ -59,18 +59,11 @@ public class DiphoneUnitDatabase extends UnitDatabase {
         HalfPhoneTarget left = diphoneTarget.left;
         HalfPhoneTarget right = diphoneTarget.right;
         
-        // BEGIN blacklisting
-        // The point of this is to get the value of the "blacklist" attribute in the first child element of the MaryXML
-        // and store it in the blacklist String variable.
-        // This code seems rather inelegant; perhaps there is a better way to access the MaryXML from this method?
-        String blacklist = "";
-        String unitBasename = "This must never be null or the empty string!"; // otherwise candidate selection fails!
         Element targetElement = left.getMaryxmlElement();
         if (targetElement == null) {
             targetElement = right.getMaryxmlElement();
         }
-        blacklist = DomUtils.getAttributeFromClosestAncestorOfAnyKind(targetElement, "blacklist");
-        // END blacklisting
+        BitSet blacklistedSentences = getBlacklistedSentences(targetElement);
         
         // TODO shouldn't leftName and rightName just call appropriate methods of DiphoneTarget? 
         String leftName = left.getName().substring(0, left.getName().lastIndexOf("_"));
@@ -135,18 +128,20 @@ public class DiphoneUnitDatabase extends UnitDatabase {
         }
         
         // now create ArrayList of ViterbiCandidates from the candidateUnitSet, blacklisting along the way:
+        int[] leftIndices = candidateUnitSet.toArray();
+        DiphoneUnit[] diphoneUnits = new DiphoneUnit[leftIndices.length];
+        for (int i = 0; i < leftIndices.length; i++) {
+            diphoneUnits[i] = new DiphoneUnit(unitReader.units[leftIndices[i]], unitReader.units[leftIndices[i]+1]);
+        }
+        double[] costs = new double[diphoneUnits.length];
+        computeTargetCosts(diphoneTarget, diphoneUnits, costs);
         ArrayList<ViterbiCandidate> candidates = new ArrayList<ViterbiCandidate>(candidateUnitSet.size());
-        for (int leftIndex : candidateUnitSet.toArray()) {
-            DiphoneUnit diphoneUnit = new DiphoneUnit(unitReader.units[leftIndex], unitReader.units[leftIndex+1]);
-            ViterbiCandidate candidate = new ViterbiCandidate(diphoneTarget, diphoneUnit, targetCostFunction);
+        for (int i = 0; i < diphoneUnits.length; i++) {
+            DiphoneUnit diphoneUnit = diphoneUnits[i];
+            ViterbiCandidate candidate = new ViterbiCandidate(diphoneTarget, diphoneUnit, costs[i]);
             // Blacklisting:
-            if (blacklist.equals("")) { // no blacklist
+            if (blacklistedSentences == null || !isBlacklisted(diphoneUnit, blacklistedSentences)) {
                 candidates.add(candidate);
-            } else { // maybe exclude candidate
-                unitBasename = getFilename(diphoneUnit);
-                if (!blacklist.contains(unitBasename)) {
-                    candidates.add(candidate);
-                }
             }
         }
         
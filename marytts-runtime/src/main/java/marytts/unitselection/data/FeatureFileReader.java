@@ -28,15 +28,31 @@ import java.nio.channels.FileChannel;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
+import marytts.features.FeatureTable;
 import marytts.features.FeatureVector;
 import marytts.util.data.MaryHeader;
 
 
-public class FeatureFileReader
+/**
+ * Reads a unit feature file.
+ * <p>
+ * By default, a feature vector object is created for each unit when the file is loaded.
+ * In mapped mode, the file is mapped into memory instead, and the feature values are read
+ * from the mapped buffer by unit index and feature index ({@link #getByteFeature(int, int)},
+ * {@link #getShortFeature(int, int)}, {@link #getContinuousFeature(int, int)}), so that
+ * no objects need to be kept on the heap per unit. Feature vectors requested
+ * from a mapped reader are created on the fly.
+ */
+public class FeatureFileReader implements FeatureTable
 {
     protected MaryHeader hdr;
     protected FeatureDefinition featureDefinition;
     protected FeatureVector[] featureVectors;
+    protected boolean mapped = false;
+    protected ByteBuffer featureData;
+    protected int featureDataStart;
+    protected int recordSize;
+    protected int numberOfUnits;
     
     /**
      * Get a feature file reader representing the given feature file. 
@@ -46,12 +62,26 @@ public class FeatureFileReader
      * @throws MaryConfigurationException if the file is not a valid feature file.
      */
     public static FeatureFileReader getFeatureFileReader(String fileName) throws IOException, MaryConfigurationException
+    {
+        return getFeatureFileReader(fileName, false);
+    }
+    
+    /**
+     * Get a feature file reader representing the given feature file. 
+     * @param fileName the filename of a valid feature file.
+     * @param mapped if true, read the features from the memory-mapped file rather than
+     * creating a feature vector for each unit.
+     * @return a feature file object representing the given file.
+     * @throws IOException if there was a problem reading the file
+     * @throws MaryConfigurationException if the file is not a valid feature file.
+     */
+    public static FeatureFileReader getFeatureFileReader(String fileName, boolean mapped) throws IOException, MaryConfigurationException
     {
         int fileType = MaryHeader.peekFileType(fileName);
         if (fileType == MaryHeader.UNITFEATS)
-            return new FeatureFileReader(fileName);
+            return new FeatureFileReader(fileName, mapped);
         else if (fileType == MaryHeader.HALFPHONE_UNITFEATS)
-            return new HalfPhoneFeatureFileReader(fileName);
+            return new HalfPhoneFeatureFileReader(fileName, mapped);
         throw new MaryConfigurationException("File "+fileName+": Type "+fileType+" is not a known unit feature file type");
     }
     
@@ -69,6 +99,18 @@ public class FeatureFileReader
         load(fileName);
     }
     
+    /**
+     * Load the given feature file.
+     * @param fileName the filename of a valid feature file.
+     * @param mapped if true, read the features from the memory-mapped file rather than
+     * creating a feature vector for each unit.
+     */
+    public FeatureFileReader( String fileName, boolean mapped ) throws IOException, MaryConfigurationException
+    {
+        this.mapped = mapped;
+        load(fileName);
+    }
+    
     public void load(String fileName) throws IOException, MaryConfigurationException
     {
         loadFromByteBuffer(fileName);
@@ -87,7 +129,7 @@ public class FeatureFileReader
             throw new IOException( "File [" + fileName + "] is not a valid Mary feature file." );
         }
         featureDefinition = new FeatureDefinition(dis);
-        int numberOfUnits = dis.readInt();
+        numberOfUnits = dis.readInt();
         featureVectors = new FeatureVector[numberOfUnits];
         for (int i=0; i<numberOfUnits; i++) {
             featureVectors[i] = featureDefinition.readFeatureVector(i,dis);
@@ -110,12 +152,112 @@ public class FeatureFileReader
             throw new MaryConfigurationException( "File [" + fileName + "] is not a valid Mary feature file." );
         }
         featureDefinition = new FeatureDefinition(bb);
-        int numberOfUnits = bb.getInt();
-        featureVectors = new FeatureVector[numberOfUnits];
+        readFeatures(bb, fileName);
+    }
+    
+    /**
+     * Read the number of units and the unit features, following the feature definition.
+     * In mapped mode, only remember where the features start in the buffer.
+     * @param bb the buffer containing the file, positioned at the number of units
+     * @param fileName the name of the file, for error messages
+     */
+    protected void readFeatures(ByteBuffer bb, String fileName) throws IOException, MaryConfigurationException
+    {
+        numberOfUnits = bb.getInt();
+        if (mapped) {
+            featureData = bb;
+            featureDataStart = bb.position();
+            recordSize = featureDefinition.getNumberOfByteFeatures()
+                + 2 * featureDefinition.getNumberOfShortFeatures()
+                + 4 * featureDefinition.getNumberOfContinuousFeatures();
+            if ((long) numberOfUnits * recordSize > bb.remaining()) {
+                throw new MaryConfigurationException("File [" + fileName + "] is too short for "+numberOfUnits+" units");
+            }
+            featureVectors = null;
+        } else {
+            featureVectors = new FeatureVector[numberOfUnits];
+            for (int i=0; i<numberOfUnits; i++) {
+                featureVectors[i] = featureDefinition.readFeatureVector(i, bb);
+            }
+        }
+    }
+    
+    /**
+     * Whether this reader reads the features from a memory-mapped file
+     * rather than keeping a feature vector for each unit.
+     */
+    public boolean isMapped()
+    {
+        return featureVectors == null && featureData != null;
+    }
+    
+    /**
+     * Get the value of the given byte-valued feature for the given unit.
+     * @param unitIndex the absolute index number of a unit in the database
+     * @param featureIndex the index of a byte-valued feature
+     */
+    public byte getByteFeature(int unitIndex, int featureIndex)
+    {
+        if (featureVectors != null) {
+            return featureVectors[unitIndex].byteValuedDiscreteFeatures[featureIndex];
+        }
+        return featureData.get(featureDataStart + unitIndex * recordSize + featureIndex);
+    }
+    
+    /**
+     * Get the value of the given short-valued feature for the given unit.
+     * @param unitIndex the absolute index number of a unit in the database
+     * @param featureIndex the index of a short-valued feature, counting the byte-valued features
+     */
+    public short getShortFeature(int unitIndex, int featureIndex)
+    {
+        int nBytes = featureDefinition.getNumberOfByteFeatures();
+        if (featureVectors != null) {
+            return featureVectors[unitIndex].shortValuedDiscreteFeatures[featureIndex - nBytes];
+        }
+        return featureData.getShort(featureDataStart + unitIndex * recordSize + nBytes + 2 * (featureIndex - nBytes));
+    }
+    
+    /**
+     * Get the value of the given continuous feature for the given unit.
+     * @param unitIndex the absolute index number of a unit in the database
+     * @param featureIndex the index of a continuous feature, counting the discrete features
+     */
+    public float getContinuousFeature(int unitIndex, int featureIndex)
+    {
+        int nBytes = featureDefinition.getNumberOfByteFeatures();
+        int nShorts = featureDefinition.getNumberOfShortFeatures();
+        if (featureVectors != null) {
+            return featureVectors[unitIndex].continuousFeatures[featureIndex - nBytes - nShorts];
+        }
+        return featureData.getFloat(featureDataStart + unitIndex * recordSize + nBytes + 2 * nShorts
+                + 4 * (featureIndex - nBytes - nShorts));
+    }
+    
+    /**
+     * Create a feature vector for the given unit from the mapped file.
+     */
+    private FeatureVector readFeatureVector(int unitIndex)
+    {
+        ByteBuffer bb = featureData.duplicate();
+        bb.position(featureDataStart + unitIndex * recordSize);
+        try {
+            return featureDefinition.readFeatureVector(unitIndex, bb);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read features of unit "+unitIndex, e);
+        }
+    }
+    
+    /**
+     * Create feature vectors for all units from the mapped file.
+     */
+    private FeatureVector[] readAllFeatureVectors()
+    {
+        FeatureVector[] all = new FeatureVector[numberOfUnits];
         for (int i=0; i<numberOfUnits; i++) {
-            featureVectors[i] = featureDefinition.readFeatureVector(i, bb);
+            all[i] = readFeatureVector(i);
         }
-
+        return all;
     }
 
     /**
@@ -125,6 +267,9 @@ public class FeatureFileReader
      */
     public FeatureVector getFeatureVector(int unitIndex)
     {
+        if (featureVectors == null) {
+            return readFeatureVector(unitIndex);
+        }
         return featureVectors[unitIndex];
     }
     
@@ -134,15 +279,22 @@ public class FeatureFileReader
      */
     public FeatureVector[] getCopyOfFeatureVectors()
     {
+       if (featureVectors == null) {
+           return readAllFeatureVectors();
+       }
        return (FeatureVector[]) featureVectors.clone(); 
     }
 
     /**
-     * Return the internal array of feature vectors.
+     * Return the internal array of feature vectors. In mapped mode, this creates
+     * a new feature vector for each unit, which should be avoided.
      * @return the internal array of feature vectors.
      */
     public FeatureVector[] getFeatureVectors()
     {
+       if (featureVectors == null) {
+           return readAllFeatureVectors();
+       }
        return featureVectors; 
     }
     
@@ -175,6 +327,7 @@ public class FeatureFileReader
         FeatureVector[] newFV = new FeatureVector[this.getNumberOfUnits()];
         
         for ( int i=0; i<this.getNumberOfUnits(); i++ ) {
+            FeatureVector fv = getFeatureVector(i);
             
             // create features array
             byte[]  byteFeatures  = new byte[noByteFeatures];
@@ -187,13 +340,13 @@ public class FeatureFileReader
             
             for ( int j=0; j < featureIndexes.length; j++ ) {
                 if( newFeatureDefinition.isByteFeature(j) ) {
-                    byteFeatures[countByteFeatures++] = featureVectors[i].getByteFeature(featureIndexes[j]);
+                    byteFeatures[countByteFeatures++] = fv.getByteFeature(featureIndexes[j]);
                 }
                 else if( newFeatureDefinition.isShortFeature(j) ) {
-                    shortFeatures[countShortFeatures++] = featureVectors[i].getShortFeature(featureIndexes[j]); 
+                    shortFeatures[countShortFeatures++] = fv.getShortFeature(featureIndexes[j]); 
                 }
                 else if( newFeatureDefinition.isContinuousFeature(j) ) {
-                    continiousFeatures[countFloatFeatures++] = featureVectors[i].getContinuousFeature(featureIndexes[j]);
+                    continiousFeatures[countFloatFeatures++] = fv.getContinuousFeature(featureIndexes[j]);
                 }
             }
             
@@ -210,7 +363,7 @@ public class FeatureFileReader
      */
     public FeatureVector getFeatureVector(Unit unit)
     {
-        return featureVectors[unit.index];
+        return getFeatureVector(unit.index);
     }
 
     public FeatureDefinition getFeatureDefinition()
@@ -219,7 +372,7 @@ public class FeatureFileReader
     }
     
     public int getNumberOfUnits() {
-        return( featureVectors.length );
+        return numberOfUnits;
     }
 }
 
@@ -47,6 +47,11 @@ public class HalfPhoneFeatureFileReader extends FeatureFileReader
         super(fileName);
     }
 
+    public HalfPhoneFeatureFileReader(String fileName, boolean mapped) throws IOException, MaryConfigurationException
+    {
+        super(fileName, mapped);
+    }
+
     @Override
     protected void loadFromStream(String fileName) throws IOException, MaryConfigurationException
     {
@@ -63,7 +68,7 @@ public class HalfPhoneFeatureFileReader extends FeatureFileReader
         assert leftWeights.featureEquals(rightWeights) :
             "Halfphone unit feature file contains incompatible feature definitions for left and right units -- this should not happen!";
         featureDefinition = leftWeights; // one of them, for super class
-        int numberOfUnits = dis.readInt();
+        numberOfUnits = dis.readInt();
         featureVectors = new FeatureVector[numberOfUnits];
         for (int i=0; i<numberOfUnits; i++) {
             featureVectors[i] = featureDefinition.readFeatureVector(i,dis);
@@ -89,11 +94,7 @@ public class HalfPhoneFeatureFileReader extends FeatureFileReader
         assert leftWeights.featureEquals(rightWeights) :
             "Halfphone unit feature file contains incompatible feature definitions for left and right units -- this should not happen!";
         featureDefinition = leftWeights; // one of them, for super class
-        int numberOfUnits = bb.getInt();
-        featureVectors = new FeatureVector[numberOfUnits];
-        for (int i=0; i<numberOfUnits; i++) {
-            featureVectors[i] = featureDefinition.readFeatureVector(i, bb);
-        }
+        readFeatures(bb, fileName);
     }
 
     public FeatureDefinition getLeftWeights()
@@ -0,0 +1,209 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Fixed-size blocks of a file held in memory, for timelines which are read piecewise
+ * rather than memory-mapped. The least recently used blocks are dropped when the
+ * blocks take more than the given number of bytes. A cache is used by all requests
+ * reading from the same timeline.
+ */
+class TimelineBlockCache
+{
+    static final int BLOCK_SIZE = 0x10000; // 64 kB
+    // Read at most this many blocks with a single read:
+    private static final int MAX_BLOCKS_PER_READ = 16;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int maxBlocks;
+    // Block number -> block data, in access order; guarded by itself:
+    private final LinkedHashMap<Long, ByteBuffer> blocks = new LinkedHashMap<Long, ByteBuffer>(16, 0.75f, true);
+
+    /**
+     * Create a block cache for the given file.
+     * @param channel the file to read from
+     * @param maxBytes the maximum number of bytes to keep in memory; at least one block is always kept.
+     */
+    TimelineBlockCache(FileChannel channel, long maxBytes) throws IOException
+    {
+        this.channel = channel;
+        this.fileSize = channel.size();
+        this.maxBlocks = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / BLOCK_SIZE));
+    }
+
+    /**
+     * Get a byte buffer with the data of the file from the given position.
+     * @param bytePos the position in the file
+     * @param minBytes the minimum number of bytes to return, unless the file or the given limit ends before.
+     * @param limit the position in the file up to which data may be returned
+     * @return a read-only byte buffer at position 0, corresponding to bytePos in the file.
+     * If the data is contained in a single block, it shares its contents with the block;
+     * it then extends to the end of the block or to limit, whichever comes first.
+     * @throws IOException if the file cannot be read
+     */
+    ByteBuffer read(long bytePos, int minBytes, long limit) throws IOException
+    {
+        long end = Math.min(limit, fileSize);
+        long block = bytePos / BLOCK_SIZE;
+        long blockStart = block * BLOCK_SIZE;
+        int offset = (int) (bytePos - blockStart);
+        if (bytePos + minBytes <= Math.min(blockStart + BLOCK_SIZE, end)) {
+            ByteBuffer data = getBlock(block).asReadOnlyBuffer();
+            data.limit((int) Math.min(BLOCK_SIZE, end - blockStart));
+            data.position(offset);
+            return data.slice();
+        }
+        // spans several blocks: copy
+        int size = (int) Math.max(0, Math.min(Math.max(minBytes, BLOCK_SIZE), end - bytePos));
+        ByteBuffer copy = ByteBuffer.allocate(size);
+        while (copy.hasRemaining()) {
+            ByteBuffer data = getBlock(block).duplicate();
+            data.position(offset);
+            data.limit(Math.min(data.capacity(), offset + copy.remaining()));
+            copy.put(data);
+            block++;
+            offset = 0;
+        }
+        copy.flip();
+        return copy.asReadOnlyBuffer();
+    }
+
+    /**
+     * Read all blocks containing the given byte ranges which are not yet in memory,
+     * joining adjacent blocks into a single read. Stops when the blocks read
+     * would take up more than half of the memory available to the cache.
+     * @param from the start positions of the byte ranges in the file
+     * @param to the end positions of the byte ranges in the file, exclusive
+     * @throws IOException if the file cannot be read
+     */
+    void prefetch(long[] from, long[] to) throws IOException
+    {
+        int numNeeded = 0;
+        long[] needed = new long[16];
+        for (int i = 0; i < from.length; i++) {
+            long last = (Math.min(to[i], fileSize) - 1) / BLOCK_SIZE;
+            for (long b = from[i] / BLOCK_SIZE; b <= last; b++) {
+                if (numNeeded == needed.length) {
+                    needed = Arrays.copyOf(needed, 2 * numNeeded);
+                }
+                needed[numNeeded++] = b;
+            }
+        }
+        Arrays.sort(needed, 0, numNeeded);
+        int numRead = 0;
+        int i = 0;
+        while (i < numNeeded && numRead < maxBlocks / 2) {
+            long first = needed[i];
+            if (i > 0 && first == needed[i-1] || contains(first)) {
+                i++;
+                continue;
+            }
+            // extend to the following blocks which are needed and not in memory:
+            long last = first;
+            while (i < numNeeded && needed[i] <= last + 1 && last - first + 1 < MAX_BLOCKS_PER_READ
+                    && (needed[i] == last || !contains(needed[i]))) {
+                last = needed[i];
+                i++;
+            }
+            readBlocks(first, last);
+            numRead += last - first + 1;
+        }
+    }
+
+    /**
+     * The number of blocks currently held in memory.
+     */
+    int size()
+    {
+        synchronized (blocks) {
+            return blocks.size();
+        }
+    }
+
+    private boolean contains(long block)
+    {
+        synchronized (blocks) {
+            return blocks.containsKey(block);
+        }
+    }
+
+    private ByteBuffer getBlock(long block) throws IOException
+    {
+        ByteBuffer data;
+        synchronized (blocks) {
+            data = blocks.get(block);
+        }
+        if (data == null) {
+            // Several threads may read the same block at the same time; this does no harm.
+            readBlocks(block, block);
+            synchronized (blocks) {
+                data = blocks.get(block);
+            }
+            if (data == null) { // evicted by other threads already
+                data = readBlocks(block, block);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Read the given blocks with a single read and put them into memory.
+     * @return the data of the last block.
+     */
+    private ByteBuffer readBlocks(long first, long last) throws IOException
+    {
+        long start = first * BLOCK_SIZE;
+        int size = (int) Math.min((last - first + 1) * BLOCK_SIZE, fileSize - start);
+        if (size <= 0) {
+            throw new IOException("Cannot read beyond the end of the file at byte "+start);
+        }
+        ByteBuffer data = ByteBuffer.allocate(size);
+        while (data.hasRemaining()) {
+            // positional reads do not change the channel position, so that several threads can read at once
+            if (channel.read(data, start + data.position()) < 0) {
+                throw new IOException("Unexpected end of file at byte "+(start + data.position()));
+            }
+        }
+        ByteBuffer block = null;
+        synchronized (blocks) {
+            for (long b = first; b <= last; b++) {
+                data.limit((int) Math.min(size, (b - first + 1) * BLOCK_SIZE));
+                data.position((int) ((b - first) * BLOCK_SIZE));
+                block = data.slice();
+                blocks.put(b, block);
+            }
+            Iterator<Map.Entry<Long, ByteBuffer>> it = blocks.entrySet().iterator();
+            while (blocks.size() > maxBlocks && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        return block;
+    }
+}
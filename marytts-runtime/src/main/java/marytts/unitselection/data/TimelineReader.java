@@ -46,6 +46,7 @@ import java.util.ArrayList;
 import java.util.Vector;
 
 import marytts.exceptions.MaryConfigurationException;
+import marytts.server.MaryProperties;
 import marytts.util.MaryUtils;
 import marytts.util.Pair;
 import marytts.util.data.Datagram;
@@ -83,6 +84,8 @@ public class TimelineReader
     // exactly one of the two following variables will be non-null after load():
     private MappedByteBuffer mappedBB = null;
     private FileChannel fileChannel = null;
+    // when reading piecewise, the recently read parts of the file, or null if they are not kept:
+    private TimelineBlockCache blockCache = null;
     
     
     
@@ -92,6 +95,8 @@ public class TimelineReader
     
     /**
      * Construct a timeline from the given file name.
+     * The timeline is memory-mapped unless the property <code>unitselection.timeline.mapped</code>
+     * is set to false.
      * 
      * Aiming for the fundamental guarantee: If an instance of this class is created, it is usable.
      * 
@@ -102,7 +107,7 @@ public class TimelineReader
      */
     public TimelineReader( String fileName ) throws MaryConfigurationException
     {
-        this(fileName, true);
+        this(fileName, MaryProperties.getBoolean("unitselection.timeline.mapped", true));
     }
         
     /**
@@ -138,6 +143,8 @@ public class TimelineReader
 
     /**
      * Load a timeline from a file.
+     * The timeline is memory-mapped unless the property <code>unitselection.timeline.mapped</code>
+     * is set to false.
      * 
      * @param fileName The file to read the timeline from.
      * Must be non-null and point to a valid timeline file.
@@ -147,7 +154,7 @@ public class TimelineReader
      * @throws MaryConfigurationException if fileName does not point to a valid timeline file
      */
     protected void load(String fileName) throws IOException, BufferUnderflowException, MaryConfigurationException, NullPointerException {
-        load(fileName, true);
+        load(fileName, MaryProperties.getBoolean("unitselection.timeline.mapped", true));
     }
     
     /**
@@ -214,6 +221,10 @@ public class TimelineReader
             fileChannel = fc;
             assert fileChannel != null;
             // and leave file open
+            int cacheMegabytes = MaryProperties.getInteger("unitselection.timeline.cache.megabytes", 32);
+            if (cacheMegabytes > 0) {
+                blockCache = new TimelineBlockCache(fileChannel, cacheMegabytes * 1024L * 1024L);
+            }
         }
         
         // postconditions:
@@ -281,16 +292,29 @@ public class TimelineReader
         long nRead = 0;
         boolean haveReadAll = false;
         try {
-            Pair<ByteBuffer, Long> p = getByteBufferAtTime(0);
+            // when reading piecewise, the position in the file corresponding to position 0 in bb:
+            long[] bufferBytePos = mappedBB == null ? new long[1] : null;
+            Pair<ByteBuffer, Long> p = bufferBytePos != null ? loadByteBufferAtTime(0, bufferBytePos) : getByteBufferAtTime(0);
             ByteBuffer bb = p.getFirst();
             assert p.getSecond() == 0;
             while (!haveReadAll) {
-                Datagram dat = getNextDatagram(bb);
+                int posBefore = bb.position();
+                Datagram dat = null;
+                try {
+                    dat = getNextDatagram(bb);
+                } catch (BufferUnderflowException e) {
+                    // a piecewise read byte buffer may end within a datagram
+                }
                 if (dat == null) {
                     // we may have reached the end of the current byte buffer... try reading another:
-                    p = getByteBufferAtTime(time);
-                    bb = p.getFirst();
-                    assert p.getSecond() == time;
+                    if (bufferBytePos != null) {
+                        bufferBytePos[0] += posBefore;
+                        bb = loadDatagramBuffer(bufferBytePos[0]);
+                    } else {
+                        p = getByteBufferAtTime(time);
+                        bb = p.getFirst();
+                        assert p.getSecond() == time;
+                    }
                     dat = getNextDatagram(bb);
                     if (dat == null) { // no, indeed we cannot read any more
                         break; // abort, we could not read all
@@ -473,22 +497,34 @@ public class TimelineReader
     
     
     protected Pair<ByteBuffer, Long> loadByteBufferAtTime(long targetTimeInSamples) throws IOException {
+        return loadByteBufferAtTime(targetTimeInSamples, null);
+    }
+
+    /**
+     * Load a byte buffer from which the datagram at the given time can be read.
+     * @param targetTimeInSamples the time position in the file which should be accessed as a byte buffer, in samples.
+     * @param returnBytePos an optional output field. If it is not null, then after the call, its
+     * first field contains the position in the file corresponding to position 0 in the returned byte buffer.
+     * @return a pair representing the byte buffer from which to read, and the exact time corresponding to the
+     * current position of the byte buffer.
+     * @throws IOException if no byte buffer can be obtained for the requested time.
+     */
+    private Pair<ByteBuffer, Long> loadByteBufferAtTime(long targetTimeInSamples, long[] returnBytePos) throws IOException {
         assert fileChannel != null;
-        // we must load a chunk of data from the FileChannel
-        int bufSize = 0x10000; // 64 kB
         /* Seek for the time index which comes just before the requested time */
         IdxField idxFieldBefore = idx.getIdxFieldBefore( targetTimeInSamples );
         long time = idxFieldBefore.timePtr;
+        // bytePos is the position in the file corresponding to position 0 in bb:
         long bytePos = idxFieldBefore.bytePtr;
-        if (bytePos + bufSize > timeIdxBytePos) { // must not read index data as datagrams
-            bufSize = (int) (timeIdxBytePos - bytePos);
-        }
-        ByteBuffer bb = loadByteBuffer(bytePos, bufSize);
+        ByteBuffer bb = loadByteBuffer(bytePos, Datagram.NUM_HEADER_BYTES);
 
         while (true) {
             if (!canReadDatagramHeader(bb)) {
-                bb = loadByteBuffer(bytePos, bufSize);
-                assert canReadDatagramHeader(bb);
+                bytePos += bb.position();
+                bb = loadByteBuffer(bytePos, Datagram.NUM_HEADER_BYTES);
+                if (!canReadDatagramHeader(bb)) {
+                    throw new IOException("No datagram at time "+targetTimeInSamples+": end of timeline reached");
+                }
             }
             int posBefore = bb.position();
             Datagram d = new Datagram(bb, false);
@@ -497,9 +533,13 @@ public class TimelineReader
                 int datagramNumBytes = Datagram.NUM_HEADER_BYTES+d.getLength();
                 // need to make sure we return a byte buffer from which d can be read
                 if (!canReadAmount(bb, datagramNumBytes)) {
-                    bb = loadByteBuffer(bytePos, Math.max(datagramNumBytes, bufSize));
+                    bytePos += posBefore;
+                    bb = loadByteBuffer(bytePos, datagramNumBytes);
                 }
                 assert canReadAmount(bb, datagramNumBytes);
+                if (returnBytePos != null) {
+                    returnBytePos[0] = bytePos;
+                }
                 break;
             } else {
                 // keep on skipping
@@ -509,7 +549,7 @@ public class TimelineReader
                 } else {
                     bytePos += bb.position();
                     bytePos += d.getLength();
-                    bb = loadByteBuffer(bytePos, bufSize);
+                    bb = loadByteBuffer(bytePos, Datagram.NUM_HEADER_BYTES);
                 }
             }
         }
@@ -518,17 +558,90 @@ public class TimelineReader
 
     /**
      * @param bytePos position in fileChannel from which to load the byte buffer
-     * @param bufSize size of the byte buffer
-     * @return the byte buffer, loaded and set such that limit is bufSize and position is 0
+     * @param minBytes the minimum number of bytes to load, unless the datagram zone ends before
+     * @return the byte buffer, loaded and set such that position 0 corresponds to bytePos.
+     * It never extends into the time index after the datagrams.
      * @throws IOException if the data cannot be read from fileChannel
      */
-    private ByteBuffer loadByteBuffer(long bytePos, int bufSize) throws IOException {
+    private ByteBuffer loadByteBuffer(long bytePos, int minBytes) throws IOException {
+        if (blockCache != null) {
+            return blockCache.read(bytePos, minBytes, timeIdxBytePos);
+        }
+        // must not read index data as datagrams:
+        int bufSize = (int) Math.max(0, Math.min(Math.max(minBytes, 0x10000), timeIdxBytePos - bytePos));
         ByteBuffer bb = ByteBuffer.allocate(bufSize);
-        fileChannel.read(bb, bytePos); // this will block if another thread is currently reading from fileChannel
+        while (bb.hasRemaining()) {
+            // this will block if another thread is currently reading from fileChannel
+            if (fileChannel.read(bb, bytePos + bb.position()) < 0) {
+                break;
+            }
+        }
         bb.limit(bb.position());
         bb.position(0);
         return bb;
     }
+
+    /**
+     * Load a byte buffer from which the datagram at the given position in the file can be read.
+     * @param bytePos the position of a datagram in fileChannel
+     * @return the byte buffer, set such that position 0 corresponds to bytePos.
+     * @throws IOException if no datagram can be read at that position
+     */
+    private ByteBuffer loadDatagramBuffer(long bytePos) throws IOException {
+        ByteBuffer bb = loadByteBuffer(bytePos, Datagram.NUM_HEADER_BYTES);
+        if (!canReadDatagramHeader(bb)) {
+            throw new IOException("No datagram at byte "+bytePos+": end of timeline reached");
+        }
+        // the header starts with the duration (a long), followed by the length of the data:
+        int datagramNumBytes = Datagram.NUM_HEADER_BYTES + bb.getInt(8);
+        if (!canReadAmount(bb, datagramNumBytes)) {
+            bb = loadByteBuffer(bytePos, datagramNumBytes);
+        }
+        return bb;
+    }
+
+    /**
+     * Read the data for the given time spans into memory in as few reads as possible,
+     * so that the datagrams in these spans can then be read without accessing the file.
+     * This only has an effect if the timeline is read piecewise rather than memory-mapped,
+     * with a block cache (see the property <code>unitselection.timeline.cache.megabytes</code>).
+     * 
+     * @param startTimesInSamples the start times of the spans
+     * @param durationsInSamples the durations of the spans
+     * @param reqSampleRate the sample rate for the given times.
+     * @throws IOException if the data cannot be read
+     */
+    public void prefetch(long[] startTimesInSamples, long[] durationsInSamples, int reqSampleRate) throws IOException {
+        if (blockCache == null) {
+            return;
+        }
+        long[] from = new long[startTimesInSamples.length];
+        long[] to = new long[startTimesInSamples.length];
+        for (int i=0; i<from.length; i++) {
+            long start = scaleTime(reqSampleRate, startTimesInSamples[i]);
+            long end = scaleTime(reqSampleRate, startTimesInSamples[i]+durationsInSamples[i]);
+            from[i] = idx.getIdxFieldBefore(start).bytePtr;
+            to[i] = getBytePosAfter(end);
+        }
+        blockCache.prefetch(from, to);
+    }
+
+    /**
+     * The position in the file behind the last datagram of a span ending at the given time.
+     * It is taken from the first index field pointing to a datagram which starts at or after
+     * that time, so that no data needs to be read, however many index intervals the last
+     * datagram spans.
+     * @param endTimeInSamples the end of the span, in the timeline's sample rate
+     * @return a byte position in the file, at most the position of the time index
+     */
+    long getBytePosAfter(long endTimeInSamples) {
+        int numIdx = idx.getNumIdx();
+        int i = (int) (endTimeInSamples / idx.getIdxInterval()) + 1;
+        while (i < numIdx && idx.getIdxField(i).timePtr < endTimeInSamples) {
+            i++;
+        }
+        return i < numIdx ? idx.getIdxField(i).bytePtr : timeIdxBytePos;
+    }
     
     private boolean canReadDatagramHeader(ByteBuffer bb) {
         return canReadAmount(bb, Datagram.NUM_HEADER_BYTES);
@@ -622,7 +735,10 @@ public class TimelineReader
          * the request and the timeline */
         long scaledTargetTime = scaleTime( reqSampleRate, targetTimeInSamples );
         
-        Pair<ByteBuffer, Long> p = getByteBufferAtTime(scaledTargetTime);
+        // when reading piecewise, the position in the file corresponding to position 0 in bb:
+        long[] bufferBytePos = mappedBB == null ? new long[1] : null;
+        Pair<ByteBuffer, Long> p = bufferBytePos != null ? loadByteBufferAtTime(scaledTargetTime, bufferBytePos)
+                : getByteBufferAtTime(scaledTargetTime);
         ByteBuffer bb = p.getFirst();
         long time = p.getSecond();
         if ( returnOffset != null ) { // return offset between target and actual start time
@@ -638,16 +754,31 @@ public class TimelineReader
         int nRead = 0;
         boolean haveReadAll = false;
         while (!haveReadAll) {
-            Datagram dat = getNextDatagram(bb);
+            Datagram dat = null;
+            int posBefore = bb.position();
+            try {
+                dat = getNextDatagram(bb);
+            } catch (BufferUnderflowException e) {
+                // a piecewise read byte buffer may end within a datagram
+                bb.position(posBefore);
+            }
             if (dat == null) {
                 // we may have reached the end of the current byte buffer... try reading another:
                 try {
-                    p = getByteBufferAtTime(time);
+                    if (bufferBytePos != null) {
+                        // continue right after the last datagram read, which need not be
+                        // the first one at its time if there are datagrams of zero duration
+                        bb.position(posBefore);
+                        bufferBytePos[0] += posBefore;
+                        bb = loadDatagramBuffer(bufferBytePos[0]);
+                    } else {
+                        p = getByteBufferAtTime(time);
+                        bb = p.getFirst();
+                    }
                 } catch (Exception ioe) {
                     // cannot get another byte buffer -- stop reading.
                     break;
                 }
-                bb = p.getFirst();
                 dat = getNextDatagram(bb);
                 if (dat == null) { // no, indeed we cannot read any more
                     break; // abort, we could not read all
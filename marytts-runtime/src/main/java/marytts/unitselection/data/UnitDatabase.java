@@ -21,10 +21,14 @@ package marytts.unitselection.data;
 
 
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 
 import marytts.cart.CART;
+import marytts.unitselection.select.BatchCostFunction;
 import marytts.unitselection.select.JoinCostFunction;
 import marytts.unitselection.select.StatisticalCostFunction;
 import marytts.unitselection.select.Target;
@@ -35,7 +39,9 @@ import marytts.util.data.Datagram;
 import marytts.util.dom.DomUtils;
 
 import org.apache.log4j.Logger;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 
 
 /**
@@ -56,6 +62,12 @@ public class UnitDatabase
     protected TimelineReader basenameTimeline;
     protected int backtrace;
     protected Logger logger = MaryUtils.getLogger("UnitDatabase");
+    // For each unit, the index of the sentence in the basename timeline it comes from, or -1;
+    // built when a blacklist is first used:
+    private int[] sentenceIds;
+    private String[] basenames;
+    // The blacklist used most recently, which is usually the one of the current request:
+    private volatile Blacklist lastBlacklist;
     
     
     public UnitDatabase()
@@ -133,15 +145,7 @@ public class UnitDatabase
      */
     public List<ViterbiCandidate> getCandidates(Target target)
     {
-        // BEGIN blacklisting
-        // The point of this is to get the value of the "blacklist" attribute in the first child element of the MaryXML
-        // and store it in the blacklist String variable.
-        // This code seems rather inelegant; perhaps there is a better way to access the MaryXML from this method?
-        String blacklist = "";
-        String unitBasename = "This must never be null or the empty string!"; // otherwise candidate selection fails!
-        Element targetElement = target.getMaryxmlElement();
-        blacklist = DomUtils.getAttributeFromClosestAncestorOfAnyKind(targetElement, "blacklist");
-        // END blacklisting
+        BitSet blacklistedSentences = getBlacklistedSentences(target.getMaryxmlElement());
 
         //logger.debug("Looking for candidates in cart "+target.getName());
         //get the cart tree and extract the candidates
@@ -149,27 +153,164 @@ public class UnitDatabase
         logger.debug("For target "+target+", selected " + clist.length + " units");
 
         // Now, clist is an array of unit indexes.
-        List<ViterbiCandidate> candidates = new ArrayList<ViterbiCandidate>();
+        Unit[] units = new Unit[clist.length];
         for (int i = 0; i < clist.length; i++) {
-            // The target is the same for all these candidates in the queue
-            // remember the actual unit:
-            Unit unit = unitReader.getUnit(clist[i]);
-            candidates.add(new ViterbiCandidate(target, unit, targetCostFunction));
+            units[i] = unitReader.getUnit(clist[i]);
         }
-
-        // Blacklisting without crazy performance drop:
-        // just remove candidates again if their basenames are blacklisted 
-        java.util.Iterator<ViterbiCandidate> candIt = candidates.iterator();
-        while (candIt.hasNext()) {
-            ViterbiCandidate candidate = candIt.next();
-            unitBasename = getFilename(candidate.getUnit());
-            if (blacklist.contains(unitBasename)) {
-                candIt.remove();
+        // The target is the same for all these candidates, so compute their costs together:
+        double[] costs = new double[units.length];
+        computeTargetCosts(target, units, costs);
+        List<ViterbiCandidate> candidates = new ArrayList<ViterbiCandidate>(units.length);
+        for (int i = 0; i < units.length; i++) {
+            if (blacklistedSentences == null || !isBlacklisted(units[i], blacklistedSentences)) {
+                candidates.add(new ViterbiCandidate(target, units[i], costs[i]));
             }
         }
 
         return candidates;
     }
+
+    /**
+     * Compute the target costs of the given candidate units for the given target,
+     * all together if the target cost function can do so.
+     * @param target the target
+     * @param units the candidate units for the target
+     * @param costs receives the target cost of units[i] in costs[i]
+     */
+    protected void computeTargetCosts(Target target, Unit[] units, double[] costs)
+    {
+        if (targetCostFunction instanceof BatchCostFunction) {
+            ((BatchCostFunction) targetCostFunction).cost(target, units, costs);
+        } else {
+            for (int i = 0; i < units.length; i++) {
+                costs[i] = targetCostFunction.cost(target, units[i]);
+            }
+        }
+    }
+
+    /**
+     * Determine the sentences of this database which must not be used for the given target.
+     * These are given by the "blacklist" attribute of the closest ancestor of the target's
+     * MaryXML element which has one: a sentence is blacklisted if its basename occurs in
+     * the attribute value.
+     * @param targetElement the MaryXML element of the target, or null
+     * @return the set of blacklisted sentence indices, to be used with {@link #isBlacklisted(Unit, BitSet)},
+     * or null if nothing is blacklisted.
+     */
+    protected BitSet getBlacklistedSentences(Element targetElement)
+    {
+        if (targetElement == null || basenameTimeline == null
+                || !hasBlacklist(targetElement.getOwnerDocument())) {
+            return null;
+        }
+        String blacklist = DomUtils.getAttributeFromClosestAncestorOfAnyKind(targetElement, "blacklist");
+        if (blacklist.equals("")) {
+            return null;
+        }
+        Blacklist parsed = lastBlacklist;
+        if (parsed == null || !parsed.text.equals(blacklist)) {
+            indexSentences();
+            parsed = new Blacklist(blacklist, basenames);
+            lastBlacklist = parsed;
+        }
+        return parsed.sentences;
+    }
+
+    /**
+     * Whether the given unit comes from one of the given sentences.
+     * @param unit a unit of this database, or a diphone unit made of two of them
+     * @param blacklistedSentences as returned by {@link #getBlacklistedSentences(Element)}
+     */
+    protected boolean isBlacklisted(Unit unit, BitSet blacklistedSentences)
+    {
+        int sentence = sentenceIds[unit.index];
+        return sentence >= 0 && blacklistedSentences.get(sentence);
+    }
+
+    /**
+     * Whether any element of the given document has a blacklist attribute.
+     * This is determined once per document, which must not get any new blacklist
+     * attributes afterwards.
+     */
+    private static boolean hasBlacklist(Document doc)
+    {
+        Boolean hasBlacklist = (Boolean) doc.getUserData("marytts.unitselection.hasBlacklist");
+        if (hasBlacklist == null) {
+            hasBlacklist = Boolean.FALSE;
+            NodeList elements = doc.getElementsByTagName("*");
+            for (int i = 0, n = elements.getLength(); i < n; i++) {
+                if (((Element) elements.item(i)).hasAttribute("blacklist")) {
+                    hasBlacklist = Boolean.TRUE;
+                    break;
+                }
+            }
+            doc.setUserData("marytts.unitselection.hasBlacklist", hasBlacklist, null);
+        }
+        return hasBlacklist;
+    }
+
+    /**
+     * Read the basenames of all sentences, and determine for each unit the sentence it comes from.
+     * A unit comes from the basename datagram which {@link #getFilename(Unit)} would return for it.
+     */
+    private synchronized void indexSentences()
+    {
+        if (sentenceIds != null) {
+            return;
+        }
+        int[] ids = new int[numUnits];
+        Arrays.fill(ids, -1);
+        String[] names = new String[0];
+        try {
+            int numSentences = (int) basenameTimeline.getNumDatagrams();
+            Datagram[] datagrams = basenameTimeline.getDatagrams(0, numSentences, basenameTimeline.getSampleRate(), null);
+            names = new String[datagrams.length];
+            long[] starts = new long[datagrams.length];
+            long time = 0;
+            for (int i = 0; i < datagrams.length; i++) {
+                names[i] = new String(datagrams[i].getData(), "UTF-8");
+                starts[i] = time;
+                time += datagrams[i].getDuration();
+            }
+            for (int u = 0; u < numUnits; u++) {
+                long startTime = unitReader.getUnit(u).startTime;
+                if (startTime < time) {
+                    // the last sentence starting at or before the unit:
+                    int pos = Arrays.binarySearch(starts, startTime);
+                    if (pos >= 0) {
+                        while (pos + 1 < starts.length && starts[pos + 1] == startTime) pos++;
+                    } else {
+                        pos = -pos - 2;
+                    }
+                    ids[u] = pos;
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Problem reading basenames, cannot blacklist any units", e);
+        }
+        basenames = names;
+        sentenceIds = ids;
+    }
+
+    /**
+     * A blacklist attribute value, with the set of sentences it blacklists.
+     */
+    private static class Blacklist
+    {
+        final String text;
+        final BitSet sentences;
+
+        Blacklist(String text, String[] basenames)
+        {
+            this.text = text;
+            this.sentences = new BitSet(basenames.length);
+            for (int i = 0; i < basenames.length; i++) {
+                if (text.contains(basenames[i])) {
+                    sentences.set(i);
+                }
+            }
+        }
+    }
     
     /**
      * For debugging, return the basename of the original audio file from which
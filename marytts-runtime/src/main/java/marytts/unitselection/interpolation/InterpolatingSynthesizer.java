@@ -121,16 +121,18 @@ public class InterpolatingSynthesizer implements WaveformSynthesizer
         UnitSelectionVoice usv1 = (UnitSelectionVoice) voice1;
         UnitSelectionVoice usv2 = (UnitSelectionVoice) voice2;
         
-        UnitSelector unitSel1 = usv1.getUnitSelector();
+        UnitSelectionVoice.SynthesisData data1 = usv1.getSynthesisData();
+        UnitSelectionVoice.SynthesisData data2 = usv2.getSynthesisData();
+        UnitSelector unitSel1 = data1.getUnitSelector();
         List<SelectedUnit> selectedUnits1 = unitSel1.selectUnits(tokensAndBoundaries, voice);
-        UnitSelector unitSel2 = usv2.getUnitSelector();
+        UnitSelector unitSel2 = data2.getUnitSelector();
         List<SelectedUnit> selectedUnits2 = unitSel2.selectUnits(tokensAndBoundaries, voice);
         assert selectedUnits1.size() == selectedUnits2.size() : 
             "Unexpected difference in number of units: "+selectedUnits1.size()+" vs. "+selectedUnits2.size();
         int numUnits = selectedUnits1.size();
         
         // 3. do unit concatenation with each, retrieve actual unit durations from list of units;
-        UnitConcatenator unitConcatenator1 = usv1.getConcatenator();
+        UnitConcatenator unitConcatenator1 = data1.getConcatenator();
         AudioInputStream audio1;
         try {
             audio1 = unitConcatenator1.getAudio(selectedUnits1);
@@ -142,7 +144,7 @@ public class InterpolatingSynthesizer implements WaveformSynthesizer
             throw new SynthesisException("For voice "+voice1.getName()+", problems generating audio for unit chain: "+sw.toString(), ioe);
         }
         DoubleDataSource audioSource1 = new AudioDoubleDataSource(audio1);
-        UnitConcatenator unitConcatenator2 = usv2.getConcatenator();
+        UnitConcatenator unitConcatenator2 = data2.getConcatenator();
         AudioInputStream audio2;
         try {
             audio2 = unitConcatenator2.getAudio(selectedUnits2);
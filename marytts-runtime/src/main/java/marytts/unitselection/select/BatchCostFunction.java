@@ -0,0 +1,41 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select;
+
+import marytts.unitselection.data.Unit;
+
+/**
+ * A target cost function which can compute the costs of all candidate units
+ * for a target together.
+ * For target cost functions which do not implement this interface,
+ * {@link TargetCostFunction#cost(Target, Unit)} is called for each candidate.
+ *
+ * @see marytts.unitselection.data.UnitDatabase#getCandidates(Target)
+ */
+public interface BatchCostFunction extends TargetCostFunction
+{
+    /**
+     * Compute the goodness-of-fit of several units for the same target.
+     * @param target the target
+     * @param units the candidate units for the target
+     * @param costs receives the cost of units[i] in costs[i], the same as {@link #cost(Target, Unit)}.
+     */
+    public void cost(Target target, Unit[] units, double[] costs);
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select;
+
+import java.util.List;
+
+import marytts.features.FeatureMatrix;
+
+/**
+ * A target cost function which can compute the features of all targets
+ * of an utterance together, into one feature matrix.
+ * Target cost functions which do not implement this interface get
+ * {@link TargetCostFunction#computeTargetFeatures(Target)} called for each target.
+ *
+ * @see UnitSelector#selectUnits(List, marytts.modules.synthesis.Voice)
+ */
+public interface BatchTargetCostFunction extends TargetCostFunction
+{
+    /**
+     * Compute the features for all the given targets, and store them in the targets.
+     * This has the same effect as calling {@link #computeTargetFeatures(Target)} for each target,
+     * but the features of all targets are computed together into one feature matrix.
+     * @param targets the targets of an utterance
+     * @param matrix a matrix to reuse, or null. Reusing a matrix overwrites the features
+     * of the targets previously stored in it, so it may only be passed in again when
+     * none of those targets is used any more.
+     * @return the matrix holding the features of the targets
+     * @see Target#getFeatureVector()
+     */
+    public FeatureMatrix computeTargetFeatures(List<? extends Target> targets, FeatureMatrix matrix);
+}
@@ -21,9 +21,12 @@ package marytts.unitselection.select;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
+import marytts.features.FeatureMatrix;
 import marytts.features.FeatureProcessorManager;
 import marytts.features.FeatureVector;
 import marytts.unitselection.data.DiphoneUnit;
@@ -32,7 +35,7 @@ import marytts.unitselection.data.HalfPhoneFeatureFileReader;
 import marytts.unitselection.data.Unit;
 
 
-public class DiphoneFFRTargetCostFunction implements TargetCostFunction 
+public class DiphoneFFRTargetCostFunction implements BatchTargetCostFunction, BatchCostFunction 
 {
     protected FFRTargetCostFunction tcfForHalfphones;
     
@@ -54,7 +57,7 @@ public class DiphoneFFRTargetCostFunction implements TargetCostFunction
     public void load(String featureFileName, InputStream weightsStream,
             FeatureProcessorManager featProc) throws IOException, MaryConfigurationException
     {
-        FeatureFileReader ffr = FeatureFileReader.getFeatureFileReader(featureFileName);
+        FeatureFileReader ffr = FeatureFileReader.getFeatureFileReader(featureFileName, FFRTargetCostFunction.useMappedFeatureFile());
         load(ffr, weightsStream, featProc);
     }
     
@@ -95,7 +98,7 @@ public class DiphoneFFRTargetCostFunction implements TargetCostFunction
 
     public FeatureVector getFeatureVector(Unit unit)
     {
-        return tcfForHalfphones.featureVectors[unit.index];
+        return tcfForHalfphones.getFeatureVector(unit);
     }
 
     /**
@@ -117,6 +120,39 @@ public class DiphoneFFRTargetCostFunction implements TargetCostFunction
         return tcfForHalfphones.cost(dt.left, du.left) + tcfForHalfphones.cost(dt.right, du.right);
     }
 
+    /**
+     * Compute the goodness-of-fit of several units for the same target.
+     * For a diphone target, the costs of all left halves and of all right halves
+     * are computed together.
+     * @param target a diphone or half-phone target
+     * @param units the candidate units, diphone units for a diphone target
+     * @param costs receives the cost of units[i] in costs[i]
+     */
+    public void cost(Target target, Unit[] units, double[] costs)
+    {
+        if (target instanceof HalfPhoneTarget) {
+            tcfForHalfphones.cost(target, units, costs);
+            return;
+        }
+        if (!(target instanceof DiphoneTarget))
+            throw new IllegalArgumentException("This target cost function can only be called for diphone and half-phone targets!");
+        DiphoneTarget dt = (DiphoneTarget) target;
+        Unit[] leftUnits = new Unit[units.length];
+        Unit[] rightUnits = new Unit[units.length];
+        for (int i=0; i<units.length; i++) {
+            if (!(units[i] instanceof DiphoneUnit))
+                throw new IllegalArgumentException("Diphone targets need diphone units!");
+            leftUnits[i] = ((DiphoneUnit) units[i]).left;
+            rightUnits[i] = ((DiphoneUnit) units[i]).right;
+        }
+        double[] rightCosts = new double[units.length];
+        tcfForHalfphones.cost(dt.left, leftUnits, costs);
+        tcfForHalfphones.cost(dt.right, rightUnits, rightCosts);
+        for (int i=0; i<units.length; i++) {
+            costs[i] += rightCosts[i];
+        }
+    }
+
 
     /**
      * Compute the features for a given target, and store them in the target.
@@ -135,6 +171,31 @@ public class DiphoneFFRTargetCostFunction implements TargetCostFunction
         }
     }
 
+    /**
+     * Compute the features for all the given targets, computing the features of
+     * the halves of diphone targets together.
+     * @param targets the targets for which to compute the features
+     * @param matrix a matrix to reuse, or null
+     * @return the matrix holding the features of the halves of the targets
+     */
+    public FeatureMatrix computeTargetFeatures(List<? extends Target> targets, FeatureMatrix matrix)
+    {
+        List<Target> halfphones = new ArrayList<Target>(targets.size() + 1);
+        for (Target target : targets) {
+            if (!(target instanceof DiphoneTarget)) {
+                halfphones.add(target);
+            } else {
+                DiphoneTarget dt = (DiphoneTarget) target;
+                // the right half of one diphone is the left half of the next
+                if (halfphones.isEmpty() || halfphones.get(halfphones.size()-1) != dt.left) {
+                    halfphones.add(dt.left);
+                }
+                halfphones.add(dt.right);
+            }
+        }
+        return tcfForHalfphones.computeTargetFeatures(halfphones, matrix);
+    }
+
 
     public FeatureVector[] getFeatureVectors() {
         if (tcfForHalfphones != null) {
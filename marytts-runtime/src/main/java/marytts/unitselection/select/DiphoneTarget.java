@@ -19,6 +19,7 @@
  */
 package marytts.unitselection.select;
 
+import marytts.features.FeatureTable;
 import marytts.features.FeatureVector;
 import marytts.modules.phonemiser.Allophone;
 
@@ -57,6 +58,11 @@ public class DiphoneTarget extends Target {
         throw new IllegalStateException("This method should not be called for DiphoneTargets.");
     }
     
+    public void setFeatureRow(FeatureTable featureTable, int featureRow)
+    {
+        throw new IllegalStateException("This method should not be called for DiphoneTargets.");
+    }
+    
     public float getTargetDurationInSeconds()
     {
         throw new IllegalStateException("This method should not be called for DiphoneTargets.");
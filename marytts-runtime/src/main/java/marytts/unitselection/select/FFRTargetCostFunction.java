@@ -23,10 +23,13 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.List;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.features.FeatureDefinition;
+import marytts.features.FeatureMatrix;
 import marytts.features.FeatureProcessorManager;
+import marytts.features.FeatureTable;
 import marytts.features.FeatureVector;
 import marytts.features.TargetFeatureComputer;
 import marytts.server.MaryProperties;
@@ -38,13 +41,23 @@ import marytts.unitselection.weightingfunctions.WeightFunctionManager;
 import marytts.util.MaryUtils;
 
 
-public class FFRTargetCostFunction implements TargetCostFunction 
+public class FFRTargetCostFunction implements BatchTargetCostFunction, BatchCostFunction 
 {
     protected WeightFunc[] weightFunction;
     protected TargetFeatureComputer targetFeatureComputer;
     protected FeatureVector[] featureVectors;
+    /** In mapped mode, the unit features are read from here, and featureVectors is null. */
+    protected FeatureFileReader mappedFeatures;
+    /** The file from which the unit features were loaded, in mapped mode or not. */
+    protected FeatureFileReader unitFeatureFile;
     protected FeatureDefinition featureDefinition;
     protected boolean[] weightsNonZero;
+    // the indices of the features with non-zero weights, for each kind of feature:
+    protected int[] nonZeroByteFeatures;
+    protected int[] nonZeroShortFeatures;
+    protected int[] nonZeroContinuousFeatures;
+    /** The target costs computed so far, or null if target costs are not cached. */
+    protected TargetCostCache costCache;
 
     protected boolean debugShowCostGraph = false;
     protected double[] cumulWeightedCosts = null;
@@ -71,8 +84,15 @@ public class FFRTargetCostFunction implements TargetCostFunction
     protected double cost(Target target, Unit unit, FeatureDefinition weights, WeightFunc[] weightFunctions)
     {
         nCostComputations++; // for debug
+        FeatureTable targetTable = target.getFeatureTable();
+        if (targetTable != null && unitFeatureFile != null) {
+            return tableCost(targetTable, target.getFeatureRow(), unit.index, weights, weightFunctions);
+        }
         FeatureVector targetFeatures = target.getFeatureVector(); 
         assert targetFeatures != null: "Target "+target+" does not have pre-computed feature vector";
+        if (featureVectors == null) {
+            return mappedCost(targetFeatures, unit.index, weights, weightFunctions);
+        }
         FeatureVector unitFeatures = featureVectors[unit.index];
         int nBytes = targetFeatures.byteValuedDiscreteFeatures.length;
         int nShorts = targetFeatures.shortValuedDiscreteFeatures.length;
@@ -141,6 +161,277 @@ public class FFRTargetCostFunction implements TargetCostFunction
         return cost;
     }
     
+    /**
+     * The same computation as in {@link #cost(Target, Unit, FeatureDefinition, WeightFunc[])},
+     * reading the unit features directly from the mapped feature file.
+     */
+    private double mappedCost(FeatureVector targetFeatures, int unitIndex, FeatureDefinition weights, WeightFunc[] weightFunctions)
+    {
+        int nBytes = targetFeatures.byteValuedDiscreteFeatures.length;
+        int nShorts = targetFeatures.shortValuedDiscreteFeatures.length;
+        int nFloats = targetFeatures.continuousFeatures.length;
+        float[] weightVector = weights.getFeatureWeights();
+        double cost = 0;
+        for (int i=0; i<nBytes; i++) {
+            if (weightsNonZero[i]) {
+                float weight = weightVector[i];
+                byte targetValue = targetFeatures.byteValuedDiscreteFeatures[i];
+                byte unitValue = mappedFeatures.getByteFeature(unitIndex, i);
+                if ( featureDefinition.hasSimilarityMatrix(i) ) {
+                    float similarity = featureDefinition.getSimilarity(i, unitValue, targetValue);
+                    cost += similarity * weight;
+                    if (debugShowCostGraph) cumulWeightedCosts[i] += similarity * weight;
+                } else if (targetValue != unitValue) {
+                    cost += weight;
+                    if (debugShowCostGraph) cumulWeightedCosts[i] += weight;
+                }
+            }
+        }
+        for (int i=nBytes, n=nBytes+nShorts; i<n; i++) {
+            if (weightsNonZero[i]) {
+                if (targetFeatures.shortValuedDiscreteFeatures[i-nBytes] != mappedFeatures.getShortFeature(unitIndex, i)) {
+                    float weight = weightVector[i];
+                    cost += weight;
+                    if (debugShowCostGraph) cumulWeightedCosts[i] += weight;
+                }
+            }
+        }
+        int nDiscrete = nBytes+nShorts;
+        for (int i=nDiscrete, n=nDiscrete+nFloats; i<n; i++) {
+            if (weightsNonZero[i]) {
+                float a = targetFeatures.continuousFeatures[i-nDiscrete];
+                float b = mappedFeatures.getContinuousFeature(unitIndex, i);
+                if (!(a != a) && !(b != b)) {
+                    float weight = weightVector[i];
+                    double myCost = weightFunctions[i-nDiscrete].cost(a, b); 
+                    cost += weight * myCost;
+                    if (debugShowCostGraph) cumulWeightedCosts[i] += weight * myCost;
+                }
+            }
+        }
+        return cost;
+    }
+    
+    /**
+     * Compute the goodness-of-fit of several units for the same target.
+     * The values of the target features are looked up only once for all units, and if
+     * target costs are cached, the costs are computed only for the units not found in the cache.
+     * @param target the target
+     * @param units the candidate units for the target
+     * @param costs receives the cost of units[i] in costs[i], the same as {@link #cost(Target, Unit)}.
+     */
+    public void cost(Target target, Unit[] units, double[] costs)
+    {
+        cost(target, units, costs, featureDefinition, weightFunction, 0);
+    }
+    
+    /**
+     * Compute the goodness-of-fit of several units for the same target, using the given weights.
+     * @param weightsId a number identifying the weights, which separates the cached costs
+     * computed with different weights.
+     */
+    protected void cost(Target target, Unit[] units, double[] costs, FeatureDefinition weights, WeightFunc[] weightFunctions, int weightsId)
+    {
+        if (unitFeatureFile == null || debugShowCostGraph) {
+            for (int i=0; i<units.length; i++) {
+                costs[i] = cost(target, units[i], weights, weightFunctions);
+            }
+            return;
+        }
+        nCostComputations += units.length; // for debug
+        TargetValues targetValues = new TargetValues(target);
+        TargetCostCache cache = costCache;
+        if (cache == null) {
+            unitCosts(targetValues, units, costs, weights, weightFunctions);
+            return;
+        }
+        TargetCostCache.Signature signature = targetValues.signature(weightsId);
+        boolean[] found = new boolean[units.length];
+        int numFound = cache.lookup(signature, units, costs, found);
+        if (numFound == units.length) {
+            return;
+        }
+        Unit[] missingUnits = units;
+        double[] missingCosts = costs;
+        if (numFound > 0) {
+            missingUnits = new Unit[units.length - numFound];
+            missingCosts = new double[missingUnits.length];
+            for (int i=0, k=0; i<units.length; i++) {
+                if (!found[i]) missingUnits[k++] = units[i];
+            }
+        }
+        unitCosts(targetValues, missingUnits, missingCosts, weights, weightFunctions);
+        if (numFound > 0) {
+            for (int i=0, k=0; i<units.length; i++) {
+                if (!found[i]) costs[i] = missingCosts[k++];
+            }
+        }
+        cache.store(signature, missingUnits, missingCosts);
+    }
+    
+    /**
+     * The same computation as in {@link #cost(Target, Unit, FeatureDefinition, WeightFunc[])}
+     * for several units, going only through the features with non-zero weights.
+     */
+    private void unitCosts(TargetValues target, Unit[] units, double[] costs, FeatureDefinition weights, WeightFunc[] weightFunctions)
+    {
+        int[] byteFeatures = nonZeroByteFeatures;
+        int[] shortFeatures = nonZeroShortFeatures;
+        int[] continuousFeatures = nonZeroContinuousFeatures;
+        int nBytes = featureDefinition.getNumberOfByteFeatures();
+        int nDiscrete = nBytes + featureDefinition.getNumberOfShortFeatures();
+        boolean[] hasSimilarity = new boolean[byteFeatures.length];
+        for (int k=0; k<byteFeatures.length; k++) {
+            hasSimilarity[k] = featureDefinition.hasSimilarityMatrix(byteFeatures[k]);
+        }
+        float[] weightVector = weights.getFeatureWeights();
+        for (int u=0; u<units.length; u++) {
+            int unitIndex = units[u].index;
+            FeatureVector unitFeatures = featureVectors != null ? featureVectors[unitIndex] : null;
+            double cost = 0;
+            for (int k=0; k<byteFeatures.length; k++) {
+                int i = byteFeatures[k];
+                float weight = weightVector[i];
+                byte targetValue = target.bytes[k];
+                byte unitValue = unitFeatures != null ? unitFeatures.byteValuedDiscreteFeatures[i]
+                        : mappedFeatures.getByteFeature(unitIndex, i);
+                if (hasSimilarity[k]) {
+                    float similarity = featureDefinition.getSimilarity(i, unitValue, targetValue);
+                    cost += similarity * weight;
+                } else if (targetValue != unitValue) {
+                    cost += weight;
+                }
+            }
+            for (int k=0; k<shortFeatures.length; k++) {
+                int i = shortFeatures[k];
+                short unitValue = unitFeatures != null ? unitFeatures.shortValuedDiscreteFeatures[i-nBytes]
+                        : mappedFeatures.getShortFeature(unitIndex, i);
+                if (target.shorts[k] != unitValue) {
+                    cost += weightVector[i];
+                }
+            }
+            for (int k=0; k<continuousFeatures.length; k++) {
+                int i = continuousFeatures[k];
+                float a = target.floats[k];
+                float b = unitFeatures != null ? unitFeatures.continuousFeatures[i-nDiscrete]
+                        : mappedFeatures.getContinuousFeature(unitIndex, i);
+                if (!(a != a) && !(b != b)) {
+                    float weight = weightVector[i];
+                    double myCost = weightFunctions[i-nDiscrete].cost(a, b);
+                    cost += weight * myCost;
+                }
+            }
+            costs[u] = cost;
+        }
+    }
+    
+    /**
+     * The values of the target features with non-zero weights.
+     */
+    private class TargetValues
+    {
+        final byte[] bytes = new byte[nonZeroByteFeatures.length];
+        final short[] shorts = new short[nonZeroShortFeatures.length];
+        final float[] floats = new float[nonZeroContinuousFeatures.length];
+        
+        TargetValues(Target target)
+        {
+            FeatureTable table = target.getFeatureTable();
+            int row = target.getFeatureRow();
+            FeatureVector fv = table == null ? target.getFeatureVector() : null;
+            assert table != null || fv != null : "Target "+target+" does not have pre-computed features";
+            for (int k=0; k<bytes.length; k++) {
+                int i = nonZeroByteFeatures[k];
+                bytes[k] = table != null ? table.getByteFeature(row, i) : fv.getByteFeature(i);
+            }
+            for (int k=0; k<shorts.length; k++) {
+                int i = nonZeroShortFeatures[k];
+                shorts[k] = table != null ? table.getShortFeature(row, i) : fv.getShortFeature(i);
+            }
+            for (int k=0; k<floats.length; k++) {
+                int i = nonZeroContinuousFeatures[k];
+                floats[k] = table != null ? table.getContinuousFeature(row, i) : fv.getContinuousFeature(i);
+            }
+        }
+        
+        /**
+         * The values packed into a signature for the cost cache, preceded by the given weights id.
+         */
+        TargetCostCache.Signature signature(int weightsId)
+        {
+            byte[] key = new byte[1 + bytes.length + 2 * shorts.length + 4 * floats.length];
+            int p = 0;
+            key[p++] = (byte) weightsId;
+            for (byte b : bytes) {
+                key[p++] = b;
+            }
+            for (short s : shorts) {
+                key[p++] = (byte) (s >> 8);
+                key[p++] = (byte) s;
+            }
+            for (float f : floats) {
+                int bits = Float.floatToIntBits(f);
+                key[p++] = (byte) (bits >> 24);
+                key[p++] = (byte) (bits >> 16);
+                key[p++] = (byte) (bits >> 8);
+                key[p++] = (byte) bits;
+            }
+            return new TargetCostCache.Signature(key);
+        }
+    }
+    
+    /**
+     * The same computation as in {@link #cost(Target, Unit, FeatureDefinition, WeightFunc[])},
+     * reading the target features from a row of a feature table, such as a feature matrix computed
+     * for the whole utterance, and the unit features from the unit feature file.
+     */
+    private double tableCost(FeatureTable targetFeatures, int targetRow, int unitIndex, FeatureDefinition weights, WeightFunc[] weightFunctions)
+    {
+        int nBytes = featureDefinition.getNumberOfByteFeatures();
+        int nShorts = featureDefinition.getNumberOfShortFeatures();
+        int nFloats = featureDefinition.getNumberOfContinuousFeatures();
+        float[] weightVector = weights.getFeatureWeights();
+        double cost = 0;
+        for (int i=0; i<nBytes; i++) {
+            if (weightsNonZero[i]) {
+                float weight = weightVector[i];
+                byte targetValue = targetFeatures.getByteFeature(targetRow, i);
+                byte unitValue = unitFeatureFile.getByteFeature(unitIndex, i);
+                if ( featureDefinition.hasSimilarityMatrix(i) ) {
+                    float similarity = featureDefinition.getSimilarity(i, unitValue, targetValue);
+                    cost += similarity * weight;
+                    if (debugShowCostGraph) cumulWeightedCosts[i] += similarity * weight;
+                } else if (targetValue != unitValue) {
+                    cost += weight;
+                    if (debugShowCostGraph) cumulWeightedCosts[i] += weight;
+                }
+            }
+        }
+        for (int i=nBytes, n=nBytes+nShorts; i<n; i++) {
+            if (weightsNonZero[i]) {
+                if (targetFeatures.getShortFeature(targetRow, i) != unitFeatureFile.getShortFeature(unitIndex, i)) {
+                    float weight = weightVector[i];
+                    cost += weight;
+                    if (debugShowCostGraph) cumulWeightedCosts[i] += weight;
+                }
+            }
+        }
+        int nDiscrete = nBytes+nShorts;
+        for (int i=nDiscrete, n=nDiscrete+nFloats; i<n; i++) {
+            if (weightsNonZero[i]) {
+                float a = targetFeatures.getContinuousFeature(targetRow, i);
+                float b = unitFeatureFile.getContinuousFeature(unitIndex, i);
+                if (!(a != a) && !(b != b)) {
+                    float weight = weightVector[i];
+                    double myCost = weightFunctions[i-nDiscrete].cost(a, b); 
+                    cost += weight * myCost;
+                    if (debugShowCostGraph) cumulWeightedCosts[i] += weight * myCost;
+                }
+            }
+        }
+        return cost;
+    }
+    
     /**
      * Compute the goodness-of-fit between given unit and given target for a given feature
      * @param target target unit
@@ -161,7 +452,7 @@ public class FFRTargetCostFunction implements TargetCostFunction
         
         FeatureVector targetFeatures = target.getFeatureVector(); 
         assert targetFeatures != null: "Target "+target+" does not have pre-computed feature vector";
-        FeatureVector unitFeatures = featureVectors[unit.index];
+        FeatureVector unitFeatures = getFeatureVector(unit);
         int nBytes = targetFeatures.byteValuedDiscreteFeatures.length;
         int nShorts = targetFeatures.shortValuedDiscreteFeatures.length;
         int nFloats = targetFeatures.continuousFeatures.length;
@@ -235,16 +526,40 @@ public class FFRTargetCostFunction implements TargetCostFunction
             FeatureProcessorManager featProc)
     throws IOException, MaryConfigurationException
     {
-        FeatureFileReader ffr = FeatureFileReader.getFeatureFileReader(featureFileName);
+        FeatureFileReader ffr = FeatureFileReader.getFeatureFileReader(featureFileName, useMappedFeatureFile());
         load(ffr, weightsStream, featProc);
     }
     
+    /**
+     * Whether unit feature files should be read in mapped mode, see {@link FeatureFileReader}.
+     */
+    protected static boolean useMappedFeatureFile()
+    {
+        return MaryProperties.getBoolean("unitselection.featurefile.mapped", false);
+    }
+    
+    /**
+     * Use the unit features of the given reader: in mapped mode, read them from the reader
+     * when needed; otherwise, use its feature vectors.
+     */
+    protected void setUnitFeatures(FeatureFileReader ffr)
+    {
+        this.unitFeatureFile = ffr;
+        if (ffr.isMapped()) {
+            this.mappedFeatures = ffr;
+            this.featureVectors = null;
+        } else {
+            this.mappedFeatures = null;
+            this.featureVectors = ffr.getFeatureVectors();
+        }
+    }
+    
     @Override
     public void load(FeatureFileReader ffr, InputStream weightsStream, FeatureProcessorManager featProc)
     throws IOException
     {
         this.featureDefinition = ffr.getFeatureDefinition();
-        this.featureVectors = ffr.getFeatureVectors();
+        setUnitFeatures(ffr);
         if (weightsStream != null) {
             MaryUtils.getLogger("TargetCostFeatures").debug("Overwriting target cost weights from file");
             // overwrite weights from file
@@ -269,6 +584,7 @@ public class FFRTargetCostFunction implements TargetCostFunction
         this.targetFeatureComputer = new TargetFeatureComputer(featProc, featureDefinition.getFeatureNames());
 
         rememberWhichWeightsAreNonZero();
+        createCostCache();
 
         if (MaryProperties.getBoolean("debug.show.cost.graph")) {
             debugShowCostGraph = true;
@@ -286,6 +602,34 @@ public class FFRTargetCostFunction implements TargetCostFunction
         for (int i=0, n=featureDefinition.getNumberOfFeatures(); i<n; i++) {
             weightsNonZero[i] = (featureDefinition.getWeight(i) > 0);
         }
+        int nBytes = featureDefinition.getNumberOfByteFeatures();
+        int nDiscrete = nBytes + featureDefinition.getNumberOfShortFeatures();
+        nonZeroByteFeatures = nonZeroFeatures(0, nBytes);
+        nonZeroShortFeatures = nonZeroFeatures(nBytes, nDiscrete);
+        nonZeroContinuousFeatures = nonZeroFeatures(nDiscrete, weightsNonZero.length);
+    }
+    
+    private int[] nonZeroFeatures(int from, int to)
+    {
+        int n = 0;
+        for (int i=from; i<to; i++) {
+            if (weightsNonZero[i]) n++;
+        }
+        int[] features = new int[n];
+        for (int i=from, k=0; i<to; i++) {
+            if (weightsNonZero[i]) features[k++] = i;
+        }
+        return features;
+    }
+    
+    /**
+     * Create the cache of target costs, if a size is given for it
+     * in the property "unitselection.targetcost.cache.size".
+     */
+    protected void createCostCache()
+    {
+        int size = MaryProperties.getInteger("unitselection.targetcost.cache.size", 0);
+        costCache = size > 0 ? new TargetCostCache(size) : null;
     }
 
     /**
@@ -299,6 +643,19 @@ public class FFRTargetCostFunction implements TargetCostFunction
         target.setFeatureVector(fv);
     }
     
+    /**
+     * Compute the features for all the given targets into one feature matrix,
+     * and associate each target with its row.
+     * @param targets the targets for which to compute the features
+     * @param matrix a matrix to reuse, or null
+     * @return the matrix holding the features of the targets
+     * @see TargetFeatureComputer#computeFeatureRows(List, FeatureMatrix)
+     */
+    public FeatureMatrix computeTargetFeatures(List<? extends Target> targets, FeatureMatrix matrix)
+    {
+        return targetFeatureComputer.computeFeatureRows(targets, matrix);
+    }
+    
     
     /**
      * Look up the features for a given unit.
@@ -307,6 +664,9 @@ public class FFRTargetCostFunction implements TargetCostFunction
      */
     public FeatureVector getFeatureVector(Unit unit)
     {
+        if (featureVectors == null) {
+            return mappedFeatures.getFeatureVector(unit.index);
+        }
         return featureVectors[unit.index];
     }
     
@@ -321,14 +681,15 @@ public class FFRTargetCostFunction implements TargetCostFunction
     public String getFeature(Unit unit, String featureName)
     {
         int featureIndex = featureDefinition.getFeatureIndex(featureName);
+        FeatureVector unitFeatures = getFeatureVector(unit);
         if (featureDefinition.isByteFeature(featureIndex)) {
-            byte value = featureVectors[unit.index].getByteFeature(featureIndex);
+            byte value = unitFeatures.getByteFeature(featureIndex);
             return featureDefinition.getFeatureValueAsString(featureIndex, value);
         } else if (featureDefinition.isShortFeature(featureIndex)) {
-            short value = featureVectors[unit.index].getShortFeature(featureIndex);
+            short value = unitFeatures.getShortFeature(featureIndex);
             return featureDefinition.getFeatureValueAsString(featureIndex, value);
         } else { // continuous -- return float as string
-            float value = featureVectors[unit.index].getContinuousFeature(featureIndex);
+            float value = unitFeatures.getContinuousFeature(featureIndex);
             return String.valueOf(value);
         }
     }
@@ -375,8 +736,15 @@ public class FFRTargetCostFunction implements TargetCostFunction
         }
     }
 
+    /**
+     * Get the feature vectors of all units. In mapped mode, this creates a new
+     * feature vector for each unit, which should be avoided.
+     */
     public FeatureVector[] getFeatureVectors()
     {
+        if (featureVectors == null) {
+            return mappedFeatures.getFeatureVectors();
+        }
         return featureVectors;
     }
 
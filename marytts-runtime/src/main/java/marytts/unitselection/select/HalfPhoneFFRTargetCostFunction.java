@@ -68,6 +68,22 @@ public class HalfPhoneFFRTargetCostFunction extends FFRTargetCostFunction
         return cost(target, unit, weights, weightFunctions);
     }
 
+    /**
+     * Compute the goodness-of-fit of several units for the same half-phone target,
+     * using the weights for left or right halves.
+     */
+    public void cost(Target target, Unit[] units, double[] costs)
+    {
+        if (!(target instanceof HalfPhoneTarget))
+            throw new IllegalArgumentException("This target cost function can only be called for half-phone targets!");
+        boolean isLeftHalf = ((HalfPhoneTarget) target).isLeftHalf();
+        if (isLeftHalf) {
+            cost(target, units, costs, leftWeights, leftWeightFunction, 0);
+        } else {
+            cost(target, units, costs, rightWeights, rightWeightFunction, 1);
+        }
+    }
+
     /**
      * Initialise the data needed to do a target cost computation.
      * @param featureFileName name of a file containing the unit features
@@ -83,7 +99,7 @@ public class HalfPhoneFFRTargetCostFunction extends FFRTargetCostFunction
             FeatureProcessorManager featProc)
     throws IOException, MaryConfigurationException
     {
-        HalfPhoneFeatureFileReader ffr = new HalfPhoneFeatureFileReader(featureFileName);
+        HalfPhoneFeatureFileReader ffr = new HalfPhoneFeatureFileReader(featureFileName, useMappedFeatureFile());
         load(ffr, weightsFile, featProc);
     }
     
@@ -96,7 +112,7 @@ public class HalfPhoneFFRTargetCostFunction extends FFRTargetCostFunction
         this.leftWeights = ffr.getLeftWeights();
         this.featureDefinition = this.leftWeights;
         this.rightWeights = ffr.getRightWeights();
-        this.featureVectors = ffr.getFeatureVectors();
+        setUnitFeatures(ffr);
 
         if (weightsFile != null) {
             MaryUtils.getLogger("TargetCostFeatures").debug("Overwriting target cost weights from file "+weightsFile);
@@ -147,6 +163,7 @@ public class HalfPhoneFFRTargetCostFunction extends FFRTargetCostFunction
         this.targetFeatureComputer = new TargetFeatureComputer(featProc, leftWeights.getFeatureNames());
         
         rememberWhichWeightsAreNonZero();
+        createCostCache();
 
         if (MaryProperties.getBoolean("debug.show.cost.graph")) {
             debugShowCostGraph = true;
@@ -176,7 +193,7 @@ public class HalfPhoneFFRTargetCostFunction extends FFRTargetCostFunction
      */
     public FeatureVector getUnitFeatures(Unit unit)
     {
-        return featureVectors[unit.index];
+        return getFeatureVector(unit);
     }
     
     /**
@@ -190,14 +207,15 @@ public class HalfPhoneFFRTargetCostFunction extends FFRTargetCostFunction
     public String getFeature(Unit unit, String featureName)
     {
         int featureIndex = featureDefinition.getFeatureIndex(featureName);
+        FeatureVector unitFeatures = getFeatureVector(unit);
         if (featureDefinition.isByteFeature(featureIndex)) {
-            byte value = featureVectors[unit.index].getByteFeature(featureIndex);
+            byte value = unitFeatures.getByteFeature(featureIndex);
             return featureDefinition.getFeatureValueAsString(featureIndex, value);
         } else if (featureDefinition.isShortFeature(featureIndex)) {
-            short value = featureVectors[unit.index].getShortFeature(featureIndex);
+            short value = unitFeatures.getShortFeature(featureIndex);
             return featureDefinition.getFeatureValueAsString(featureIndex, value);
         } else { // continuous -- return float as string
-            float value = featureVectors[unit.index].getContinuousFeature(featureIndex);
+            float value = unitFeatures.getContinuousFeature(featureIndex);
             return String.valueOf(value);
         }
     }
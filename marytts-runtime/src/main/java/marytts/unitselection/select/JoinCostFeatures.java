@@ -34,6 +34,7 @@ import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.BufferUnderflowException;
 import java.util.Vector;
 
 import marytts.exceptions.MaryConfigurationException;
@@ -50,7 +51,16 @@ import marytts.util.MaryUtils;
 import marytts.util.data.MaryHeader;
 import marytts.util.io.StreamUtils;
 
-
+/**
+ * Join cost features of all units in a voice, and the join cost function computed from them.
+ * <p>
+ * The left and right join cost features of all units are kept in one contiguous block
+ * of floats, in the order in which they are stored in the join cost feature file:
+ * for unit <code>u</code>, the left features start at <code>u * 2 * numberOfFeatures</code>,
+ * immediately followed by the right features. If <code>unitselection.joincostfile.mapped</code>
+ * is true, this block is not copied into the heap, but read directly from the memory-mapped file,
+ * so that several processes using the same voice share the same pages of memory.
+ */
 public class JoinCostFeatures implements JoinCostFunction
 {
 
@@ -75,8 +85,10 @@ public class JoinCostFeatures implements JoinCostFunction
     private WeightFunc[] weightFunction = null;
     private boolean[] isLinear = null; // wether the i'th weight function is a linear function
     
-    private float[][] leftJCF = null;
-    private float[][] rightJCF = null;
+    private int numberOfUnits = 0;
+    private int stride = 0; // 2 * number of features
+    private float[] jcf = null; // left and right features of all units, if loaded into the heap
+    private FloatBuffer mappedJCF = null; // the same, if read from the mapped file
     
     /****************/
     /* CONSTRUCTORS */
@@ -189,18 +201,28 @@ public class JoinCostFeatures implements JoinCostFunction
             
             
             /* Read the left and right Join Cost Features */
-            int numberOfUnits = bb.getInt();
+            numberOfUnits = bb.getInt();
+            stride = 2 * numberOfFeatures;
             FloatBuffer fb = bb.asFloatBuffer();
-            leftJCF = new float[numberOfUnits][];
-            rightJCF = new float[numberOfUnits][];
-            for ( int i = 0; i < numberOfUnits; i++ ) {
-                //System.out.println("Reading join features for unit "+i+" out of "+numberOfUnits);
-                leftJCF[i] = new float[numberOfFeatures];
-                fb.get(leftJCF[i]);
-                rightJCF[i] = new float[numberOfFeatures];
-                fb.get(rightJCF[i]);
+            int length = numberOfUnits * stride;
+            if (fb.remaining() < length) {
+                throw new EOFException();
+            }
+            if (useMappedJoinCostFile()) {
+                fb.limit(length);
+                mappedJCF = fb.slice();
+                jcf = null;
+            } else {
+                jcf = new float[length];
+                fb.get(jcf);
+                mappedJCF = null;
             }
         }
+        catch ( BufferUnderflowException e ) {
+            IOException ioe = new IOException( "The currently read Join Cost File has prematurely reached EOF.");
+            ioe.initCause(e);
+            throw ioe;
+        }
         catch ( EOFException e ) {
             IOException ioe = new IOException( "The currently read Join Cost File has prematurely reached EOF.");
             ioe.initCause(e);
@@ -274,19 +296,12 @@ public class JoinCostFeatures implements JoinCostFunction
             
             
             /* Read the left and right Join Cost Features */
-            int numberOfUnits = raf.readInt();
-            leftJCF = new float[numberOfUnits][];
-            rightJCF = new float[numberOfUnits][];
-            for ( int i = 0; i < numberOfUnits; i++ ) {
-                //System.out.println("Reading join features for unit "+i+" out of "+numberOfUnits);
-                leftJCF[i] = new float[numberOfFeatures];
-                for ( int j = 0; j < numberOfFeatures; j++ ) {
-                    leftJCF[i][j] = raf.readFloat();
-                }
-                rightJCF[i] = new float[numberOfFeatures];
-                for ( int j = 0; j < numberOfFeatures; j++ ) {
-                    rightJCF[i][j] = raf.readFloat();
-                }
+            numberOfUnits = raf.readInt();
+            stride = 2 * numberOfFeatures;
+            jcf = new float[numberOfUnits * stride];
+            mappedJCF = null;
+            for ( int i = 0; i < jcf.length; i++ ) {
+                jcf[i] = raf.readFloat();
             }
         }
         catch ( EOFException e ) {
@@ -305,6 +320,15 @@ public class JoinCostFeatures implements JoinCostFunction
 
     }
 
+    /**
+     * Whether join cost features should be read from the memory-mapped join cost file
+     * rather than copied into the heap.
+     */
+    protected static boolean useMappedJoinCostFile()
+    {
+        return MaryProperties.getBoolean("unitselection.joincostfile.mapped", false);
+    }
+
     /**
      * Read the join cost weight specifications from the given file.
      * The weights will be normalized such that they sum to one.
@@ -372,12 +396,47 @@ public class JoinCostFeatures implements JoinCostFunction
      * Get the number of units.
      */
     public int getNumberOfUnits() {
-        return( leftJCF.length );
+        return( numberOfUnits );
     }
     
+    /**
+     * Whether the join cost features are read from the memory-mapped file.
+     */
+    public boolean isMapped() {
+        return mappedJCF != null;
+    }
         
     /**
-     * Gets the array of left join cost features for a particular unit index.
+     * Gets one left join cost feature of a unit, without creating an array.
+     * 
+     * @param u The index of the considered unit.
+     * @param i The index of the feature.
+     * 
+     * @return The value of the i'th left join cost feature of the given unit.
+     */
+    public float getLeftJCF( int u, int i ) {
+        return value( u * stride + i );
+    }
+    
+    /**
+     * Gets one right join cost feature of a unit, without creating an array.
+     * 
+     * @param u The index of the considered unit.
+     * @param i The index of the feature.
+     * 
+     * @return The value of the i'th right join cost feature of the given unit.
+     */
+    public float getRightJCF( int u, int i ) {
+        return value( u * stride + stride / 2 + i );
+    }
+    
+    private float value( int index ) {
+        if ( jcf != null ) return jcf[index];
+        return mappedJCF.get(index);
+    }
+    
+    /**
+     * Gets a copy of the array of left join cost features for a particular unit index.
      * 
      * @param u The index of the considered unit.
      * 
@@ -392,11 +451,11 @@ public class JoinCostFeatures implements JoinCostFunction
             throw new RuntimeException( "The unit index [" + u +
                     "] is out of range: this file contains [" + getNumberOfUnits() + "] units." );
         }
-        return( leftJCF[u] );
+        return( copyOf( u * stride ) );
     }
     
     /**
-     * Gets the array of right join cost features for a particular unit index.
+     * Gets a copy of the array of right join cost features for a particular unit index.
      * 
      * @param u The index of the considered unit.
      * 
@@ -411,7 +470,19 @@ public class JoinCostFeatures implements JoinCostFunction
             throw new RuntimeException( "The unit index [" + u +
                     "] is out of range: this file contains [" + getNumberOfUnits() + "] units." );
         }
-        return( rightJCF[u] );
+        return( copyOf( u * stride + stride / 2 ) );
+    }
+    
+    private float[] copyOf( int start ) {
+        float[] features = new float[stride / 2];
+        if ( jcf != null ) {
+            System.arraycopy( jcf, start, features, 0, features.length );
+        } else {
+            FloatBuffer fb = mappedJCF.duplicate();
+            fb.position( start );
+            fb.get( features );
+        }
+        return features;
     }
     
     /*****************/
@@ -435,7 +506,7 @@ public class JoinCostFeatures implements JoinCostFunction
                     "] is out of range: a unit index can't be negative." );
         }
 //        if ( u1 > getNumberOfUnits() ) {
-        if (u1 > leftJCF.length) {
+        if (u1 > numberOfUnits) {
             throw new RuntimeException( "The left unit index [" + u1 +
                     "] is out of range: this file contains [" + getNumberOfUnits() + "] units." );
         }
@@ -444,7 +515,7 @@ public class JoinCostFeatures implements JoinCostFunction
                     "] is out of range: a unit index can't be negative." );
         }
 //        if ( u2 > getNumberOfUnits() ) {
-        if ( u2 > leftJCF.length ) {
+        if ( u2 > numberOfUnits ) {
             throw new RuntimeException( "The right unit index [" + u2 +
                     "] is out of range: this file contains [" + getNumberOfUnits() + "] units." );
         }
@@ -453,28 +524,39 @@ public class JoinCostFeatures implements JoinCostFunction
         }
         /* Cumulate the join costs for each feature */
         double res = 0.0;
-        float[] v1 = rightJCF[u1];
-        float[] v2 = leftJCF[u2];
-        for ( int i = 0; i < v1.length; i++ ) {
-            float a = v1[i];
-            float b = v2[i];
-            //if (!Float.isNaN(v1[i]) && !Float.isNaN(v2[i])) {
-            if (! (a!=a) && !(b!=b)) {
-                double c;
-                if (isLinear[i]) {
-                    c = featureWeight[i] * ( a > b ? (a-b) : (b-a) );
-                } else {
-                    c = featureWeight[i] * weightFunction[i].cost( a, b );
-                }
-                res += c;
-                if (debugShowCostGraph) {
-                    cumulWeightedSignalCosts[i] += wSignal * c;
-                }
-            } // if anything is NaN, count the cost as 0.
+        int numberOfFeatures = stride / 2;
+        int right = u1 * stride + numberOfFeatures; // right features of the left unit
+        int left = u2 * stride; // left features of the right unit
+        if ( jcf != null ) {
+            for ( int i = 0; i < numberOfFeatures; i++ ) {
+                res += featureCost( i, jcf[right+i], jcf[left+i] );
+            }
+        } else {
+            for ( int i = 0; i < numberOfFeatures; i++ ) {
+                res += featureCost( i, mappedJCF.get(right+i), mappedJCF.get(left+i) );
+            }
         }
         return( res );
     }
     
+    /**
+     * The weighted join cost of the i'th feature, for the given feature values.
+     */
+    private double featureCost( int i, float a, float b ) {
+        //if (!Float.isNaN(a) && !Float.isNaN(b)) {
+        if ( (a!=a) || (b!=b) ) return 0; // if anything is NaN, count the cost as 0.
+        double c;
+        if (isLinear[i]) {
+            c = featureWeight[i] * ( a > b ? (a-b) : (b-a) );
+        } else {
+            c = featureWeight[i] * weightFunction[i].cost( a, b );
+        }
+        if (debugShowCostGraph) {
+            cumulWeightedSignalCosts[i] += wSignal * c;
+        }
+        return c;
+    }
+    
     /**
      * A combined cost computation, as a weighted sum
      * of the signal-based cost (computed from the units)
@@ -169,15 +169,9 @@ public class JoinModelCost implements JoinCostFunction
         if (u1.index+1 == u2.index) return 0;
         double cost = 1; // basic penalty for joins of non-contiguous units. 
         
-        float[] v1 = jcf.getRightJCF(u1.index);
-        float[] v2 = jcf.getLeftJCF(u2.index);
-        //double[] diff = new double[v1.length];
-        //for ( int i = 0; i < v1.length; i++ ) {
-        //    diff[i] = (double)v1[i] - v2[i];
-        //}
-        double[] diff = new double[v1.length];
-        for ( int i = 0; i < v1.length; i++ ) {
-            diff[i] = (double)v1[i] - v2[i];
+        double[] diff = new double[jcf.getNumberOfFeatures()];
+        for ( int i = 0; i < diff.length; i++ ) {
+            diff[i] = (double)jcf.getRightJCF(u1.index, i) - jcf.getLeftJCF(u2.index, i);
         }
                 
         // Now evaluate likelihood of the diff under the join model
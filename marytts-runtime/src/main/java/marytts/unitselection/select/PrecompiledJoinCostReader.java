@@ -36,8 +36,11 @@ import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
 
 import marytts.exceptions.MaryConfigurationException;
 import marytts.server.MaryProperties;
@@ -47,18 +50,38 @@ import marytts.util.data.MaryHeader;
 
 /**
  * Loads a precompiled join cost file and provides access to the join cost.
- * 
+ * <p>
+ * The costs are kept in flat arrays: the left unit indices in ascending order,
+ * and for each left unit, a block of right unit indices in ascending order
+ * together with the costs of joining them. A cost is looked up by binary search
+ * in these arrays, without creating any objects.
+ * <p>
+ * If <code>unitselection.precomputedjoincosts.mapped</code> is true, only the left unit
+ * indices are kept in the heap; the blocks of right units are read from the memory-mapped file.
+ * Blocks which are sorted by right unit index in the file, as written by the current
+ * JoinCostPrecomputer, are searched by binary search, other blocks one entry after the other.
  */
 public class PrecompiledJoinCostReader implements JoinCostFunction
 {
 
     private MaryHeader hdr = null;
     
-    // keys = Integers representing left unit index;
-    // values = maps containing
-    //          - keys = Integers representing right unit index;
-    //          - values = Floats representing the jost of joining them.
-    protected Map left;   
+    // the left unit indices, in ascending order:
+    protected int[] leftIndices;
+    // the right units for leftIndices[i] are at positions rightStart[i] to rightStart[i+1]-1
+    // in rightIndices (in ascending order) and costs:
+    protected int[] rightStart;
+    protected int[] rightIndices;
+    protected float[] costs;
+    
+    // in mapped mode, the entries (right unit index and cost) for leftIndices[i] start at
+    // byte position blockStart[i] in mappedCosts, there are blockLength[i] of them, and
+    // they are sorted by right unit index unless unsortedBlocks.get(i):
+    protected ByteBuffer mappedCosts;
+    protected int[] blockStart;
+    protected int[] blockLength;
+    protected BitSet unsortedBlocks;
+    private static final int ENTRY_SIZE = 8;
 
     /**
      * Empty constructor; need to call load() separately.
@@ -105,6 +128,14 @@ public class PrecompiledJoinCostReader implements JoinCostFunction
     @Override
     public void load(String fileName, InputStream dummy, String dummy2, float dummy3) throws IOException, MaryConfigurationException
     {
+        if (useMappedJoinCosts()) {
+            loadMapped(fileName);
+            return;
+        }
+        mappedCosts = null;
+        blockStart = null;
+        blockLength = null;
+        unsortedBlocks = null;
         /* Open the file */
         DataInputStream dis = new DataInputStream( new BufferedInputStream( new FileInputStream( fileName ) ) );
         hdr = new MaryHeader( dis );
@@ -117,20 +148,132 @@ public class PrecompiledJoinCostReader implements JoinCostFunction
             throw new MaryConfigurationException( "File [" + fileName + "] has a negative number of units. Aborting." );
         }
         
-        left = new HashMap();
-        /* Read the start times and durations */
+        /* Read the blocks of right units for each left unit; each right unit is kept
+         * as a long with the unit index in the upper half and the cost in the lower half,
+         * so that a block can be sorted by right unit index as primitives. */
+        long[] lefts = new long[numberOfLeftUnits];
+        long[][] blocks = new long[numberOfLeftUnits][];
+        int total = 0;
         for ( int i = 0; i < numberOfLeftUnits; i++ ) {
             int leftIndex = dis.readInt();
             int numberOfRightUnits = dis.readInt();
-            Map right = new HashMap();
-            left.put(new Integer(leftIndex), right);
+            lefts[i] = ((long) leftIndex << 32) | i;
+            long[] block = new long[numberOfRightUnits];
             for (int j=0; j<numberOfRightUnits; j++) {
                 int rightIndex = dis.readInt();
-                float cost = dis.readFloat();
-                right.put(new Integer(rightIndex), new Float(cost));
+                int cost = Float.floatToIntBits(dis.readFloat());
+                block[j] = ((long) rightIndex << 32) | (cost & 0xFFFFFFFFL);
             }
+            Arrays.sort(block);
+            blocks[i] = block;
+            total += numberOfRightUnits;
         }
+        dis.close();
+        Arrays.sort(lefts);
 
+        leftIndices = new int[numberOfLeftUnits];
+        rightStart = new int[numberOfLeftUnits+1];
+        rightIndices = new int[total];
+        costs = new float[total];
+        int pos = 0;
+        for ( int i = 0; i < numberOfLeftUnits; i++ ) {
+            leftIndices[i] = (int) (lefts[i] >> 32);
+            rightStart[i] = pos;
+            long[] block = blocks[(int) lefts[i]];
+            blocks[(int) lefts[i]] = null;
+            for (int j=0; j<block.length; j++) {
+                if (j > 0 && block[j] >> 32 == block[j-1] >> 32) {
+                    continue; // duplicate entry
+                }
+                rightIndices[pos] = (int) (block[j] >> 32);
+                costs[pos] = Float.intBitsToFloat((int) block[j]);
+                pos++;
+            }
+        }
+        rightStart[numberOfLeftUnits] = pos;
+    }
+    
+    /**
+     * Map the given precompiled join cost file, and index the blocks of right units in it.
+     */
+    private void loadMapped(String fileName) throws IOException, MaryConfigurationException
+    {
+        FileInputStream fis = new FileInputStream(fileName);
+        ByteBuffer bb;
+        try {
+            FileChannel fc = fis.getChannel();
+            bb = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+        } finally {
+            fis.close(); // the mapping remains valid
+        }
+        hdr = new MaryHeader( bb );
+        if ( hdr.getType() != MaryHeader.PRECOMPUTED_JOINCOSTS ) {
+            throw new MaryConfigurationException( "File [" + fileName + "] is not a valid Mary precompiled join costs file." );
+        }
+        try {
+            int numberOfLeftUnits = bb.getInt();
+            if ( numberOfLeftUnits < 0 ) {
+                throw new MaryConfigurationException( "File [" + fileName + "] has a negative number of units. Aborting." );
+            }
+            long[] lefts = new long[numberOfLeftUnits];
+            int[] starts = new int[numberOfLeftUnits];
+            int[] lengths = new int[numberOfLeftUnits];
+            BitSet unsorted = new BitSet();
+            for ( int i = 0; i < numberOfLeftUnits; i++ ) {
+                int leftIndex = bb.getInt();
+                int numberOfRightUnits = bb.getInt();
+                lefts[i] = ((long) leftIndex << 32) | i;
+                starts[i] = bb.position();
+                lengths[i] = numberOfRightUnits;
+                if (numberOfRightUnits < 0 || bb.remaining() / ENTRY_SIZE < numberOfRightUnits) {
+                    throw new BufferUnderflowException();
+                }
+                for (int j=1; j<numberOfRightUnits; j++) {
+                    if (bb.getInt(starts[i] + j * ENTRY_SIZE) <= bb.getInt(starts[i] + (j-1) * ENTRY_SIZE)) {
+                        unsorted.set(i);
+                        break;
+                    }
+                }
+                bb.position(starts[i] + numberOfRightUnits * ENTRY_SIZE);
+            }
+            Arrays.sort(lefts);
+            leftIndices = new int[numberOfLeftUnits];
+            blockStart = new int[numberOfLeftUnits];
+            blockLength = new int[numberOfLeftUnits];
+            unsortedBlocks = new BitSet();
+            for ( int i = 0; i < numberOfLeftUnits; i++ ) {
+                int block = (int) lefts[i];
+                leftIndices[i] = (int) (lefts[i] >> 32);
+                blockStart[i] = starts[block];
+                blockLength[i] = lengths[block];
+                if (unsorted.get(block)) {
+                    unsortedBlocks.set(i);
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new MaryConfigurationException( "File [" + fileName + "] ends prematurely.", e);
+        }
+        mappedCosts = bb;
+        rightStart = null;
+        rightIndices = null;
+        costs = null;
+    }
+    
+    /**
+     * Whether precomputed join costs should be read from the memory-mapped file
+     * rather than copied into the heap.
+     */
+    protected static boolean useMappedJoinCosts()
+    {
+        return MaryProperties.getBoolean("unitselection.precomputedjoincosts.mapped", false);
+    }
+    
+    /**
+     * Whether the join costs are read from the memory-mapped file.
+     */
+    public boolean isMapped()
+    {
+        return mappedCosts != null;
     }
     
     /**
@@ -139,13 +282,45 @@ public class PrecompiledJoinCostReader implements JoinCostFunction
      */
     public double cost(Target t1, Unit uleft, Target t2, Unit uright)
     {
-        Integer leftIndex = new Integer(uleft.index);
-        Map rightUnitsMap = (Map)left.get(leftIndex);
-        if (rightUnitsMap == null) return Double.POSITIVE_INFINITY;
-        Integer rightIndex = new Integer(uright.index);
-        Float cost = (Float) rightUnitsMap.get(rightIndex);
-        if (cost == null) return Double.POSITIVE_INFINITY;
-        return cost.doubleValue();
+        int l = Arrays.binarySearch(leftIndices, uleft.index);
+        if (l < 0) return Double.POSITIVE_INFINITY;
+        if (mappedCosts != null) return mappedCost(l, uright.index);
+        int r = Arrays.binarySearch(rightIndices, rightStart[l], rightStart[l+1], uright.index);
+        if (r < 0) return Double.POSITIVE_INFINITY;
+        return costs[r];
+    }
+    
+    /**
+     * Look up the cost of joining the right unit with the given index to leftIndices[l]
+     * in the mapped file.
+     */
+    private double mappedCost(int l, int rightIndex)
+    {
+        int start = blockStart[l];
+        if (!unsortedBlocks.get(l)) {
+            int low = 0;
+            int high = blockLength[l] - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int midIndex = mappedCosts.getInt(start + mid * ENTRY_SIZE);
+                if (midIndex < rightIndex) {
+                    low = mid + 1;
+                } else if (midIndex > rightIndex) {
+                    high = mid - 1;
+                } else {
+                    return mappedCosts.getFloat(start + mid * ENTRY_SIZE + 4);
+                }
+            }
+            return Double.POSITIVE_INFINITY;
+        }
+        // as in the heap arrays, the lowest cost counts if a right unit occurs more than once:
+        double cost = Double.POSITIVE_INFINITY;
+        for (int j=0; j<blockLength[l]; j++) {
+            if (mappedCosts.getInt(start + j * ENTRY_SIZE) == rightIndex) {
+                cost = Math.min(cost, mappedCosts.getFloat(start + j * ENTRY_SIZE + 4));
+            }
+        }
+        return cost;
     }
     
 }
@@ -20,8 +20,10 @@
 package marytts.unitselection.select;
 
 import marytts.datatypes.MaryXML;
+import marytts.features.FeatureTable;
 import marytts.features.FeatureVector;
 import marytts.features.MaryGenericFeatureProcessors;
+import marytts.features.UtteranceIndex;
 import marytts.modules.phonemiser.Allophone;
 import marytts.modules.phonemiser.AllophoneSet;
 import marytts.modules.synthesis.Voice;
@@ -43,6 +45,9 @@ public class Target
     protected Element maryxmlElement;
     
     protected FeatureVector featureVector = null;
+    protected FeatureTable featureTable = null;
+    protected int featureRow = -1;
+    protected UtteranceIndex utteranceIndex = null;
     
     protected float duration = -1;
     protected float f0 = -1;
@@ -66,11 +71,61 @@ public class Target
         
     public String getName() { return name; }
     
-    public FeatureVector getFeatureVector() { return featureVector; }
+    /**
+     * The features of this target. If the features are kept in a row of a feature table
+     * (see {@link #setFeatureRow(FeatureTable, int)}), the feature vector is created
+     * from that row when it is first requested.
+     */
+    public FeatureVector getFeatureVector()
+    {
+        if (featureVector == null && featureTable != null) {
+            featureVector = featureTable.getFeatureVector(featureRow);
+        }
+        return featureVector;
+    }
     
     public void setFeatureVector(FeatureVector featureVector)
     {
         this.featureVector = featureVector;
+        this.featureTable = null;
+        this.featureRow = -1;
+    }
+
+    /**
+     * Use the given row of the given feature table as the features of this target,
+     * e.g. a row of a {@link marytts.features.FeatureMatrix} computed for all targets of an utterance.
+     * Users which can read single features, such as decision trees and target cost functions,
+     * read them from the table without creating a feature vector.
+     * @param featureTable the table containing the features
+     * @param featureRow the row of this target in the table
+     */
+    public void setFeatureRow(FeatureTable featureTable, int featureRow)
+    {
+        this.featureTable = featureTable;
+        this.featureRow = featureRow;
+        this.featureVector = null;
+    }
+
+    /**
+     * The feature table containing the features of this target,
+     * or null if the features have been set as a feature vector or not at all.
+     */
+    public FeatureTable getFeatureTable() { return featureTable; }
+
+    /**
+     * The row of this target in its feature table, or -1 if it has none.
+     */
+    public int getFeatureRow() { return featureRow; }
+
+    /**
+     * The index of the utterance containing this target, for use by feature processors,
+     * or null if none has been created.
+     */
+    public UtteranceIndex getUtteranceIndex() { return utteranceIndex; }
+
+    public void setUtteranceIndex(UtteranceIndex utteranceIndex)
+    {
+        this.utteranceIndex = utteranceIndex;
     }
     
     public float getTargetDurationInSeconds()
@@ -0,0 +1,297 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import marytts.unitselection.data.Unit;
+
+/**
+ * A bounded cache of target costs. The costs are keyed by a signature of the
+ * target features which enter into the cost, and by unit index, so that the costs of
+ * a unit are computed only once for all targets with the same features,
+ * such as targets in repeated phonetic contexts.
+ * <p>
+ * The cache holds at most the given number of costs; when it is full, the costs
+ * for the signature used least recently are removed.
+ * Each cache counts its hits and misses; the caches currently in use are available
+ * through {@link #getCaches()}. A cache can be used by several threads concurrently.
+ */
+public class TargetCostCache
+{
+    // the caches in use, for reporting; caches of unloaded voices drop out
+    private static final Set<TargetCostCache> caches =
+        Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<TargetCostCache, Boolean>()));
+
+    /**
+     * The target cost caches which are currently in use.
+     * @return a new list containing the caches
+     */
+    public static List<TargetCostCache> getCaches()
+    {
+        synchronized (caches) {
+            return new ArrayList<TargetCostCache>(caches);
+        }
+    }
+
+    private final int maxCosts;
+    private int numCosts = 0;
+    private final LinkedHashMap<Signature, Entry> entries = new LinkedHashMap<Signature, Entry>(64, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Create a cache for up to the given number of unit costs.
+     */
+    public TargetCostCache(int maxCosts)
+    {
+        if (maxCosts <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive, but is "+maxCosts);
+        }
+        this.maxCosts = maxCosts;
+        caches.add(this);
+    }
+
+    /**
+     * The number of unit costs found in this cache.
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * The number of unit costs looked up but not found in this cache.
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * The number of unit costs removed from this cache to stay within its size.
+     */
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * The proportion of unit costs found in this cache, or 0 if there were no lookups yet.
+     */
+    public double getHitRate()
+    {
+        long h = hits.get();
+        long total = h + misses.get();
+        if (total == 0) return 0;
+        return (double) h / total;
+    }
+
+    /**
+     * Look up the costs of the given units for targets with the given signature.
+     * @param signature the signature of the target features
+     * @param units the units
+     * @param costs receives the cost of units[i] in costs[i] if it is found
+     * @param found receives true in found[i] if the cost of units[i] was found, false otherwise
+     * @return the number of costs found
+     */
+    public int lookup(Signature signature, Unit[] units, double[] costs, boolean[] found)
+    {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(signature);
+        }
+        int numFound = 0;
+        for (int i=0; i<units.length; i++) {
+            int pos = entry != null ? Arrays.binarySearch(entry.units, units[i].index) : -1;
+            if (pos >= 0) {
+                costs[i] = entry.costs[pos];
+                found[i] = true;
+                numFound++;
+            } else {
+                found[i] = false;
+            }
+        }
+        hits.addAndGet(numFound);
+        misses.addAndGet(units.length - numFound);
+        return numFound;
+    }
+
+    /**
+     * Remember the costs of the given units for targets with the given signature,
+     * in addition to those already known for the signature.
+     * If another thread stores costs for the same signature at the same time,
+     * the costs stored by both are kept.
+     * @param signature the signature of the target features
+     * @param units the units
+     * @param costs the cost of units[i] in costs[i]
+     */
+    public void store(Signature signature, Unit[] units, double[] costs)
+    {
+        Entry old;
+        synchronized (entries) {
+            old = entries.get(signature);
+        }
+        Entry entry = Entry.merge(old, units, costs);
+        while (!replace(signature, old, entry)) {
+            // another thread has stored costs for the signature meanwhile
+            synchronized (entries) {
+                old = entries.get(signature);
+            }
+            entry = Entry.merge(old, units, costs);
+        }
+    }
+
+    /**
+     * Replace the costs for the given signature if they are still the expected ones.
+     * @param expected the costs known for the signature when the new entry was made, or null
+     * @return false if the costs for the signature have changed, true otherwise
+     */
+    private boolean replace(Signature signature, Entry expected, Entry entry)
+    {
+        synchronized (entries) {
+            Entry current = entries.get(signature);
+            if (current != expected) {
+                return false;
+            }
+            if (entry.units.length > maxCosts) {
+                return true;
+            }
+            entries.put(signature, entry);
+            numCosts += entry.units.length - (current != null ? current.units.length : 0);
+            Iterator<Map.Entry<Signature, Entry>> it = entries.entrySet().iterator();
+            while (numCosts > maxCosts && it.hasNext()) {
+                Map.Entry<Signature, Entry> eldest = it.next();
+                if (eldest.getValue() == entry) continue;
+                it.remove();
+                numCosts -= eldest.getValue().units.length;
+                evictions.addAndGet(eldest.getValue().units.length);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The number of costs in this cache.
+     */
+    public int size()
+    {
+        synchronized (entries) {
+            return numCosts;
+        }
+    }
+
+    /**
+     * The known costs for one signature, sorted by unit index.
+     * Entries are not changed once they have been created.
+     */
+    private static class Entry
+    {
+        final int[] units;
+        final double[] costs;
+
+        Entry(int[] units, double[] costs)
+        {
+            this.units = units;
+            this.costs = costs;
+        }
+
+        static Entry merge(Entry old, Unit[] newUnits, double[] newCosts)
+        {
+            int n = newUnits.length;
+            long[] order = new long[n];
+            for (int i=0; i<n; i++) {
+                // sort by unit index, remembering the position in the low bits
+                order[i] = ((long) newUnits[i].index << 32) | i;
+            }
+            Arrays.sort(order);
+            int numOld = old != null ? old.units.length : 0;
+            int[] units = new int[numOld + n];
+            double[] costs = new double[numOld + n];
+            int k = 0;
+            int o = 0;
+            for (int j=0; j<n; j++) {
+                int unit = (int) (order[j] >>> 32);
+                int i = (int) order[j];
+                while (o < numOld && old.units[o] < unit) {
+                    units[k] = old.units[o];
+                    costs[k++] = old.costs[o++];
+                }
+                if (o < numOld && old.units[o] == unit) {
+                    o++;
+                }
+                if (k > 0 && units[k-1] == unit) {
+                    continue;
+                }
+                units[k] = unit;
+                costs[k++] = newCosts[i];
+            }
+            while (o < numOld) {
+                units[k] = old.units[o];
+                costs[k++] = old.costs[o++];
+            }
+            if (k < units.length) {
+                units = Arrays.copyOf(units, k);
+                costs = Arrays.copyOf(costs, k);
+            }
+            return new Entry(units, costs);
+        }
+    }
+
+    /**
+     * The values of the target features which enter into the target cost,
+     * packed into an array of bytes.
+     */
+    public static class Signature
+    {
+        private final byte[] bytes;
+        private final int hash;
+
+        public Signature(byte[] bytes)
+        {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Signature)) return false;
+            Signature other = (Signature) o;
+            return hash == other.hash && Arrays.equals(bytes, other.bytes);
+        }
+    }
+}
@@ -24,7 +24,10 @@ import java.util.List;
 
 import marytts.datatypes.MaryXML;
 import marytts.exceptions.SynthesisException;
+import marytts.features.UtteranceIndex;
+import marytts.server.MaryProperties;
 import marytts.unitselection.data.UnitDatabase;
+import marytts.unitselection.select.viterbi.ArrayViterbi;
 import marytts.unitselection.select.viterbi.Viterbi;
 import marytts.util.MaryUtils;
 
@@ -104,18 +107,27 @@ public class UnitSelector
         }
 
         List<Target> targets = createTargets(segmentsAndBoundaries);
-        // compute target features for each target in the chain
+        UtteranceIndex.createFor(targets);
+        // compute target features for all targets in the chain
         TargetCostFunction tcf = database.getTargetCostFunction();
-        for (Target target : targets) {
-            tcf.computeTargetFeatures(target);
+        if (tcf instanceof BatchTargetCostFunction) {
+            // a new matrix for each utterance, because the targets keep referring to its rows:
+            ((BatchTargetCostFunction) tcf).computeTargetFeatures(targets, null);
+        } else {
+            for (Target target : targets) {
+                tcf.computeTargetFeatures(target);
+            }
         }
         
         Viterbi viterbi;
         //Select the best candidates using Viterbi and the join cost function.
+        boolean arraySearch = MaryProperties.getBoolean("unitselection.viterbi.arraysearch", true);
         if(sCostWeight < 0){
-            viterbi = new Viterbi(targets, database, targetCostWeight, beamSize);
+            viterbi = arraySearch ? new ArrayViterbi(targets, database, targetCostWeight, beamSize)
+                    : new Viterbi(targets, database, targetCostWeight, beamSize);
         }else{
-            viterbi = new Viterbi(targets, database, targetCostWeight, sCostWeight, beamSize);
+            viterbi = arraySearch ? new ArrayViterbi(targets, database, targetCostWeight, sCostWeight, beamSize)
+                    : new Viterbi(targets, database, targetCostWeight, sCostWeight, beamSize);
         }
         
         viterbi.apply();
@@ -0,0 +1,267 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select.viterbi;
+
+import java.util.Arrays;
+import java.util.List;
+
+import marytts.exceptions.SynthesisException;
+import marytts.unitselection.data.UnitDatabase;
+import marytts.unitselection.select.Target;
+
+/**
+ * A Viterbi search which keeps scores and back pointers in primitive arrays,
+ * one entry per candidate and point, instead of creating a ViterbiPath object
+ * for every combination of a path and a candidate.
+ * <p>
+ * The beam is applied to the candidates of each point: only the <code>beamSize</code>
+ * candidates with the lowest target cost are considered, selected with a bounded heap
+ * rather than by sorting all candidates. Since every path leads to one of these
+ * candidates, this also bounds the number of paths at each point.
+ * The search gives the same units as {@link Viterbi} for the same beam size,
+ * including the order in which ties between equal scores are resolved.
+ * ViterbiPath objects are only created for the best path, once the search is complete,
+ * so that {@link #getSelectedUnits()} works as before; the paths of other points
+ * are not available through {@link ViterbiPoint#getPaths()}.
+ */
+public class ArrayViterbi extends Viterbi
+{
+    // For each point t, in the order of the points:
+    private ViterbiCandidate[][] pointCandidates = new ViterbiCandidate[0][];
+    // the score of the best path leading to each candidate:
+    private double[][] scores = new double[0][];
+    // the index of the candidate in point t-1 on the best path leading to each candidate:
+    private int[][] backPointers = new int[0][];
+    // the candidate indices in the order in which their best paths were found;
+    // this is the order in which Viterbi keeps the paths, and decides ties between them:
+    private int[][] pathOrder = new int[0][];
+    private int numPoints = 0;
+
+    // Work space, reused for all points:
+    private double[] targetCosts = new double[0];
+    private int[] heap = new int[0];
+    private long[] found = new long[0];
+
+    public ArrayViterbi(List<Target> targets, UnitDatabase database, float wTargetCosts, int beamSize)
+    {
+        super(targets, database, wTargetCosts, beamSize);
+    }
+
+    public ArrayViterbi(List<Target> targets, UnitDatabase database, float wTargetCosts, float wSCosts, int beamSize)
+    {
+        super(targets, database, wTargetCosts, wSCosts, beamSize);
+    }
+
+    /**
+     * Carry out the Viterbi search; see {@link Viterbi#apply()}.
+     * @throws SynthesisException if for any part of the target chain, no
+     * candidates can be found
+     */
+    @Override
+    public void apply() throws SynthesisException
+    {
+        logger.debug("Viterbi running with beam size " + beamSize + " on arrays");
+        numPoints = 0;
+        for (ViterbiPoint point = firstPoint; point.next != null; point = point.next) {
+            List<ViterbiCandidate> candidates = getCandidates(point);
+            int t = numPoints++;
+            ensureCapacity(t, candidates.size());
+            ViterbiCandidate[] cands = selectBest(candidates, beamSize > 0 ? beamSize : candidates.size());
+            point.candidates = Arrays.asList(cands);
+            pointCandidates[t] = cands;
+            int k = cands.length;
+            double[] score = scores[t];
+            int[] back = backPointers[t];
+            if (t == 0) {
+                // all paths start from the empty path, whose score is 0
+                for (int j=0; j<k; j++) {
+                    score[j] = transitionCost(null, cands[j]) + 0.;
+                    back[j] = -1;
+                    found[j] = j;
+                }
+            } else {
+                ViterbiCandidate[] prevCands = pointCandidates[t-1];
+                double[] prevScore = scores[t-1];
+                int[] prevOrder = pathOrder[t-1];
+                int kPrev = prevCands.length;
+                long count = 0;
+                Arrays.fill(found, 0, k, -1);
+                for (int p=0; p<kPrev; p++) {
+                    int i = prevOrder[p];
+                    ViterbiCandidate prev = prevCands[i];
+                    double prevPathScore = prevScore[i];
+                    for (int j=0; j<k; j++) {
+                        double cost = transitionCost(prev, cands[j]) + prevPathScore;
+                        if (found[j] < 0 || cost < score[j]) {
+                            score[j] = cost;
+                            back[j] = i;
+                            found[j] = (count++ << 32) | j;
+                        }
+                    }
+                }
+            }
+            Arrays.sort(found, 0, k);
+            int[] order = pathOrder[t];
+            for (int j=0; j<k; j++) {
+                order[j] = (int) found[j];
+            }
+        }
+        storeBestPath();
+    }
+
+    /**
+     * Select the k candidates with the lowest target costs, in the order
+     * in which a stable sort by target cost would put them.
+     */
+    private ViterbiCandidate[] selectBest(List<ViterbiCandidate> candidates, int k)
+    {
+        int n = candidates.size();
+        if (k > n) k = n;
+        for (int i=0; i<n; i++) {
+            targetCosts[i] = candidates.get(i).targetCost;
+        }
+        // Keep the best k candidates seen so far in a heap with the worst at the top:
+        int size = 0;
+        for (int i=0; i<n; i++) {
+            if (size < k) {
+                heap[size] = i;
+                siftUp(size);
+                size++;
+            } else if (isBetter(i, heap[0])) {
+                heap[0] = i;
+                siftDown(0, size);
+            }
+        }
+        // Sort the heap by moving the worst remaining candidate to the end:
+        for (int end=size-1; end>0; end--) {
+            int worst = heap[0];
+            heap[0] = heap[end];
+            heap[end] = worst;
+            siftDown(0, end);
+        }
+        ViterbiCandidate[] best = new ViterbiCandidate[size];
+        for (int j=0; j<size; j++) {
+            best[j] = candidates.get(heap[j]);
+        }
+        return best;
+    }
+
+    /**
+     * Whether candidate a comes before candidate b: it has a lower target cost,
+     * or the same target cost and an earlier position in the list of candidates.
+     */
+    private boolean isBetter(int a, int b)
+    {
+        double ca = targetCosts[a];
+        double cb = targetCosts[b];
+        return ca < cb || !(ca > cb) && a < b;
+    }
+
+    private void siftUp(int pos)
+    {
+        int c = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >> 1;
+            if (!isBetter(heap[parent], c)) break;
+            heap[pos] = heap[parent];
+            pos = parent;
+        }
+        heap[pos] = c;
+    }
+
+    private void siftDown(int pos, int size)
+    {
+        int c = heap[pos];
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= size) break;
+            if (child + 1 < size && isBetter(heap[child], heap[child+1])) {
+                child++; // the worse of the two children
+            }
+            if (!isBetter(c, heap[child])) break;
+            heap[pos] = heap[child];
+            pos = child;
+        }
+        heap[pos] = c;
+    }
+
+    /**
+     * Make sure there is room for point t with up to n candidates.
+     */
+    private void ensureCapacity(int t, int n)
+    {
+        if (t >= scores.length) {
+            int newLength = Math.max(t + 1, 2 * scores.length);
+            pointCandidates = Arrays.copyOf(pointCandidates, newLength);
+            scores = Arrays.copyOf(scores, newLength);
+            backPointers = Arrays.copyOf(backPointers, newLength);
+            pathOrder = Arrays.copyOf(pathOrder, newLength);
+        }
+        int k = beamSize > 0 ? Math.min(beamSize, n) : n;
+        if (scores[t] == null || scores[t].length < k) {
+            scores[t] = new double[k];
+            backPointers[t] = new int[k];
+            pathOrder[t] = new int[k];
+        }
+        if (targetCosts.length < n) {
+            targetCosts = new double[n];
+            heap = new int[n];
+        }
+        if (found.length < k) {
+            found = new long[k];
+        }
+    }
+
+    /**
+     * Create the ViterbiPath objects for the best path, and leave the last of them
+     * as the only path of the last point, from where {@link #getSelectedUnits()} picks it up.
+     */
+    private void storeBestPath()
+    {
+        lastPoint.paths.clear();
+        if (numPoints == 0) {
+            return;
+        }
+        int last = numPoints - 1;
+        // The first of the best paths, in the order of the paths:
+        int best = -1;
+        double bestScore = 0;
+        int[] order = pathOrder[last];
+        for (int p=0; p<pointCandidates[last].length; p++) {
+            int j = order[p];
+            if (best < 0 || Double.compare(scores[last][j], bestScore) < 0) {
+                best = j;
+                bestScore = scores[last][j];
+            }
+        }
+        int[] chosen = new int[numPoints];
+        for (int t=last, j=best; t>=0; t--) {
+            chosen[t] = j;
+            j = backPointers[t][j];
+        }
+        ViterbiPath path = new ViterbiPath(null, null, 0); // the empty start path
+        for (int t=0; t<numPoints; t++) {
+            ViterbiCandidate candidate = pointCandidates[t][chosen[t]];
+            path = new ViterbiPath(candidate, path, scores[t][chosen[t]]);
+            candidate.setBestPath(path);
+        }
+        lastPoint.paths.add(path);
+    }
+}
@@ -96,7 +96,7 @@ public  class Viterbi
     
     protected ViterbiPoint firstPoint = null;
     protected ViterbiPoint lastPoint = null;
-    private UnitDatabase database;
+    protected UnitDatabase database;
     protected TargetCostFunction targetCostFunction;
     protected JoinCostFunction joinCostFunction;
     protected StatisticalCostFunction sCostFunction;
@@ -222,27 +222,7 @@ public  class Viterbi
         for (ViterbiPoint point = firstPoint; point.next != null; point = point.next) {
             // The candidates for the current item:
             // candidate selection is carried out by UnitSelector
-            Target target = point.target;
-            List<ViterbiCandidate> candidates = database.getCandidates(target);
-            if (candidates.size() == 0) {
-                if (target instanceof DiphoneTarget) {
-                    logger.debug("No diphone '"+target.getName()+"' -- will build from halfphones");
-                    DiphoneTarget dt = (DiphoneTarget) target;
-                    // replace diphone viterbi point with two half-phone viterbi points
-                    Target left = dt.left;
-                    Target right = dt.right;
-                    point.setTarget(left);
-                    ViterbiPoint newP = new ViterbiPoint(right);
-                    newP.next = point.next;
-                    point.next = newP;
-                    candidates = database.getCandidates(left);
-                    if (candidates.size() == 0) 
-                        throw new SynthesisException("Cannot even find any halfphone unit for target "+left);
-                } else {
-                    throw new SynthesisException("Cannot find any units for target "+target);
-                }
-            }
-            assert candidates.size() > 0;
+            List<ViterbiCandidate> candidates = getCandidates(point);
             
             // absolutely critical since candidates is no longer a SortedSet:
             Collections.sort(candidates);
@@ -289,6 +269,41 @@ public  class Viterbi
         }
     }
     
+    /**
+     * Get the candidates for the target of the given point from the database.
+     * If there are no candidates for a diphone target, the point is replaced
+     * by two points for its half-phones, and the candidates for the left half-phone
+     * are returned.
+     * @param point the point for which to get candidates
+     * @return a non-empty list of candidates, in the order returned by the database.
+     * @throws SynthesisException if no candidates can be found
+     */
+    protected List<ViterbiCandidate> getCandidates(ViterbiPoint point) throws SynthesisException
+    {
+        Target target = point.target;
+        List<ViterbiCandidate> candidates = database.getCandidates(target);
+        if (candidates.size() == 0) {
+            if (target instanceof DiphoneTarget) {
+                logger.debug("No diphone '"+target.getName()+"' -- will build from halfphones");
+                DiphoneTarget dt = (DiphoneTarget) target;
+                // replace diphone viterbi point with two half-phone viterbi points
+                Target left = dt.left;
+                Target right = dt.right;
+                point.setTarget(left);
+                ViterbiPoint newP = new ViterbiPoint(right);
+                newP.next = point.next;
+                point.next = newP;
+                candidates = database.getCandidates(left);
+                if (candidates.size() == 0) 
+                    throw new SynthesisException("Cannot even find any halfphone unit for target "+left);
+            } else {
+                throw new SynthesisException("Cannot find any units for target "+target);
+            }
+        }
+        assert candidates.size() > 0;
+        return candidates;
+    }
+    
     /**
      * Add the new path to the state path if it is
      * better than the current path. In this, state means
@@ -466,6 +481,25 @@ public  class Viterbi
      * with the cumulative (penalty) score calculated. 
      */
     private ViterbiPath getPath(ViterbiPath path, ViterbiCandidate candidate) {
+        double cost = transitionCost(path == null ? null : path.candidate, candidate);
+        if (path != null) {
+            cost += path.score;
+        }	
+
+        return new ViterbiPath(candidate, path, cost);
+    }
+    
+    /**
+     * Compute the cost of going from the previous candidate to the given candidate,
+     * as the weighted sum of the target cost of the candidate and the join cost
+     * (and statistical cost, if any) of appending it to the previous candidate.
+     *
+     * @param prevCandidate the previous candidate, or null if this candidate starts a new path
+     * @param candidate the candidate to add to the path
+     *
+     * @return the cost of the transition, without the score of the path up to the previous candidate.
+     */
+    protected double transitionCost(ViterbiCandidate prevCandidate, ViterbiCandidate candidate) {
         double cost;
 
         Target candidateTarget = candidate.target;
@@ -477,11 +511,10 @@ public  class Viterbi
         // Target costs:
         targetCost = candidate.targetCost;
         
-        if (path == null || path.candidate == null) {
+        if (prevCandidate == null) {
             joinCost = 0;
         } else {
             // Join costs:
-            ViterbiCandidate prevCandidate = path.candidate;
             Target prevTarget = prevCandidate.target;
             Unit prevUnit = prevCandidate.unit;
             joinCost = joinCostFunction.cost(prevTarget, prevUnit, candidateTarget, candidateUnit);
@@ -500,12 +533,7 @@ public  class Viterbi
         cumulTargetCosts += targetCost;
         nTargetCosts++;
         //logger.debug(candidateUnit+": target cost "+targetCost+", join cost "+joinCost);
-
-        if (path != null) {
-            cost += path.score;
-        }	
-
-        return new ViterbiPath(candidate, path, cost);
+        return cost;
     }
     
     /**
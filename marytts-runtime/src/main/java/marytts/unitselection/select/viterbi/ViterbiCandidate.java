@@ -54,6 +54,17 @@ public class ViterbiCandidate implements Comparable<ViterbiCandidate>
 	    this.targetCost = tcf.cost(target, unit);
 	}
 	
+	/**
+	 * Create a candidate whose target cost has already been computed,
+	 * e.g. with {@link TargetCostFunction#cost(Target, Unit[], double[])}.
+	 */
+	public ViterbiCandidate(Target target, Unit unit, double targetCost)
+	{
+	    this.target = target;
+	    this.unit = unit;
+	    this.targetCost = targetCost;
+	}
+	
 	/**
 	 * Calculates and returns the target cost for this candidate
 	 * @param tcf the target cost function 
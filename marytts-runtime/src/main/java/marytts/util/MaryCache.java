@@ -31,25 +31,38 @@ import java.sql.SQLException;
 import java.sql.Statement;
 
 import marytts.server.MaryProperties;
+import marytts.util.cache.CacheStatistics;
+import marytts.util.cache.SynthesisCache;
+import marytts.util.cache.TieredSynthesisCache;
 
 /**
+ * A synthesis cache kept in an embedded HSQL database.
+ * <p>
+ * This class also provides access to the cache used by the MARY server,
+ * which is created according to the property <code>cache.type</code>:
+ * <ul>
+ * <li><code>tiered</code> (the default) for a {@link TieredSynthesisCache} holding
+ * <code>cache.memory.megabytes</code> in memory and
+ * <code>cache.disk.megabytes</code> in a memory-mapped file on disk;</li>
+ * <li><code>hsqldb</code> for a MaryCache.</li>
+ * </ul>
  * @author marc
  *
  */
-public class MaryCache
+public class MaryCache implements SynthesisCache
 {
-    private static MaryCache maryCache;
+    private static SynthesisCache maryCache;
     
     /**
-     * Try to get the MaryCache object. This will either return the previously
-     * created MaryCache, or if none exists, it will try to create one.
+     * Try to get the cache object. This will either return the previously
+     * created cache, or if none exists, it will try to create one.
      * @see #haveCache if you just want to check if the cache exists.
      * 
      * To the extent possible this method gives the no-throw guarantee: if the cache
      * cannot be created, null will be returned and any exception will be logged.
-     * @return the MaryCache singleton object, or null if none could be created.
+     * @return the cache singleton object, or null if none could be created.
      */
-    public static MaryCache getCache()
+    public static synchronized SynthesisCache getCache()
     {
         if (maryCache == null) {
             try {
@@ -58,7 +71,17 @@ public class MaryCache
                 if (!directory.isDirectory()) {
                     directory.mkdirs();
                 }
-                maryCache = new MaryCache(targetFile, MaryProperties.getBoolean("cache.clearOnStart", false));
+                boolean clearOnStart = MaryProperties.getBoolean("cache.clearOnStart", false);
+                String type = MaryProperties.getProperty("cache.type", "tiered");
+                if (type.equals("hsqldb")) {
+                    maryCache = new MaryCache(targetFile, clearOnStart);
+                } else if (type.equals("tiered")) {
+                    long memoryBytes = MaryProperties.getInteger("cache.memory.megabytes", 64) * 1024L * 1024L;
+                    long diskBytes = MaryProperties.getInteger("cache.disk.megabytes", 1024) * 1024L * 1024L;
+                    maryCache = new TieredSynthesisCache(new File(targetFile.getPath()+".tiered"), memoryBytes, diskBytes, clearOnStart);
+                } else {
+                    throw new IllegalArgumentException("Unknown cache.type '"+type+"' -- expected 'tiered' or 'hsqldb'");
+                }
             } catch (Exception e) {
                 MaryUtils.getLogger(MaryCache.class).warn("Cannot set up cache", e);
             }
@@ -70,7 +93,7 @@ public class MaryCache
      * Indicate whether there is a MaryCache currently available.
      * @return true if there is a MaryCache, false otherwise.
      */
-    public static boolean haveCache() {
+    public static synchronized boolean haveCache() {
         return maryCache != null;
     }
     
@@ -78,6 +101,7 @@ public class MaryCache
     
     
     private Connection connection;
+    private CacheStatistics statistics = new CacheStatistics();
 
     /**
      * Create a MaryCache with the given file prefix.
@@ -183,7 +207,7 @@ public class MaryCache
         }
         // Need to verify, here in the synchronized code, once again that really we don't have this entry already.
         // If we do, we ignore this call.
-        if (lookupText(inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext) != null) {
+        if (queryText(inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext) != null) {
             return;
         }
 
@@ -196,6 +220,7 @@ public class MaryCache
         st.setString(2, outputtext);
         st.executeUpdate();
         st.close();
+        statistics.insertion();
     }
     
     /**
@@ -237,7 +262,7 @@ public class MaryCache
         }
         // Need to verify, here in the synchronized code, once again that really we don't have this entry already.
         // If we do, we ignore this call.
-        if (lookupAudio(inputtype, locale, voice, outputparams, style, effects, inputtext) != null) {
+        if (queryAudio(inputtype, locale, voice, outputparams, style, effects, inputtext) != null) {
             return;
         }
         
@@ -249,6 +274,7 @@ public class MaryCache
         st.setBytes(2, audio);
         st.executeUpdate();
         st.close();
+        statistics.insertion();
     }
 
     /**
@@ -284,6 +310,14 @@ public class MaryCache
      */
     public synchronized String lookupText(String inputtype, String outputtype, String locale, String voice, String outputparams, String style, String effects, String inputtext)
     throws SQLException
+    {
+        String outputtext = queryText(inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext);
+        countLookup(outputtext != null);
+        return outputtext;
+    }
+
+    private String queryText(String inputtype, String outputtype, String locale, String voice, String outputparams, String style, String effects, String inputtext)
+    throws SQLException
     {
         if (inputtype == null || outputtype == null || locale == null || voice == null || inputtext == null) {
             throw new NullPointerException("Null argument");
@@ -339,6 +373,14 @@ public class MaryCache
      */
     public synchronized byte[] lookupAudio(String inputtype, String locale, String voice, String outputparams, String style, String effects, String inputtext)
     throws SQLException
+    {
+        byte[] audio = queryAudio(inputtype, locale, voice, outputparams, style, effects, inputtext);
+        countLookup(audio != null);
+        return audio;
+    }
+
+    private byte[] queryAudio(String inputtype, String locale, String voice, String outputparams, String style, String effects, String inputtext)
+    throws SQLException
     {
         if (inputtype == null || locale == null || voice == null || inputtext == null) {
             throw new NullPointerException("Null argument");
@@ -360,6 +402,20 @@ public class MaryCache
         return audio;
     }
     
+    private void countLookup(boolean found)
+    {
+        if (found) {
+            statistics.diskHit();
+        } else {
+            statistics.miss();
+        }
+    }
+    
+    public CacheStatistics getStatistics()
+    {
+        return statistics;
+    }
+    
     /**
      * Shut down the cache. After this has been called, any further calls to the object will throw exceptions.
      * @throws SQLException if there is a problem executing the database SHUTDOWN command.
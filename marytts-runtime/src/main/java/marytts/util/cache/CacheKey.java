@@ -0,0 +1,125 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * The key of a cache entry: a SHA-1 hash over all the request parameters
+ * that determine the cached result.
+ */
+public final class CacheKey
+{
+    /**
+     * The number of bytes in a key.
+     */
+    public static final int LENGTH = 20;
+
+    private final byte[] digest;
+    private final int hashCode;
+
+    /**
+     * Compute the key for the given request parameters.
+     * Null values are distinguished from empty strings.
+     */
+    public static CacheKey create(String inputtype, String outputtype, String locale, String voice,
+            String outputparams, String style, String effects, String inputtext)
+    {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-1 is always supported");
+        }
+        update(md, inputtype);
+        update(md, outputtype);
+        update(md, locale);
+        update(md, voice);
+        update(md, outputparams);
+        update(md, style);
+        update(md, effects);
+        update(md, inputtext);
+        return new CacheKey(md.digest());
+    }
+
+    private static void update(MessageDigest md, String value)
+    {
+        if (value == null) {
+            updateInt(md, -1);
+            return;
+        }
+        byte[] bytes;
+        try {
+            bytes = value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError("UTF-8 is always a supported encoding");
+        }
+        // prefix each value with its length so that field boundaries cannot be shifted:
+        updateInt(md, bytes.length);
+        md.update(bytes);
+    }
+
+    private static void updateInt(MessageDigest md, int value)
+    {
+        md.update((byte) (value >>> 24));
+        md.update((byte) (value >>> 16));
+        md.update((byte) (value >>> 8));
+        md.update((byte) value);
+    }
+
+    /**
+     * Create a key from the given bytes, e.g. as read from disk.
+     * @param digest an array of {@link #LENGTH} bytes, which must not be modified afterwards.
+     */
+    public CacheKey(byte[] digest)
+    {
+        if (digest.length != LENGTH) {
+            throw new IllegalArgumentException("Expected "+LENGTH+" bytes, got "+digest.length);
+        }
+        this.digest = digest;
+        this.hashCode = ((digest[0] & 0xFF) << 24) | ((digest[1] & 0xFF) << 16) | ((digest[2] & 0xFF) << 8) | (digest[3] & 0xFF);
+    }
+
+    /**
+     * The bytes of this key. The array must not be modified.
+     */
+    public byte[] getBytes()
+    {
+        return digest;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj) return true;
+        if (!(obj instanceof CacheKey)) return false;
+        CacheKey other = (CacheKey) obj;
+        return hashCode == other.hashCode && Arrays.equals(digest, other.digest);
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters describing how well a {@link SynthesisCache} is doing.
+ * All counters can be updated and read concurrently.
+ */
+public class CacheStatistics
+{
+    private AtomicLong memoryHits = new AtomicLong();
+    private AtomicLong diskHits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+    private AtomicLong insertions = new AtomicLong();
+    private AtomicLong evictions = new AtomicLong();
+    private AtomicLong rejections = new AtomicLong();
+
+    public void memoryHit() {
+        memoryHits.incrementAndGet();
+    }
+
+    public void diskHit() {
+        diskHits.incrementAndGet();
+    }
+
+    public void miss() {
+        misses.incrementAndGet();
+    }
+
+    public void insertion() {
+        insertions.incrementAndGet();
+    }
+
+    public void eviction() {
+        evictions.incrementAndGet();
+    }
+
+    public void rejection() {
+        rejections.incrementAndGet();
+    }
+
+    /**
+     * The number of lookups answered from memory.
+     */
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    /**
+     * The number of lookups answered from disk.
+     */
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    /**
+     * The total number of lookups that found an entry.
+     */
+    public long getHits() {
+        return memoryHits.get() + diskHits.get();
+    }
+
+    /**
+     * The number of lookups that did not find an entry.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * The number of entries inserted into the cache.
+     */
+    public long getInsertions() {
+        return insertions.get();
+    }
+
+    /**
+     * The number of entries removed from memory to stay within the memory budget.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * The number of entries that could not be stored on disk, because they were
+     * too large or the disk budget was used up.
+     */
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    /**
+     * The proportion of lookups that found an entry, or 0 if there were no lookups yet.
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        if (total == 0) return 0;
+        return (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "hits: "+getHits()+" ("+getMemoryHits()+" memory, "+getDiskHits()+" disk), misses: "+getMisses()
+            +", insertions: "+getInsertions()+", evictions: "+getEvictions()+", rejections: "+getRejections();
+    }
+}
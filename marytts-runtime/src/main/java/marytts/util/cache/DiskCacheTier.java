@@ -0,0 +1,305 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import marytts.util.MaryUtils;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The on-disk tier of a {@link TieredSynthesisCache}: an append-only file of records,
+ * read and written through memory-mapped segments.
+ * <p>
+ * The file consists of segments of a fixed size, each of which is mapped into memory
+ * when it is first needed. Records never cross a segment boundary. Each record consists of
+ * <ul>
+ * <li>a record marker (int),</li>
+ * <li>the {@link CacheKey} ({@link CacheKey#LENGTH} bytes),</li>
+ * <li>the length of the value in bytes (int),</li>
+ * <li>a CRC32 checksum of the value (int),</li>
+ * <li>the value itself.</li>
+ * </ul>
+ * The record marker is written last, so that an incompletely written record is ignored
+ * when the file is read again. The index from keys to record positions is kept in memory
+ * and rebuilt from the file when the cache is opened.
+ * <p>
+ * Records are never removed: when the disk budget is used up, further values are not
+ * stored on disk anymore. Lookups do not need any lock; appending is serialised.
+ */
+public class DiskCacheTier
+{
+    private static final long FILE_MAGIC = 0x4D61727943616368L; // "MaryCach"
+    private static final int FILE_VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 16; // magic, version, segment size
+    private static final int RECORD_MAGIC = 0x52656331; // "Rec1"
+    private static final int RECORD_HEADER_SIZE = 4 + CacheKey.LENGTH + 4 + 4;
+
+    private Logger logger;
+    private File file;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private int segmentSize;
+    private int maxSegments;
+    private CacheStatistics statistics;
+
+    private volatile MappedByteBuffer[] segments;
+    private ConcurrentHashMap<CacheKey, Long> index = new ConcurrentHashMap<CacheKey, Long>();
+    private long writePosition;
+
+    /**
+     * Open the disk tier stored in the given file, creating it if necessary.
+     * @param file the file in which to store the data
+     * @param maxBytes the maximum size of the file in bytes
+     * @param segmentSize the size of the segments in which the file is mapped into memory;
+     * values larger than this are not stored on disk.
+     * @param clear if true, delete any existing data; if false, keep it.
+     * @param statistics where to count values that cannot be stored.
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public DiskCacheTier(File file, long maxBytes, int segmentSize, boolean clear, CacheStatistics statistics)
+    throws IOException
+    {
+        if (segmentSize <= FILE_HEADER_SIZE + RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size too small: "+segmentSize);
+        }
+        this.logger = MaryUtils.getLogger("DiskCacheTier");
+        this.file = file;
+        this.segmentSize = segmentSize;
+        this.maxSegments = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / segmentSize));
+        this.statistics = statistics;
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory()) {
+            directory.mkdirs();
+        }
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        if (clear || !readHeader()) {
+            initialise();
+        } else {
+            scan();
+        }
+    }
+
+    /**
+     * Check whether the file starts with a header we can use.
+     */
+    private boolean readHeader() throws IOException
+    {
+        if (channel.size() < FILE_HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.getLong() != FILE_MAGIC || header.getInt() != FILE_VERSION) {
+            logger.info("Not a cache file in the expected format: "+file+" -- clearing it");
+            return false;
+        }
+        int storedSegmentSize = header.getInt();
+        if (storedSegmentSize != segmentSize) {
+            logger.info("Cache file "+file+" has segment size "+storedSegmentSize+", expected "+segmentSize+" -- clearing it");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Start an empty file.
+     */
+    private void initialise() throws IOException
+    {
+        index.clear();
+        channel.truncate(0);
+        segments = new MappedByteBuffer[0];
+        MappedByteBuffer first = getSegment(0);
+        first.putLong(0, FILE_MAGIC);
+        first.putInt(8, FILE_VERSION);
+        first.putInt(12, segmentSize);
+        writePosition = FILE_HEADER_SIZE;
+    }
+
+    /**
+     * Read the index of an existing file.
+     */
+    private void scan() throws IOException
+    {
+        int numSegments = (int) Math.min(maxSegments, (channel.size() + segmentSize - 1) / segmentSize);
+        segments = new MappedByteBuffer[0];
+        writePosition = FILE_HEADER_SIZE;
+        for (int s=0; s<numSegments; s++) {
+            ByteBuffer segment = getSegment(s).duplicate();
+            int pos = s == 0 ? FILE_HEADER_SIZE : 0;
+            while (pos + RECORD_HEADER_SIZE <= segmentSize && segment.getInt(pos) == RECORD_MAGIC) {
+                segment.position(pos + 4);
+                byte[] keyBytes = new byte[CacheKey.LENGTH];
+                segment.get(keyBytes);
+                int length = segment.getInt();
+                int crc = segment.getInt();
+                if (length < 0 || pos + RECORD_HEADER_SIZE + length > segmentSize) {
+                    break;
+                }
+                byte[] value = new byte[length];
+                segment.get(value);
+                if (crc != checksum(value)) {
+                    break;
+                }
+                index.put(new CacheKey(keyBytes), Long.valueOf((long) s * segmentSize + pos));
+                pos += RECORD_HEADER_SIZE + length;
+            }
+            if (pos > (s == 0 ? FILE_HEADER_SIZE : 0)) {
+                writePosition = (long) s * segmentSize + pos;
+            }
+        }
+        logger.debug("Read "+index.size()+" entries from cache file "+file);
+    }
+
+    /**
+     * Get the value for the given key.
+     * @return the value, or null if there is no value for this key on disk.
+     */
+    public byte[] get(CacheKey key)
+    {
+        Long position = index.get(key);
+        if (position == null) {
+            return null;
+        }
+        long pos = position.longValue();
+        ByteBuffer segment = segments[(int) (pos / segmentSize)].duplicate();
+        segment.position((int) (pos % segmentSize) + 4 + CacheKey.LENGTH);
+        int length = segment.getInt();
+        segment.getInt(); // checksum, only verified when the file is opened
+        byte[] value = new byte[length];
+        segment.get(value);
+        return value;
+    }
+
+    /**
+     * Whether there is a value for the given key on disk.
+     */
+    public boolean contains(CacheKey key)
+    {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Append the given value for the given key to the file, unless there is a value
+     * for this key already. Values which are too large for a segment, or which do not fit
+     * into the disk budget any more, are not stored.
+     * @return true if the value is on disk after this call, false otherwise.
+     * @throws IOException if a new segment cannot be mapped.
+     */
+    public synchronized boolean put(CacheKey key, byte[] value) throws IOException
+    {
+        if (index.containsKey(key)) {
+            return true;
+        }
+        int recordSize = RECORD_HEADER_SIZE + value.length;
+        if (recordSize > segmentSize - FILE_HEADER_SIZE) {
+            statistics.rejection();
+            return false;
+        }
+        int segmentIndex = (int) (writePosition / segmentSize);
+        int pos = (int) (writePosition % segmentSize);
+        if (pos + recordSize > segmentSize) { // start a new segment
+            segmentIndex++;
+            pos = 0;
+        }
+        if (segmentIndex >= maxSegments) {
+            statistics.rejection();
+            return false;
+        }
+        ByteBuffer segment = getSegment(segmentIndex).duplicate();
+        segment.position(pos + 4);
+        segment.put(key.getBytes());
+        segment.putInt(value.length);
+        segment.putInt(checksum(value));
+        segment.put(value);
+        segment.putInt(pos, RECORD_MAGIC);
+        long position = (long) segmentIndex * segmentSize + pos;
+        index.put(key, Long.valueOf(position));
+        writePosition = position + recordSize;
+        return true;
+    }
+
+    /**
+     * Get the given segment, mapping it into memory if this has not been done yet.
+     */
+    private synchronized MappedByteBuffer getSegment(int segmentIndex) throws IOException
+    {
+        MappedByteBuffer[] current = segments;
+        if (segmentIndex < current.length) {
+            return current[segmentIndex];
+        }
+        MappedByteBuffer[] extended = new MappedByteBuffer[segmentIndex+1];
+        System.arraycopy(current, 0, extended, 0, current.length);
+        for (int s=current.length; s<=segmentIndex; s++) {
+            extended[s] = channel.map(FileChannel.MapMode.READ_WRITE, (long) s * segmentSize, segmentSize);
+        }
+        // publish only once all segments are mapped:
+        segments = extended;
+        return extended[segmentIndex];
+    }
+
+    private static int checksum(byte[] value)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(value);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * The number of entries on disk.
+     */
+    public int getNumEntries()
+    {
+        return index.size();
+    }
+
+    /**
+     * The number of bytes used on disk.
+     */
+    public synchronized long getSizeInBytes()
+    {
+        return writePosition;
+    }
+
+    /**
+     * Write all data to disk and close the file.
+     */
+    public synchronized void close() throws IOException
+    {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+        segments = new MappedByteBuffer[0];
+        index.clear();
+        channel.close();
+        raf.close();
+    }
+}
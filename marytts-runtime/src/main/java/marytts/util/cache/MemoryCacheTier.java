@@ -0,0 +1,167 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The in-memory tier of a {@link TieredSynthesisCache}: a least-recently-used map
+ * from cache keys to values, limited by the total number of bytes it holds.
+ * <p>
+ * The entries are distributed over a number of stripes by their hash code, each with
+ * its own lock and an equal share of the byte budget, so that request threads
+ * looking up different entries rarely have to wait for each other.
+ */
+public class MemoryCacheTier
+{
+    /**
+     * Approximate number of bytes used per entry in addition to the value itself.
+     */
+    private static final int ENTRY_OVERHEAD = 100;
+
+    private Stripe[] stripes;
+    private CacheStatistics statistics;
+
+    /**
+     * Create a memory tier.
+     * @param maxBytes the maximum number of bytes to keep in memory
+     * @param numStripes the number of independently locked stripes, must be positive
+     * @param statistics where to count evictions
+     */
+    public MemoryCacheTier(long maxBytes, int numStripes, CacheStatistics statistics)
+    {
+        if (numStripes <= 0) {
+            throw new IllegalArgumentException("Number of stripes must be positive, got "+numStripes);
+        }
+        this.statistics = statistics;
+        stripes = new Stripe[numStripes];
+        for (int i=0; i<numStripes; i++) {
+            stripes[i] = new Stripe(maxBytes / numStripes);
+        }
+    }
+
+    /**
+     * Get the value for the given key, and mark it as recently used.
+     * @return the value, or null if there is no value for this key in memory.
+     */
+    public byte[] get(CacheKey key)
+    {
+        Stripe s = stripeFor(key);
+        synchronized (s) {
+            return s.map.get(key);
+        }
+    }
+
+    /**
+     * Remember the given value for the given key, evicting least recently used entries
+     * as needed to stay within the byte budget. Values which are too large to fit into
+     * memory at all are not stored.
+     * @param key the key
+     * @param value the value, which must not be modified afterwards.
+     */
+    public void put(CacheKey key, byte[] value)
+    {
+        Stripe s = stripeFor(key);
+        long size = sizeOf(value);
+        if (size > s.maxBytes) {
+            return;
+        }
+        synchronized (s) {
+            byte[] old = s.map.put(key, value);
+            if (old != null) {
+                s.bytes -= sizeOf(old);
+            }
+            s.bytes += size;
+            Iterator<Map.Entry<CacheKey, byte[]>> it = s.map.entrySet().iterator();
+            while (s.bytes > s.maxBytes && it.hasNext()) {
+                Map.Entry<CacheKey, byte[]> eldest = it.next();
+                s.bytes -= sizeOf(eldest.getValue());
+                it.remove();
+                statistics.eviction();
+            }
+        }
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void clear()
+    {
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                s.map.clear();
+                s.bytes = 0;
+            }
+        }
+    }
+
+    /**
+     * The approximate number of bytes currently held in memory.
+     */
+    public long getSizeInBytes()
+    {
+        long total = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                total += s.bytes;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * The number of entries currently held in memory.
+     */
+    public int getNumEntries()
+    {
+        int total = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                total += s.map.size();
+            }
+        }
+        return total;
+    }
+
+    private Stripe stripeFor(CacheKey key)
+    {
+        // the key is a cryptographic hash, so its low bits are well distributed:
+        return stripes[(key.hashCode() & 0x7FFFFFFF) % stripes.length];
+    }
+
+    private static long sizeOf(byte[] value)
+    {
+        return value.length + ENTRY_OVERHEAD;
+    }
+
+    private static class Stripe
+    {
+        final long maxBytes;
+        final LinkedHashMap<CacheKey, byte[]> map = new LinkedHashMap<CacheKey, byte[]>(16, 0.75f, true);
+        long bytes = 0;
+
+        Stripe(long maxBytes)
+        {
+            this.maxBytes = maxBytes;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * A synthesis cache with two tiers: recently used entries are kept in memory
+ * ({@link MemoryCacheTier}), and all entries are appended to a memory-mapped file on disk
+ * ({@link DiskCacheTier}), from where they are promoted into memory again when they are
+ * looked up. Entries are identified by a {@link CacheKey}, a hash of all the request
+ * parameters, so that lookups never need to compare the input texts themselves.
+ */
+public class TieredSynthesisCache implements SynthesisCache
+{
+    /**
+     * The number of stripes of the memory tier.
+     */
+    public static final int NUM_STRIPES = 16;
+
+    /**
+     * The size of the segments in which the disk tier is mapped into memory.
+     */
+    public static final int SEGMENT_SIZE = 32 * 1024 * 1024;
+
+    private static final String AUDIO = "AUDIO";
+
+    private CacheStatistics statistics;
+    private MemoryCacheTier memory;
+    private DiskCacheTier disk;
+
+    /**
+     * Create a tiered cache.
+     * @param cacheFile the file in which to keep the disk tier
+     * @param maxMemoryBytes the maximum number of bytes to keep in memory
+     * @param maxDiskBytes the maximum size of the file on disk; if this is 0, the cache is kept in memory only.
+     * @param clearCache if true, clear the cache; if false, keep the entries already on disk.
+     * @throws IOException if the file on disk cannot be opened
+     */
+    public TieredSynthesisCache(File cacheFile, long maxMemoryBytes, long maxDiskBytes, boolean clearCache)
+    throws IOException
+    {
+        this(cacheFile, maxMemoryBytes, maxDiskBytes, SEGMENT_SIZE, clearCache);
+    }
+
+    /**
+     * Create a tiered cache with the given disk segment size.
+     * This constructor is public only for tests, which need small segments.
+     */
+    public TieredSynthesisCache(File cacheFile, long maxMemoryBytes, long maxDiskBytes, int segmentSize, boolean clearCache)
+    throws IOException
+    {
+        statistics = new CacheStatistics();
+        memory = new MemoryCacheTier(maxMemoryBytes, NUM_STRIPES, statistics);
+        if (maxDiskBytes > 0) {
+            disk = new DiskCacheTier(cacheFile, maxDiskBytes, (int) Math.min(segmentSize, maxDiskBytes), clearCache, statistics);
+        }
+    }
+
+    public void insertText(String inputtype, String outputtype, String locale, String voice, String outputparams, String style, String effects, String inputtext, String outputtext)
+    throws IOException
+    {
+        if (inputtype == null || outputtype == null || locale == null || inputtext == null || outputtext == null) {
+            throw new NullPointerException("Null argument");
+        }
+        insert(CacheKey.create(inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext), toBytes(outputtext));
+    }
+
+    public void insertAudio(String inputtype, String locale, String voice, String outputparams, String style, String effects, String inputtext, byte[] audio)
+    throws IOException
+    {
+        if (inputtype == null || locale == null || inputtext == null || audio == null) {
+            throw new NullPointerException("Null argument");
+        }
+        insert(CacheKey.create(inputtype, AUDIO, locale, voice, outputparams, style, effects, inputtext), audio);
+    }
+
+    public String lookupText(String inputtype, String outputtype, String locale, String voice, String outputparams, String style, String effects, String inputtext)
+    {
+        if (inputtype == null || outputtype == null || locale == null || inputtext == null) {
+            throw new NullPointerException("Null argument");
+        }
+        byte[] value = lookup(CacheKey.create(inputtype, outputtype, locale, voice, outputparams, style, effects, inputtext));
+        if (value == null) {
+            return null;
+        }
+        try {
+            return new String(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError("UTF-8 is always a supported encoding");
+        }
+    }
+
+    public byte[] lookupAudio(String inputtype, String locale, String voice, String outputparams, String style, String effects, String inputtext)
+    {
+        if (inputtype == null || locale == null || inputtext == null) {
+            throw new NullPointerException("Null argument");
+        }
+        return lookup(CacheKey.create(inputtype, AUDIO, locale, voice, outputparams, style, effects, inputtext));
+    }
+
+    private byte[] lookup(CacheKey key)
+    {
+        byte[] value = memory.get(key);
+        if (value != null) {
+            statistics.memoryHit();
+            return value;
+        }
+        if (disk != null) {
+            value = disk.get(key);
+            if (value != null) {
+                statistics.diskHit();
+                memory.put(key, value);
+                return value;
+            }
+        }
+        statistics.miss();
+        return null;
+    }
+
+    private void insert(CacheKey key, byte[] value) throws IOException
+    {
+        if (disk != null && disk.contains(key) || memory.get(key) != null) {
+            return; // have it already
+        }
+        memory.put(key, value);
+        if (disk != null) {
+            disk.put(key, value);
+        }
+        statistics.insertion();
+    }
+
+    private static byte[] toBytes(String text)
+    {
+        try {
+            return text.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError("UTF-8 is always a supported encoding");
+        }
+    }
+
+    public CacheStatistics getStatistics()
+    {
+        return statistics;
+    }
+
+    /**
+     * The memory tier of this cache.
+     */
+    public MemoryCacheTier getMemoryTier()
+    {
+        return memory;
+    }
+
+    /**
+     * The disk tier of this cache, or null if the cache is kept in memory only.
+     */
+    public DiskCacheTier getDiskTier()
+    {
+        return disk;
+    }
+
+    public void shutdown() throws IOException
+    {
+        memory.clear();
+        if (disk != null) {
+            disk.close();
+        }
+    }
+}
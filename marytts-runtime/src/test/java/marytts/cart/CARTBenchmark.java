@@ -0,0 +1,81 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.cart;
+
+import java.util.Random;
+
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureVector;
+
+/**
+ * Compares the number of lookups per second in a tree of node objects and in the
+ * same tree compiled into a {@link CompiledCART}. This is not run as part of the tests; run it with
+ * <pre>
+ * java -cp target/classes:target/test-classes:... marytts.cart.CARTBenchmark [depth]
+ * </pre>
+ */
+public class CARTBenchmark
+{
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+    private static final int NUM_VECTORS = 10000;
+    private static final int LOOKUPS_PER_ROUND = 2000000;
+
+    public static void main(String[] args) throws Exception
+    {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        FeatureDefinition def = RandomTrees.featureDefinition();
+        Random random = new Random(1);
+        CART tree = RandomTrees.randomTree(def, random, depth);
+        CART compiled = new CART(tree.getRootNode(), def);
+        compiled.compile();
+        FeatureVector[] vectors = new FeatureVector[NUM_VECTORS];
+        for (int i=0; i<NUM_VECTORS; i++) {
+            vectors[i] = RandomTrees.randomVector(def, random);
+        }
+        System.out.println("Tree with "+tree.getNumNodes()+" nodes, compiled into "
+                +compiled.getCompiledCART().getSize()+" ints");
+        for (int round=0; round<WARMUP_ROUNDS+ROUNDS; round++) {
+            long treeTime = time(tree, vectors);
+            long compiledTime = time(compiled, vectors);
+            if (round >= WARMUP_ROUNDS) {
+                System.out.printf("nodes: %6.2f M lookups/s   compiled: %6.2f M lookups/s   speedup %.2f%n",
+                        LOOKUPS_PER_ROUND * 1e3 / treeTime, LOOKUPS_PER_ROUND * 1e3 / compiledTime,
+                        treeTime / (double) compiledTime);
+            }
+        }
+    }
+
+    private static long time(CART cart, FeatureVector[] vectors)
+    {
+        long start = System.nanoTime();
+        int found = 0;
+        for (int i=0; i<LOOKUPS_PER_ROUND; i++) {
+            if (cart.interpretToNode(vectors[i % vectors.length], 0) != null) {
+                found++;
+            }
+        }
+        long time = System.nanoTime() - start;
+        if (found == 0) {
+            throw new IllegalStateException("No nodes found");
+        }
+        return time;
+    }
+}
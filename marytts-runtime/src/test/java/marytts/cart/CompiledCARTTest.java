@@ -0,0 +1,120 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.cart;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import marytts.cart.LeafNode.IntArrayLeafNode;
+
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureMatrix;
+import marytts.features.FeatureVector;
+
+import org.junit.Test;
+
+public class CompiledCARTTest
+{
+    @Test
+    public void sameNodesAsTree() throws Exception
+    {
+        FeatureDefinition def = RandomTrees.featureDefinition();
+        Random random = new Random(42);
+        for (int t=0; t<20; t++) {
+            CART tree = RandomTrees.randomTree(def, random, 12);
+            CART compiled = new CART(tree.getRootNode(), def);
+            assertTrue(compiled.compile());
+            for (int i=0; i<500; i++) {
+                FeatureVector fv = RandomTrees.randomVector(def, random);
+                assertSame(tree.interpret(fv), compiled.interpret(fv));
+                for (int min=0; min<4; min++) {
+                    assertSame(tree.interpretToNode(fv, min), compiled.interpretToNode(fv, min));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sameNodesForFeatureMatrix() throws Exception
+    {
+        FeatureDefinition def = RandomTrees.featureDefinition();
+        Random random = new Random(43);
+        FeatureMatrix matrix = new FeatureMatrix(def, 500);
+        matrix.setNumberOfRows(500);
+        FeatureVector[] vectors = new FeatureVector[500];
+        for (int i=0; i<vectors.length; i++) {
+            vectors[i] = RandomTrees.randomVector(def, random);
+            matrix.setFeatureVector(i, vectors[i]);
+        }
+        for (int t=0; t<10; t++) {
+            CART tree = RandomTrees.randomTree(def, random, 12);
+            CART compiled = new CART(tree.getRootNode(), def);
+            assertTrue(compiled.compile());
+            for (int i=0; i<vectors.length; i++) {
+                assertSame(tree.interpret(vectors[i]), tree.interpret(matrix, i));
+                assertSame(tree.interpret(vectors[i]), compiled.interpret(matrix, i));
+                for (int min=0; min<4; min++) {
+                    assertSame(tree.interpretToNode(vectors[i], min), tree.interpretToNode(matrix, i, min));
+                    assertSame(tree.interpretToNode(vectors[i], min), compiled.interpretToNode(matrix, i, min));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void changedTreesAreNotInterpretedByOldCompiledForm() throws Exception
+    {
+        FeatureDefinition def = RandomTrees.featureDefinition();
+        Random random = new Random(44);
+        for (int t=0; t<20; t++) {
+            CART tree = RandomTrees.randomTree(def, random, 12);
+            if (!(tree.getRootNode() instanceof DecisionNode)) continue;
+            CART compiled = new CART(tree.getRootNode(), def);
+            assertTrue(compiled.compile());
+            // replace a daughter somewhere in the tree with a new leaf:
+            DecisionNode node = (DecisionNode) tree.getRootNode();
+            int index = random.nextInt(node.getNumberOfDaugthers());
+            while (node.getDaughter(index) instanceof DecisionNode && random.nextBoolean()) {
+                node = (DecisionNode) node.getDaughter(index);
+                index = random.nextInt(node.getNumberOfDaugthers());
+            }
+            node.replaceDaughter(new IntArrayLeafNode(new int[] {t}), index);
+            assertNull(compiled.getCompiledCART());
+            for (int i=0; i<200; i++) {
+                FeatureVector fv = RandomTrees.randomVector(def, random);
+                assertSame(tree.interpretToNode(fv, 0), compiled.interpretToNode(fv, 0));
+            }
+            assertTrue(compiled.compile());
+            for (int i=0; i<200; i++) {
+                FeatureVector fv = RandomTrees.randomVector(def, random);
+                assertSame(tree.interpretToNode(fv, 0), compiled.interpretToNode(fv, 0));
+            }
+        }
+    }
+
+    @Test
+    public void directedGraphsAreNotCompiled() throws Exception
+    {
+        assertNull(CompiledCART.compile(new DirectedGraphNode(null, null)));
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.cart;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+import marytts.cart.DecisionNode.BinaryByteDecisionNode;
+import marytts.cart.DecisionNode.BinaryFloatDecisionNode;
+import marytts.cart.DecisionNode.BinaryShortDecisionNode;
+import marytts.cart.DecisionNode.ByteDecisionNode;
+import marytts.cart.DecisionNode.ShortDecisionNode;
+import marytts.cart.LeafNode.IntArrayLeafNode;
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureVector;
+
+/**
+ * Random feature definitions, trees and feature vectors, for comparing
+ * ways of interpreting trees.
+ */
+class RandomTrees
+{
+    static final int NUM_BYTE = 4;
+    static final int NUM_SHORT = 2;
+    static final int NUM_CONTINUOUS = 2;
+
+    /**
+     * A feature definition with byte, short and continuous features.
+     */
+    static FeatureDefinition featureDefinition() throws IOException
+    {
+        StringBuilder def = new StringBuilder();
+        def.append("ByteValuedFeatureProcessors\n");
+        for (int i=0; i<NUM_BYTE; i++) {
+            def.append("byte"+i);
+            for (int v=0; v<3+5*i; v++) def.append(" v"+v);
+            def.append("\n");
+        }
+        def.append("ShortValuedFeatureProcessors\n");
+        for (int i=0; i<NUM_SHORT; i++) {
+            def.append("short"+i);
+            for (int v=0; v<4+2*i; v++) def.append(" v"+v);
+            def.append("\n");
+        }
+        def.append("ContinuousFeatureProcessors\n");
+        for (int i=0; i<NUM_CONTINUOUS; i++) {
+            def.append("float"+i+"\n");
+        }
+        return new FeatureDefinition(new BufferedReader(new StringReader(def.toString())), false);
+    }
+
+    /**
+     * A random tree using all kinds of decision nodes, with leaves of
+     * different sizes, including empty leaves and missing daughters.
+     */
+    static CART randomTree(FeatureDefinition def, Random random, int maxDepth)
+    {
+        Node root = randomNode(def, random, maxDepth);
+        root.setIsRoot(true);
+        if (root instanceof DecisionNode) {
+            ((DecisionNode) root).countData();
+        }
+        return new CART(root, def);
+    }
+
+    private static Node randomNode(FeatureDefinition def, Random random, int depth)
+    {
+        if (depth == 0 || random.nextInt(8) == 0) {
+            return new IntArrayLeafNode(new int[random.nextInt(4)]);
+        }
+        DecisionNode node;
+        int kind = random.nextInt(6);
+        if (kind == 0) {
+            int f = random.nextInt(NUM_BYTE);
+            node = new BinaryByteDecisionNode(f, (byte) random.nextInt(def.getNumberOfValues(f)), def);
+        } else if (kind == 1) {
+            int f = NUM_BYTE + random.nextInt(NUM_SHORT);
+            node = new BinaryShortDecisionNode(f, (short) random.nextInt(def.getNumberOfValues(f)), def);
+        } else if (kind == 2) {
+            int f = random.nextInt(NUM_BYTE);
+            node = new BinaryFloatDecisionNode(f, random.nextInt(def.getNumberOfValues(f)) + 0.5f, def);
+        } else if (kind == 3) {
+            int f = NUM_BYTE + NUM_SHORT + random.nextInt(NUM_CONTINUOUS);
+            node = new BinaryFloatDecisionNode(f, random.nextFloat(), def);
+        } else if (kind == 4) {
+            int f = random.nextInt(NUM_BYTE);
+            node = new ByteDecisionNode(f, def.getNumberOfValues(f), def);
+        } else {
+            int f = NUM_BYTE + random.nextInt(NUM_SHORT);
+            node = new ShortDecisionNode(f, def.getNumberOfValues(f), def);
+        }
+        for (int i=0; i<node.getNumberOfDaugthers(); i++) {
+            // multi-valued nodes branch less deeply, so that the tree stays small
+            int nextDepth = kind >= 4 ? depth / 2 : depth - 1;
+            node.addDaughter(random.nextInt(20) == 0 ? null : randomNode(def, random, nextDepth));
+        }
+        return node;
+    }
+
+    /**
+     * A random feature vector for the given feature definition.
+     */
+    static FeatureVector randomVector(FeatureDefinition def, Random random)
+    {
+        byte[] bytes = new byte[NUM_BYTE];
+        for (int i=0; i<NUM_BYTE; i++) {
+            bytes[i] = (byte) random.nextInt(def.getNumberOfValues(i));
+        }
+        short[] shorts = new short[NUM_SHORT];
+        for (int i=0; i<NUM_SHORT; i++) {
+            shorts[i] = (short) random.nextInt(def.getNumberOfValues(NUM_BYTE+i));
+        }
+        float[] floats = new float[NUM_CONTINUOUS];
+        for (int i=0; i<NUM_CONTINUOUS; i++) {
+            floats[i] = random.nextFloat();
+        }
+        return new FeatureVector(bytes, shorts, floats, 0);
+    }
+}
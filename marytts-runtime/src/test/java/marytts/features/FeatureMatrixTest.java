@@ -0,0 +1,118 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.features;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import marytts.datatypes.MaryXML;
+import marytts.unitselection.select.Target;
+import marytts.util.dom.MaryDomUtils;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.traversal.TreeWalker;
+
+public class FeatureMatrixTest
+{
+    @SuppressWarnings("deprecation")
+    private static TargetFeatureComputer featureComputer()
+    {
+        FeatureProcessorManager manager = new FeatureProcessorManager();
+        return new TargetFeatureComputer(manager, "accented_syls_from_phrase_start edge halfphone_lr"
+                + " next_is_pause phrase_numsyls phrases_from_sentence_end pos_in_syl position_type"
+                + " segs_from_word_start sentence_numwords stressed syl_numsegs syls_from_prev_stressed"
+                + " syls_to_next_accent word_numsyls words_from_sentence_start unit_duration unit_logf0");
+    }
+
+    @Test
+    public void sameAsFeatureVectors()
+    {
+        TargetFeatureComputer computer = featureComputer();
+        FeatureDefinition def = computer.getFeatureDefinition();
+        assertTrue(def.getNumberOfByteFeatures() > 0);
+        Random random = new Random(3);
+        FeatureMatrix matrix = null;
+        for (int d=0; d<10; d++) {
+            List<Target> targets = targets(UtteranceIndexTest.randomDocument(random));
+            matrix = computer.computeFeatureMatrix(targets, matrix);
+            assertEquals(targets.size(), matrix.getNumberOfRows());
+            for (int i=0; i<targets.size(); i++) {
+                FeatureVector expected = computer.computeFeatureVector(targets.get(i));
+                FeatureVector row = matrix.getFeatureVector(i);
+                assertArrayEquals(expected.getByteValuedDiscreteFeatures(), row.getByteValuedDiscreteFeatures());
+                assertArrayEquals(expected.getShortValuedDiscreteFeatures(), row.getShortValuedDiscreteFeatures());
+                assertArrayEquals(expected.getContinuousFeatures(), row.getContinuousFeatures(), 0);
+                for (int f=0; f<def.getNumberOfByteFeatures(); f++) {
+                    assertEquals(expected.getByteFeature(f), matrix.getByteFeature(i, f));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void targetsUseTheirRows()
+    {
+        TargetFeatureComputer computer = featureComputer();
+        List<Target> targets = targets(UtteranceIndexTest.randomDocument(new Random(5)));
+        FeatureMatrix matrix = computer.computeFeatureRows(targets);
+        for (int i=0; i<targets.size(); i++) {
+            Target t = targets.get(i);
+            assertSame(matrix, t.getFeatureTable());
+            assertEquals(i, t.getFeatureRow());
+            assertEquals(matrix.getFeatureVector(i).toString(), t.getFeatureVector().toString());
+            t.setFeatureVector(computer.computeFeatureVector(t));
+            assertEquals(null, t.getFeatureTable());
+        }
+    }
+
+    @Test
+    public void reuseGrowsColumns()
+    {
+        FeatureMatrix matrix = new FeatureMatrix(2, 1, 1, 1);
+        matrix.setNumberOfRows(3);
+        FeatureVector fv = new FeatureVector(new byte[] {1, 2}, new short[] {300}, new float[] {0.5f}, 0);
+        matrix.setFeatureVector(2, fv);
+        assertEquals(2, matrix.getByteFeature(2, 1));
+        assertEquals(300, matrix.getShortFeature(2, 2));
+        assertEquals(0.5f, matrix.getContinuousFeature(2, 3), 0);
+        assertEquals(2, matrix.getFeatureVector(2).getUnitIndex());
+        assertTrue(matrix.getByteColumn(0).length >= 3);
+    }
+
+    private static List<Target> targets(Document doc)
+    {
+        List<Target> targets = new ArrayList<Target>();
+        TreeWalker tw = MaryDomUtils.createTreeWalker(doc, MaryXML.PHONE, MaryXML.BOUNDARY);
+        Element e;
+        while ((e = (Element) tw.nextNode()) != null) {
+            targets.add(new Target(e.getTagName().equals(MaryXML.PHONE) ? e.getAttribute("p") : "_", e));
+        }
+        UtteranceIndex.createFor(targets);
+        return targets;
+    }
+}
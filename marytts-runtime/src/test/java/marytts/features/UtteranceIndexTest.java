@@ -0,0 +1,203 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.features;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import marytts.datatypes.MaryXML;
+import marytts.unitselection.select.Target;
+import marytts.util.dom.MaryDomUtils;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.traversal.TreeWalker;
+
+public class UtteranceIndexTest
+{
+    private static final ByteValuedFeatureProcessor[] PROCESSORS = new ByteValuedFeatureProcessor[] {
+        new MaryGenericFeatureProcessors.SentenceNumPhrases(),
+        new MaryGenericFeatureProcessors.SentenceNumWords(),
+        new MaryGenericFeatureProcessors.PhraseNumSyls(),
+        new MaryGenericFeatureProcessors.PhraseNumWords(),
+        new MaryGenericFeatureProcessors.SylsFromPhraseStart(),
+        new MaryGenericFeatureProcessors.SylsFromPhraseEnd(),
+        new MaryGenericFeatureProcessors.StressedSylsFromPhraseStart(),
+        new MaryGenericFeatureProcessors.StressedSylsFromPhraseEnd(),
+        new MaryGenericFeatureProcessors.AccentedSylsFromPhraseStart(),
+        new MaryGenericFeatureProcessors.AccentedSylsFromPhraseEnd(),
+        new MaryGenericFeatureProcessors.WordsFromPhraseStart(),
+        new MaryGenericFeatureProcessors.WordsFromPhraseEnd(),
+        new MaryGenericFeatureProcessors.WordsFromSentenceStart(),
+        new MaryGenericFeatureProcessors.WordsFromSentenceEnd(),
+        new MaryGenericFeatureProcessors.PhrasesFromSentenceStart(),
+        new MaryGenericFeatureProcessors.PhrasesFromSentenceEnd(),
+        new MaryGenericFeatureProcessors.SylsFromPrevAccent(),
+        new MaryGenericFeatureProcessors.SylsToNextAccent(),
+        new MaryGenericFeatureProcessors.SylsFromPrevStressed(),
+        new MaryGenericFeatureProcessors.SylsToNextStressed(),
+    };
+
+    @Test
+    public void smallSentence()
+    {
+        Document doc = MaryXML.newDocument();
+        Element s = MaryXML.appendChildElement(MaryXML.appendChildElement(doc.getDocumentElement(), MaryXML.PARAGRAPH), MaryXML.SENTENCE);
+        Element phrase = MaryXML.appendChildElement(s, MaryXML.PHRASE);
+        Element t1 = word(phrase, "1", "");
+        Element t2 = word(phrase, "", "H*");
+        Element punct = MaryXML.appendChildElement(phrase, MaryXML.TOKEN);
+        punct.setTextContent(",");
+        Element t3 = word(phrase, "1", "L*");
+        UtteranceIndex index = new UtteranceIndex(s);
+        Element ph2 = MaryDomUtils.getFirstElementByTagName(t2, MaryXML.PHONE);
+        assertEquals(4, index.count(s, UtteranceIndex.TOKEN));
+        assertEquals(3, index.count(s, UtteranceIndex.WORD));
+        assertEquals(1, index.countBefore(phrase, t2, UtteranceIndex.WORD));
+        assertEquals(1, index.countAfter(phrase, ph2, UtteranceIndex.WORD));
+        assertEquals(2, index.countAfter(phrase, ph2, UtteranceIndex.TOKEN));
+        assertEquals(1, index.countAfter(phrase, ph2, UtteranceIndex.STRESSED_SYLLABLE));
+        assertSame(t3.getFirstChild(), index.next(phrase, ph2, UtteranceIndex.ACCENTED_SYLLABLE));
+        assertSame(t1.getFirstChild(), index.previous(phrase, ph2, UtteranceIndex.STRESSED_SYLLABLE));
+        assertSame(null, index.previous(phrase, t1, UtteranceIndex.SYLLABLE));
+    }
+
+    @Test
+    public void sameAsTreeWalker()
+    {
+        Random random = new Random(7);
+        for (int d=0; d<20; d++) {
+            Document doc = randomDocument(random);
+            TreeWalker sentences = MaryDomUtils.createTreeWalker(doc, MaryXML.SENTENCE);
+            Element s;
+            while ((s = (Element) sentences.nextNode()) != null) {
+                UtteranceIndex index = new UtteranceIndex(s);
+                List<Element> roots = new ArrayList<Element>();
+                roots.add(s);
+                TreeWalker phrases = MaryDomUtils.createTreeWalker(s, MaryXML.PHRASE);
+                Element p;
+                while ((p = (Element) phrases.nextNode()) != null) {
+                    roots.add(p);
+                }
+                for (Element root : roots) {
+                    TreeWalker nodes = MaryDomUtils.createTreeWalker(root, MaryXML.PHRASE, MaryXML.TOKEN,
+                            MaryXML.SYLLABLE, MaryXML.PHONE, MaryXML.BOUNDARY);
+                    Element node;
+                    while ((node = (Element) nodes.nextNode()) != null) {
+                        for (int kind=UtteranceIndex.TOKEN; kind<=UtteranceIndex.PHRASE; kind++) {
+                            UtteranceIndex none = UtteranceIndex.NONE;
+                            assertEquals(none.count(root, kind), index.count(root, kind));
+                            assertEquals(none.countBefore(root, node, kind), index.countBefore(root, node, kind));
+                            assertEquals(none.countAfter(root, node, kind), index.countAfter(root, node, kind));
+                            assertSame(none.previous(root, node, kind), index.previous(root, node, kind));
+                            assertSame(none.next(root, node, kind), index.next(root, node, kind));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sameFeatures()
+    {
+        Random random = new Random(11);
+        for (int d=0; d<20; d++) {
+            Document doc = randomDocument(random);
+            List<Target> targets = new ArrayList<Target>();
+            List<Target> indexedTargets = new ArrayList<Target>();
+            TreeWalker tw = MaryDomUtils.createTreeWalker(doc, MaryXML.PHONE, MaryXML.BOUNDARY);
+            Element e;
+            while ((e = (Element) tw.nextNode()) != null) {
+                targets.add(new Target("x", e));
+                indexedTargets.add(new Target("x", e));
+            }
+            UtteranceIndex.createFor(indexedTargets);
+            for (int i=0; i<targets.size(); i++) {
+                for (ByteValuedFeatureProcessor fp : PROCESSORS) {
+                    assertEquals(fp.getName(), fp.process(targets.get(i)), fp.process(indexedTargets.get(i)));
+                }
+            }
+        }
+    }
+
+    private static Element word(Element parent, String stress, String accent)
+    {
+        Element t = MaryXML.appendChildElement(parent, MaryXML.TOKEN);
+        t.setAttribute("ph", "a");
+        Element syllable = MaryXML.appendChildElement(t, MaryXML.SYLLABLE);
+        if (!stress.equals("")) syllable.setAttribute("stress", stress);
+        if (!accent.equals("")) syllable.setAttribute("accent", accent);
+        MaryXML.appendChildElement(syllable, MaryXML.PHONE).setAttribute("p", "a");
+        return t;
+    }
+
+    /**
+     * A document with several sentences of phrases, words, punctuation and boundaries,
+     * some of them grouped in mtu elements.
+     */
+    static Document randomDocument(Random random)
+    {
+        Document doc = MaryXML.newDocument();
+        Element para = MaryXML.appendChildElement(doc.getDocumentElement(), MaryXML.PARAGRAPH);
+        int numSentences = 1 + random.nextInt(3);
+        for (int i=0; i<numSentences; i++) {
+            Element s = MaryXML.appendChildElement(para, MaryXML.SENTENCE);
+            int numPhrases = 1 + random.nextInt(4);
+            for (int j=0; j<numPhrases; j++) {
+                Element phrase = MaryXML.appendChildElement(s, MaryXML.PHRASE);
+                int numTokens = random.nextInt(8);
+                for (int k=0; k<numTokens; k++) {
+                    Element parent = phrase;
+                    if (random.nextInt(6) == 0) {
+                        parent = MaryXML.appendChildElement(phrase, MaryXML.MTU);
+                    }
+                    if (random.nextInt(5) == 0) {
+                        MaryXML.appendChildElement(parent, MaryXML.TOKEN).setTextContent(",");
+                    } else {
+                        Element t = MaryXML.appendChildElement(parent, MaryXML.TOKEN);
+                        t.setAttribute("ph", "x");
+                        int numSyllables = 1 + random.nextInt(3);
+                        for (int l=0; l<numSyllables; l++) {
+                            Element syllable = MaryXML.appendChildElement(t, MaryXML.SYLLABLE);
+                            int stress = random.nextInt(3);
+                            if (stress > 0) syllable.setAttribute("stress", String.valueOf(stress));
+                            if (random.nextInt(4) == 0) syllable.setAttribute("accent", random.nextBoolean() ? "H*" : "");
+                            int numPhones = 1 + random.nextInt(3);
+                            for (int m=0; m<numPhones; m++) {
+                                MaryXML.appendChildElement(syllable, MaryXML.PHONE).setAttribute("p", "x");
+                            }
+                        }
+                    }
+                    if (random.nextInt(8) == 0) {
+                        MaryXML.appendChildElement(phrase, MaryXML.BOUNDARY).setAttribute("breakindex", "2");
+                    }
+                }
+                MaryXML.appendChildElement(phrase, MaryXML.BOUNDARY).setAttribute("breakindex", "4");
+            }
+        }
+        return doc;
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.htsengine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HTSPStreamTest
+{
+    private static final int ORDER = 4;
+    private static final int T = 60;
+
+    private static HTSPStream createStream() throws Exception
+    {
+        HTSPStream pst = new HTSPStream(3*ORDER, T, HMMData.MGC, 0);
+        Random random = new Random(17);
+        for (int t=0; t<T; t++) {
+            for (int k=0; k<3*ORDER; k++) {
+                pst.setMseq(t, k, random.nextGaussian());
+                // no dynamic features at the borders, as in HTSParameterGeneration:
+                if ((t == 0 || t == T-1) && k >= ORDER) {
+                    pst.setIvseq(t, k, 0.0);
+                } else {
+                    pst.setIvseq(t, k, 1.0 / (0.1 + random.nextDouble()));
+                }
+            }
+        }
+        return pst;
+    }
+
+    private static void generateInWindows(HTSPStream pst, int windowSize, int contextSize) throws Exception
+    {
+        for (int start=0; start<T; start+=windowSize) {
+            pst.mlpg(new HMMData(), false, start, Math.min(start+windowSize, T), contextSize);
+        }
+    }
+
+    @Test
+    public void solutionSatisfiesNormalEquations() throws Exception
+    {
+        HTSPStream pst = createStream();
+        pst.mlpg(new HMMData(), false);
+        HTSDWin dw = new HTSDWin();
+        for (int m=0; m<ORDER; m++) {
+            // the derivative of sum_tau,i ivseq * (W_i c (tau) - mseq)^2 with respect to c[t] must be 0:
+            for (int t=0; t<T; t++) {
+                double derivative = 0;
+                for (int tau=Math.max(0, t-1); tau<=Math.min(T-1, t+1); tau++) {
+                    for (int i=0; i<dw.getNum(); i++) {
+                        if (!inWindow(dw, i, t-tau)) continue;
+                        double o = 0;
+                        for (int d=dw.getWidth(i, HTSDWin.WLEFT); d<=dw.getWidth(i, HTSDWin.WRIGHT); d++) {
+                            if (tau+d >= 0 && tau+d < T) {
+                                o += dw.getCoef(i, d) * pst.getPar(tau+d, m);
+                            }
+                        }
+                        int k = i*ORDER+m;
+                        derivative += pst.getIvseq(tau, k) * dw.getCoef(i, t-tau) * (o - pst.getMseq(tau, k));
+                    }
+                }
+                assertEquals(0, derivative, 1.e-9);
+            }
+        }
+    }
+
+    private static boolean inWindow(HTSDWin dw, int i, int d)
+    {
+        return d >= dw.getWidth(i, HTSDWin.WLEFT) && d <= dw.getWidth(i, HTSDWin.WRIGHT);
+    }
+
+    @Test
+    public void windowsWithFullContextGiveSameResult() throws Exception
+    {
+        HTSPStream whole = createStream();
+        whole.mlpg(new HMMData(), false);
+        HTSPStream windowed = createStream();
+        generateInWindows(windowed, 7, T);
+        for (int t=0; t<T; t++) {
+            for (int m=0; m<ORDER; m++) {
+                assertEquals(whole.getPar(t, m), windowed.getPar(t, m), 1.e-9);
+            }
+        }
+    }
+
+    @Test
+    public void windowsWithSomeContextGiveSimilarResult() throws Exception
+    {
+        HTSPStream whole = createStream();
+        whole.mlpg(new HMMData(), false);
+        HTSPStream windowed = createStream();
+        generateInWindows(windowed, 10, 10);
+        double maxDiff = 0;
+        for (int t=0; t<T; t++) {
+            for (int m=0; m<ORDER; m++) {
+                maxDiff = Math.max(maxDiff, Math.abs(whole.getPar(t, m) - windowed.getPar(t, m)));
+            }
+        }
+        assertTrue("Max difference "+maxDiff, maxDiff < 1.e-2);
+    }
+}
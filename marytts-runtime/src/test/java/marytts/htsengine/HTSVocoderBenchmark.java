@@ -0,0 +1,73 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.htsengine;
+
+import marytts.modules.HTSEngine;
+
+/**
+ * Measures the real-time factor of the {@link HTSVocoder}, i.e. the time it takes to vocode
+ * an utterance divided by the duration of the utterance, on the parameters generated for the
+ * example utterance of the cmu-slt-hsmm voice. This is not run as part of the tests; run it with
+ * <pre>
+ * java -cp target/classes:target/test-classes:... marytts.htsengine.HTSVocoderBenchmark [voice resources directory]
+ * </pre>
+ * where the voice resources directory defaults to ../voice-cmu-slt-hsmm/src/main/resources/.
+ */
+public class HTSVocoderBenchmark
+{
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+    private static final int UTTERANCES_PER_ROUND = 10;
+
+    public static void main(String[] args) throws Exception
+    {
+        String voiceDir = args.length > 0 ? args[0] : "../voice-cmu-slt-hsmm/src/main/resources/";
+        if (!voiceDir.endsWith("/")) voiceDir += "/";
+        HMMData htsData = new HMMData();
+        htsData.initHMMData("cmu-slt-hsmm", voiceDir, "marytts/voice/CmuSltHsmm/voice.config");
+        htsData.setUseGV(true);
+        htsData.setUseMixExc(true);
+        // the example features do not come with acoustic parameters
+        htsData.setUseAcousticModels(false);
+        HTSUttModel um = new HTSUttModel();
+        HTSParameterGeneration pdf2par = new HTSParameterGeneration();
+        new HTSEngine().processUttFromFile(voiceDir + "marytts/voice/CmuSltHsmm/cmu_us_arctic_slt_b0487.pfeats", um, htsData);
+        pdf2par.htsMaximumLikelihoodParameterGeneration(um, htsData);
+        int numSamples = pdf2par.getMcepPst().getT() * htsData.getFperiod();
+        double seconds = numSamples / (double) htsData.getRate();
+        System.out.printf("Utterance of %.2f s, %d frames, mcep order %d%n",
+                seconds, pdf2par.getMcepPst().getT(), pdf2par.getMcepPst().getOrder());
+        for (int round=0; round<WARMUP_ROUNDS+ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int u=0; u<UTTERANCES_PER_ROUND; u++) {
+                double[] audio = new HTSVocoder().htsMLSAVocoder(pdf2par.getlf0Pst(), pdf2par.getMcepPst(), pdf2par.getStrPst(),
+                        pdf2par.getMagPst(), pdf2par.getVoicedArray(), htsData, null);
+                if (audio.length != numSamples) {
+                    throw new IllegalStateException("Expected "+numSamples+" samples, got "+audio.length);
+                }
+            }
+            long time = System.nanoTime() - start;
+            if (round >= WARMUP_ROUNDS) {
+                double rtf = time / 1e9 / (UTTERANCES_PER_ROUND * seconds);
+                System.out.printf("real-time factor %.4f   (%.1f x faster than real time)%n", rtf, 1 / rtf);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelStartupTest
+{
+    @Before
+    public void setUp()
+    {
+        System.setProperty("modules.startup.threads", "4");
+    }
+
+    @After
+    public void tearDown()
+    {
+        System.clearProperty("modules.startup.threads");
+    }
+
+    @Test
+    public void resultsAreInTaskOrder() throws Exception
+    {
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int i=0; i<10; i++) {
+            final int value = i;
+            tasks.add(new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    Thread.sleep(10 - value);
+                    return value;
+                }
+            });
+        }
+        List<Integer> results = ParallelStartup.runAll("test", tasks);
+        assertEquals(10, results.size());
+        for (int i=0; i<10; i++) {
+            assertEquals(i, results.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void allTasksFinishBeforeFailureIsThrown() throws Exception
+    {
+        final AtomicInteger finished = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        tasks.add(new Callable<Void>() {
+            public Void call() throws Exception {
+                throw new IllegalStateException("cannot start");
+            }
+        });
+        for (int i=0; i<5; i++) {
+            tasks.add(new Callable<Void>() {
+                public Void call() throws Exception {
+                    Thread.sleep(20);
+                    finished.incrementAndGet();
+                    return null;
+                }
+            });
+        }
+        try {
+            ParallelStartup.runAll("test", tasks);
+            fail("Expected the failure of the first task");
+        } catch (IllegalStateException e) {
+            assertEquals("cannot start", e.getMessage());
+        }
+        assertEquals(5, finished.get());
+    }
+}
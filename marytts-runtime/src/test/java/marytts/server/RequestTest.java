@@ -0,0 +1,129 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Locale;
+
+import marytts.datatypes.MaryDataType;
+import marytts.datatypes.MaryXML;
+import marytts.util.MaryUtils;
+import marytts.util.dom.MaryDomUtils;
+
+import org.apache.log4j.BasicConfigurator;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+public class RequestTest
+{
+    private static final int NUM_PARAGRAPHS = 20;
+
+    @BeforeClass
+    public static void startMary() throws Exception
+    {
+        if (System.getProperty("mary.base") == null) {
+            System.setProperty("mary.base", ".");
+        }
+        // configure log4j here, so that Mary does not log into its log file:
+        if (!MaryUtils.isLog4jConfigured()) {
+            BasicConfigurator.configure();
+        }
+        System.setProperty("request.parallelparagraphs.threads", "3");
+        if (Mary.currentState() == Mary.STATE_OFF) {
+            Mary.startup();
+        }
+    }
+
+    @AfterClass
+    public static void clearProperties()
+    {
+        System.clearProperty("request.parallelparagraphs.threads");
+    }
+
+    @After
+    public void tearDown()
+    {
+        System.clearProperty("request.parallelparagraphs");
+    }
+
+    @Test
+    public void parallelParagraphsGiveSameOutput() throws Exception
+    {
+        System.setProperty("request.parallelparagraphs", "false");
+        Request serial = process();
+        System.setProperty("request.parallelparagraphs", "true");
+        Request parallel = process();
+        assertEquals(toString(serial), toString(parallel));
+
+        // the empty paragraphs are replaced by their (empty) content:
+        NodeList paragraphs = parallel.getOutputData().getDocument().getElementsByTagName(MaryXML.PARAGRAPH);
+        int p = 0;
+        for (int i=0; i<NUM_PARAGRAPHS; i++) {
+            if (paragraphText(i).equals("")) continue;
+            String text = MaryDomUtils.getPlainTextBelow((Element) paragraphs.item(p++));
+            assertEquals(paragraphText(i), text.trim().replaceAll("\\s+", " "));
+        }
+        assertEquals(p, paragraphs.getLength());
+    }
+
+    /**
+     * Process a document of several paragraphs, some of them empty, into tokens.
+     */
+    private static Request process() throws Exception
+    {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<maryxml xmlns=\"http://mary.dfki.de/2002/MaryXML\" version=\"0.5\" xml:lang=\"en-US\">\n");
+        for (int i=0; i<NUM_PARAGRAPHS; i++) {
+            xml.append("<p>").append(paragraphText(i)).append("</p>\n");
+        }
+        xml.append("</maryxml>\n");
+        Request request = new Request(MaryDataType.RAWMARYXML, MaryDataType.TOKENS, Locale.US,
+                null, null, null, 1, null);
+        request.setInputData(xml.toString());
+        request.process();
+        return request;
+    }
+
+    /**
+     * The text of paragraph i: every fifth paragraph is empty, the others differ in length.
+     */
+    private static String paragraphText(int i)
+    {
+        if (i % 5 == 4) return "";
+        StringBuilder text = new StringBuilder("Paragraph " + i + " .");
+        for (int k=0; k<(i * 7) % 4; k++) {
+            text.append(" Sentence " + k + " of it .");
+        }
+        return text.toString();
+    }
+
+    private static String toString(Request request) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        request.writeOutputData(out);
+        return out.toString("UTF-8");
+    }
+}
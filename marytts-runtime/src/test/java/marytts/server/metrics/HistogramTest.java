@@ -0,0 +1,74 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.metrics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HistogramTest
+{
+    @Test
+    public void countsAreCumulative()
+    {
+        Histogram h = new Histogram(new double[] {1, 2, 5});
+        h.observe(0.5);
+        h.observe(1);
+        h.observe(3);
+        h.observe(10);
+        assertArrayEquals(new long[] {2, 2, 3, 4}, h.getCumulativeCounts());
+        assertEquals(4, h.getCount());
+        assertEquals(14.5, h.getSum(), 1.e-10);
+    }
+
+    @Test
+    public void sameLabelsGiveSameHistogram()
+    {
+        HistogramFamily family = new HistogramFamily("test_seconds", "Test.", "module");
+        assertSame(family.labels("A"), family.labels("A"));
+        assertSame(family.labels(""), family.labels((String) null));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void wrongNumberOfLabelsIsRejected()
+    {
+        HistogramFamily family = new HistogramFamily("test_seconds", "Test.", "module", "voice");
+        family.labels("A");
+    }
+
+    @Test
+    public void canWritePrometheusFormat()
+    {
+        HistogramFamily family = new HistogramFamily("test_seconds", "Test.", new double[] {0.5, 1}, "module");
+        family.labels("Some \"module\"").observeMillis(700);
+        StringBuilder out = new StringBuilder();
+        family.writePrometheus(out);
+        String text = out.toString();
+        assertTrue(text, text.contains("# TYPE test_seconds histogram\n"));
+        assertTrue(text, text.contains("test_seconds_bucket{module=\"Some \\\"module\\\"\",le=\"0.5\"} 0\n"));
+        assertTrue(text, text.contains("test_seconds_bucket{module=\"Some \\\"module\\\"\",le=\"1\"} 1\n"));
+        assertTrue(text, text.contains("test_seconds_bucket{module=\"Some \\\"module\\\"\",le=\"+Inf\"} 1\n"));
+        assertTrue(text, text.contains("test_seconds_sum{module=\"Some \\\"module\\\"\"} 0.7\n"));
+        assertTrue(text, text.contains("test_seconds_count{module=\"Some \\\"module\\\"\"} 1\n"));
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import marytts.datatypes.MaryXML;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public class UnitSelectionSynthesizerTest
+{
+    @Test
+    public void splitAtPhraseBoundariesAndPauses()
+    {
+        Document doc = MaryXML.newDocument();
+        Element s = MaryXML.appendChildElement(doc.getDocumentElement(), MaryXML.SENTENCE);
+        List<Element> elements = new ArrayList<Element>();
+        elements.add(boundary(s, "4", null)); // no phones before, so no cut
+        elements.add(word(s));
+        elements.add(boundary(s, "2", null));
+        elements.add(word(s));
+        elements.add(punctuation(s));
+        elements.add(boundary(s, "3", null)); // cut
+        elements.add(word(s));
+        elements.add(boundary(s, null, "200")); // cut
+        elements.add(word(s));
+        elements.add(boundary(s, "1", "0"));
+        elements.add(word(s));
+        elements.add(boundary(s, "5", "400")); // cut
+        elements.add(punctuation(s)); // added to the last phrase
+        elements.add(boundary(s, "6", null));
+        List<List<Element>> phrases = UnitSelectionSynthesizer.splitIntoPhrases(elements);
+        assertEquals(3, phrases.size());
+        assertEquals(6, phrases.get(0).size());
+        assertEquals(2, phrases.get(1).size());
+        assertEquals(6, phrases.get(2).size());
+        List<Element> all = new ArrayList<Element>();
+        for (List<Element> phrase : phrases) {
+            all.addAll(phrase);
+        }
+        assertEquals(elements, all);
+        assertSame(elements.get(elements.size()-1), phrases.get(2).get(5));
+    }
+
+    @Test
+    public void noCutWithoutPhones()
+    {
+        Document doc = MaryXML.newDocument();
+        Element s = MaryXML.appendChildElement(doc.getDocumentElement(), MaryXML.SENTENCE);
+        List<Element> elements = new ArrayList<Element>();
+        elements.add(punctuation(s));
+        elements.add(boundary(s, "4", null));
+        elements.add(punctuation(s));
+        List<List<Element>> phrases = UnitSelectionSynthesizer.splitIntoPhrases(elements);
+        assertEquals(1, phrases.size());
+        assertEquals(elements, phrases.get(0));
+    }
+
+    private static Element word(Element parent)
+    {
+        Element t = MaryXML.appendChildElement(parent, MaryXML.TOKEN);
+        t.setAttribute("ph", "a");
+        Element syllable = MaryXML.appendChildElement(t, MaryXML.SYLLABLE);
+        MaryXML.appendChildElement(syllable, MaryXML.PHONE).setAttribute("p", "a");
+        return t;
+    }
+
+    private static Element punctuation(Element parent)
+    {
+        Element t = MaryXML.appendChildElement(parent, MaryXML.TOKEN);
+        t.setTextContent(",");
+        return t;
+    }
+
+    private static Element boundary(Element parent, String breakindex, String duration)
+    {
+        Element b = MaryXML.appendChildElement(parent, MaryXML.BOUNDARY);
+        if (breakindex != null) b.setAttribute("breakindex", breakindex);
+        if (duration != null) b.setAttribute("duration", duration);
+        return b;
+    }
+}
@@ -0,0 +1,257 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import marytts.cart.CART;
+import marytts.exceptions.MaryConfigurationException;
+import marytts.features.FeatureProcessorManager;
+import marytts.features.FeatureRegistry;
+import marytts.modules.synthesis.Voice;
+import marytts.modules.synthesis.VoiceDataManager;
+import marytts.unitselection.concat.UnitConcatenator;
+import marytts.unitselection.data.UnitDatabase;
+import marytts.unitselection.select.SelectedUnit;
+import marytts.unitselection.select.UnitSelector;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UnitSelectionVoiceTest
+{
+    private static final Locale LOCALE = new Locale("xx");
+    private static int voiceCount = 0;
+    private File allophones;
+
+    @Before
+    public void setup() throws Exception
+    {
+        allophones = File.createTempFile("allophones", ".xml");
+        FileUtils.writeStringToFile(allophones, "<allophones name=\"test\" xml:lang=\"xx\" features=\"vlng\">"
+                + "<silence ph=\"_\"/><vowel ph=\"a\" vlng=\"s\"/></allophones>", "UTF-8");
+        System.setProperty("voice.lazyloading", "true");
+        if (FeatureRegistry.getFeatureProcessorManager(LOCALE) == null) {
+            FeatureRegistry.setFeatureProcessorManager(LOCALE, new FeatureProcessorManager());
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+        System.clearProperty("voice.lazyloading");
+        allophones.delete();
+    }
+
+    private TestVoice newVoice() throws Exception
+    {
+        String name = "lazy-test-" + (++voiceCount);
+        System.setProperty("voice." + name + ".allophoneset", allophones.getPath());
+        TestVoice voice = new TestVoice(name);
+        Voice.registerVoice(voice);
+        return voice;
+    }
+
+    @Test
+    public void dataIsLoadedOnFirstUse() throws Exception
+    {
+        TestVoice voice = newVoice();
+        assertFalse(voice.isDataLoaded());
+        assertEquals(0, voice.loads.get());
+        assertSame(voice, Voice.getVoice(voice.getName()));
+        assertTrue(voice.isDataLoaded());
+        assertEquals(1, voice.loads.get());
+        UnitSelectionVoice.SynthesisData data = voice.getSynthesisData();
+        assertSame(data.getDatabase(), voice.getDatabase());
+        assertSame(data.getUnitSelector(), voice.getUnitSelector());
+        assertSame(data.getConcatenator(), voice.getConcatenator());
+        assertNotNull(voice.getF0Trees());
+        assertEquals(1, voice.loads.get());
+    }
+
+    @Test
+    public void idleVoicesAreUnloadedAndLoadedAgain() throws Exception
+    {
+        TestVoice voice = newVoice();
+        assertSame(voice, Voice.getVoice(voice.getName()));
+        UnitSelectionVoice.SynthesisData data = voice.getSynthesisData();
+        assertTrue(VoiceDataManager.getLoadedVoices().contains(voice));
+        // not idle yet:
+        VoiceDataManager.unloadIdleVoices(voice.getLastUsed() + VoiceDataManager.getIdleTime() / 2);
+        assertTrue(voice.isDataLoaded());
+        VoiceDataManager.unloadIdleVoices(voice.getLastUsed() + VoiceDataManager.getIdleTime() + 1);
+        assertFalse(voice.isDataLoaded());
+        assertFalse(VoiceDataManager.getLoadedVoices().contains(voice));
+        // the data held by a request is still complete:
+        assertNotNull(data.getDatabase());
+        assertSame(data.getDatabase(), ((TestSelector) data.getUnitSelector()).getDatabase());
+
+        UnitSelectionVoice.SynthesisData reloaded = voice.getSynthesisData();
+        assertTrue(voice.isDataLoaded());
+        assertEquals(2, voice.loads.get());
+        assertTrue(reloaded != data);
+        assertTrue(reloaded.getDatabase() != data.getDatabase());
+    }
+
+    @Test
+    public void failedLoadFailsAtLookup() throws Exception
+    {
+        TestVoice voice = newVoice();
+        voice.fail = true;
+        try {
+            Voice.getVoice(voice.getName());
+            throw new AssertionError("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof MaryConfigurationException);
+        }
+        assertFalse(voice.isDataLoaded());
+    }
+
+    @Test
+    public void concurrentUnloadKeepsDataConsistent() throws Exception
+    {
+        final TestVoice voice = newVoice();
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final AtomicReference<Throwable> problem = new AtomicReference<Throwable>();
+        Thread unloader = new Thread() {
+            public void run() {
+                while (!stop.get()) {
+                    voice.unloadData();
+                    Thread.yield();
+                }
+            }
+        };
+        List<Thread> readers = new ArrayList<Thread>();
+        for (int t=0; t<4; t++) {
+            readers.add(new Thread() {
+                public void run() {
+                    try {
+                        for (int i=0; i<2000; i++) {
+                            assertNotNull(voice.getDatabase());
+                            assertNotNull(voice.getUnitSelector());
+                            assertNotNull(voice.getF0Trees());
+                            UnitSelectionVoice.SynthesisData data = voice.getSynthesisData();
+                            assertSame(data.getDatabase(), ((TestSelector) data.getUnitSelector()).getDatabase());
+                            assertSame(data.getDatabase(), ((TestConcatenator) data.getConcatenator()).database);
+                        }
+                    } catch (Throwable e) {
+                        problem.compareAndSet(null, e);
+                    }
+                }
+            });
+        }
+        unloader.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        stop.set(true);
+        unloader.join();
+        if (problem.get() != null) {
+            throw new AssertionError(problem.get());
+        }
+        assertTrue(voice.loads.get() > 1);
+    }
+
+    /**
+     * A unit selection voice without files, whose data is made up on loading.
+     */
+    private static class TestVoice extends UnitSelectionVoice
+    {
+        final AtomicInteger loads = new AtomicInteger();
+        volatile boolean fail = false;
+
+        TestVoice(String name) throws MaryConfigurationException
+        {
+            super(name, LOCALE, Voice.AF16000, null, Voice.FEMALE, "general");
+        }
+
+        @Override
+        protected SynthesisData loadSynthesisData() throws MaryConfigurationException
+        {
+            if (fail) {
+                throw new MaryConfigurationException("Cannot load test voice");
+            }
+            loads.incrementAndGet();
+            UnitDatabase database = new UnitDatabase();
+            try {
+                TestSelector selector = new TestSelector();
+                selector.load(database, 0.33f, 10);
+                TestConcatenator concatenator = new TestConcatenator();
+                concatenator.load(database);
+                return new SynthesisData(database, selector, concatenator, new CART[3]);
+            } catch (Exception e) {
+                throw new MaryConfigurationException("Cannot create unit selector", e);
+            }
+        }
+    }
+
+    private static class TestSelector extends UnitSelector
+    {
+        TestSelector() throws Exception
+        {
+        }
+
+        UnitDatabase getDatabase()
+        {
+            return database;
+        }
+    }
+
+    private static class TestConcatenator implements UnitConcatenator
+    {
+        UnitDatabase database;
+
+        public void load(UnitDatabase db)
+        {
+            database = db;
+        }
+
+        public AudioInputStream getAudio(List<SelectedUnit> units) throws IOException
+        {
+            throw new IOException("No audio in test voice");
+        }
+
+        public AudioFormat getAudioFormat()
+        {
+            return Voice.AF16000;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.concat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import marytts.util.data.BufferedDoubleDataSource;
+import marytts.util.data.Datagram;
+import marytts.util.data.audio.DDSAudioInputStream;
+
+import org.junit.Test;
+
+public class OverlapUnitConcatenatorTest
+{
+    private static final AudioFormat FORMAT = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 16000, 16, 1, 2, 16000, true);
+
+    @Test
+    public void directConcatenationSoundsTheSame() throws Exception
+    {
+        Random random = new Random(9);
+        Datagram[][] datagrams = new Datagram[12][];
+        Datagram[] rightContexts = new Datagram[datagrams.length];
+        for (int i=0; i<datagrams.length; i++) {
+            datagrams[i] = new Datagram[1 + random.nextInt(5)];
+            for (int j=0; j<datagrams[i].length; j++) {
+                datagrams[i][j] = randomFrame(random);
+            }
+            if (random.nextBoolean()) {
+                rightContexts[i] = randomFrame(random);
+            }
+        }
+        OverlapUnitConcatenator concatenator = new OverlapUnitConcatenator();
+        concatenator.audioformat = FORMAT;
+        byte[] direct = readAll(concatenator.overlapAdd(datagrams, rightContexts));
+        byte[] viaDoubles = readAll(new DDSAudioInputStream(new BufferedDoubleDataSource(
+                new DatagramOverlapDoubleDataSource(datagrams, rightContexts)), FORMAT));
+        assertEquals(viaDoubles.length, direct.length);
+        for (int i=0; i<direct.length; i+=2) {
+            int expected = viaDoubles[i]<<8 | viaDoubles[i+1]&0xFF;
+            int actual = direct[i]<<8 | direct[i+1]&0xFF;
+            // the double data sources scale samples by 32767/32768
+            assertEquals(expected, actual, 1.5);
+        }
+    }
+
+    @Test
+    public void buffersAreReusedAfterReading() throws Exception
+    {
+        byte[] buffer = AudioBufferPool.acquire(1000);
+        AudioInputStream audio = AudioBufferPool.createAudioInputStream(buffer, 1000, FORMAT);
+        assertEquals(1000, readAll(audio).length);
+        assertSame(buffer, AudioBufferPool.acquire(900));
+        assertTrue(AudioBufferPool.acquire(900) != buffer);
+    }
+
+    private static Datagram randomFrame(Random random)
+    {
+        int numSamples = 20 + random.nextInt(200);
+        byte[] data = new byte[2 * numSamples];
+        for (int i=0; i<numSamples; i++) {
+            // at most half the amplitude, so that overlapping samples do not clip
+            int sample = random.nextInt(32768) - 16384;
+            data[2*i] = (byte) (sample>>8);
+            data[2*i+1] = (byte) (sample&0xFF);
+        }
+        return new Datagram(numSamples, data);
+    }
+
+    private static byte[] readAll(InputStream in) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] b = new byte[777];
+        int n;
+        while ((n = in.read(b)) != -1) {
+            out.write(b, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
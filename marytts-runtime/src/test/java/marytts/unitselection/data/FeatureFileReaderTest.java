@@ -0,0 +1,95 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureVector;
+import marytts.util.FeatureUtils;
+import marytts.util.data.MaryHeader;
+import marytts.util.io.FileUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FeatureFileReaderTest
+{
+    private File featureFile;
+    private FeatureVector[] expected;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        String targetfeatures = FileUtils.getStreamAsString(FeatureUtils.class.getResourceAsStream("helloworld.targetfeatures"), "UTF-8");
+        FeatureDefinition def = FeatureUtils.readFeatureDefinition(targetfeatures);
+        expected = FeatureUtils.readFeatureVectors(targetfeatures);
+        featureFile = File.createTempFile("features", ".mry");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(featureFile)));
+        new MaryHeader(MaryHeader.UNITFEATS).writeTo(out);
+        def.writeBinaryTo(out);
+        out.writeInt(expected.length);
+        for (FeatureVector fv : expected) {
+            fv.writeTo(out);
+        }
+        out.close();
+    }
+
+    @After
+    public void tearDown()
+    {
+        featureFile.delete();
+    }
+
+    @Test
+    public void mappedReaderReturnsSameFeatures() throws Exception
+    {
+        FeatureFileReader eager = new FeatureFileReader(featureFile.getPath(), false);
+        FeatureFileReader mapped = new FeatureFileReader(featureFile.getPath(), true);
+        assertFalse(eager.isMapped());
+        assertTrue(mapped.isMapped());
+        assertEquals(expected.length, mapped.getNumberOfUnits());
+        FeatureDefinition def = mapped.getFeatureDefinition();
+        int numByte = def.getNumberOfByteFeatures();
+        int numShort = def.getNumberOfShortFeatures();
+        int numFeatures = def.getNumberOfFeatures();
+        for (int u=0; u<expected.length; u++) {
+            FeatureVector fv = eager.getFeatureVector(u);
+            assertEquals(fv.toString(), mapped.getFeatureVector(u).toString());
+            for (int f=0; f<numFeatures; f++) {
+                if (f < numByte) {
+                    assertEquals(fv.getByteFeature(f), mapped.getByteFeature(u, f));
+                } else if (f < numByte + numShort) {
+                    assertEquals(fv.getShortFeature(f), mapped.getShortFeature(u, f));
+                } else {
+                    assertEquals(fv.getContinuousFeature(f), mapped.getContinuousFeature(u, f), 0);
+                }
+            }
+        }
+    }
+}
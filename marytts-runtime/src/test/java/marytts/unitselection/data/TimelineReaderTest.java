@@ -0,0 +1,177 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.Vector;
+
+import marytts.util.data.Datagram;
+import marytts.util.data.MaryHeader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimelineReaderTest
+{
+    private static final int SAMPLE_RATE = 16000;
+    private static final int IDX_INTERVAL = 800;
+
+    private File timelineFile;
+    private Datagram[] datagrams;
+    // the position in the file behind each datagram:
+    private long[] datagramEnds;
+    private long totalDuration;
+
+    /**
+     * Write a timeline with datagrams of very different sizes, some of them larger than
+     * the blocks read piecewise and some longer than several index intervals,
+     * in the same way as the timeline writer of the voice import tools.
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        Random random = new Random(5);
+        datagrams = new Datagram[3000];
+        for (int i=0; i<datagrams.length; i++) {
+            int size = random.nextInt(10) == 0 ? random.nextInt(200000) : random.nextInt(600);
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            long duration = random.nextInt(20) == 0 ? 0 : 1 + random.nextInt(400);
+            if (random.nextInt(50) == 0) {
+                duration = 3 * IDX_INTERVAL + random.nextInt(3 * IDX_INTERVAL);
+            }
+            datagrams[i] = new Datagram(duration, data);
+        }
+        datagramEnds = new long[datagrams.length];
+        timelineFile = File.createTempFile("timeline", ".mry");
+        RandomAccessFile raf = new RandomAccessFile(timelineFile, "rw");
+        new MaryHeader(MaryHeader.TIMELINE).writeTo(raf);
+        new TimelineReader.ProcHeader("test").dump(raf);
+        raf.writeInt(SAMPLE_RATE);
+        raf.writeLong(datagrams.length);
+        long datagramsBytePos = raf.getFilePointer() + 16;
+        raf.writeLong(datagramsBytePos);
+        raf.writeLong(0);
+        Vector<TimelineReader.IdxField> indexFields = new Vector<TimelineReader.IdxField>();
+        long prevBytePos = datagramsBytePos;
+        long prevTime = 0;
+        long time = 0;
+        for (int i=0; i<datagrams.length; i++) {
+            Datagram d = datagrams[i];
+            while (indexFields.size() * (long) IDX_INTERVAL < time) {
+                indexFields.add(new TimelineReader.IdxField(prevBytePos, prevTime));
+            }
+            prevBytePos = raf.getFilePointer();
+            prevTime = time;
+            d.write(raf);
+            datagramEnds[i] = raf.getFilePointer();
+            time += d.getDuration();
+        }
+        totalDuration = time;
+        long timeIdxBytePos = raf.length();
+        new TimelineReader.Index(IDX_INTERVAL, indexFields).dump(raf);
+        raf.seek(datagramsBytePos - 8);
+        raf.writeLong(timeIdxBytePos);
+        raf.close();
+    }
+
+    @After
+    public void tearDown()
+    {
+        timelineFile.delete();
+        System.clearProperty("unitselection.timeline.cache.megabytes");
+    }
+
+    @Test
+    public void piecewiseReadingIsSameAsMapped() throws Exception
+    {
+        TimelineReader mapped = new TimelineReader(timelineFile.getPath(), true);
+        System.setProperty("unitselection.timeline.cache.megabytes", "0");
+        compare(mapped, new TimelineReader(timelineFile.getPath(), false), false);
+        // a cache which is too small for the blocks of some spans:
+        System.setProperty("unitselection.timeline.cache.megabytes", "1");
+        compare(mapped, new TimelineReader(timelineFile.getPath(), false), true);
+        System.setProperty("unitselection.timeline.cache.megabytes", "64");
+        compare(mapped, new TimelineReader(timelineFile.getPath(), false), true);
+    }
+
+    @Test
+    public void allDatagramsCanBeRead() throws Exception
+    {
+        System.setProperty("unitselection.timeline.cache.megabytes", "2");
+        TimelineReader piecewise = new TimelineReader(timelineFile.getPath(), false);
+        Datagram[] all = piecewise.getDatagrams(0, datagrams.length, SAMPLE_RATE, null);
+        assertArrayEquals(datagrams, all);
+        assertEquals(totalDuration, piecewise.getTotalDuration());
+    }
+
+    @Test
+    public void spanEndsAreBehindTheirLastDatagram() throws Exception
+    {
+        TimelineReader reader = new TimelineReader(timelineFile.getPath(), true);
+        long time = 0;
+        for (int i=0; i<datagrams.length; i++) {
+            long duration = datagrams[i].getDuration();
+            if (duration == 0) continue;
+            // spans ending at the first sample, in the middle, and at the last sample of the datagram:
+            for (long end : new long[] {time + 1, time + duration / 2 + 1, time + duration}) {
+                assertTrue(reader.getBytePosAfter(end) >= datagramEnds[i]);
+            }
+            time += duration;
+        }
+    }
+
+    private void compare(TimelineReader expected, TimelineReader actual, boolean prefetch) throws Exception
+    {
+        Random random = new Random(6);
+        for (int n=0; n<50; n++) {
+            int numSpans = 1 + random.nextInt(20);
+            long[] starts = new long[numSpans];
+            long[] durations = new long[numSpans];
+            for (int i=0; i<numSpans; i++) {
+                starts[i] = (long) (random.nextDouble() * totalDuration);
+                durations[i] = random.nextInt(3000);
+            }
+            // a different sample rate, as for units:
+            int sampleRate = random.nextBoolean() ? SAMPLE_RATE : SAMPLE_RATE / 2;
+            for (int i=0; i<numSpans; i++) {
+                starts[i] = starts[i] * sampleRate / SAMPLE_RATE;
+            }
+            if (prefetch) {
+                actual.prefetch(starts, durations, sampleRate);
+            }
+            for (int i=0; i<numSpans; i++) {
+                long[] expectedOffset = new long[1];
+                long[] actualOffset = new long[1];
+                assertArrayEquals(expected.getDatagrams(starts[i], durations[i], sampleRate, expectedOffset),
+                        actual.getDatagrams(starts[i], durations[i], sampleRate, actualOffset));
+                assertEquals(expectedOffset[0], actualOffset[0]);
+                assertEquals(expected.getDatagram(starts[i]), actual.getDatagram(starts[i]));
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Random;
+
+import marytts.datatypes.MaryXML;
+import marytts.util.data.Datagram;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public class UnitDatabaseBlacklistTest
+{
+    private static final String[] BASENAMES = new String[] {
+        "a0001", "a0002", "a0010", "b0001", "a0003", "", "b0002"
+    };
+    private static final long[] DURATIONS = new long[] { 100, 50, 0, 80, 120, 30, 60 };
+
+    @Test
+    public void sameAsBasenameLookup() throws Exception
+    {
+        UnitDatabase database = createDatabase(new Random(3));
+        String[] blacklists = new String[] { "a0001", "a0001 b0002", "a000", "x", "b0001,a0003" };
+        for (String blacklist : blacklists) {
+            Document doc = MaryXML.newDocument();
+            Element s = MaryXML.appendChildElement(doc.getDocumentElement(), MaryXML.SENTENCE);
+            s.setAttribute("blacklist", blacklist);
+            Element phone = MaryXML.appendChildElement(MaryXML.appendChildElement(s, MaryXML.TOKEN), MaryXML.PHONE);
+            BitSet blacklisted = database.getBlacklistedSentences(phone);
+            UnitFileReader units = database.getUnitFileReader();
+            for (int i=0; i<units.getNumberOfUnits(); i++) {
+                Unit unit = units.getUnit(i);
+                assertEquals(blacklist+" "+unit, blacklist.contains(database.getFilename(unit)),
+                        database.isBlacklisted(unit, blacklisted));
+            }
+        }
+    }
+
+    @Test
+    public void nothingBlacklistedWithoutAttribute() throws Exception
+    {
+        UnitDatabase database = createDatabase(new Random(4));
+        Document doc = MaryXML.newDocument();
+        Element s = MaryXML.appendChildElement(doc.getDocumentElement(), MaryXML.SENTENCE);
+        assertNull(database.getBlacklistedSentences(MaryXML.appendChildElement(s, MaryXML.TOKEN)));
+        assertNull(database.getBlacklistedSentences(null));
+    }
+
+    /**
+     * A database with units at random times in the sentences of the basename timeline.
+     */
+    private static UnitDatabase createDatabase(Random random)
+    {
+        long total = 0;
+        for (long d : DURATIONS) total += d;
+        Unit[] units = new Unit[200];
+        long time = 0;
+        for (int i=0; i<units.length; i++) {
+            // units may start at sentence boundaries, and beyond the end of the timeline
+            int duration = random.nextInt(5) == 0 ? 0 : random.nextInt(10);
+            units[i] = new Unit(time, duration, i);
+            time = random.nextInt(4) == 0 ? random.nextInt((int) total + 20) : time + duration;
+        }
+        UnitFileReader unitReader = new UnitFileReader() {
+            public int getNumberOfUnits() { return units.length; }
+        };
+        unitReader.units = units;
+        UnitDatabase database = new UnitDatabase();
+        database.load(null, null, unitReader, null, null, new BasenameTimeline(), 0);
+        return database;
+    }
+
+    /**
+     * A basename timeline held in memory, which looks up datagrams by time in the same way as the timeline reader.
+     */
+    private static class BasenameTimeline extends TimelineReader
+    {
+        public long getNumDatagrams()
+        {
+            return BASENAMES.length;
+        }
+
+        public int getSampleRate()
+        {
+            return 1000;
+        }
+
+        public Datagram getDatagram(long targetTimeInSamples) throws IOException
+        {
+            long time = 0;
+            int found = -1;
+            for (int i=0; i<BASENAMES.length && time <= targetTimeInSamples; i++) {
+                found = i;
+                time += DURATIONS[i];
+            }
+            if (time <= targetTimeInSamples) {
+                throw new IOException("Time "+targetTimeInSamples+" is beyond the end of the timeline");
+            }
+            return datagram(found);
+        }
+
+        public Datagram[] getDatagrams(long targetTimeInSamples, int number, int reqSampleRate, long[] returnOffset)
+        {
+            Datagram[] datagrams = new Datagram[number];
+            for (int i=0; i<number; i++) {
+                datagrams[i] = datagram(i);
+            }
+            return datagrams;
+        }
+
+        private Datagram datagram(int i)
+        {
+            try {
+                return new Datagram(DURATIONS[i], BASENAMES[i].getBytes("UTF-8"));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringReader;
+import java.util.Random;
+
+import marytts.features.ByteValuedFeatureProcessor;
+import marytts.features.ContinuousFeatureProcessor;
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureMatrix;
+import marytts.features.FeatureProcessorManager;
+import marytts.features.FeatureVector;
+import marytts.features.MaryFeatureProcessor;
+import marytts.features.ShortValuedFeatureProcessor;
+import marytts.unitselection.data.FeatureFileReader;
+import marytts.unitselection.data.Unit;
+import marytts.util.data.MaryHeader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FFRTargetCostFunctionTest
+{
+    private static final String DEFINITION = "ByteValuedFeatureProcessors\n"
+        + "1 | phone _ a b c\n"
+        + "0 | unweighted 0 1 2\n"
+        + "2 | stressed 0 1\n"
+        + "ShortValuedFeatureProcessors\n"
+        + "1.5 | short0 s0 s1 s2 s3 s4\n"
+        + "ContinuousFeatureProcessors\n"
+        + "1 linear | float0\n"
+        + "0.5 linear | float1\n"
+        + "FeatureSimilarity\n"
+        + "phone _ a b c\n"
+        + "_\n"
+        + "a 0.5\n"
+        + "b 0.2 0.3\n"
+        + "c 0.1 0.4 0.6\n";
+    private static final int NUM_UNITS = 200;
+
+    private FeatureDefinition def;
+    private File featureFile;
+    private Random random = new Random(17);
+
+    @Before
+    public void setUp() throws Exception
+    {
+        def = new FeatureDefinition(new BufferedReader(new StringReader(DEFINITION)), true);
+        featureFile = File.createTempFile("features", ".mry");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(featureFile)));
+        new MaryHeader(MaryHeader.UNITFEATS).writeTo(out);
+        def.writeBinaryTo(out);
+        out.writeInt(NUM_UNITS);
+        for (int i=0; i<NUM_UNITS; i++) {
+            randomVector(i).writeTo(out);
+        }
+        out.close();
+    }
+
+    @After
+    public void tearDown()
+    {
+        featureFile.delete();
+    }
+
+    @Test
+    public void batchCostsAreSameAsSingleCosts() throws Exception
+    {
+        for (boolean mapped : new boolean[] {false, true}) {
+            for (boolean cached : new boolean[] {false, true}) {
+                FFRTargetCostFunction tcf = load(mapped);
+                if (cached) {
+                    tcf.costCache = new TargetCostCache(150);
+                }
+                compareCosts(tcf);
+            }
+        }
+    }
+
+    @Test
+    public void cacheFindsRepeatedTargets() throws Exception
+    {
+        FFRTargetCostFunction tcf = load(false);
+        tcf.costCache = new TargetCostCache(1000);
+        Target target = new Target("a", null);
+        target.setFeatureVector(randomVector(0));
+        Unit[] units = randomUnits(50);
+        double[] first = new double[units.length];
+        double[] second = new double[units.length];
+        tcf.cost(target, units, first);
+        Target sameFeatures = new Target("a", null);
+        sameFeatures.setFeatureVector(target.getFeatureVector());
+        tcf.cost(sameFeatures, units, second);
+        assertEquals(units.length, tcf.costCache.getHits());
+        for (int i=0; i<units.length; i++) {
+            assertEquals(first[i], second[i], 0);
+        }
+        assertTrue(tcf.costCache.size() <= units.length);
+    }
+
+    @Test
+    public void concurrentStoresKeepAllCosts() throws Exception
+    {
+        final TargetCostCache cache = new TargetCostCache(10000);
+        final TargetCostCache.Signature signature = new TargetCostCache.Signature(new byte[] {1, 2, 3});
+        Thread[] threads = new Thread[4];
+        for (int t=0; t<threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    // each thread stores the costs of its own units, one at a time
+                    for (int i=offset; i<2000; i+=4) {
+                        cache.store(signature, new Unit[] {new Unit(i, 1, i)}, new double[] {i});
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(2000, cache.size());
+        Unit[] units = new Unit[2000];
+        for (int i=0; i<units.length; i++) {
+            units[i] = new Unit(i, 1, i);
+        }
+        double[] costs = new double[units.length];
+        assertEquals(units.length, cache.lookup(signature, units, costs, new boolean[units.length]));
+        for (int i=0; i<units.length; i++) {
+            assertEquals(i, costs[i], 0);
+        }
+    }
+
+    private void compareCosts(FFRTargetCostFunction tcf)
+    {
+        int numTargets = 40;
+        FeatureMatrix matrix = new FeatureMatrix(def, numTargets);
+        matrix.setNumberOfRows(numTargets);
+        for (int t=0; t<numTargets; t++) {
+            Target target = new Target("t", null);
+            // a few distinct feature vectors, so that the cache is used
+            FeatureVector fv = randomVector(t % 7);
+            if (t % 2 == 0) {
+                target.setFeatureVector(fv);
+            } else {
+                matrix.setFeatureVector(t, fv);
+                target.setFeatureRow(matrix, t);
+            }
+            Unit[] units = randomUnits(1 + random.nextInt(60));
+            double[] costs = new double[units.length];
+            tcf.cost(target, units, costs);
+            for (int i=0; i<units.length; i++) {
+                assertEquals(tcf.cost(target, units[i]), costs[i], 0);
+            }
+        }
+    }
+
+    private FFRTargetCostFunction load(boolean mapped) throws Exception
+    {
+        FFRTargetCostFunction tcf = new FFRTargetCostFunction();
+        tcf.load(new FeatureFileReader(featureFile.getPath(), mapped),
+                new ByteArrayInputStream(DEFINITION.getBytes("UTF-8")), new StubFeatureProcessorManager());
+        return tcf;
+    }
+
+    private Unit[] randomUnits(int n)
+    {
+        Unit[] units = new Unit[n];
+        for (int i=0; i<n; i++) {
+            int index = random.nextInt(NUM_UNITS);
+            units[i] = new Unit(index * 1000L, 1000, index);
+        }
+        return units;
+    }
+
+    private FeatureVector randomVector(int seed)
+    {
+        Random r = new Random(seed);
+        byte[] bytes = new byte[3];
+        for (int i=0; i<bytes.length; i++) {
+            bytes[i] = (byte) r.nextInt(def.getNumberOfValues(i));
+        }
+        short[] shorts = new short[] { (short) r.nextInt(def.getNumberOfValues(3)) };
+        float[] floats = new float[] { r.nextFloat(), r.nextInt(5) == 0 ? Float.NaN : r.nextFloat() };
+        return new FeatureVector(bytes, shorts, floats, seed);
+    }
+
+    /**
+     * Provides feature processors for the feature names in the definition,
+     * which are not used for computing target features here.
+     */
+    private static class StubFeatureProcessorManager extends FeatureProcessorManager
+    {
+        @SuppressWarnings("deprecation")
+        StubFeatureProcessorManager()
+        {
+            super();
+        }
+
+        @Override
+        public MaryFeatureProcessor getFeatureProcessor(final String name)
+        {
+            if (name.startsWith("short")) {
+                return new ShortValuedFeatureProcessor() {
+                    public String getName() { return name; }
+                    public String[] getValues() { return new String[0]; }
+                    public short process(Target target) { return 0; }
+                };
+            } else if (name.startsWith("float")) {
+                return new ContinuousFeatureProcessor() {
+                    public String getName() { return name; }
+                    public float process(Target target) { return 0; }
+                };
+            }
+            return new ByteValuedFeatureProcessor() {
+                public String getName() { return name; }
+                public String[] getValues() { return new String[0]; }
+                public byte process(Target target) { return 0; }
+            };
+        }
+    }
+}
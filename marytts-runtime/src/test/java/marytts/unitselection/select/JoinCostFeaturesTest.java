@@ -0,0 +1,97 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import marytts.util.data.MaryHeader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JoinCostFeaturesTest
+{
+    private static final int NUM_UNITS = 5;
+    private static final int NUM_FEATURES = 3;
+
+    private File joinFile;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        joinFile = File.createTempFile("joinCostFeatures", ".mry");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(joinFile)));
+        new MaryHeader(MaryHeader.JOINFEATS).writeTo(out);
+        out.writeInt(NUM_FEATURES);
+        for (int i=0; i<NUM_FEATURES; i++) {
+            out.writeFloat(1f / NUM_FEATURES);
+            out.writeUTF("linear");
+        }
+        out.writeInt(NUM_UNITS);
+        for (int u=0; u<NUM_UNITS; u++) {
+            for (int i=0; i<2*NUM_FEATURES; i++) {
+                out.writeFloat(u == 2 && i == 1 ? Float.NaN : 10 * u + i);
+            }
+        }
+        out.close();
+    }
+
+    @After
+    public void tearDown()
+    {
+        System.clearProperty("unitselection.joincostfile.mapped");
+        joinFile.delete();
+    }
+
+    @Test
+    public void mappedFeaturesGiveSameCosts() throws Exception
+    {
+        JoinCostFeatures heap = new JoinCostFeatures(joinFile.getPath());
+        System.setProperty("unitselection.joincostfile.mapped", "true");
+        JoinCostFeatures mapped = new JoinCostFeatures(joinFile.getPath());
+        assertFalse(heap.isMapped());
+        assertTrue(mapped.isMapped());
+        assertEquals(NUM_UNITS, mapped.getNumberOfUnits());
+        for (int u=0; u<NUM_UNITS; u++) {
+            for (int i=0; i<NUM_FEATURES; i++) {
+                float left = u == 2 && i == 1 ? Float.NaN : 10 * u + i;
+                assertEquals(left, heap.getLeftJCF(u, i), 0);
+                assertEquals(left, mapped.getLeftJCF(u)[i], 0);
+                assertEquals(10 * u + NUM_FEATURES + i, mapped.getRightJCF(u, i), 0);
+                assertEquals(10 * u + NUM_FEATURES + i, heap.getRightJCF(u)[i], 0);
+            }
+            for (int v=0; v<NUM_UNITS; v++) {
+                assertEquals(heap.cost(u, v), mapped.cost(u, v), 1e-9);
+            }
+        }
+        // right features of unit 0 are 3, 4, 5; left features of unit 1 are 10, 11, 12
+        assertEquals(7, heap.cost(0, 1), 1e-6);
+        // the NaN in the left features of unit 2 does not count
+        assertEquals((17 + 17) / 3., heap.cost(0, 2), 1e-6);
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import marytts.unitselection.data.Unit;
+import marytts.util.data.MaryHeader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PrecompiledJoinCostReaderTest
+{
+    private static final int NUM_UNITS = 8;
+
+    // for each left unit: the right units and their costs
+    private static final int[] LEFT = { 5, 1, 3 };
+    private static final int[][] RIGHT = { { 0, 2, 4, 7 }, { 6, 0, 3 }, { 2, 4, 2 } };
+    private static final float[][] COST = { { 1f, 2f, 3f, 4f }, { 0.5f, 1.5f, 2.5f }, { 3f, 1f, 2f } };
+
+    private File costFile;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        costFile = File.createTempFile("joinCosts", ".mry");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(costFile)));
+        new MaryHeader(MaryHeader.PRECOMPUTED_JOINCOSTS).writeTo(out);
+        out.writeInt(LEFT.length);
+        for (int i=0; i<LEFT.length; i++) {
+            out.writeInt(LEFT[i]);
+            out.writeInt(RIGHT[i].length);
+            for (int j=0; j<RIGHT[i].length; j++) {
+                out.writeInt(RIGHT[i][j]);
+                out.writeFloat(COST[i][j]);
+            }
+        }
+        out.close();
+    }
+
+    @After
+    public void tearDown()
+    {
+        System.clearProperty("unitselection.precomputedjoincosts.mapped");
+        costFile.delete();
+    }
+
+    @Test
+    public void mappedCostsAreSameAsInHeap() throws Exception
+    {
+        PrecompiledJoinCostReader heap = new PrecompiledJoinCostReader(costFile.getPath());
+        System.setProperty("unitselection.precomputedjoincosts.mapped", "true");
+        PrecompiledJoinCostReader mapped = new PrecompiledJoinCostReader(costFile.getPath());
+        assertFalse(heap.isMapped());
+        assertTrue(mapped.isMapped());
+        for (int l=0; l<NUM_UNITS; l++) {
+            Unit left = new Unit(0, 1, l);
+            for (int r=0; r<NUM_UNITS; r++) {
+                Unit right = new Unit(0, 1, r);
+                assertEquals(heap.cost(null, left, null, right), mapped.cost(null, left, null, right), 0);
+            }
+        }
+        // sorted block, unsorted block, and a right unit occurring twice:
+        assertEquals(4f, mapped.cost(null, new Unit(0, 1, 5), null, new Unit(0, 1, 7)), 0);
+        assertEquals(1.5f, mapped.cost(null, new Unit(0, 1, 1), null, new Unit(0, 1, 0)), 0);
+        assertEquals(2f, mapped.cost(null, new Unit(0, 1, 3), null, new Unit(0, 1, 2)), 0);
+        assertEquals(Double.POSITIVE_INFINITY, mapped.cost(null, new Unit(0, 1, 5), null, new Unit(0, 1, 1)), 0);
+        assertEquals(Double.POSITIVE_INFINITY, mapped.cost(null, new Unit(0, 1, 2), null, new Unit(0, 1, 2)), 0);
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select.viterbi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.List;
+
+import marytts.unitselection.select.SelectedUnit;
+
+import org.junit.Test;
+
+public class ArrayViterbiTest
+{
+    @Test
+    public void sameUnitsAsViterbi() throws Exception
+    {
+        int[] beamSizes = new int[] {1, 3, 10, 40, -1};
+        for (long seed=0; seed<20; seed++) {
+            SyntheticUnitDatabase db = new SyntheticUnitDatabase(15, 30, 200, seed);
+            for (int beamSize : beamSizes) {
+                Viterbi original = new Viterbi(db.getTargets(), db, 0.4f, beamSize);
+                original.apply();
+                Viterbi arrays = new ArrayViterbi(db.getTargets(), db, 0.4f, beamSize);
+                arrays.apply();
+                assertSameUnits("seed "+seed+", beam size "+beamSize, original.getSelectedUnits(), arrays.getSelectedUnits());
+            }
+        }
+    }
+
+    private static void assertSameUnits(String message, List<SelectedUnit> expected, List<SelectedUnit> actual)
+    {
+        assertNotNull(message, actual);
+        assertEquals(message, expected.size(), actual.size());
+        for (int i=0; i<expected.size(); i++) {
+            assertEquals(message+", unit "+i, expected.get(i).getUnit().index, actual.get(i).getUnit().index);
+            assertEquals(message+", target "+i, expected.get(i).getTarget(), actual.get(i).getTarget());
+        }
+    }
+}
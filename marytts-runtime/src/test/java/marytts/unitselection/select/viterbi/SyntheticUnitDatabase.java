@@ -0,0 +1,120 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select.viterbi;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import marytts.features.FeatureDefinition;
+import marytts.features.FeatureProcessorManager;
+import marytts.features.FeatureVector;
+import marytts.unitselection.data.FeatureFileReader;
+import marytts.unitselection.data.Unit;
+import marytts.unitselection.data.UnitDatabase;
+import marytts.unitselection.select.JoinCostFunction;
+import marytts.unitselection.select.Target;
+import marytts.unitselection.select.TargetCostFunction;
+
+/**
+ * A unit database with random units and costs, for comparing Viterbi searches
+ * without loading a voice. Costs are taken from a small set of values,
+ * so that there are many ties between candidates and between paths.
+ */
+class SyntheticUnitDatabase extends UnitDatabase
+{
+    private Map<Target, Integer> targetIndices = new IdentityHashMap<Target, Integer>();
+    private Unit[][] candidateUnits;
+    private List<Target> targets = new ArrayList<Target>();
+
+    /**
+     * @param numTargets the number of targets
+     * @param numCandidates the number of candidates for each target
+     * @param numUnits the number of units from which candidates are drawn
+     * @param seed seed for the random numbers
+     */
+    SyntheticUnitDatabase(int numTargets, int numCandidates, int numUnits, long seed)
+    {
+        Random random = new Random(seed);
+        candidateUnits = new Unit[numTargets][numCandidates];
+        for (int t=0; t<numTargets; t++) {
+            Target target = new Target("t"+t, null);
+            targets.add(target);
+            targetIndices.put(target, t);
+            for (int c=0; c<numCandidates; c++) {
+                int index = random.nextInt(numUnits);
+                candidateUnits[t][c] = new Unit(index * 1000L, 1000, index);
+            }
+        }
+        targetCostFunction = new SyntheticTargetCost();
+        joinCostFunction = new SyntheticJoinCost();
+    }
+
+    List<Target> getTargets()
+    {
+        return targets;
+    }
+
+    @Override
+    public List<ViterbiCandidate> getCandidates(Target target)
+    {
+        Unit[] units = candidateUnits[targetIndices.get(target)];
+        List<ViterbiCandidate> candidates = new ArrayList<ViterbiCandidate>(units.length);
+        for (Unit u : units) {
+            candidates.add(new ViterbiCandidate(target, u, targetCostFunction));
+        }
+        return candidates;
+    }
+
+    private class SyntheticTargetCost implements TargetCostFunction
+    {
+        public double cost(Target target, Unit unit)
+        {
+            return ((unit.index * 7919 + targetIndices.get(target) * 104729) % 13) / 4.;
+        }
+
+        public String getFeature(Unit unit, String featureName)
+        {
+            return String.valueOf(unit.index);
+        }
+
+        public void load(String featureFileName, InputStream weightsStream, FeatureProcessorManager featProc) {}
+        public void load(FeatureFileReader featureFileReader, InputStream weightsStream, FeatureProcessorManager featProc) {}
+        public void computeTargetFeatures(Target target) {}
+        public FeatureDefinition getFeatureDefinition() { return null; }
+        public FeatureVector getFeatureVector(Unit unit) { return null; }
+        public FeatureVector[] getFeatureVectors() { return null; }
+    }
+
+    private static class SyntheticJoinCost implements JoinCostFunction
+    {
+        public double cost(Target t1, Unit u1, Target t2, Unit u2)
+        {
+            if (u1.index + 1 == u2.index) return 0;
+            return 1 + ((u1.index * 31 + u2.index * 17) % 11) / 3.;
+        }
+
+        public void init(String configPrefix) {}
+        public void load(String joinFileName, InputStream weightStream, String precompiledCostFileName, float wSignal) {}
+    }
+}
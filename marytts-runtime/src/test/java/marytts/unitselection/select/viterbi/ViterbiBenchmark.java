@@ -0,0 +1,72 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.unitselection.select.viterbi;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * Compares the time taken by {@link Viterbi} and {@link ArrayViterbi} on a synthetic
+ * unit database. This is not run as part of the tests; run it with
+ * <pre>
+ * java -cp target/classes:target/test-classes:... marytts.unitselection.select.viterbi.ViterbiBenchmark [targets] [candidates] [beamsize]
+ * </pre>
+ */
+public class ViterbiBenchmark
+{
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+    private static final int UTTERANCES_PER_ROUND = 20;
+
+    public static void main(String[] args) throws Exception
+    {
+        int numTargets = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int numCandidates = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        int beamSize = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.WARN);
+        SyntheticUnitDatabase db = new SyntheticUnitDatabase(numTargets, numCandidates, 100000, 1);
+        System.out.println(numTargets+" targets, "+numCandidates+" candidates per target, beam size "+beamSize);
+        for (int round=0; round<WARMUP_ROUNDS+ROUNDS; round++) {
+            long pathTime = time(db, false, beamSize);
+            long arrayTime = time(db, true, beamSize);
+            if (round >= WARMUP_ROUNDS) {
+                System.out.printf("Viterbi: %6.2f ms/utterance   ArrayViterbi: %6.2f ms/utterance   speedup %.2f%n",
+                        pathTime / 1e6 / UTTERANCES_PER_ROUND, arrayTime / 1e6 / UTTERANCES_PER_ROUND,
+                        pathTime / (double) arrayTime);
+            }
+        }
+    }
+
+    private static long time(SyntheticUnitDatabase db, boolean arrays, int beamSize) throws Exception
+    {
+        long start = System.nanoTime();
+        for (int i=0; i<UTTERANCES_PER_ROUND; i++) {
+            Viterbi viterbi = arrays ? new ArrayViterbi(db.getTargets(), db, 0.5f, beamSize)
+                    : new Viterbi(db.getTargets(), db, 0.5f, beamSize);
+            viterbi.apply();
+            if (viterbi.getSelectedUnits() == null) {
+                throw new IllegalStateException("No path found");
+            }
+        }
+        return System.nanoTime() - start;
+    }
+}
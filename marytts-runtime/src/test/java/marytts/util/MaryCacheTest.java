@@ -28,8 +28,8 @@ import static org.junit.Assert.assertNull;
 import java.io.File;
 import java.sql.SQLException;
 
-import org.junit.AfterClass;
-import org.junit.BeforeClass;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
 
@@ -39,7 +39,7 @@ import org.junit.Test;
  */
 public class MaryCacheTest
 {
-    private static MaryCache c;
+    private MaryCache c;
     private static File maryCacheFile = new File("tmp/testfiles-deleteme");
     private static String inputtype = "TEXT";
     private static String outputtype = "RAWMARYXML";
@@ -54,8 +54,8 @@ public class MaryCacheTest
     /**
      * @throws java.lang.Exception
      */
-    @BeforeClass
-    public static void setUp() throws Exception {
+    @Before
+    public void setUp() throws Exception {
         c = new MaryCache(maryCacheFile, true);
         c.insertText(inputtype, outputtype, locale, voice, inputtext, targetValue);
         c.insertAudio(inputtype, locale, voice, inputtext, targetAudio);
@@ -66,8 +66,8 @@ public class MaryCacheTest
     /**
      * @throws java.lang.Exception
      */
-    @AfterClass
-    public static void tearDown() throws Exception {
+    @After
+    public void tearDown() throws Exception {
         c.shutdown();
     }
 
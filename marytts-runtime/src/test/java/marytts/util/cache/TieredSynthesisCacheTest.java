@@ -0,0 +1,156 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.util.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TieredSynthesisCacheTest
+{
+    private static File cacheFile = new File("tmp/tieredcache-deleteme");
+    private static String inputtype = "TEXT";
+    private static String outputtype = "RAWMARYXML";
+    private static String locale = "de";
+    private static String voice = "de1";
+    private static String inputtext = "Welcome to the world of speech synthesis";
+    private static String targetValue = "<rawmaryxml/>";
+    private static byte[] targetAudio = new byte[12345];
+    private static String inputtext2 = "Some other input text";
+    private static String targetValue2 = "Two\nlines with ümlauts";
+
+    private TieredSynthesisCache c;
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i=0; i<targetAudio.length; i++) {
+            targetAudio[i] = (byte) i;
+        }
+        c = new TieredSynthesisCache(cacheFile, 1024*1024, 1024*1024, 64*1024, true);
+        c.insertText(inputtype, outputtype, locale, voice, null, null, null, inputtext, targetValue);
+        c.insertAudio(inputtype, locale, voice, null, null, null, inputtext, targetAudio);
+        c.insertText(inputtype, outputtype, locale, voice, null, null, null, inputtext2, targetValue2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        c.shutdown();
+    }
+
+    @Test
+    public void lookupText() throws Exception
+    {
+        assertEquals(targetValue, c.lookupText(inputtype, outputtype, locale, voice, null, null, null, inputtext));
+        assertEquals(targetValue2, c.lookupText(inputtype, outputtype, locale, voice, null, null, null, inputtext2));
+    }
+
+    @Test
+    public void lookupAudio() throws Exception
+    {
+        byte[] lookupAudio = c.lookupAudio(inputtype, locale, voice, null, null, null, inputtext);
+        assertNotNull(lookupAudio);
+        assertArrayEquals(targetAudio, lookupAudio);
+    }
+
+    @Test
+    public void allKeysMatter() throws Exception
+    {
+        assertNull(c.lookupText(inputtype, outputtype, locale, voice, "params", null, null, inputtext));
+        assertNull(c.lookupText(inputtype, outputtype, locale, voice, null, "style", null, inputtext));
+        assertNull(c.lookupText(inputtype, outputtype, locale, voice, null, null, "Robot", inputtext));
+        assertNull(c.lookupText(inputtype, outputtype, locale, voice, null, null, "", inputtext));
+        assertNull(c.lookupText(inputtype, outputtype, locale, "de2", null, null, null, inputtext));
+        assertNull(c.lookupText(inputtype, "ACOUSTPARAMS", locale, voice, null, null, null, inputtext));
+    }
+
+    @Test
+    public void countsHitsAndMisses() throws Exception
+    {
+        c.lookupText(inputtype, outputtype, locale, voice, null, null, null, inputtext);
+        c.lookupText(inputtype, outputtype, locale, voice, null, null, null, "not in the cache");
+        CacheStatistics stats = c.getStatistics();
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(3, stats.getInsertions());
+        assertEquals(0.5, stats.getHitRate(), 1.e-10);
+    }
+
+    @Test
+    public void isPersistent() throws Exception
+    {
+        c.shutdown();
+        c = new TieredSynthesisCache(cacheFile, 1024*1024, 1024*1024, 64*1024, false);
+        lookupText();
+        lookupAudio();
+        assertEquals(0, c.getStatistics().getMemoryHits());
+        assertEquals(3, c.getStatistics().getDiskHits());
+    }
+
+    @Test
+    public void isClearable() throws Exception
+    {
+        c.shutdown();
+        c = new TieredSynthesisCache(cacheFile, 1024*1024, 1024*1024, 64*1024, true);
+        assertNull(c.lookupText(inputtype, outputtype, locale, voice, null, null, null, inputtext));
+        assertNull(c.lookupAudio(inputtype, locale, voice, null, null, null, inputtext));
+    }
+
+    @Test
+    public void evictsFromMemoryButKeepsOnDisk() throws Exception
+    {
+        c.shutdown();
+        // memory budget of one stripe is 4096 bytes, so only a few entries fit
+        c = new TieredSynthesisCache(cacheFile, 16*4096, 1024*1024, 64*1024, true);
+        byte[] audio = new byte[3000];
+        for (int i=0; i<100; i++) {
+            c.insertAudio(inputtype, locale, voice, null, null, null, "text "+i, audio);
+        }
+        assertTrue(c.getStatistics().getEvictions() > 0);
+        assertTrue(c.getMemoryTier().getSizeInBytes() <= 16*4096);
+        for (int i=0; i<100; i++) {
+            assertNotNull(c.lookupAudio(inputtype, locale, voice, null, null, null, "text "+i));
+        }
+        assertEquals(100, c.getStatistics().getHits());
+    }
+
+    @Test
+    public void respectsDiskBudget() throws Exception
+    {
+        c.shutdown();
+        c = new TieredSynthesisCache(cacheFile, 0, 2*64*1024, 64*1024, true);
+        byte[] audio = new byte[20000];
+        for (int i=0; i<10; i++) {
+            c.insertAudio(inputtype, locale, voice, null, null, null, "text "+i, audio);
+        }
+        // three records fit into each of the two segments:
+        assertEquals(6, c.getDiskTier().getNumEntries());
+        assertEquals(4, c.getStatistics().getRejections());
+        assertFalse(cacheFile.length() > 2*64*1024);
+    }
+}
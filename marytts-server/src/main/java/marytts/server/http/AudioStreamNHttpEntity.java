@@ -20,6 +20,7 @@
 
 package marytts.server.http;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -29,6 +30,7 @@ import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 
 import marytts.server.Request;
+import marytts.server.metrics.MaryMetrics;
 import marytts.util.MaryUtils;
 
 import org.apache.http.entity.AbstractHttpEntity;
@@ -53,9 +55,11 @@ extends AbstractHttpEntity implements ProducingNHttpEntity, Runnable
     private Logger logger;
     private Object mutex;
     private SharedOutputBuffer out;
+    private long creationTime;
 
     public AudioStreamNHttpEntity(Request maryRequest)
     {
+        this.creationTime = System.nanoTime();
         this.maryRequest = maryRequest;
         this.audio = maryRequest.getAudio();
         this.audioType = maryRequest.getAudioFileFormat().getType();
@@ -123,8 +127,9 @@ extends AbstractHttpEntity implements ProducingNHttpEntity, Runnable
         }
         assert out != null;
         ContentOutputStream outStream = new ContentOutputStream(out);
+        AudioInputStream timedAudio = new AudioInputStream(new FirstByteTimingInputStream(audio), audio.getFormat(), audio.getFrameLength());
         try {
-            AudioSystem.write(audio, audioType, outStream);
+            AudioSystem.write(timedAudio, audioType, outStream);
             outStream.flush();
             outStream.close();                
             logger.info("Finished writing output");
@@ -134,4 +139,43 @@ extends AbstractHttpEntity implements ProducingNHttpEntity, Runnable
         }
     }
 
+    /**
+     * Records in {@link MaryMetrics#FIRST_AUDIO_BYTE_SECONDS} when the first byte of audio
+     * can be read, i.e. when it is passed on to the client immediately after
+     * the audio file header.
+     */
+    private class FirstByteTimingInputStream extends FilterInputStream
+    {
+        private boolean seenData = false;
+
+        FirstByteTimingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        private void dataRead(int numRead)
+        {
+            if (!seenData && numRead > 0) {
+                seenData = true;
+                MaryMetrics.FIRST_AUDIO_BYTE_SECONDS.labels("true").observeNanos(System.nanoTime() - creationTime);
+            }
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = in.read();
+            dataRead(b >= 0 ? 1 : 0);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int numRead = in.read(b, off, len);
+            dataRead(numRead);
+            return numRead;
+        }
+    }
+
 }
@@ -27,6 +27,7 @@ import java.util.Map;
 import marytts.features.FeatureProcessorManager;
 import marytts.features.FeatureRegistry;
 import marytts.modules.synthesis.Voice;
+import marytts.server.metrics.MaryMetrics;
 import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
 import marytts.util.http.Address;
@@ -42,10 +43,22 @@ import org.apache.http.nio.entity.NStringEntity;
  */
 public class InfoRequestHandler extends BaseHttpRequestHandler
 {
+    private SynthesisExecutor synthesisExecutor;
 
     public InfoRequestHandler()
+    {
+        this(null);
+    }
+
+    /**
+     * Create an info request handler which includes the state of the given
+     * synthesis executor in the metrics.
+     * @param synthesisExecutor the executor processing the synthesis requests, or null
+     */
+    public InfoRequestHandler(SynthesisExecutor synthesisExecutor)
     {
         super();
+        this.synthesisExecutor = synthesisExecutor;
     }
     
     @Override
@@ -84,6 +97,7 @@ public class InfoRequestHandler extends BaseHttpRequestHandler
         else if (request.equals("locales")) return MaryRuntimeUtils.getLocales();
         else if (request.equals("voices")) return MaryRuntimeUtils.getVoices();
         else if (request.equals("audioformats")) return MaryRuntimeUtils.getAudioFileFormatTypes();
+        else if (request.equals("metrics")) return getMetrics();
         else if (request.equals("exampletext")) {
             if (queryItems != null) {
                 // Voice example text
@@ -213,6 +227,22 @@ public class InfoRequestHandler extends BaseHttpRequestHandler
         MaryHttpServerUtils.errorFileNotFound(response, request);
         return null;
     }
+
+    /**
+     * The metrics collected in {@link MaryMetrics}, and the state of the synthesis executor,
+     * in the Prometheus text exposition format.
+     */
+    private String getMetrics()
+    {
+        StringBuilder out = new StringBuilder(MaryMetrics.toPrometheusText());
+        if (synthesisExecutor != null) {
+            MaryMetrics.appendMetric(out, "marytts_synthesis_threads", "Maximum number of requests processed in parallel.", "gauge", synthesisExecutor.getNumThreads());
+            MaryMetrics.appendMetric(out, "marytts_synthesis_active", "Number of requests currently being processed.", "gauge", synthesisExecutor.getActiveCount());
+            MaryMetrics.appendMetric(out, "marytts_synthesis_queued", "Number of requests waiting for a free worker thread.", "gauge", synthesisExecutor.getQueueLength());
+            MaryMetrics.appendMetric(out, "marytts_synthesis_rejected_total", "Number of requests rejected because the server was too busy.", "counter", synthesisExecutor.getRejectedCount());
+        }
+        return out.toString();
+    }
     
     
     
@@ -95,6 +95,7 @@ import org.apache.log4j.Logger;
  *   <li><code>features?voice=hmm-slt</code> requests the list of available features that can be computed for the given voice;</li>
  *   <li><code>vocalizations?voice=dfki-poppy</code> requests the list of vocalization names that are available with the given voice;
  *   <li><code>styles?voice=dfki-pavoque-styles</code> requests the list of style names that are available with the given voice;
+ *   <li><code>metrics</code> requests processing time histograms per module, voice, locale and data types, cache and queue statistics, in Prometheus text format;</li>
  *   <li><code>process</code> requests the synthesis of some text (see below).</li>
  * </ul>
  * <p>
@@ -185,10 +186,13 @@ public class MaryHttpServer extends Thread
                 new DefaultConnectionReuseStrategy(),
                 params);
 
+        // Synthesis requests are processed by a bounded pool of worker threads:
+        SynthesisExecutor synthesisExecutor = SynthesisExecutor.fromProperties();
+
         // Set up request handlers
         HttpRequestHandlerRegistry registry = new HttpRequestHandlerRegistry();
-        registry.register("/process", new SynthesisRequestHandler());
-        InfoRequestHandler infoRH = new InfoRequestHandler();
+        registry.register("/process", new SynthesisRequestHandler(synthesisExecutor));
+        InfoRequestHandler infoRH = new InfoRequestHandler(synthesisExecutor);
         registry.register("/version", infoRH);
         registry.register("/datatypes", infoRH);
         registry.register("/locales", infoRH);
@@ -204,6 +208,7 @@ public class MaryHttpServer extends Thread
         registry.register("/features-discrete", infoRH);
         registry.register("/vocalizations", infoRH);
         registry.register("/styles", infoRH);
+        registry.register("/metrics", infoRH);
         registry.register("*", new FileRequestHandler());
 
 
@@ -227,6 +232,8 @@ public class MaryHttpServer extends Thread
             logger.info("Interrupted", ex);
         } catch (IOException e) {
             logger.info("Problem with HTTP connection", e);
+        } finally {
+            synthesisExecutor.shutdown();
         }
         logger.debug("Shutdown");
     }
@@ -0,0 +1,320 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.http;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import marytts.server.MaryProperties;
+import marytts.server.Request;
+import marytts.server.metrics.MaryMetrics;
+import marytts.util.MaryUtils;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A bounded pool of worker threads processing the synthesis requests
+ * received by the {@link MaryHttpServer}.
+ * <p>
+ * At most <code>server.http.synthesis.threads</code> requests are processed
+ * at the same time; up to <code>server.http.synthesis.queuesize</code> further
+ * requests wait for a free worker. Requests beyond that are rejected, so that
+ * an overloaded server answers quickly with an error instead of slowing down
+ * every request it has already accepted.
+ * <p>
+ * Streaming requests additionally need a thread that writes the audio into
+ * the http response as it becomes available. These writer threads are kept
+ * in a separate pool and reused across requests.
+ *
+ * @see SynthesisRequestHandler
+ */
+public class SynthesisExecutor
+{
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private Logger logger;
+    private int numThreads;
+    private int queueSize;
+    private ThreadPoolExecutor synthesisPool;
+    private ThreadPoolExecutor writerPool;
+    private AtomicLong numRejected = new AtomicLong();
+
+    /**
+     * Create a synthesis executor configured by the properties
+     * <code>server.http.synthesis.threads</code> (0 means one thread per available processor),
+     * <code>server.http.synthesis.queuesize</code> and
+     * <code>server.http.synthesis.virtualthreads</code>.
+     */
+    public static SynthesisExecutor fromProperties()
+    {
+        int threads = MaryProperties.getInteger("server.http.synthesis.threads", 0);
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        int queue = MaryProperties.getInteger("server.http.synthesis.queuesize", 50);
+        boolean virtual = MaryProperties.getBoolean("server.http.synthesis.virtualthreads", false);
+        return new SynthesisExecutor(threads, queue, virtual);
+    }
+
+    /**
+     * Create a synthesis executor.
+     * @param numThreads the maximum number of requests to process in parallel, must be positive
+     * @param queueSize the maximum number of requests waiting for a free worker thread; 0 means
+     * that requests are rejected whenever all worker threads are busy
+     * @param useVirtualThreads whether to run the worker threads as virtual threads. This
+     * requires a Java runtime that supports them; on older runtimes, normal threads are used instead.
+     */
+    public SynthesisExecutor(int numThreads, int queueSize, boolean useVirtualThreads)
+    {
+        if (numThreads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive, got "+numThreads);
+        }
+        if (queueSize < 0) {
+            throw new IllegalArgumentException("Queue size must not be negative, got "+queueSize);
+        }
+        this.logger = MaryUtils.getLogger("server");
+        this.numThreads = numThreads;
+        this.queueSize = queueSize;
+        ThreadFactory baseFactory = null;
+        if (useVirtualThreads) {
+            baseFactory = getVirtualThreadFactory();
+            if (baseFactory == null) {
+                logger.warn("Virtual threads are not supported by this Java runtime -- using normal threads");
+            }
+        }
+        boolean virtual = baseFactory != null;
+        if (baseFactory == null) {
+            baseFactory = Executors.defaultThreadFactory();
+        }
+        synthesisPool = new ThreadPoolExecutor(numThreads, numThreads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                queueSize > 0 ? new ArrayBlockingQueue<Runnable>(queueSize) : new SynchronousQueue<Runnable>(),
+                new NamingThreadFactory(baseFactory, "synthesis"));
+        // Every request admitted to the synthesis pool may need at most one writer,
+        // and writers are mostly waiting for the client, so they don't count against numThreads:
+        writerPool = new ThreadPoolExecutor(0, numThreads + queueSize,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                new NamingThreadFactory(baseFactory, "HTTPWriter"));
+        logger.info("Synthesis executor: "+numThreads+" worker threads, queue size "+queueSize
+                +(virtual ? ", virtual threads" : ""));
+    }
+
+    /**
+     * Process the given request on one of the worker threads, and wait until processing is complete.
+     * @param request the request to process
+     * @throws RejectedExecutionException if the server is too busy to accept the request
+     * @throws Exception any exception thrown by {@link Request#process()}
+     */
+    public void process(final Request request) throws Exception
+    {
+        Future<Object> result;
+        final long submitted = System.nanoTime();
+        try {
+            result = synthesisPool.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    MaryMetrics.QUEUE_WAIT_SECONDS.labels().observeNanos(System.nanoTime() - submitted);
+                    String threadName = Thread.currentThread().getName();
+                    Thread.currentThread().setName("RH "+request.getId());
+                    try {
+                        request.process();
+                    } finally {
+                        Thread.currentThread().setName(threadName);
+                    }
+                    return null;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            numRejected.incrementAndGet();
+            throw e;
+        }
+        try {
+            result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Start processing the given streaming request on one of the worker threads, and
+     * start writing its audio into the given entity as it becomes available.
+     * This method returns immediately.
+     * @param request a request with streaming audio output
+     * @param entity the entity to which the audio of the request is to be written
+     * @throws RejectedExecutionException if the server is too busy to accept the request
+     */
+    public void processStreaming(final Request request, AudioStreamNHttpEntity entity)
+    {
+        final long submitted = System.nanoTime();
+        try {
+            synthesisPool.execute(new Runnable() {
+                public void run() {
+                    MaryMetrics.QUEUE_WAIT_SECONDS.labels().observeNanos(System.nanoTime() - submitted);
+                    String threadName = Thread.currentThread().getName();
+                    Thread.currentThread().setName("RH "+request.getId());
+                    try {
+                        Logger myLogger = MaryUtils.getLogger(Thread.currentThread().getName());
+                        try {
+                            request.process();
+                            myLogger.info("Streaming request processed successfully.");
+                        } catch (Throwable t) {
+                            myLogger.error("Processing failed.", t);
+                        }
+                    } finally {
+                        Thread.currentThread().setName(threadName);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            numRejected.incrementAndGet();
+            throw e;
+        }
+        final Runnable writer = entity;
+        try {
+            writerPool.execute(new Runnable() {
+                public void run() {
+                    String threadName = Thread.currentThread().getName();
+                    Thread.currentThread().setName("HTTPWriter "+request.getId());
+                    try {
+                        writer.run();
+                    } finally {
+                        Thread.currentThread().setName(threadName);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The request is already being processed, but nobody will read its output:
+            request.abort();
+            numRejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Stop accepting new requests; requests already accepted are processed to the end.
+     */
+    public void shutdown()
+    {
+        synthesisPool.shutdown();
+        writerPool.shutdown();
+    }
+
+    /**
+     * The maximum number of requests processed in parallel.
+     */
+    public int getNumThreads()
+    {
+        return numThreads;
+    }
+
+    /**
+     * The maximum number of requests waiting for a free worker thread.
+     */
+    public int getQueueSize()
+    {
+        return queueSize;
+    }
+
+    /**
+     * The number of requests currently being processed.
+     */
+    public int getActiveCount()
+    {
+        return synthesisPool.getActiveCount();
+    }
+
+    /**
+     * The number of requests currently waiting for a free worker thread.
+     */
+    public int getQueueLength()
+    {
+        return synthesisPool.getQueue().size();
+    }
+
+    /**
+     * The number of requests rejected so far because the server was too busy.
+     */
+    public long getRejectedCount()
+    {
+        return numRejected.get();
+    }
+
+
+    /**
+     * Try to get a factory for virtual threads, as provided by Java 21 and newer.
+     * This is done via reflection so that the code still compiles and runs on older Java versions.
+     * @return a factory for virtual threads, or null if virtual threads are not supported.
+     */
+    private static ThreadFactory getVirtualThreadFactory()
+    {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Give the threads created by another factory recognisable names,
+     * and make them daemon threads so that they don't prevent the server from shutting down.
+     */
+    private static class NamingThreadFactory implements ThreadFactory
+    {
+        private ThreadFactory baseFactory;
+        private String prefix;
+        private AtomicInteger counter = new AtomicInteger();
+
+        NamingThreadFactory(ThreadFactory baseFactory, String prefix)
+        {
+            this.baseFactory = baseFactory;
+            this.prefix = prefix;
+        }
+
+        public Thread newThread(Runnable r)
+        {
+            Thread t = baseFactory.newThread(r);
+            t.setName(prefix + "-" + counter.incrementAndGet());
+            if (!t.isDaemon()) {
+                t.setDaemon(true);
+            }
+            return t;
+        }
+    }
+}
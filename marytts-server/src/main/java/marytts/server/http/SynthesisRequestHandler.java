@@ -28,6 +28,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.sound.sampled.AudioFileFormat;
 import javax.sound.sampled.AudioFormat;
@@ -39,6 +40,7 @@ import marytts.modules.synthesis.Voice;
 import marytts.server.Request;
 import marytts.server.RequestHandler.StreamingOutputPiper;
 import marytts.server.RequestHandler.StreamingOutputWriter;
+import marytts.server.metrics.MaryMetrics;
 import marytts.util.MaryRuntimeUtils;
 import marytts.util.MaryUtils;
 import marytts.util.data.audio.MaryAudioUtils;
@@ -68,11 +70,23 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler
     private StreamingOutputPiper streamToPipe;
     private PipedOutputStream pipedOutput;
     private PipedInputStream pipedInput;
+    private SynthesisExecutor synthesisExecutor;
     
     public SynthesisRequestHandler()
+    {
+        this(null);
+    }
+
+    /**
+     * Create a synthesis request handler which processes requests using the given executor.
+     * @param synthesisExecutor the executor to process the requests with. If this is null,
+     * a new thread is started for each request.
+     */
+    public SynthesisRequestHandler(SynthesisExecutor synthesisExecutor)
     {
         super();
 
+        this.synthesisExecutor = synthesisExecutor;
         outputToStream = null;
         streamToPipe = null;
         pipedOutput = null;
@@ -222,6 +236,7 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler
         }
         AudioFileFormat audioFileFormat = new AudioFileFormat(audioFileFormatType, audioFormat, AudioSystem.NOT_SPECIFIED);
         
+        long startTime = System.nanoTime();
         final Request maryRequest = new Request(inputType, outputType, locale, voice, effects, style, getId(), audioFileFormat, streamingAudio, outputTypeParams);
         
         // Process the request and send back the data
@@ -237,31 +252,42 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler
         }
         if (ok) {
             if (streamingAudio) {
-                // Start two separate threads:
-                // 1. one thread to process the request;
-                new Thread("RH "+maryRequest.getId()) {
-                    public void run() 
-                    {
-                        Logger myLogger = MaryUtils.getLogger(this.getName());
-                        try {
-                            maryRequest.process();
-                            myLogger.info("Streaming request processed successfully.");
-                        } catch (Throwable t) {
-                            myLogger.error("Processing failed.", t);
-                        }
-                    }
-                }.start();
-                
-                // 2. one thread to take the audio data as it becomes available
-                //    and write it into the ProducingNHttpEntity.
-                // The second one does not depend on the first one practically,
+                // Process the request and write the audio data into the ProducingNHttpEntity
+                // as it becomes available.
+                // Writing does not depend on processing practically,
                 // because the AppendableSequenceAudioInputStream returned by
                 // maryRequest.getAudio() was already created in the constructor of Request.
                 AudioInputStream audio = maryRequest.getAudio();
                 assert audio != null : "Streaming audio but no audio stream -- very strange indeed! :-(";
                 AudioFileFormat.Type audioType = maryRequest.getAudioFileFormat().getType();
                 AudioStreamNHttpEntity entity = new AudioStreamNHttpEntity(maryRequest);
-                new Thread(entity, "HTTPWriter "+maryRequest.getId()).start();
+                if (synthesisExecutor != null) {
+                    try {
+                        synthesisExecutor.processStreaming(maryRequest, entity);
+                    } catch (RejectedExecutionException e) {
+                        logger.warn("Too many requests, rejecting request "+maryRequest.getId());
+                        MaryHttpServerUtils.errorServiceUnavailable(response, "Too many requests, please try again later.");
+                        return;
+                    }
+                } else {
+                    // Start two separate threads:
+                    // 1. one thread to process the request;
+                    new Thread("RH "+maryRequest.getId()) {
+                        public void run() 
+                        {
+                            Logger myLogger = MaryUtils.getLogger(this.getName());
+                            try {
+                                maryRequest.process();
+                                myLogger.info("Streaming request processed successfully.");
+                            } catch (Throwable t) {
+                                myLogger.error("Processing failed.", t);
+                            }
+                        }
+                    }.start();
+                    // 2. one thread to take the audio data as it becomes available
+                    //    and write it into the ProducingNHttpEntity.
+                    new Thread(entity, "HTTPWriter "+maryRequest.getId()).start();
+                }
                 // entity knows its contentType, no need to set explicitly here.
                 response.setEntity(entity);
                 response.setStatusCode(HttpStatus.SC_OK);
@@ -269,7 +295,15 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler
             } else { // not streaming audio
                 // Process input data to output data
                 try {
-                    maryRequest.process(); // this may take some time
+                    if (synthesisExecutor != null) {
+                        synthesisExecutor.process(maryRequest); // this may take some time
+                    } else {
+                        maryRequest.process(); // this may take some time
+                    }
+                } catch (RejectedExecutionException e) {
+                    logger.warn("Too many requests, rejecting request "+maryRequest.getId());
+                    MaryHttpServerUtils.errorServiceUnavailable(response, "Too many requests, please try again later.");
+                    ok = false;
                 } catch (Throwable e) {
                     String message = "Processing failed.";
                     logger.error(message, e);
@@ -284,8 +318,11 @@ public class SynthesisRequestHandler extends BaseHttpRequestHandler
                         String contentType;
                         if (maryRequest.getOutputType().isXMLType() || maryRequest.getOutputType().isTextType()) //text output
                             contentType = "text/plain; charset=UTF-8";
-                        else //audio output
+                        else { //audio output
                             contentType = MaryHttpServerUtils.getMimeType(maryRequest.getAudioFileFormat().getType());
+                            // without streaming, the first byte of audio is sent when all of it is ready:
+                            MaryMetrics.FIRST_AUDIO_BYTE_SECONDS.labels("false").observeNanos(System.nanoTime() - startTime);
+                        }
                         MaryHttpServerUtils.toHttpResponse(outputStream.toByteArray(), response, contentType);
                     } catch (Exception e) {
                         String message = "Cannot write output";
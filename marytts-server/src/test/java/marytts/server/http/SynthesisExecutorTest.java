@@ -0,0 +1,159 @@
+/**
+ * Copyright 2009 DFKI GmbH.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * This file is part of MARY TTS.
+ *
+ * MARY TTS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package marytts.server.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import marytts.datatypes.MaryDataType;
+import marytts.server.Mary;
+import marytts.server.Request;
+import marytts.util.MaryUtils;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.log4j.BasicConfigurator;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class SynthesisExecutorTest
+{
+    private static final int NUM_THREADS = 2;
+    private static final int QUEUE_SIZE = 3;
+
+    @BeforeClass
+    public static void startMary() throws Exception
+    {
+        if (System.getProperty("mary.base") == null) {
+            System.setProperty("mary.base", ".");
+        }
+        // configure log4j here, so that Mary does not log into its log file:
+        if (!MaryUtils.isLog4jConfigured()) {
+            BasicConfigurator.configure();
+        }
+        if (Mary.currentState() == Mary.STATE_OFF) {
+            Mary.startup();
+        }
+    }
+
+    @Test
+    public void requestsBeyondQueueAreRejectedAndAcceptedOnesFinish() throws Exception
+    {
+        SynthesisExecutor executor = new SynthesisExecutor(NUM_THREADS, QUEUE_SIZE, false);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger numProcessed = new AtomicInteger();
+        Client[] clients = new Client[NUM_THREADS + QUEUE_SIZE];
+        for (int i=0; i<clients.length; i++) {
+            clients[i] = new Client(executor, new BlockingRequest(i, release, numProcessed));
+            clients[i].start();
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (executor.getActiveCount() < NUM_THREADS || executor.getQueueLength() < QUEUE_SIZE) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Pool and queue not filled: "+executor.getActiveCount()+" active, "
+                        +executor.getQueueLength()+" queued");
+            }
+            Thread.sleep(10);
+        }
+
+        Map<String, String> query = new HashMap<String, String>();
+        query.put("INPUT_TYPE", "TEXT");
+        query.put("OUTPUT_TYPE", "TOKENS");
+        query.put("LOCALE", "en_US");
+        query.put("INPUT_TEXT", "One request too many.");
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        new SynthesisRequestHandler(executor).process(null, query, response);
+        assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, response.getStatusLine().getStatusCode());
+        assertEquals(1, executor.getRejectedCount());
+
+        release.countDown();
+        for (Client client : clients) {
+            client.join(10000);
+            assertTrue(client.done);
+            assertNull(client.failure);
+        }
+        assertEquals(clients.length, numProcessed.get());
+        executor.shutdown();
+    }
+
+    /**
+     * A request whose processing waits until it is released.
+     */
+    private static class BlockingRequest extends Request
+    {
+        private CountDownLatch release;
+        private AtomicInteger numProcessed;
+
+        BlockingRequest(int id, CountDownLatch release, AtomicInteger numProcessed)
+        {
+            super(MaryDataType.TEXT, MaryDataType.TOKENS, Locale.US, null, null, null, id, null);
+            this.release = release;
+            this.numProcessed = numProcessed;
+        }
+
+        @Override
+        public void process() throws Exception
+        {
+            if (!release.await(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Request "+getId()+" was not released");
+            }
+            numProcessed.incrementAndGet();
+        }
+    }
+
+    /**
+     * A client thread submitting one request to the executor and waiting for its result.
+     */
+    private static class Client extends Thread
+    {
+        private SynthesisExecutor executor;
+        private Request request;
+        volatile boolean done;
+        volatile Throwable failure;
+
+        Client(SynthesisExecutor executor, Request request)
+        {
+            this.executor = executor;
+            this.request = request;
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                executor.process(request);
+            } catch (Throwable t) {
+                failure = t;
+            }
+            done = true;
+        }
+    }
+}